@@ -0,0 +1,134 @@
+package com.andrejlohn.mariobros.benchmarks;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.JsonReader;
+import com.badlogic.gdx.utils.JsonValue;
+import com.badlogic.gdx.utils.ObjectMap;
+
+import java.util.Locale;
+
+/**
+ * Compares JMH results in JSON format against a baseline. A benchmark regresses when its score
+ * (time per operation) or its normalized allocation rate is more than the given tolerance above the
+ * baseline. Benchmarks missing from either file are reported but do not fail the comparison.
+ *
+ * Usage: BaselineComparator baseline.json results.json [tolerance]
+ *
+ * The tolerance defaults to 0.25, i.e. 25 percent. Baselines are machine specific and must be
+ * recorded on the machine the comparison runs on, with the same fork and iteration settings as the
+ * results, so they are kept out of version control.
+ *
+ * @version %I%, %G%
+ */
+public class BaselineComparator {
+
+    public static final float DEFAULT_TOLERANCE = 0.25f;
+
+    // Secondary metric of the gc profiler, bytes allocated per operation
+    private static final String ALLOCATION_METRIC = "\u00b7gc.alloc.rate.norm";
+
+    // Allocations below this many bytes per operation are considered noise
+    private static final float ALLOCATION_NOISE = 16;
+
+    private float tolerance;
+
+    /**
+     * Creates the comparator.
+     *
+     * @param tolerance the allowed relative increase, e.g. 0.25 for 25 percent
+     */
+    public BaselineComparator(float tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Compares the results against the baseline and prints a line per benchmark.
+     *
+     * @param baseline  the baseline JMH results
+     * @param results   the current JMH results
+     * @return          the number of regressed benchmarks
+     */
+    public int compare(FileHandle baseline, FileHandle results) {
+        ObjectMap<String, JsonValue> baselineRuns = read(baseline);
+        int regressions = 0;
+        for(ObjectMap.Entry<String, JsonValue> entry: read(results)) {
+            JsonValue base = baselineRuns.remove(entry.key);
+            if(base == null) {
+                System.out.println("NEW        " + entry.key);
+                continue;
+            }
+            float baseScore = score(base);
+            float score = score(entry.value);
+            float baseBytes = allocation(base);
+            float bytes = allocation(entry.value);
+
+            boolean slower = score > baseScore * (1 + tolerance);
+            boolean allocates = bytes > ALLOCATION_NOISE && bytes > baseBytes * (1 + tolerance);
+            if(slower || allocates) {
+                regressions++;
+            }
+            System.out.println(String.format(
+                    Locale.ROOT,
+                    "%-10s %s: %.3f -> %.3f %s, %.0f -> %.0f B/op",
+                    slower || allocates ? "REGRESSION" : "OK",
+                    entry.key,
+                    baseScore,
+                    score,
+                    entry.value.get("primaryMetric").getString("scoreUnit"),
+                    baseBytes,
+                    bytes));
+        }
+        for(String key: baselineRuns.keys()) {
+            System.out.println("MISSING    " + key);
+        }
+        return regressions;
+    }
+
+    /**
+     * Reads JMH results and keys them by benchmark name and parameters.
+     *
+     * @param file  the JMH results in JSON format
+     * @return      the benchmark runs by key
+     */
+    private ObjectMap<String, JsonValue> read(FileHandle file) {
+        ObjectMap<String, JsonValue> runs = new ObjectMap<String, JsonValue>();
+        for(JsonValue run = new JsonReader().parse(file).child; run != null; run = run.next) {
+            StringBuilder key = new StringBuilder(run.getString("benchmark"));
+            JsonValue params = run.get("params");
+            if(params != null) {
+                for(JsonValue param = params.child; param != null; param = param.next) {
+                    key.append(' ').append(param.name).append('=').append(param.asString());
+                }
+            }
+            runs.put(key.toString(), run);
+        }
+        return runs;
+    }
+
+    private float score(JsonValue run) {
+        return run.get("primaryMetric").getFloat("score");
+    }
+
+    private float allocation(JsonValue run) {
+        JsonValue metrics = run.get("secondaryMetrics");
+        if(metrics == null || metrics.get(ALLOCATION_METRIC) == null) {
+            return 0;
+        }
+        return metrics.get(ALLOCATION_METRIC).getFloat("score");
+    }
+
+    public static void main(String[] args) {
+        if(args.length < 2) {
+            System.err.println("Usage: BaselineComparator baseline.json results.json [tolerance]");
+            System.exit(2);
+        }
+        float tolerance = args.length > 2 ? Float.parseFloat(args[2]) : DEFAULT_TOLERANCE;
+        int regressions = new BaselineComparator(tolerance).compare(
+                new FileHandle(args[0]),
+                new FileHandle(args[1]));
+        if(regressions > 0) {
+            System.err.println(regressions + " benchmark(s) regressed");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.andrejlohn.mariobros.benchmarks;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.backends.headless.HeadlessFiles;
+import com.badlogic.gdx.backends.headless.mock.graphics.MockGraphics;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.g2d.Batch;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Sets up libGDX for benchmarks without a display. Files and graphics come from the headless
+ * back end, OpenGL calls go to a stub that does nothing. Textures, texture atlases and fonts can be
+ * loaded this way, so the graphics code paths of the game logic are included in the measurements.
+ * Nothing is actually drawn.
+ *
+ * @version %I%, %G%
+ */
+public final class BenchmarkGraphics {
+
+    private static boolean initialized;
+
+    private BenchmarkGraphics() {
+    }
+
+    /**
+     * Sets up libGDX once per JVM. Benchmarks expect to be run from the assets directory.
+     */
+    public static synchronized void init() {
+        if(initialized) {
+            return;
+        }
+        GdxNativesLoader.load();
+        Gdx.files = new HeadlessFiles();
+        Gdx.graphics = new MockGraphics();
+        Gdx.gl = Gdx.gl20 = stub(GL20.class);
+        initialized = true;
+    }
+
+    /**
+     * Creates a batch that draws nothing.
+     *
+     * @return  the batch stub
+     */
+    public static Batch batch() {
+        return stub(Batch.class);
+    }
+
+    /**
+     * Creates an implementation of the given interface that does nothing and returns default
+     * values.
+     *
+     * @param type  the interface
+     * @return      the stub
+     */
+    private static <T> T stub(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(
+                type.getClassLoader(),
+                new Class<?>[] {type},
+                new InvocationHandler() {
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        Class<?> returnType = method.getReturnType();
+                        if(returnType == boolean.class) {
+                            return false;
+                        } else if(returnType == int.class) {
+                            return 0;
+                        } else if(returnType == float.class) {
+                            return 0f;
+                        } else if(returnType == long.class) {
+                            return 0L;
+                        }
+                        return null;
+                    }
+                }));
+    }
+}
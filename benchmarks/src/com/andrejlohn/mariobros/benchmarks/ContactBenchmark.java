@@ -0,0 +1,79 @@
+package com.andrejlohn.mariobros.benchmarks;
+
+import com.andrejlohn.mariobros.session.GameSession;
+import com.andrejlohn.mariobros.tools.WorldContactListener;
+import com.badlogic.gdx.physics.box2d.Contact;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the contact dispatch of the WorldContactListener. The contacts are taken from a session
+ * that ran for a few steps with as many enemies spawned as can be alive at once (see
+ * EnemyManager#MAX_LIVE_ENEMIES): the player character and the enemies touching the ground and
+ * pipes. Dispatching them again has no lasting effect on the game, apart from
+ * enemies turning around at pipes and the foot contacts counted by the player character.
+ *
+ * @version %I%, %G%
+ * @see     WorldContactListener#beginContact(Contact)
+ * @see     WorldContactListener#endContact(Contact)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ContactBenchmark {
+
+    private GameSession session;
+    private WorldContactListener listener;
+    private Contact[] contacts;
+
+    @Setup
+    public void setUp() {
+        session = new GameSession(Sessions.loadLevel(), Sessions.NO_INPUT);
+        Sessions.spawnMaxEnemies(session);
+        for(int i = 0; i < 30; i++) {
+            session.step();
+        }
+        listener = new WorldContactListener();
+        contacts = session.getWorld().getContactList().toArray(Contact.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        session.dispose();
+    }
+
+    /**
+     * Dispatches every contact once.
+     *
+     * @return  the number of contacts
+     */
+    @Benchmark
+    public int beginContact() {
+        for(Contact contact: contacts) {
+            listener.beginContact(contact);
+        }
+        return contacts.length;
+    }
+
+    /**
+     * Dispatches the begin and the end of every contact once.
+     *
+     * @return  the number of contacts
+     */
+    @Benchmark
+    public int beginEndContact() {
+        for(Contact contact: contacts) {
+            listener.beginContact(contact);
+            listener.endContact(contact);
+        }
+        return contacts.length;
+    }
+}
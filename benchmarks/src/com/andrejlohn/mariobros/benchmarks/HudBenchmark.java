@@ -0,0 +1,54 @@
+package com.andrejlohn.mariobros.benchmarks;
+
+import com.andrejlohn.mariobros.scenes.Hud;
+import com.andrejlohn.mariobros.session.GameSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the HUD label updates. Adding to the score forces the score label to be updated, an
+ * unchanged score and timer leave both labels untouched.
+ *
+ * @version %I%, %G%
+ * @see     Hud#update()
+ * @see     GameSession#addScore(int)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HudBenchmark {
+
+    private GameSession session;
+    private Hud hud;
+
+    @Setup
+    public void setUp() {
+        session = new GameSession(Sessions.loadLevel(), Sessions.NO_INPUT);
+        hud = new Hud(BenchmarkGraphics.batch(), session);
+    }
+
+    @TearDown
+    public void tearDown() {
+        hud.dispose();
+        session.dispose();
+    }
+
+    @Benchmark
+    public void addScore() {
+        session.addScore(100);
+        hud.update();
+    }
+
+    @Benchmark
+    public void updateUnchanged() {
+        hud.update();
+    }
+}
@@ -0,0 +1,53 @@
+package com.andrejlohn.mariobros.benchmarks;
+
+import com.andrejlohn.mariobros.level.LevelData;
+import com.andrejlohn.mariobros.session.GameSession;
+import com.andrejlohn.mariobros.tools.LevelStreamer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures level startup: reading the compiled level1.lvl, or level1.tmx for comparison, and
+ * building the Box2D world from it. A headless game session is created and disposed per
+ * operation; its cost is dominated by materializing the level chunks around the start.
+ *
+ * @version %I%, %G%
+ * @see     LevelStreamer
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LevelBenchmark {
+
+    private LevelData level;
+
+    @Setup
+    public void setUp() {
+        level = Sessions.loadLevel();
+    }
+
+    @Benchmark
+    public LevelData loadLevel() {
+        return Sessions.loadLevel();
+    }
+
+    @Benchmark
+    public LevelData loadLevelTmx() {
+        return Sessions.loadLevelTmx();
+    }
+
+    @Benchmark
+    public int createWorld() {
+        GameSession session = new GameSession(level, Sessions.NO_INPUT);
+        int bodies = session.getWorld().getBodyCount();
+        session.dispose();
+        return bodies;
+    }
+}
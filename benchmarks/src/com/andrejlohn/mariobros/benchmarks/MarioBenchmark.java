@@ -0,0 +1,57 @@
+package com.andrejlohn.mariobros.benchmarks;
+
+import com.andrejlohn.mariobros.session.GameSession;
+import com.andrejlohn.mariobros.sprites.Mario;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the state machine and animation frame selection of the player character.
+ *
+ * @version %I%, %G%
+ * @see     Mario#getState()
+ * @see     Mario#getFrame()
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MarioBenchmark {
+
+    private GameSession session;
+    private Mario player;
+
+    @Setup
+    public void setUp() {
+        session = new GameSession(
+                Sessions.loadLevel(),
+                Sessions.NO_INPUT,
+                Sessions.loadAtlas(),
+                null,
+                null);
+        player = session.getPlayer();
+    }
+
+    @TearDown
+    public void tearDown() {
+        session.dispose();
+    }
+
+    @Benchmark
+    public Mario.State getState() {
+        return player.getState();
+    }
+
+    @Benchmark
+    public TextureRegion getFrame() {
+        return player.getFrame();
+    }
+}
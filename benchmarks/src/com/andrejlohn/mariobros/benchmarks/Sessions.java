@@ -0,0 +1,87 @@
+package com.andrejlohn.mariobros.benchmarks;
+
+import com.andrejlohn.mariobros.level.BinaryLevelLoader;
+import com.andrejlohn.mariobros.level.LevelData;
+import com.andrejlohn.mariobros.level.LevelLoader;
+import com.andrejlohn.mariobros.session.GameSession;
+import com.andrejlohn.mariobros.tools.EnemyManager;
+import com.andrejlohn.mariobros.tools.InputSource;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+
+/**
+ * Creates the game sessions used by the benchmarks.
+ *
+ * @version %I%, %G%
+ */
+public final class Sessions {
+
+    public static final String LEVEL = "level1.lvl";
+    public static final String LEVEL_TMX = "level1.tmx";
+    public static final String ATLAS = "Mario_and_Enemies.pack";
+
+    // Input of a player not touching the controls
+    public static final InputSource NO_INPUT = new InputSource() {
+
+        @Override
+        public boolean isUpPressed() {
+            return false;
+        }
+
+        @Override
+        public boolean isLeftPressed() {
+            return false;
+        }
+
+        @Override
+        public boolean isRightPressed() {
+            return false;
+        }
+    };
+
+    private Sessions() {
+    }
+
+    /**
+     * Loads the benchmark level from its compiled binary level file.
+     *
+     * @return  the level data
+     */
+    public static LevelData loadLevel() {
+        BenchmarkGraphics.init();
+        return new BinaryLevelLoader().load(Gdx.files.internal(LEVEL));
+    }
+
+    /**
+     * Loads the benchmark level from its .tmx file, the way levels were loaded before they were
+     * compiled.
+     *
+     * @return  the level data
+     */
+    public static LevelData loadLevelTmx() {
+        BenchmarkGraphics.init();
+        return new LevelLoader().load(Gdx.files.internal(LEVEL_TMX));
+    }
+
+    /**
+     * Loads the benchmark texture atlas.
+     *
+     * @return  the texture atlas
+     */
+    public static TextureAtlas loadAtlas() {
+        BenchmarkGraphics.init();
+        return new TextureAtlas(ATLAS);
+    }
+
+    /**
+     * Spawns the enemies of the session from the start of the level regardless of the player
+     * position, until {@link EnemyManager#MAX_LIVE_ENEMIES} are alive. Enemies of later spawn
+     * points are not spawned.
+     *
+     * @param session   the game session
+     * @see             EnemyManager#spawn(float)
+     */
+    public static void spawnMaxEnemies(GameSession session) {
+        session.getEnemies().spawn(Float.MAX_VALUE);
+    }
+}
@@ -0,0 +1,69 @@
+package com.andrejlohn.mariobros.benchmarks;
+
+import com.andrejlohn.mariobros.level.LevelData;
+import com.andrejlohn.mariobros.session.GameSession;
+import com.andrejlohn.mariobros.session.SnapshotRing;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures capturing a snapshot of a session into a snapshot ring and restoring it, with as many
+ * enemies spawned as can be alive at once (see EnemyManager#MAX_LIVE_ENEMIES). Capturing runs
+ * every step when rolling back, restoring once per rollback.
+ *
+ * @version %I%, %G%
+ * @see     SnapshotRing
+ * @see     GameSession#saveState(java.nio.ByteBuffer)
+ * @see     GameSession#restoreState(java.nio.ByteBuffer)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SnapshotBenchmark {
+
+    private static final int RING_SIZE = 8;
+
+    private LevelData level;
+    private GameSession session;
+    private SnapshotRing ring;
+
+    @Setup
+    public void setUp() {
+        level = Sessions.loadLevel();
+    }
+
+    @Setup(Level.Iteration)
+    public void createSession() {
+        session = new GameSession(level, Sessions.NO_INPUT);
+        Sessions.spawnMaxEnemies(session);
+        for(int i = 0; i < 60; i++) {
+            session.step();
+        }
+        ring = new SnapshotRing(session, RING_SIZE);
+        ring.capture();
+    }
+
+    @TearDown(Level.Iteration)
+    public void disposeSession() {
+        session.dispose();
+    }
+
+    @Benchmark
+    public int capture() {
+        return ring.capture();
+    }
+
+    @Benchmark
+    public int restore() {
+        return ring.restoreNewest();
+    }
+}
@@ -0,0 +1,68 @@
+package com.andrejlohn.mariobros.benchmarks;
+
+import com.andrejlohn.mariobros.level.LevelData;
+import com.andrejlohn.mariobros.screens.PlayScreen;
+import com.andrejlohn.mariobros.session.GameSession;
+import com.andrejlohn.mariobros.tools.EnemyManager;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a single simulation step, the work PlayScreen#update does per tick, with as many enemies
+ * spawned as can be alive at once. The EnemyManager caps the live enemies at
+ * {@link EnemyManager#MAX_LIVE_ENEMIES}, so the enemies of the later spawn points of the level are
+ * not part of the measurement. The session is recreated for each iteration so all iterations start
+ * from the same state. With graphics the animation frames are selected from a texture atlas as
+ * well.
+ *
+ * @version %I%, %G%
+ * @see     GameSession#step()
+ * @see     PlayScreen#update(float)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TickBenchmark {
+
+    @Param({"true", "false"})
+    public boolean headless;
+
+    private LevelData level;
+    private TextureAtlas atlas;
+    private GameSession session;
+
+    @Setup
+    public void setUp() {
+        level = Sessions.loadLevel();
+        if(!headless) {
+            atlas = Sessions.loadAtlas();
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void createSession() {
+        session = new GameSession(level, Sessions.NO_INPUT, atlas, null, null);
+        Sessions.spawnMaxEnemies(session);
+    }
+
+    @TearDown(Level.Iteration)
+    public void disposeSession() {
+        session.dispose();
+    }
+
+    @Benchmark
+    public void step() {
+        session.step();
+    }
+}
@@ -1,10 +1,13 @@
 package com.andrejlohn.mariobros;
 
-import com.andrejlohn.mariobros.screens.PlayScreen;
+import com.andrejlohn.mariobros.level.LevelData;
+import com.andrejlohn.mariobros.level.LevelDataLoader;
+import com.andrejlohn.mariobros.replay.ReplayStore;
+import com.andrejlohn.mariobros.screens.LoadingScreen;
 import com.badlogic.gdx.Game;
+import com.badlogic.gdx.Screen;
 import com.badlogic.gdx.assets.AssetManager;
-import com.badlogic.gdx.audio.Music;
-import com.badlogic.gdx.audio.Sound;
+import com.badlogic.gdx.assets.loaders.resolvers.InternalFileHandleResolver;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 
 /**
@@ -20,6 +23,10 @@ public class MarioBros extends Game {
     public static final int V_HEIGHT = 208;
     public static final float PPM = 100;
 
+    // Assets
+    public static final String ATLAS = "Mario_and_Enemies.pack";
+    public static final String LEVEL = "level1.lvl";
+
     // Collision bits
     public static final short NOTHING_BIT = 0;
     public static final short GROUND_BIT = 1;
@@ -47,29 +54,78 @@ public class MarioBros extends Game {
 	    return this.manager;
     }
 
+    // Where game sessions are recorded to, null to not record
+    private ReplayStore replayStore;
+
+    public ReplayStore getReplayStore() {
+        return replayStore;
+    }
+
+    /**
+     * Sets where game sessions are recorded to. Every play screen records its session into a new
+     * replay. Has to be set by the launcher, as the replay files depend on the platform.
+     *
+     * @param replayStore   the replay store, <code>null</code> to not record
+     * @see                 com.andrejlohn.mariobros.replay.InputRecorder
+     */
+    public void setReplayStore(ReplayStore replayStore) {
+        this.replayStore = replayStore;
+    }
+
+    // Whether play screens profile their frames from the start
+    private boolean profiling;
+
+    public boolean isProfiling() {
+        return profiling;
+    }
+
+    /**
+     * Sets whether every play screen profiles its frames from the start and writes the profile to
+     * a CSV file when disposed. Otherwise profiling starts once the profiler overlay is first
+     * shown. Set by the launcher.
+     *
+     * @param profiling <code>true</code> to profile from the start
+     * @see             com.andrejlohn.mariobros.tools.FrameProfiler
+     */
+    public void setProfiling(boolean profiling) {
+        this.profiling = profiling;
+    }
+
+    // Whether play screens enable the debug keys
+    private boolean debug;
+
+    public boolean isDebug() {
+        return debug;
+    }
+
     /**
-     * Creates the Game. Sets up the SpriteBatch and the PlayScreen.
+     * Sets whether every play screen enables its debug keys, F5 to save a checkpoint and F9 to
+     * retry from it. Off by default, so shipped games cannot rewind. Set by the launcher.
+     *
+     * @param debug <code>true</code> to enable the debug keys
+     * @see         com.andrejlohn.mariobros.screens.PlayScreen#update(float)
+     */
+    public void setDebug(boolean debug) {
+        this.debug = debug;
+    }
+
+    /**
+     * Creates the Game. Sets up the SpriteBatch and the AssetManager and shows the LoadingScreen,
+     * which loads all assets before the PlayScreen is shown. Compiled levels are loaded through the
+     * AssetManager as well, along with their tile set images.
      *
      * @see SpriteBatch
-     * @see PlayScreen
+     * @see AssetManager#setLoader(Class, com.badlogic.gdx.assets.loaders.AssetLoader)
+     * @see LevelDataLoader
+     * @see LoadingScreen
      */
     @Override
 	public void create () {
 		batch = new SpriteBatch();
         manager = new AssetManager();
-        manager.load("audio/music/01_main_theme_overworld.mp3", Music.class);
-        manager.load("audio/sounds/smb_coin.wav", Sound.class);
-        manager.load("audio/sounds/smb_bump.wav", Sound.class);
-        manager.load("audio/sounds/smb_breakblock.wav", Sound.class);
-        manager.load("audio/sounds/smb_powerup_appears.wav", Sound.class);
-        manager.load("audio/sounds/smb_powerup.wav", Sound.class);
-        manager.load("audio/sounds/smb_pipe.wav", Sound.class);
-        manager.load("audio/sounds/smb_stomp.wav", Sound.class);
-        manager.load("audio/music/smb_mariodie.wav", Sound.class);
-        manager.load("audio/music/smb_stage_clear.wav", Music.class);
-        manager.finishLoading();
-
-		setScreen(new PlayScreen(this));
+        manager.setLoader(LevelData.class, new LevelDataLoader(new InternalFileHandleResolver()));
+
+		setScreen(new LoadingScreen(this));
 	}
 
     /**
@@ -84,14 +140,19 @@ public class MarioBros extends Game {
 
     /**
      * Disposes all game elements not subject to the garbage collection. Prevents memory leak.
+     * The current screen is disposed as well, so it can save its state (e.g. the frame profile).
      *
      * @see Game#dispose()
+     * @see Screen#dispose()
      * @see SpriteBatch#dispose()
      * @see AssetManager#dispose()
      */
     @Override
 	public void dispose () {
         super.dispose();
+        if(screen != null) {
+            screen.dispose();
+        }
 		batch.dispose();
 		manager.dispose();
 	}
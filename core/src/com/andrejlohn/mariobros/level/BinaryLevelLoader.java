@@ -0,0 +1,134 @@
+package com.andrejlohn.mariobros.level;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.maps.objects.RectangleMapObject;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * This class loads the level data from a binary level file. The file is read into a byte buffer
+ * at once and the tile layers are copied out of it in bulk, so loading a level takes little time
+ * and creates little garbage. The collision boxes are read as they were merged by the compiler.
+ *
+ * @version %I%, %G%
+ * @see     LevelFormat
+ * @see     LevelCompiler
+ */
+public class BinaryLevelLoader {
+
+    /**
+     * Loads the level data from the given binary level file.
+     *
+     * @param levelFile the binary level file
+     * @return          the level data
+     * @see             FileHandle#readBytes()
+     */
+    public LevelData load(FileHandle levelFile) {
+        return load(ByteBuffer.wrap(levelFile.readBytes()));
+    }
+
+    /**
+     * Loads the level data from a buffer holding a binary level file, starting at the buffer
+     * position.
+     *
+     * @param buffer    the buffer
+     * @return          the level data
+     * @throws          GdxRuntimeException if the data is not a valid level file
+     */
+    public LevelData load(ByteBuffer buffer) {
+        try {
+            if(buffer.getInt() != LevelFormat.MAGIC) {
+                throw new GdxRuntimeException("Not a level file");
+            }
+            int version = buffer.getInt();
+            if(version != LevelFormat.VERSION) {
+                throw new GdxRuntimeException("Unsupported level file version: " + version);
+            }
+
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            int tileWidth = buffer.getInt();
+            int tileHeight = buffer.getInt();
+            LevelData level = new LevelData(width, height, tileWidth, tileHeight);
+
+            int tilesets = buffer.getInt();
+            for(int i = 0; i < tilesets; i++) {
+                int firstGid = buffer.getInt();
+                int tileCount = buffer.getInt();
+                int columns = buffer.getInt();
+                int tilesetWidth = buffer.getInt();
+                int tilesetHeight = buffer.getInt();
+                int spacing = buffer.getInt();
+                int margin = buffer.getInt();
+                level.addTileset(
+                        new LevelTileset(
+                                firstGid,
+                                tileCount,
+                                columns,
+                                tilesetWidth,
+                                tilesetHeight,
+                                spacing,
+                                margin,
+                                readString(buffer)));
+            }
+
+            int layers = buffer.getInt();
+            for(int i = 0; i < layers; i++) {
+                String name = readString(buffer);
+                int[] tiles = new int[width * height];
+                buffer.asIntBuffer().get(tiles);
+                buffer.position(buffer.position() + tiles.length * 4);
+                level.addTileLayer(name, tiles);
+            }
+
+            for(int i = 0; i < LevelFormat.BOX_LAYERS.length; i++) {
+                int count = buffer.getInt();
+                Array<Rectangle> boxes = new Array<Rectangle>(count);
+                for(int j = 0; j < count; j++) {
+                    boxes.add(
+                            new Rectangle(
+                                    buffer.getFloat(),
+                                    buffer.getFloat(),
+                                    buffer.getFloat(),
+                                    buffer.getFloat()));
+                }
+                level.setBoxes(LevelFormat.BOX_LAYERS[i], boxes);
+            }
+
+            for(int i = 0; i < LevelFormat.SPAWN_LAYERS.length; i++) {
+                int count = buffer.getInt();
+                for(int j = 0; j < count; j++) {
+                    RectangleMapObject object = new RectangleMapObject(
+                            buffer.getFloat(),
+                            buffer.getFloat(),
+                            buffer.getFloat(),
+                            buffer.getFloat());
+                    int flags = buffer.getInt();
+                    if((flags & LevelFormat.FLAG_MUSHROOM) != 0) {
+                        object.getProperties().put(LevelFormat.MUSHROOM, "");
+                    }
+                    level.addObject(LevelFormat.SPAWN_LAYERS[i], object);
+                }
+            }
+
+            return level;
+        } catch(BufferUnderflowException e) {
+            throw new GdxRuntimeException("Truncated level file", e);
+        }
+    }
+
+    private String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        try {
+            return new String(bytes, "UTF-8");
+        } catch(UnsupportedEncodingException e) {
+            throw new GdxRuntimeException("Error reading level file", e);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.andrejlohn.mariobros.level;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.maps.objects.RectangleMapObject;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.StreamUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * This class compiles levels into the binary level file format. It is run offline on the .tmx
+ * files, so the game does not have to parse XML, decode and inflate tile data or merge collision
+ * shapes when a level starts. The ground and the pipes are stored as merged collision boxes, the
+ * other objects as spawn records; object properties other than the known flags are dropped.
+ *
+ * @version %I%, %G%
+ * @see     LevelFormat
+ * @see     BinaryLevelLoader
+ */
+public class LevelCompiler {
+
+    /**
+     * Compiles a .tmx file into a binary level file.
+     *
+     * @param tmxFile   the .tmx file
+     * @param levelFile the binary level file to write
+     * @see             LevelLoader#load(FileHandle)
+     */
+    public void compile(FileHandle tmxFile, FileHandle levelFile) {
+        LevelData level = new LevelLoader().load(tmxFile);
+        OutputStream out = levelFile.write(false);
+        try {
+            compile(level, out);
+        } finally {
+            StreamUtils.closeQuietly(out);
+        }
+    }
+
+    /**
+     * Writes level data in the binary level file format.
+     *
+     * @param level the level data
+     * @param out   the stream to write to, not closed
+     */
+    public void compile(LevelData level, OutputStream out) {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        try {
+            data.writeInt(LevelFormat.MAGIC);
+            data.writeInt(LevelFormat.VERSION);
+            data.writeInt(level.getWidth());
+            data.writeInt(level.getHeight());
+            data.writeInt(level.getTileWidth());
+            data.writeInt(level.getTileHeight());
+
+            Array<LevelTileset> tilesets = level.getTilesets();
+            data.writeInt(tilesets.size);
+            for(int i = 0; i < tilesets.size; i++) {
+                LevelTileset tileset = tilesets.get(i);
+                data.writeInt(tileset.getFirstGid());
+                data.writeInt(tileset.getTileCount());
+                data.writeInt(tileset.getColumns());
+                data.writeInt(tileset.getTileWidth());
+                data.writeInt(tileset.getTileHeight());
+                data.writeInt(tileset.getSpacing());
+                data.writeInt(tileset.getMargin());
+                writeString(data, tileset.getImage());
+            }
+
+            data.writeInt(level.getTileLayerCount());
+            for(int i = 0; i < level.getTileLayerCount(); i++) {
+                writeString(data, level.getTileLayerName(i));
+                int[] tiles = level.getTileLayer(i);
+                for(int j = 0; j < tiles.length; j++) {
+                    data.writeInt(tiles[j]);
+                }
+            }
+
+            for(int i = 0; i < LevelFormat.BOX_LAYERS.length; i++) {
+                Array<Rectangle> boxes = level.getBoxes(LevelFormat.BOX_LAYERS[i]);
+                data.writeInt(boxes.size);
+                for(int j = 0; j < boxes.size; j++) {
+                    writeRectangle(data, boxes.get(j));
+                }
+            }
+
+            for(int i = 0; i < LevelFormat.SPAWN_LAYERS.length; i++) {
+                Array<RectangleMapObject> objects = level.getObjects(LevelFormat.SPAWN_LAYERS[i]);
+                data.writeInt(objects.size);
+                for(int j = 0; j < objects.size; j++) {
+                    RectangleMapObject object = objects.get(j);
+                    writeRectangle(data, object.getRectangle());
+                    int flags = 0;
+                    if(object.getProperties().containsKey(LevelFormat.MUSHROOM)) {
+                        flags |= LevelFormat.FLAG_MUSHROOM;
+                    }
+                    data.writeInt(flags);
+                }
+            }
+            data.flush();
+        } catch(IOException e) {
+            throw new GdxRuntimeException("Error writing level file", e);
+        }
+    }
+
+    private void writeRectangle(DataOutputStream data, Rectangle rect) throws IOException {
+        data.writeFloat(rect.getX());
+        data.writeFloat(rect.getY());
+        data.writeFloat(rect.getWidth());
+        data.writeFloat(rect.getHeight());
+    }
+
+    private void writeString(DataOutputStream data, String value) throws IOException {
+        byte[] bytes = value.getBytes("UTF-8");
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+}
@@ -0,0 +1,202 @@
+package com.andrejlohn.mariobros.level;
+
+import com.andrejlohn.mariobros.tools.ShapeMerger;
+import com.badlogic.gdx.maps.objects.RectangleMapObject;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+
+/**
+ * This class holds the data of a level: the tile ids of all tile layers, the tile sets, the
+ * rectangle objects of the object layers (coins, bricks and enemy spawn points) and the collision
+ * boxes of the ground and the pipes, merged from their rectangle objects. Unlike a TiledMap it
+ * does not reference any textures, so it can be loaded and used without a graphics back end.
+ *
+ * Level data is either read from a .tmx file or from a compiled binary level file. Binary level
+ * files hold the merged collision boxes only, not the ground and pipe objects they were merged
+ * from.
+ *
+ * @version %I%, %G%
+ * @see     LevelLoader
+ * @see     BinaryLevelLoader
+ */
+public class LevelData {
+
+    // Object layer names as used in the .tmx files
+    public static final String GROUND = "Ground";
+    public static final String PIPES = "Pipes";
+    public static final String COINS = "Coins";
+    public static final String BRICKS = "Bricks";
+    public static final String GOOMBAS = "Goombas";
+    public static final String TURTLES = "Turtles";
+
+    // Tile layer name of the tiles the game changes
+    public static final String GRAPHIC_LAYER = "Graphic Layer";
+
+    private int width;
+    private int height;
+    private int tileWidth;
+    private int tileHeight;
+    private Array<String> tileLayerNames;
+    private Array<int[]> tileLayers;
+    private Array<LevelTileset> tilesets;
+    private ObjectMap<String, Array<RectangleMapObject>> objects;
+    private ObjectMap<String, Array<Rectangle>> boxes;
+
+    /**
+     * Creates the level data without any tiles or objects.
+     *
+     * @param width         the level width in tiles
+     * @param height        the level height in tiles
+     * @param tileWidth     the tile width in pixels
+     * @param tileHeight    the tile height in pixels
+     */
+    public LevelData(int width, int height, int tileWidth, int tileHeight) {
+        this.width = width;
+        this.height = height;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        tileLayerNames = new Array<String>();
+        tileLayers = new Array<int[]>();
+        tilesets = new Array<LevelTileset>();
+        objects = new ObjectMap<String, Array<RectangleMapObject>>();
+        for(String layer: new String[] {GROUND, PIPES, COINS, BRICKS, GOOMBAS, TURTLES}) {
+            objects.put(layer, new Array<RectangleMapObject>());
+        }
+        boxes = new ObjectMap<String, Array<Rectangle>>();
+        boxes.put(GROUND, new Array<Rectangle>());
+        boxes.put(PIPES, new Array<Rectangle>());
+    }
+
+    /**
+     * Adds a tile layer. Layers are drawn in the order they are added.
+     *
+     * @param name  the layer name
+     * @param tiles the tile ids, row by row starting at the bottom row, 0 for an empty cell
+     */
+    public void addTileLayer(String name, int[] tiles) {
+        tileLayerNames.add(name);
+        tileLayers.add(tiles);
+    }
+
+    /**
+     * Adds a tile set.
+     *
+     * @param tileset   the tile set
+     */
+    public void addTileset(LevelTileset tileset) {
+        tilesets.add(tileset);
+    }
+
+    /**
+     * Adds a rectangle object to the given object layer.
+     *
+     * @param layer     the object layer name
+     * @param object    the rectangle object
+     */
+    public void addObject(String layer, RectangleMapObject object) {
+        Array<RectangleMapObject> layerObjects = objects.get(layer);
+        if(layerObjects == null) {
+            layerObjects = new Array<RectangleMapObject>();
+            objects.put(layer, layerObjects);
+        }
+        layerObjects.add(object);
+    }
+
+    /**
+     * Sets the collision boxes of the given object layer.
+     *
+     * @param layer       the object layer name
+     * @param layerBoxes  the collision boxes in pixels
+     */
+    public void setBoxes(String layer, Array<Rectangle> layerBoxes) {
+        boxes.put(layer, layerBoxes);
+    }
+
+    /**
+     * Merges the rectangle objects of the ground and the pipes into their collision boxes. Has to
+     * be called once all objects have been added.
+     *
+     * @see ShapeMerger#merge(Array)
+     */
+    public void mergeBoxes() {
+        ShapeMerger merger = new ShapeMerger();
+        setBoxes(GROUND, merger.merge(getObjects(GROUND)));
+        setBoxes(PIPES, merger.merge(getObjects(PIPES)));
+    }
+
+    /**
+     * Gets all rectangle objects of the given object layer.
+     *
+     * @param layer the object layer name
+     * @return      the rectangle objects, <code>null</code> for an unknown layer
+     */
+    public Array<RectangleMapObject> getObjects(String layer) {
+        return objects.get(layer);
+    }
+
+    /**
+     * Gets the collision boxes of the given object layer.
+     *
+     * @param layer the object layer name, i.e. {@link #GROUND} or {@link #PIPES}
+     * @return      the collision boxes in pixels, <code>null</code> for an unknown layer
+     */
+    public Array<Rectangle> getBoxes(String layer) {
+        return boxes.get(layer);
+    }
+
+    /**
+     * Creates a copy of the graphic layer tile ids. Each game session mutates its own copy, so the
+     * level data can be shared between sessions.
+     *
+     * @return  the tile ids, row by row starting at the bottom row
+     */
+    public int[] copyTiles() {
+        int index = tileLayerNames.indexOf(GRAPHIC_LAYER, false);
+        if(index == -1) {
+            return new int[width * height];
+        }
+        int[] tiles = tileLayers.get(index);
+        int[] copy = new int[tiles.length];
+        System.arraycopy(tiles, 0, copy, 0, tiles.length);
+        return copy;
+    }
+
+    public int getTileLayerCount() {
+        return tileLayers.size;
+    }
+
+    public String getTileLayerName(int index) {
+        return tileLayerNames.get(index);
+    }
+
+    /**
+     * Gets the tile ids of a tile layer. The ids are shared and must not be modified.
+     *
+     * @param index the layer index
+     * @return      the tile ids, row by row starting at the bottom row
+     */
+    public int[] getTileLayer(int index) {
+        return tileLayers.get(index);
+    }
+
+    public Array<LevelTileset> getTilesets() {
+        return tilesets;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getTileWidth() {
+        return tileWidth;
+    }
+
+    public int getTileHeight() {
+        return tileHeight;
+    }
+}
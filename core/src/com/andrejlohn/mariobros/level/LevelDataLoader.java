@@ -0,0 +1,86 @@
+package com.andrejlohn.mariobros.level;
+
+import com.badlogic.gdx.assets.AssetDescriptor;
+import com.badlogic.gdx.assets.AssetLoaderParameters;
+import com.badlogic.gdx.assets.AssetManager;
+import com.badlogic.gdx.assets.loaders.AsynchronousAssetLoader;
+import com.badlogic.gdx.assets.loaders.FileHandleResolver;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.utils.Array;
+
+/**
+ * This class loads binary level files through the asset manager. The level file is read on the
+ * loading thread, and the tile set images are loaded as dependencies unless the parameters say
+ * otherwise, so a tiled map can be built from the level data without loading anything else.
+ *
+ * @version %I%, %G%
+ * @see     BinaryLevelLoader
+ * @see     LevelMapBuilder
+ */
+public class LevelDataLoader
+        extends AsynchronousAssetLoader<LevelData, LevelDataLoader.LevelDataParameters> {
+
+    private LevelData level;
+
+    public LevelDataLoader(FileHandleResolver resolver) {
+        super(resolver);
+    }
+
+    /**
+     * Reads the level file and returns the tile set images to load first.
+     *
+     * @param fileName  the level file name
+     * @param file      the resolved level file
+     * @param parameter the parameters, may be <code>null</code>
+     * @return          the tile set images, <code>null</code> if they are not loaded
+     */
+    @Override
+    public Array<AssetDescriptor> getDependencies(
+            String fileName,
+            FileHandle file,
+            LevelDataParameters parameter) {
+        level = new BinaryLevelLoader().load(file);
+        if(parameter != null && !parameter.loadTilesets) {
+            return null;
+        }
+        Array<AssetDescriptor> dependencies = new Array<AssetDescriptor>();
+        Array<LevelTileset> tilesets = level.getTilesets();
+        for(int i = 0; i < tilesets.size; i++) {
+            dependencies.add(
+                    new AssetDescriptor<Texture>(tilesets.get(i).getImage(file), Texture.class));
+        }
+        return dependencies;
+    }
+
+    @Override
+    public void loadAsync(
+            AssetManager manager,
+            String fileName,
+            FileHandle file,
+            LevelDataParameters parameter) {
+        if(level == null) {
+            level = new BinaryLevelLoader().load(file);
+        }
+    }
+
+    @Override
+    public LevelData loadSync(
+            AssetManager manager,
+            String fileName,
+            FileHandle file,
+            LevelDataParameters parameter) {
+        LevelData loaded = level;
+        level = null;
+        return loaded;
+    }
+
+    /**
+     * The parameters of loading level data.
+     */
+    public static class LevelDataParameters extends AssetLoaderParameters<LevelData> {
+
+        // Whether to load the tile set images, not needed without graphics
+        public boolean loadTilesets = true;
+    }
+}
@@ -0,0 +1,52 @@
+package com.andrejlohn.mariobros.level;
+
+/**
+ * This class defines the binary level file format. All values are big-endian, strings are stored
+ * as their UTF-8 byte count followed by the bytes.
+ *
+ * <pre>
+ * int      magic, version
+ * int      width, height, tileWidth, tileHeight
+ * int      tile set count
+ *          per tile set: int firstGid, tileCount, columns, tileWidth, tileHeight, spacing,
+ *          margin; string image
+ * int      tile layer count
+ *          per tile layer: string name; int[width * height] tile ids, bottom row first
+ *          per box layer ({@link #BOX_LAYERS}): int count; per box: float x, y, width, height
+ *          per spawn layer ({@link #SPAWN_LAYERS}): int count; per record: float x, y, width,
+ *          height; int flags
+ * </pre>
+ *
+ * The box and spawn layers are stored in a fixed order, so every record is typed by its position
+ * in the file. Coordinates are in pixels with the y-axis pointing up.
+ *
+ * @version %I%, %G%
+ * @see     LevelCompiler
+ * @see     BinaryLevelLoader
+ */
+public final class LevelFormat {
+
+    public static final String EXTENSION = "lvl";
+
+    // "MBLV"
+    public static final int MAGIC = 0x4D424C56;
+    public static final int VERSION = 1;
+
+    // Layers stored as merged collision boxes
+    public static final String[] BOX_LAYERS = {LevelData.GROUND, LevelData.PIPES};
+
+    // Layers stored as spawn records
+    public static final String[] SPAWN_LAYERS = {
+            LevelData.COINS,
+            LevelData.BRICKS,
+            LevelData.GOOMBAS,
+            LevelData.TURTLES
+    };
+
+    // Spawn record flags and the object properties they stand for
+    public static final int FLAG_MUSHROOM = 1;
+    public static final String MUSHROOM = "mushroom";
+
+    private LevelFormat() {
+    }
+}
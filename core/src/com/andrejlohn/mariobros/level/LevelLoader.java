@@ -0,0 +1,201 @@
+package com.andrejlohn.mariobros.level;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.maps.MapProperties;
+import com.badlogic.gdx.maps.objects.RectangleMapObject;
+import com.badlogic.gdx.maps.tiled.TmxMapLoader;
+import com.badlogic.gdx.utils.Base64Coder;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.StreamUtils;
+import com.badlogic.gdx.utils.XmlReader;
+import com.badlogic.gdx.utils.XmlReader.Element;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * This class loads the level data from a .tmx file. The tile layers, the tile set descriptions
+ * and the object layers are read, tile set images are not loaded, so no graphics back end is
+ * needed. Object coordinates are converted the same way the TmxMapLoader does, with the y-axis
+ * pointing up.
+ * Levels are compiled from .tmx files into binary level files, which load much faster.
+ *
+ * @version %I%, %G%
+ * @see     LevelData
+ * @see     TmxMapLoader
+ * @see     LevelCompiler
+ */
+public class LevelLoader {
+
+    // Tiled stores flip flags in the upper bits of a tile id
+    private static final int FLAG_MASK = 0xE0000000;
+
+    private XmlReader xml = new XmlReader();
+
+    /**
+     * Loads the level data from the given .tmx file.
+     *
+     * @param tmxFile   the .tmx file
+     * @return          the level data
+     * @see             XmlReader#parse(FileHandle)
+     */
+    public LevelData load(FileHandle tmxFile) {
+        Element root = xml.parse(tmxFile);
+
+        int width = root.getIntAttribute("width", 0);
+        int height = root.getIntAttribute("height", 0);
+        int tileWidth = root.getIntAttribute("tilewidth", 0);
+        int tileHeight = root.getIntAttribute("tileheight", 0);
+
+        LevelData level = new LevelData(width, height, tileWidth, tileHeight);
+
+        for(Element tileset: root.getChildrenByName("tileset")) {
+            level.addTileset(readTileset(tileset));
+        }
+
+        for(Element layer: root.getChildrenByName("layer")) {
+            int[] tiles = new int[width * height];
+            readTiles(layer.getChildByName("data"), width, height, tiles);
+            level.addTileLayer(layer.getAttribute("name", null), tiles);
+        }
+
+        float mapHeight = height * tileHeight;
+        for(Element group: root.getChildrenByName("objectgroup")) {
+            String name = group.getAttribute("name", null);
+            for(Element object: group.getChildrenByName("object")) {
+                // Only rectangles are used for the game world
+                if(object.getChildByName("ellipse") != null
+                        || object.getChildByName("polygon") != null
+                        || object.getChildByName("polyline") != null) {
+                    continue;
+                }
+                float objectWidth = object.getFloatAttribute("width", 0);
+                float objectHeight = object.getFloatAttribute("height", 0);
+                RectangleMapObject rectObject = new RectangleMapObject(
+                        object.getFloatAttribute("x", 0),
+                        mapHeight - object.getFloatAttribute("y", 0) - objectHeight,
+                        objectWidth,
+                        objectHeight);
+                readProperties(object.getChildByName("properties"), rectObject.getProperties());
+                level.addObject(name, rectObject);
+            }
+        }
+        level.mergeBoxes();
+
+        return level;
+    }
+
+    /**
+     * Reads a tile set description. External tile sets are not supported.
+     *
+     * @param tileset   the tile set element
+     * @return          the tile set description
+     */
+    private LevelTileset readTileset(Element tileset) {
+        if(tileset.getAttribute("source", null) != null) {
+            throw new GdxRuntimeException(
+                    "External tile sets are not supported: " + tileset.getAttribute("source"));
+        }
+        int tileWidth = tileset.getIntAttribute("tilewidth", 0);
+        int tileHeight = tileset.getIntAttribute("tileheight", 0);
+        int spacing = tileset.getIntAttribute("spacing", 0);
+        int margin = tileset.getIntAttribute("margin", 0);
+        Element image = tileset.getChildByName("image");
+        int imageWidth = image.getIntAttribute("width", 0);
+        int imageHeight = image.getIntAttribute("height", 0);
+
+        // Older .tmx files do not store the tile count and columns
+        int columns = tileset.getIntAttribute(
+                "columns",
+                (imageWidth - 2 * margin + spacing) / (tileWidth + spacing));
+        int rows = (imageHeight - 2 * margin + spacing) / (tileHeight + spacing);
+        int tileCount = tileset.getIntAttribute("tilecount", columns * rows);
+
+        return new LevelTileset(
+                tileset.getIntAttribute("firstgid", 1),
+                tileCount,
+                columns,
+                tileWidth,
+                tileHeight,
+                spacing,
+                margin,
+                image.getAttribute("source"));
+    }
+
+    /**
+     * Reads the tile ids of a tile layer. The rows are flipped so the first row is the bottom row.
+     *
+     * @param data      the data element of the tile layer
+     * @param width     the layer width in tiles
+     * @param height    the layer height in tiles
+     * @param tiles     the array to read the tile ids into
+     */
+    private void readTiles(Element data, int width, int height, int[] tiles) {
+        String encoding = data.getAttribute("encoding", null);
+        if("csv".equals(encoding)) {
+            String[] ids = data.getText().split(",");
+            for(int i = 0; i < width * height; i++) {
+                int id = (int) Long.parseLong(ids[i].trim());
+                setTile(tiles, width, height, i, id);
+            }
+        } else if("base64".equals(encoding)) {
+            String compression = data.getAttribute("compression", null);
+            byte[] bytes = Base64Coder.decode(data.getText().trim());
+            InputStream is = null;
+            try {
+                if("gzip".equals(compression)) {
+                    is = new GZIPInputStream(new ByteArrayInputStream(bytes), bytes.length);
+                } else if("zlib".equals(compression)) {
+                    is = new InflaterInputStream(new ByteArrayInputStream(bytes));
+                } else {
+                    is = new ByteArrayInputStream(bytes);
+                }
+
+                byte[] temp = new byte[4];
+                for(int i = 0; i < width * height; i++) {
+                    int read = 0;
+                    while(read < temp.length) {
+                        int current = is.read(temp, read, temp.length - read);
+                        if(current == -1) {
+                            throw new GdxRuntimeException("Error reading level tile data");
+                        }
+                        read += current;
+                    }
+                    int id = (temp[0] & 0xFF)
+                            | (temp[1] & 0xFF) << 8
+                            | (temp[2] & 0xFF) << 16
+                            | (temp[3] & 0xFF) << 24;
+                    setTile(tiles, width, height, i, id);
+                }
+            } catch(IOException e) {
+                throw new GdxRuntimeException("Error reading level tile data", e);
+            } finally {
+                StreamUtils.closeQuietly(is);
+            }
+        } else {
+            throw new GdxRuntimeException("Unsupported level tile encoding: " + encoding);
+        }
+    }
+
+    private void setTile(int[] tiles, int width, int height, int index, int id) {
+        int x = index % width;
+        int y = height - 1 - index / width;
+        tiles[y * width + x] = id & ~FLAG_MASK;
+    }
+
+    private void readProperties(Element properties, MapProperties target) {
+        if(properties == null) {
+            return;
+        }
+        for(Element property: properties.getChildrenByName("property")) {
+            String value = property.getAttribute("value", null);
+            if(value == null) {
+                value = property.getText();
+            }
+            target.put(property.getAttribute("name", null), value);
+        }
+    }
+}
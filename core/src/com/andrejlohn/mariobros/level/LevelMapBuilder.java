@@ -0,0 +1,116 @@
+package com.andrejlohn.mariobros.level;
+
+import com.badlogic.gdx.assets.AssetManager;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.maps.tiled.TiledMap;
+import com.badlogic.gdx.maps.tiled.TiledMapTileLayer;
+import com.badlogic.gdx.maps.tiled.TiledMapTileSet;
+import com.badlogic.gdx.maps.tiled.tiles.StaticTiledMapTile;
+import com.badlogic.gdx.utils.Array;
+
+/**
+ * This class builds a tiled map for rendering from level data. The tile set images have to be
+ * loaded by the asset manager already, e.g. as dependencies of the level data. No files are read,
+ * so building a map is cheap, and each game session can get a fresh map to change tiles in. The
+ * map can be built with all its tiles or with empty tile layers, for a level streamer to fill.
+ *
+ * @version %I%, %G%
+ * @see     TiledMap
+ * @see     LevelDataLoader
+ */
+public class LevelMapBuilder {
+
+    /**
+     * Builds the tiled map of a level. The tile set textures are owned by the asset manager, so
+     * disposing the map does not dispose them.
+     *
+     * @param level     the level data
+     * @param levelFile the level file, to find the tile set images relative to
+     * @param manager   the asset manager holding the tile set images
+     * @return          the tiled map
+     * @see             LevelTileset#getImage(FileHandle)
+     */
+    public TiledMap build(LevelData level, FileHandle levelFile, AssetManager manager) {
+        return build(level, levelFile, manager, true);
+    }
+
+    /**
+     * Builds the tiled map of a level with its tile sets and empty tile layers. The cells are
+     * filled by a level streamer, so the map does not hold cells for the whole level.
+     *
+     * @param level     the level data
+     * @param levelFile the level file, to find the tile set images relative to
+     * @param manager   the asset manager holding the tile set images
+     * @return          the tiled map
+     * @see             com.andrejlohn.mariobros.tools.LevelStreamer
+     */
+    public TiledMap buildEmpty(LevelData level, FileHandle levelFile, AssetManager manager) {
+        return build(level, levelFile, manager, false);
+    }
+
+    private TiledMap build(
+            LevelData level,
+            FileHandle levelFile,
+            AssetManager manager,
+            boolean cells) {
+        TiledMap map = new TiledMap();
+        map.getProperties().put("width", level.getWidth());
+        map.getProperties().put("height", level.getHeight());
+        map.getProperties().put("tilewidth", level.getTileWidth());
+        map.getProperties().put("tileheight", level.getTileHeight());
+
+        Array<LevelTileset> tilesets = level.getTilesets();
+        for(int i = 0; i < tilesets.size; i++) {
+            LevelTileset tileset = tilesets.get(i);
+            Texture texture = manager.get(tileset.getImage(levelFile).path(), Texture.class);
+            map.getTileSets().addTileSet(buildTileset(tileset, texture));
+        }
+
+        for(int i = 0; i < level.getTileLayerCount(); i++) {
+            TiledMapTileLayer layer = new TiledMapTileLayer(
+                    level.getWidth(),
+                    level.getHeight(),
+                    level.getTileWidth(),
+                    level.getTileHeight());
+            layer.setName(level.getTileLayerName(i));
+            map.getLayers().add(layer);
+            if(!cells) {
+                continue;
+            }
+            int[] tiles = level.getTileLayer(i);
+            for(int row = 0; row < level.getHeight(); row++) {
+                for(int col = 0; col < level.getWidth(); col++) {
+                    int id = tiles[row * level.getWidth() + col];
+                    if(id != 0) {
+                        TiledMapTileLayer.Cell cell = new TiledMapTileLayer.Cell();
+                        cell.setTile(map.getTileSets().getTile(id));
+                        layer.setCell(col, row, cell);
+                    }
+                }
+            }
+        }
+        return map;
+    }
+
+    private TiledMapTileSet buildTileset(LevelTileset tileset, Texture texture) {
+        TiledMapTileSet tiles = new TiledMapTileSet();
+        for(int i = 0; i < tileset.getTileCount(); i++) {
+            int x = tileset.getMargin()
+                    + (i % tileset.getColumns()) * (tileset.getTileWidth() + tileset.getSpacing());
+            int y = tileset.getMargin()
+                    + (i / tileset.getColumns()) * (tileset.getTileHeight() + tileset.getSpacing());
+            StaticTiledMapTile tile = new StaticTiledMapTile(
+                    new TextureRegion(
+                            texture,
+                            x,
+                            y,
+                            tileset.getTileWidth(),
+                            tileset.getTileHeight()));
+            tile.setId(tileset.getFirstGid() + i);
+            tiles.putTile(tile.getId(), tile);
+        }
+        return tiles;
+    }
+}
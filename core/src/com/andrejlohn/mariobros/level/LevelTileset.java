@@ -0,0 +1,97 @@
+package com.andrejlohn.mariobros.level;
+
+import com.badlogic.gdx.files.FileHandle;
+
+/**
+ * This class describes a tile set of a level: the tile set image and how its tiles are laid out.
+ * Tile ids from the first global id on belong to this tile set. The image is only referenced by
+ * its path, so no graphics back end is needed.
+ *
+ * @version %I%, %G%
+ * @see     LevelData
+ * @see     LevelMapBuilder
+ */
+public class LevelTileset {
+
+    private int firstGid;
+    private int tileCount;
+    private int columns;
+    private int tileWidth;
+    private int tileHeight;
+    private int spacing;
+    private int margin;
+    private String image;
+
+    /**
+     * Creates the tile set description.
+     *
+     * @param firstGid      the global id of the first tile
+     * @param tileCount     the number of tiles
+     * @param columns       the number of tile columns in the image
+     * @param tileWidth     the tile width in pixels
+     * @param tileHeight    the tile height in pixels
+     * @param spacing       the space between two tiles in pixels
+     * @param margin        the space around the tiles in pixels
+     * @param image         the image path, relative to the level file
+     */
+    public LevelTileset(
+            int firstGid,
+            int tileCount,
+            int columns,
+            int tileWidth,
+            int tileHeight,
+            int spacing,
+            int margin,
+            String image) {
+        this.firstGid = firstGid;
+        this.tileCount = tileCount;
+        this.columns = columns;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.spacing = spacing;
+        this.margin = margin;
+        this.image = image;
+    }
+
+    /**
+     * Gets the image file of this tile set.
+     *
+     * @param levelFile the level file the tile set belongs to
+     * @return          the image file
+     */
+    public FileHandle getImage(FileHandle levelFile) {
+        return levelFile.parent().child(image);
+    }
+
+    public int getFirstGid() {
+        return firstGid;
+    }
+
+    public int getTileCount() {
+        return tileCount;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getTileWidth() {
+        return tileWidth;
+    }
+
+    public int getTileHeight() {
+        return tileHeight;
+    }
+
+    public int getSpacing() {
+        return spacing;
+    }
+
+    public int getMargin() {
+        return margin;
+    }
+
+    public String getImage() {
+        return image;
+    }
+}
@@ -0,0 +1,102 @@
+package com.andrejlohn.mariobros.net;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Pool;
+import com.badlogic.gdx.utils.TimeUtils;
+
+import java.util.Random;
+
+/**
+ * This class simulates a bad connection on top of another transport, to test a rollback match on
+ * one machine. Sent packets are dropped with a given probability and the others are held back for
+ * a given delay before they are passed on. The random number generator is seeded, so the same
+ * packets are dropped in every run.
+ *
+ * @version %I%, %G%
+ * @see     NetTransport
+ * @see     UdpTransport
+ */
+public class LossyTransport implements NetTransport {
+
+    /**
+     * A packet held back until its due time.
+     */
+    private static class Delayed {
+        byte[] bytes = new byte[NetProtocol.MAX_PACKET_SIZE];
+        int length;
+        long due;
+    }
+
+    private NetTransport transport;
+    private float loss;
+    private long delayMillis;
+    private Random random;
+
+    // Packets in the order they were sent, which is also the order they are due
+    private Array<Delayed> delayed;
+    private Pool<Delayed> pool;
+
+    /**
+     * Creates the transport.
+     *
+     * @param transport     the transport to pass the packets on to
+     * @param delayMillis   the one-way delay in milliseconds
+     * @param loss          the probability a packet is lost, from 0 to 1
+     * @param seed          the seed of the random number generator
+     */
+    public LossyTransport(NetTransport transport, long delayMillis, float loss, long seed) {
+        this.transport = transport;
+        this.delayMillis = delayMillis;
+        this.loss = loss;
+        random = new Random(seed);
+        delayed = new Array<Delayed>();
+        pool = new Pool<Delayed>() {
+            @Override
+            protected Delayed newObject() {
+                return new Delayed();
+            }
+        };
+    }
+
+    @Override
+    public void send(byte[] bytes, int length) {
+        if(random.nextFloat() >= loss) {
+            Delayed packet = pool.obtain();
+            System.arraycopy(bytes, 0, packet.bytes, 0, length);
+            packet.length = length;
+            packet.due = TimeUtils.millis() + delayMillis;
+            delayed.add(packet);
+        }
+        flush();
+    }
+
+    @Override
+    public int receive(byte[] bytes) {
+        flush();
+        return transport.receive(bytes);
+    }
+
+    /**
+     * Passes on the packets which are due.
+     */
+    private void flush() {
+        long now = TimeUtils.millis();
+        int count = 0;
+        while(count < delayed.size && delayed.get(count).due <= now) {
+            Delayed packet = delayed.get(count);
+            transport.send(packet.bytes, packet.length);
+            pool.free(packet);
+            count++;
+        }
+        if(count > 0) {
+            delayed.removeRange(0, count - 1);
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.freeAll(delayed);
+        delayed.clear();
+        transport.close();
+    }
+}
@@ -0,0 +1,43 @@
+package com.andrejlohn.mariobros.net;
+
+import com.andrejlohn.mariobros.replay.ReplayFormat;
+import com.andrejlohn.mariobros.tools.InputSource;
+
+/**
+ * This class feeds the buttons of one player to a game session of a rollback match. The match sets
+ * the buttons before each step, either the actual buttons of the player or the predicted ones.
+ *
+ * @version %I%, %G%
+ * @see     RollbackMatch
+ */
+public class NetInput implements InputSource {
+
+    private int buttons;
+
+    /**
+     * Sets the buttons held during the next step.
+     *
+     * @param buttons   the button bits
+     * @see             ReplayFormat#UP
+     * @see             ReplayFormat#LEFT
+     * @see             ReplayFormat#RIGHT
+     */
+    public void setButtons(int buttons) {
+        this.buttons = buttons;
+    }
+
+    @Override
+    public boolean isUpPressed() {
+        return (buttons & ReplayFormat.UP) != 0;
+    }
+
+    @Override
+    public boolean isLeftPressed() {
+        return (buttons & ReplayFormat.LEFT) != 0;
+    }
+
+    @Override
+    public boolean isRightPressed() {
+        return (buttons & ReplayFormat.RIGHT) != 0;
+    }
+}
@@ -0,0 +1,62 @@
+package com.andrejlohn.mariobros.net;
+
+/**
+ * This class defines the packets two peers of a rollback match exchange. An input packet carries
+ * the inputs of the sender the receiver has not acknowledged yet, so a lost packet is made up for
+ * by the next one, and acknowledges the inputs of the receiver. Inputs are the button bits of the
+ * replay format, one byte per tick. The packet also carries the checksum of the session of the
+ * sender after its last tick, which the receiver compares with its own simulation of that session
+ * to detect a desync. After a desync the receiver asks for the session of the sender with every
+ * input packet, until the state packets it is answered with have all arrived. Ints are big-endian.
+ *
+ * <pre>
+ * int      magic
+ * byte     packet type, {@link #INPUT}
+ * int      ack, the number of inputs of the receiver the sender has got
+ * int      tick and checksum of the session of the sender
+ * int      resync, the tick from which the sender needs the session of the receiver, -1 for none
+ * int      tick of the first input
+ * byte     input count, at most {@link #MAX_INPUTS}
+ *          per input: byte buttons
+ * </pre>
+ *
+ * A session state is sent in fragments, each in a packet of its own:
+ *
+ * <pre>
+ * int      magic
+ * byte     packet type, {@link #STATE}
+ * int      tick of the session state
+ * int      size of the session state
+ * int      offset of the fragment, a multiple of {@link #MAX_FRAGMENT}
+ * short    fragment size, at most {@link #MAX_FRAGMENT}
+ *          the fragment bytes
+ * </pre>
+ *
+ * @version %I%, %G%
+ * @see     RollbackMatch
+ * @see     com.andrejlohn.mariobros.replay.ReplayFormat
+ * @see     com.andrejlohn.mariobros.session.GameSession#saveState(java.nio.ByteBuffer)
+ */
+public final class NetProtocol {
+
+    // "MBNP"
+    public static final int MAGIC = 0x4D424E50;
+
+    public static final byte INPUT = 1;
+    public static final byte STATE = 2;
+
+    public static final int HEADER_SIZE = 4 + 1 + 4 * 4 + 4 + 1;
+    public static final int MAX_INPUTS = 255;
+
+    public static final int STATE_HEADER_SIZE = 4 + 1 + 3 * 4 + 2;
+
+    // Small enough for a packet to fit into the MTU of any link
+    public static final int MAX_FRAGMENT = 1024;
+
+    public static final int MAX_PACKET_SIZE = Math.max(
+            HEADER_SIZE + MAX_INPUTS,
+            STATE_HEADER_SIZE + MAX_FRAGMENT);
+
+    private NetProtocol() {
+    }
+}
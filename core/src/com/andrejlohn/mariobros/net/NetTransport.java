@@ -0,0 +1,36 @@
+package com.andrejlohn.mariobros.net;
+
+/**
+ * This interface represents an unreliable packet connection to the other peer of a match, e.g. a
+ * UDP socket. Packets may be lost, duplicated or arrive out of order; the rollback match resends
+ * its inputs until they are acknowledged. Neither method blocks, both are called on the game
+ * thread.
+ *
+ * @version %I%, %G%
+ * @see     RollbackMatch
+ * @see     NetProtocol
+ */
+public interface NetTransport {
+
+    /**
+     * Sends a packet to the other peer. The bytes are copied or sent before this returns, so the
+     * caller may reuse the array.
+     *
+     * @param bytes     the packet bytes
+     * @param length    the number of bytes
+     */
+    void send(byte[] bytes, int length);
+
+    /**
+     * Receives the next packet from the other peer, if there is one.
+     *
+     * @param bytes the array to receive into, {@link NetProtocol#MAX_PACKET_SIZE} bytes at least
+     * @return      the number of bytes received, -1 if no packet is pending
+     */
+    int receive(byte[] bytes);
+
+    /**
+     * Closes the connection.
+     */
+    void close();
+}
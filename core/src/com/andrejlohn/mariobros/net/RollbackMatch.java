@@ -0,0 +1,588 @@
+package com.andrejlohn.mariobros.net;
+
+import com.andrejlohn.mariobros.level.LevelData;
+import com.andrejlohn.mariobros.session.GameSession;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.TimeUtils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class runs one side of a head-to-head match of two players racing through the same level,
+ * with rollback netcode in the style of GGPO. Each player has a game session of their own, and
+ * each peer simulates both sessions in lockstep ticks. The local input is applied right away,
+ * after a small input delay, and sent to the other peer. The remote input is predicted to be the
+ * last one received, so the local peer never waits for the network. If the remote input falls
+ * more than {@link #MAX_PREDICTION} ticks behind, the match stalls until it catches up.
+ *
+ * The remote player is simulated twice. The confirmed session only ever steps with the actual
+ * remote input and is never restored, so it continues exactly like the session of the other peer.
+ * The predicted session runs ahead up to the current tick and is the one shown. Once a confirmed
+ * tick turns out to have been predicted with the wrong input, or with a different checksum, the
+ * predicted session is restored in place from the confirmed one and simulated again up to the
+ * current tick. A restore in place is not bit-exact, but the predicted session never feeds the
+ * checksums, and if it drifts off, the next confirmed tick rolls it back again. The sessions of
+ * the two players do not interact, so only the session of the remote player is ever rolled back.
+ *
+ * Each peer sends the checksum of the session of its player along with its inputs. Once a tick of
+ * the confirmed session is simulated, its checksum is compared with the one reported, so a desync
+ * shows up within a round trip rather than at the end of the match. The peer of a player is the
+ * authority on its session: after a desync the other peer asks for it with every packet, and the
+ * authority saves its session, rebuilds its world and sends the state until it has arrived. The
+ * confirmed session is restored from it and rebuilt alike, after which both continue exactly alike
+ * again.
+ *
+ * @version %I%, %G%
+ * @see     NetTransport
+ * @see     NetProtocol
+ * @see     GameSession#rebuildWorld()
+ */
+public class RollbackMatch implements Disposable {
+
+    public static final int PLAYERS = 2;
+
+    // Predict at most 8 ticks past the last remote input received
+    public static final int MAX_PREDICTION = 8;
+
+    // Apply the local input 2 ticks late, which hides up to 33 ms of latency without rollback
+    public static final int DEFAULT_INPUT_DELAY = 2;
+
+    // Inputs kept per player by tick, more than can be unacknowledged or predicted
+    private static final int INPUT_BUFFER = 512;
+    private static final int INPUT_MASK = INPUT_BUFFER - 1;
+
+    private NetTransport transport;
+    private int localPlayer;
+    private int remotePlayer;
+
+    // The session of the local player and the predicted session of the remote player
+    private GameSession[] sessions;
+    private NetInput[] inputs;
+
+    // The session of the remote player simulated with the actual remote inputs only
+    private GameSession confirmed;
+    private NetInput confirmedInput;
+
+    // Ticks simulated, local inputs known, i.e. the tick plus the input delay
+    private int tick;
+    private int localCount;
+    private byte[] localInputs;
+
+    // Remote inputs received in order and the ones the predicted session used, the number of
+    // remote inputs received and of local inputs the other peer acknowledged
+    private byte[] remoteInputs;
+    private byte[] usedInputs;
+    private int remoteCount;
+    private int remoteAck;
+
+    // Whether a confirmed tick was predicted wrong, so the predicted session has to be rolled back
+    private boolean mispredicted;
+
+    // Checksums of the remote session by tick, as predicted, as confirmed and as reported by the
+    // other peer, the ticks verified and the first tick found out of sync, -1 for none
+    private int[] predictedChecksums;
+    private int[] confirmedChecksums;
+    private int[] reportedChecksums;
+    private int[] reportedTicks;
+    private int lastReportedTick;
+    private int verifiedTick;
+    private int desyncTick;
+
+    // The tick from which the remote session is needed after a desync, -1 for none, and the
+    // fragments of the state received so far
+    private int resyncTick;
+    private ByteBuffer received;
+    private boolean[] receivedFragments;
+    private int receivedTick;
+    private int receivedSize;
+    private int receivedCount;
+
+    // The tick from which the other peer needs the local session, -1 for none, and the state sent
+    // to it, fragment by fragment
+    private int requestedTick;
+    private ByteBuffer served;
+    private int servedTick;
+    private int servedSize;
+    private int nextFragment;
+
+    // Reused state and packet
+    private ByteBuffer state;
+    private byte[] packet;
+    private ByteBuffer packetBuffer;
+
+    // Statistics
+    private int rollbackCount;
+    private int resimulatedTicks;
+    private long maxRollbackNanos;
+    private int resyncCount;
+
+    /**
+     * Creates the match with the default input delay.
+     *
+     * @param level         the level data
+     * @param localPlayer   the index of the local player, 0 or 1
+     * @param transport     the connection to the other peer, owned by the caller
+     */
+    public RollbackMatch(LevelData level, int localPlayer, NetTransport transport) {
+        this(level, localPlayer, transport, DEFAULT_INPUT_DELAY);
+    }
+
+    /**
+     * Creates the match and the game sessions of both players. Both peers must use the same
+     * level and input delay.
+     *
+     * @param level         the level data
+     * @param localPlayer   the index of the local player, 0 or 1
+     * @param transport     the connection to the other peer, owned by the caller
+     * @param inputDelay    the number of ticks the local input is applied late
+     */
+    public RollbackMatch(LevelData level, int localPlayer, NetTransport transport, int inputDelay) {
+        this.transport = transport;
+        this.localPlayer = localPlayer;
+        this.remotePlayer = 1 - localPlayer;
+
+        sessions = new GameSession[PLAYERS];
+        inputs = new NetInput[PLAYERS];
+        for(int i = 0; i < PLAYERS; i++) {
+            inputs[i] = new NetInput();
+            sessions[i] = new GameSession(level, inputs[i]);
+        }
+        confirmedInput = new NetInput();
+        confirmed = new GameSession(level, confirmedInput);
+
+        localInputs = new byte[INPUT_BUFFER];
+        remoteInputs = new byte[INPUT_BUFFER];
+        usedInputs = new byte[INPUT_BUFFER];
+        localCount = inputDelay;
+
+        predictedChecksums = new int[INPUT_BUFFER];
+        confirmedChecksums = new int[INPUT_BUFFER];
+        reportedChecksums = new int[INPUT_BUFFER];
+        reportedTicks = new int[INPUT_BUFFER];
+        desyncTick = -1;
+
+        int maxStateSize = confirmed.getMaxStateSize();
+        state = ByteBuffer.allocate(maxStateSize);
+        received = ByteBuffer.allocate(maxStateSize);
+        receivedFragments = new boolean[
+                (maxStateSize + NetProtocol.MAX_FRAGMENT - 1) / NetProtocol.MAX_FRAGMENT];
+        served = ByteBuffer.allocate(maxStateSize);
+        resyncTick = -1;
+        receivedTick = -1;
+        requestedTick = -1;
+        servedTick = -1;
+
+        packet = new byte[NetProtocol.MAX_PACKET_SIZE];
+        packetBuffer = ByteBuffer.wrap(packet);
+    }
+
+    /**
+     * Advances the match by one tick with the given local input. The packets of the other peer are
+     * received first, the confirmed session catches up with the remote inputs, its checksums are
+     * verified and a wrong prediction is rolled back. The match stalls if the remote input is too
+     * far behind.
+     *
+     * @param buttons   the buttons of the local player
+     * @return          <code>true</code> if the tick was simulated
+     *                  <code>false</code> if the match stalled and the input was not used
+     * @see             com.andrejlohn.mariobros.replay.ReplayFormat#buttons(
+     *                  com.andrejlohn.mariobros.tools.InputSource)
+     */
+    public boolean advance(int buttons) {
+        update();
+        if(tick >= remoteCount + MAX_PREDICTION
+                || localCount - remoteAck >= NetProtocol.MAX_INPUTS) {
+            send();
+            return false;
+        }
+
+        localInputs[localCount & INPUT_MASK] = (byte) buttons;
+        localCount++;
+        stepSession(localPlayer, localInputs[tick & INPUT_MASK]);
+        stepSession(remotePlayer, predict(tick));
+        tick++;
+        send();
+        return true;
+    }
+
+    /**
+     * Receives the packets of the other peer, catches up with the remote inputs, verifies the
+     * checksums, rolls back a wrong prediction and resends the unacknowledged inputs without
+     * advancing, e.g. while waiting for the other peer at the end of a match.
+     */
+    public void poll() {
+        update();
+        send();
+    }
+
+    /**
+     * Receives the pending packets, steps the confirmed session as far as the remote inputs go,
+     * verifies it and rolls the predicted session back if needed.
+     */
+    private void update() {
+        receive();
+        confirm();
+        verify();
+        rollback();
+    }
+
+    /**
+     * Steps the session of a player. The remote input used and the checksum of the predicted
+     * session are remembered to find a wrong prediction.
+     *
+     * @param player    the player index
+     * @param buttons   the buttons of the player
+     */
+    private void stepSession(int player, int buttons) {
+        GameSession session = sessions[player];
+        if(player == remotePlayer) {
+            usedInputs[session.getStepCount() & INPUT_MASK] = (byte) buttons;
+        }
+        inputs[player].setButtons(buttons);
+        session.step();
+        if(player == remotePlayer) {
+            predictedChecksums[session.getStepCount() & INPUT_MASK] = session.getChecksum();
+        }
+    }
+
+    /**
+     * Predicts the remote input of a tick: the actual input if it has been received, the last
+     * input received otherwise.
+     *
+     * @param t the tick
+     * @return  the buttons
+     */
+    private int predict(int t) {
+        if(t < remoteCount) {
+            return remoteInputs[t & INPUT_MASK];
+        }
+        return remoteCount > 0 ? remoteInputs[(remoteCount - 1) & INPUT_MASK] : 0;
+    }
+
+    /**
+     * Steps the confirmed session up to the last tick simulated with the actual remote input. A
+     * tick the predicted session simulated with another input or to another checksum marks it for
+     * rollback.
+     */
+    private void confirm() {
+        int end = Math.min(remoteCount, tick);
+        while(confirmed.getStepCount() < end) {
+            int t = confirmed.getStepCount();
+            byte buttons = remoteInputs[t & INPUT_MASK];
+            confirmedInput.setButtons(buttons);
+            confirmed.step();
+            int checksum = confirmed.getChecksum();
+            confirmedChecksums[(t + 1) & INPUT_MASK] = checksum;
+            if(usedInputs[t & INPUT_MASK] != buttons
+                    || predictedChecksums[(t + 1) & INPUT_MASK] != checksum) {
+                mispredicted = true;
+            }
+        }
+    }
+
+    /**
+     * Restores the predicted session from the confirmed one and simulates it again up to the
+     * current tick. Waits while the confirmed session is ahead after a resync.
+     */
+    private void rollback() {
+        if(!mispredicted || confirmed.getStepCount() > tick) {
+            return;
+        }
+        long start = TimeUtils.nanoTime();
+        GameSession session = sessions[remotePlayer];
+        state.clear();
+        confirmed.saveState(state);
+        state.flip();
+        session.restoreState(state);
+        resimulatedTicks += tick - session.getStepCount();
+        while(session.getStepCount() < tick) {
+            stepSession(remotePlayer, predict(session.getStepCount()));
+        }
+        mispredicted = false;
+        rollbackCount++;
+        maxRollbackNanos = Math.max(maxRollbackNanos, TimeUtils.nanoTime() - start);
+    }
+
+    /**
+     * Compares the checksums the other peer reported with the ones of the confirmed session, for
+     * the ticks confirmed since the last call. Ticks whose checksum was lost with its packet are
+     * skipped. On a mismatch the session of the other peer is asked for, and nothing is verified
+     * until it has arrived.
+     *
+     * @see GameSession#getChecksum()
+     */
+    private void verify() {
+        if(resyncTick >= 0) {
+            return;
+        }
+        int end = Math.min(confirmed.getStepCount(), lastReportedTick);
+        for(int t = verifiedTick + 1; t <= end; t++) {
+            int index = t & INPUT_MASK;
+            if(reportedTicks[index] == t
+                    && confirmed.getStepCount() - t < INPUT_BUFFER
+                    && reportedChecksums[index] != confirmedChecksums[index]) {
+                if(desyncTick < 0) {
+                    desyncTick = t;
+                }
+                resyncTick = t;
+                verifiedTick = t;
+                return;
+            }
+        }
+        verifiedTick = Math.max(verifiedTick, end);
+    }
+
+    /**
+     * Receives all pending packets. Malformed and stale packets are ignored.
+     */
+    private void receive() {
+        int length;
+        while((length = transport.receive(packet)) >= 0) {
+            if(length < NetProtocol.STATE_HEADER_SIZE) {
+                continue;
+            }
+            packetBuffer.clear();
+            packetBuffer.limit(length);
+            if(packetBuffer.getInt() != NetProtocol.MAGIC) {
+                continue;
+            }
+            byte type = packetBuffer.get();
+            if(type == NetProtocol.INPUT) {
+                receiveInputs(length);
+            } else if(type == NetProtocol.STATE) {
+                receiveState(length);
+            }
+        }
+    }
+
+    /**
+     * Reads an input packet. Remote inputs are taken in tick order. A request for the local
+     * session newer than the state sent so far makes the local session the one to send.
+     *
+     * @param length    the packet length
+     */
+    private void receiveInputs(int length) {
+        if(length < NetProtocol.HEADER_SIZE) {
+            return;
+        }
+        int ack = packetBuffer.getInt();
+        int checksumTick = packetBuffer.getInt();
+        int checksum = packetBuffer.getInt();
+        int request = packetBuffer.getInt();
+        int first = packetBuffer.getInt();
+        int count = packetBuffer.get() & 0xFF;
+        if(length < NetProtocol.HEADER_SIZE + count) {
+            return;
+        }
+
+        remoteAck = Math.max(remoteAck, Math.min(ack, localCount));
+        if(checksumTick >= lastReportedTick) {
+            requestedTick = Math.min(request, tick);
+            if(requestedTick > servedTick) {
+                serve();
+            }
+        }
+        if(checksumTick > lastReportedTick) {
+            reportedTicks[checksumTick & INPUT_MASK] = checksumTick;
+            reportedChecksums[checksumTick & INPUT_MASK] = checksum;
+            lastReportedTick = checksumTick;
+        }
+        for(int i = 0; i < count; i++) {
+            int t = first + i;
+            byte buttons = packetBuffer.get();
+            if(t == remoteCount && t - tick < INPUT_BUFFER / 2) {
+                remoteInputs[t & INPUT_MASK] = buttons;
+                remoteCount++;
+            }
+        }
+    }
+
+    /**
+     * Saves the local session to send it to the other peer, and rebuilds its world, so the other
+     * peer can rebuild the world of the state it receives and continue exactly alike.
+     */
+    private void serve() {
+        GameSession session = sessions[localPlayer];
+        served.clear();
+        session.saveState(served);
+        servedSize = served.position();
+        servedTick = tick;
+        nextFragment = 0;
+        session.rebuildWorld();
+    }
+
+    /**
+     * Reads a fragment of the remote session asked for. A state of a later tick replaces the one
+     * being received. Once all fragments are there, the confirmed session is restored from it.
+     *
+     * @param length    the packet length
+     */
+    private void receiveState(int length) {
+        int stateTick = packetBuffer.getInt();
+        int size = packetBuffer.getInt();
+        int offset = packetBuffer.getInt();
+        int fragmentSize = packetBuffer.getShort() & 0xFFFF;
+        if(resyncTick < 0
+                || stateTick < resyncTick
+                || stateTick < receivedTick
+                || size <= 0
+                || size > received.capacity()
+                || offset < 0
+                || offset >= size
+                || offset % NetProtocol.MAX_FRAGMENT != 0
+                || fragmentSize != Math.min(NetProtocol.MAX_FRAGMENT, size - offset)
+                || length < NetProtocol.STATE_HEADER_SIZE + fragmentSize) {
+            return;
+        }
+        if(stateTick > receivedTick) {
+            receivedTick = stateTick;
+            receivedSize = size;
+            receivedCount = 0;
+            for(int i = 0; i < receivedFragments.length; i++) {
+                receivedFragments[i] = false;
+            }
+        }
+        int fragment = offset / NetProtocol.MAX_FRAGMENT;
+        if(size != receivedSize || receivedFragments[fragment]) {
+            return;
+        }
+        packetBuffer.get(received.array(), offset, fragmentSize);
+        receivedFragments[fragment] = true;
+        receivedCount++;
+        if(receivedCount * NetProtocol.MAX_FRAGMENT >= receivedSize) {
+            resync();
+        }
+    }
+
+    /**
+     * Restores the confirmed session from the state received and rebuilds its world like the
+     * other peer did. The predicted session is rolled back to it.
+     */
+    private void resync() {
+        received.clear();
+        received.limit(receivedSize);
+        confirmed.restoreState(received);
+        confirmed.rebuildWorld();
+        confirmedChecksums[receivedTick & INPUT_MASK] = confirmed.getChecksum();
+        verifiedTick = receivedTick;
+        resyncTick = -1;
+        receivedTick = -1;
+        mispredicted = true;
+        resyncCount++;
+    }
+
+    /**
+     * Sends the local inputs the other peer has not acknowledged and the checksum of the local
+     * session, and acknowledges the remote inputs received. While the other peer asks for the
+     * local session, the next fragment of its state is sent as well.
+     */
+    private void send() {
+        int count = Math.min(localCount - remoteAck, NetProtocol.MAX_INPUTS);
+        packetBuffer.clear();
+        packetBuffer.putInt(NetProtocol.MAGIC);
+        packetBuffer.put(NetProtocol.INPUT);
+        packetBuffer.putInt(remoteCount);
+        packetBuffer.putInt(tick);
+        packetBuffer.putInt(sessions[localPlayer].getChecksum());
+        packetBuffer.putInt(resyncTick);
+        packetBuffer.putInt(remoteAck);
+        packetBuffer.put((byte) count);
+        for(int i = 0; i < count; i++) {
+            packetBuffer.put(localInputs[(remoteAck + i) & INPUT_MASK]);
+        }
+        transport.send(packet, packetBuffer.position());
+
+        if(requestedTick >= 0 && servedTick >= requestedTick) {
+            int fragments = (servedSize + NetProtocol.MAX_FRAGMENT - 1) / NetProtocol.MAX_FRAGMENT;
+            int offset = (nextFragment % fragments) * NetProtocol.MAX_FRAGMENT;
+            int size = Math.min(NetProtocol.MAX_FRAGMENT, servedSize - offset);
+            nextFragment = (nextFragment + 1) % fragments;
+            packetBuffer.clear();
+            packetBuffer.putInt(NetProtocol.MAGIC);
+            packetBuffer.put(NetProtocol.STATE);
+            packetBuffer.putInt(servedTick);
+            packetBuffer.putInt(servedSize);
+            packetBuffer.putInt(offset);
+            packetBuffer.putShort((short) size);
+            packetBuffer.put(served.array(), offset, size);
+            transport.send(packet, packetBuffer.position());
+        }
+    }
+
+    /**
+     * Checks whether every tick simulated so far used the actual input of both players and the
+     * remote session is not waiting for a resync, i.e. the sessions are the same on both peers
+     * up to the current tick.
+     *
+     * @return  <code>true</code> if no tick is simulated with a predicted input
+     *          <code>false</code> else
+     */
+    public boolean isConfirmed() {
+        return remoteCount >= tick
+                && confirmed.getStepCount() == tick
+                && !mispredicted
+                && resyncTick < 0;
+    }
+
+    /**
+     * Gets the game session of a player. The session of the remote player is the predicted one.
+     *
+     * @param player    the player index
+     * @return          the game session
+     */
+    public GameSession getSession(int player) {
+        return sessions[player];
+    }
+
+    public int getLocalPlayer() {
+        return localPlayer;
+    }
+
+    public int getTick() {
+        return tick;
+    }
+
+    /**
+     * Gets the first tick after which the sessions of the two peers were found to differ. The
+     * desync is repaired by a resync, but stays reported.
+     *
+     * @return  the tick, -1 if no desync has been detected
+     * @see     #getResyncCount()
+     */
+    public int getDesyncTick() {
+        return desyncTick;
+    }
+
+    public int getRollbackCount() {
+        return rollbackCount;
+    }
+
+    public int getResimulatedTicks() {
+        return resimulatedTicks;
+    }
+
+    public long getMaxRollbackNanos() {
+        return maxRollbackNanos;
+    }
+
+    /**
+     * Gets the number of times the remote session was restored from the state of the other peer
+     * after a desync.
+     *
+     * @return  the number of resyncs
+     */
+    public int getResyncCount() {
+        return resyncCount;
+    }
+
+    /**
+     * Disposes the game sessions. The transport is owned by the caller.
+     */
+    @Override
+    public void dispose() {
+        for(int i = 0; i < PLAYERS; i++) {
+            sessions[i].dispose();
+        }
+        confirmed.dispose();
+    }
+}
@@ -0,0 +1,94 @@
+package com.andrejlohn.mariobros.net;
+
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * This class connects the peers of a rollback match over UDP with a non-blocking datagram channel.
+ * The channel is bound to a local address and connected to the address of the other peer, so
+ * packets from anyone else are discarded. A packet which cannot be sent right away is dropped,
+ * like a packet lost on the way. Not available on the web.
+ *
+ * @version %I%, %G%
+ * @see     NetTransport
+ */
+public class UdpTransport implements NetTransport {
+
+    private DatagramChannel channel;
+
+    /**
+     * Opens a channel bound to the given local address without connecting it yet, so two peers on
+     * one machine can bind to ephemeral ports and exchange them.
+     *
+     * @param local the local address, port 0 for an ephemeral port
+     * @throws      GdxRuntimeException if the channel cannot be opened
+     */
+    public UdpTransport(InetSocketAddress local) {
+        try {
+            channel = DatagramChannel.open();
+            channel.configureBlocking(false);
+            channel.socket().bind(local);
+        } catch(IOException e) {
+            close();
+            throw new GdxRuntimeException("Cannot open UDP channel on " + local, e);
+        }
+    }
+
+    /**
+     * Connects the channel to the other peer.
+     *
+     * @param remote    the address of the other peer
+     * @throws          GdxRuntimeException if the channel cannot be connected
+     */
+    public void connect(SocketAddress remote) {
+        try {
+            channel.connect(remote);
+        } catch(IOException e) {
+            throw new GdxRuntimeException("Cannot connect UDP channel to " + remote, e);
+        }
+    }
+
+    /**
+     * Gets the local address, e.g. to find out the ephemeral port bound to.
+     *
+     * @return  the local address
+     */
+    public InetSocketAddress getLocalAddress() {
+        return (InetSocketAddress) channel.socket().getLocalSocketAddress();
+    }
+
+    @Override
+    public void send(byte[] bytes, int length) {
+        try {
+            channel.write(ByteBuffer.wrap(bytes, 0, length));
+        } catch(IOException e) {
+            // E.g. the port of the other peer is not open yet, the packet is lost
+        }
+    }
+
+    @Override
+    public int receive(byte[] bytes) {
+        try {
+            int length = channel.read(ByteBuffer.wrap(bytes));
+            return length > 0 ? length : -1;
+        } catch(IOException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public void close() {
+        if(channel != null) {
+            try {
+                channel.close();
+            } catch(IOException e) {
+                // Nothing left to clean up
+            }
+        }
+    }
+}
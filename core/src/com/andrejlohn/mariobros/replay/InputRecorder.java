@@ -0,0 +1,296 @@
+package com.andrejlohn.mariobros.replay;
+
+import com.andrejlohn.mariobros.session.GameSession;
+import com.andrejlohn.mariobros.tools.InputSource;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.IntArray;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * This class records the input of a game session into a replay. It sits between the actual input
+ * source, e.g. the on screen controller, and the game session: once per simulation step the
+ * buttons of the source are latched, encoded and passed on to the session unchanged. Latching
+ * makes the session read exactly the recorded buttons during the step, even if the source changes
+ * in between.
+ *
+ * Runs of steps with the same buttons are collected into a byte array, which is handed to the
+ * replay sink whenever it is full, so recording neither allocates nor blocks per step. The outcome
+ * of the session is appended by {@link #finish(int, int, boolean, float, float)}.
+ *
+ * Every keyframe interval the state of the session is written as a keyframe, into a state buffer
+ * which is reused for all keyframes. Writing the state does not change the session, and a session
+ * restored from a keyframe continues like the recorded one, so a replay can be played from any
+ * keyframe and gives the same result.
+ *
+ * @version %I%, %G%
+ * @see     ReplayFormat
+ * @see     ReplaySink
+ */
+public class InputRecorder implements InputSource {
+
+    private static final int BUFFER_SIZE = 1024;
+
+    // Initial size of the state buffer, grown if a state does not fit
+    private static final int STATE_SIZE = 4 * 1024;
+
+    // Longest varint
+    private static final int MAX_VARINT_BYTES = 5;
+
+    private InputSource source;
+    private ReplaySink sink;
+
+    private byte[] buffer;
+    private int position;
+
+    // Bytes handed to the sink before the buffer
+    private int written;
+
+    // Keyframes: interval, reused state buffer, steps and record offsets
+    private int keyframeInterval;
+    private ByteBuffer state;
+    private IntArray keyframeSteps;
+    private IntArray keyframeOffsets;
+
+    // The latched buttons, the steps they have been held and the steps recorded
+    private int buttons;
+    private int run;
+    private int steps;
+
+    private boolean finished;
+
+    /**
+     * Creates the input recorder with the default keyframe interval and writes the replay header.
+     *
+     * @param source    the input source to record
+     * @param sink      the sink to write the replay to
+     * @param level     the level file name of the session
+     * @see             ReplayFormat#DEFAULT_KEYFRAME_INTERVAL
+     */
+    public InputRecorder(InputSource source, ReplaySink sink, String level) {
+        this(source, sink, level, ReplayFormat.DEFAULT_KEYFRAME_INTERVAL);
+    }
+
+    /**
+     * Creates the input recorder and writes the replay header.
+     *
+     * @param source            the input source to record
+     * @param sink              the sink to write the replay to
+     * @param level             the level file name of the session
+     * @param keyframeInterval  the number of steps between keyframes, a multiple of the rebuild
+     *                          interval, so a session restored from a keyframe can be rebuilt
+     * @throws                  GdxRuntimeException if the keyframe interval is not a positive
+     *                          multiple of the rebuild interval
+     * @see                     GameSession#REBUILD_INTERVAL
+     */
+    public InputRecorder(InputSource source, ReplaySink sink, String level, int keyframeInterval) {
+        if(keyframeInterval <= 0 || keyframeInterval % GameSession.REBUILD_INTERVAL != 0) {
+            throw new GdxRuntimeException("Keyframe interval " + keyframeInterval
+                    + " is not a multiple of " + GameSession.REBUILD_INTERVAL);
+        }
+        this.source = source;
+        this.sink = sink;
+        this.keyframeInterval = keyframeInterval;
+        buffer = new byte[BUFFER_SIZE];
+        state = ByteBuffer.wrap(new byte[STATE_SIZE]);
+        keyframeSteps = new IntArray();
+        keyframeOffsets = new IntArray();
+
+        writeInt(ReplayFormat.MAGIC);
+        writeInt(ReplayFormat.VERSION);
+        writeString(level);
+        writeVarint(keyframeInterval);
+    }
+
+    /**
+     * Latches and records the buttons of the input source. Has to be called before each step of
+     * the game session.
+     */
+    public void next() {
+        int pressed = ReplayFormat.buttons(source);
+        if(run == ReplayFormat.MAX_RUN || (run > 0 && pressed != buttons)) {
+            writeRun();
+        }
+        buttons = pressed;
+        run++;
+        steps++;
+    }
+
+    /**
+     * Writes a keyframe if a keyframe interval has passed since the last one. Has to be called
+     * after each step of the game session.
+     *
+     * @param session   the game session
+     * @see             GameSession#saveState(ByteBuffer)
+     */
+    public void stepped(GameSession session) {
+        if(finished || steps % keyframeInterval != 0) {
+            return;
+        }
+        saveState(session);
+
+        if(run > 0) {
+            writeRun();
+        }
+        keyframeSteps.add(steps);
+        keyframeOffsets.add(written + position);
+        writeVarint(ReplayFormat.KEYFRAME);
+        writeVarint(steps);
+        writeVarint(state.limit());
+        writeBytes(state.array(), 0, state.limit());
+    }
+
+    /**
+     * Saves the session state into the state buffer, which is grown until the state fits.
+     *
+     * @param session   the game session
+     */
+    private void saveState(GameSession session) {
+        while(true) {
+            state.clear();
+            try {
+                session.saveState(state);
+                state.flip();
+                return;
+            } catch(BufferOverflowException e) {
+                state = ByteBuffer.wrap(new byte[state.capacity() * 2]);
+            }
+        }
+    }
+
+    @Override
+    public boolean isUpPressed() {
+        return (buttons & ReplayFormat.UP) != 0;
+    }
+
+    @Override
+    public boolean isLeftPressed() {
+        return (buttons & ReplayFormat.LEFT) != 0;
+    }
+
+    @Override
+    public boolean isRightPressed() {
+        return (buttons & ReplayFormat.RIGHT) != 0;
+    }
+
+    public int getSteps() {
+        return steps;
+    }
+
+    /**
+     * Appends the outcome of the session and closes the sink. Does nothing if the recording is
+     * finished already.
+     *
+     * @param score         the final score
+     * @param worldTimer    the final world timer
+     * @param dead          <code>true</code> if the player character is dead
+     *                      <code>false</code> else
+     * @param x             the x-coordinate of the player character body
+     * @param y             the y-coordinate of the player character body
+     */
+    public void finish(int score, int worldTimer, boolean dead, float x, float y) {
+        if(finished) {
+            return;
+        }
+        finished = true;
+
+        if(run > 0) {
+            writeRun();
+        }
+        writeVarint(ReplayFormat.END);
+        int footer = written + position;
+        writeVarint(steps);
+        writeVarint(score);
+        writeVarint(worldTimer);
+        writeByte(dead ? 1 : 0);
+        writeInt(Float.floatToIntBits(x));
+        writeInt(Float.floatToIntBits(y));
+        writeVarint(keyframeSteps.size);
+        for(int i = 0; i < keyframeSteps.size; i++) {
+            writeVarint(keyframeSteps.get(i));
+            writeInt(keyframeOffsets.get(i));
+        }
+        writeInt(footer);
+        flush();
+        sink.close();
+    }
+
+    private void writeRun() {
+        writeVarint(ReplayFormat.run(run, buttons));
+        run = 0;
+    }
+
+    private void writeVarint(int value) {
+        ensure(MAX_VARINT_BYTES);
+        while((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeInt(int value) {
+        ensure(4);
+        buffer[position++] = (byte) (value >>> 24);
+        buffer[position++] = (byte) (value >>> 16);
+        buffer[position++] = (byte) (value >>> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeByte(int value) {
+        ensure(1);
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeString(String value) {
+        byte[] bytes;
+        try {
+            bytes = value.getBytes("UTF-8");
+        } catch(UnsupportedEncodingException e) {
+            throw new GdxRuntimeException("Error writing replay", e);
+        }
+        writeVarint(bytes.length);
+        writeBytes(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Writes bytes, directly to the sink if they do not fit into the buffer.
+     *
+     * @param bytes     the bytes
+     * @param offset    the index of the first byte
+     * @param length    the number of bytes
+     */
+    private void writeBytes(byte[] bytes, int offset, int length) {
+        if(length > buffer.length - position) {
+            flush();
+        }
+        if(length > buffer.length) {
+            sink.write(bytes, offset, length);
+            written += length;
+        } else {
+            System.arraycopy(bytes, offset, buffer, position, length);
+            position += length;
+        }
+    }
+
+    /**
+     * Hands the buffered bytes to the sink if there is no room for the given number of bytes.
+     *
+     * @param bytes the number of bytes to write next
+     */
+    private void ensure(int bytes) {
+        if(position + bytes > buffer.length) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        if(position > 0) {
+            sink.write(buffer, 0, position);
+            written += position;
+            position = 0;
+        }
+    }
+}
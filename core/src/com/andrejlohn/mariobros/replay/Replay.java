@@ -0,0 +1,241 @@
+package com.andrejlohn.mariobros.replay;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.IntArray;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * This class holds a recorded game session: the level, the records of input runs and keyframes
+ * and the outcome the session had when it was recorded. Replaying the runs on the same level has
+ * to reproduce the outcome exactly, as the game session only depends on its input.
+ *
+ * Only the header and the outcome with the keyframe index are read up front. The records stay in
+ * the buffer and are decoded while the replay is played, so a memory mapped replay file is only
+ * paged in where it is played, and playing from a keyframe skips everything before it.
+ *
+ * @version %I%, %G%
+ * @see     ReplayFormat
+ * @see     InputRecorder
+ */
+public class Replay {
+
+    private ByteBuffer buffer;
+    private int start;
+    private int recordsOffset;
+
+    private String level;
+    private int keyframeInterval;
+    private IntArray keyframeSteps;
+    private IntArray keyframeOffsets;
+
+    private int steps;
+    private int score;
+    private int worldTimer;
+    private boolean dead;
+    private float x;
+    private float y;
+
+    private Replay() {
+        keyframeSteps = new IntArray();
+        keyframeOffsets = new IntArray();
+    }
+
+    /**
+     * Reads a replay from the given file.
+     *
+     * @param file  the replay file
+     * @return      the replay
+     * @see         FileHandle#readBytes()
+     */
+    public static Replay read(FileHandle file) {
+        return read(ByteBuffer.wrap(file.readBytes()));
+    }
+
+    /**
+     * Reads a replay from a buffer holding a replay file from its position to its limit. The
+     * buffer is kept to decode the records from and must not be modified.
+     *
+     * @param buffer    the buffer
+     * @return          the replay
+     * @throws          GdxRuntimeException if the data is not a valid replay file
+     */
+    public static Replay read(ByteBuffer buffer) {
+        try {
+            Replay replay = new Replay();
+            replay.buffer = buffer;
+            replay.start = buffer.position();
+
+            ByteBuffer in = buffer.duplicate();
+            if(in.getInt() != ReplayFormat.MAGIC) {
+                throw new GdxRuntimeException("Not a replay file");
+            }
+            int version = in.getInt();
+            if(version != ReplayFormat.VERSION) {
+                throw new GdxRuntimeException("Unsupported replay file version: " + version);
+            }
+            replay.level = readString(in);
+            replay.keyframeInterval = ReplayFormat.readVarint(in);
+            replay.recordsOffset = in.position() - replay.start;
+
+            in.position(replay.position(in.getInt(in.limit() - 4)));
+            replay.steps = ReplayFormat.readVarint(in);
+            replay.score = ReplayFormat.readVarint(in);
+            replay.worldTimer = ReplayFormat.readVarint(in);
+            replay.dead = in.get() != 0;
+            replay.x = in.getFloat();
+            replay.y = in.getFloat();
+            int count = ReplayFormat.readVarint(in);
+            for(int i = 0; i < count; i++) {
+                replay.keyframeSteps.add(ReplayFormat.readVarint(in));
+                replay.keyframeOffsets.add(in.getInt());
+            }
+            return replay;
+        } catch(BufferUnderflowException e) {
+            throw new GdxRuntimeException("Truncated replay file", e);
+        } catch(IllegalArgumentException e) {
+            throw new GdxRuntimeException("Corrupt replay file", e);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[ReplayFormat.readVarint(buffer)];
+        buffer.get(bytes);
+        try {
+            return new String(bytes, "UTF-8");
+        } catch(UnsupportedEncodingException e) {
+            throw new GdxRuntimeException("Error reading replay file", e);
+        }
+    }
+
+    /**
+     * Converts an offset in the replay file to a position in the buffer.
+     *
+     * @param offset    the offset from the start of the file
+     * @return          the buffer position
+     * @throws          IllegalArgumentException if the offset lies outside of the file
+     */
+    private int position(int offset) {
+        if(offset < 0 || offset > buffer.limit() - start) {
+            throw new IllegalArgumentException("Offset out of bounds: " + offset);
+        }
+        return start + offset;
+    }
+
+    /**
+     * Creates a view of the records, positioned at the first one.
+     *
+     * @return  the records, to be decoded with {@link ReplayFormat#readVarint(ByteBuffer)}
+     */
+    public ByteBuffer getRecords() {
+        ByteBuffer records = buffer.duplicate();
+        records.position(position(recordsOffset));
+        return records;
+    }
+
+    /**
+     * Creates a view of the records, positioned at the record of a keyframe.
+     *
+     * @param keyframe  the keyframe index
+     * @return          the records, starting with the keyframe record
+     */
+    public ByteBuffer getRecords(int keyframe) {
+        ByteBuffer records = buffer.duplicate();
+        records.position(position(keyframeOffsets.get(keyframe)));
+        return records;
+    }
+
+    /**
+     * Creates a view of the session state of a keyframe.
+     *
+     * @param keyframe  the keyframe index
+     * @return          the session state from position to limit
+     * @throws          GdxRuntimeException if the keyframe record is corrupt
+     * @see             com.andrejlohn.mariobros.session.GameSession#restoreState(ByteBuffer)
+     */
+    public ByteBuffer getKeyframeState(int keyframe) {
+        try {
+            ByteBuffer state = getRecords(keyframe);
+            if(ReplayFormat.readVarint(state) != ReplayFormat.KEYFRAME
+                    || ReplayFormat.readVarint(state) != keyframeSteps.get(keyframe)) {
+                throw new GdxRuntimeException("Corrupt replay file: keyframe " + keyframe);
+            }
+            int length = ReplayFormat.readVarint(state);
+            state.limit(state.position() + length);
+            return state;
+        } catch(BufferUnderflowException e) {
+            throw new GdxRuntimeException("Truncated replay file", e);
+        } catch(IllegalArgumentException e) {
+            throw new GdxRuntimeException("Corrupt replay file", e);
+        }
+    }
+
+    /**
+     * Finds the last keyframe at or before the given step.
+     *
+     * @param step  the step
+     * @return      the keyframe index, -1 if the first keyframe is after the step
+     */
+    public int findKeyframe(int step) {
+        int low = 0;
+        int high = keyframeSteps.size - 1;
+        while(low <= high) {
+            int mid = (low + high) >>> 1;
+            if(keyframeSteps.get(mid) <= step) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    public String getLevel() {
+        return level;
+    }
+
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
+    public int getKeyframeCount() {
+        return keyframeSteps.size;
+    }
+
+    /**
+     * Gets the step of a keyframe.
+     *
+     * @param keyframe  the keyframe index
+     * @return          the number of steps played before the keyframe state
+     */
+    public int getKeyframeStep(int keyframe) {
+        return keyframeSteps.get(keyframe);
+    }
+
+    public int getSteps() {
+        return steps;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getWorldTimer() {
+        return worldTimer;
+    }
+
+    public boolean isDead() {
+        return dead;
+    }
+
+    public float getX() {
+        return x;
+    }
+
+    public float getY() {
+        return y;
+    }
+}
@@ -0,0 +1,53 @@
+package com.andrejlohn.mariobros.replay;
+
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class reads replay files by mapping them into memory instead of copying them. The pages of
+ * a long replay are only loaded when the records in them are played, so seeking to a keyframe
+ * near the end does not read the whole file. Like the file writer it is excluded from the GWT
+ * module.
+ *
+ * @version %I%, %G%
+ * @see     Replay#read(java.nio.ByteBuffer)
+ * @see     FileChannel#map(FileChannel.MapMode, long, long)
+ */
+public final class ReplayFileMap {
+
+    private ReplayFileMap() {
+    }
+
+    /**
+     * Maps a replay file and reads its header and index. The mapping stays valid after the file
+     * is closed, until the replay is garbage collected.
+     *
+     * @param file  the replay file
+     * @return      the replay
+     * @throws      GdxRuntimeException if the file cannot be mapped or is not a valid replay
+     */
+    public static Replay map(File file) {
+        RandomAccessFile in = null;
+        try {
+            in = new RandomAccessFile(file, "r");
+            FileChannel channel = in.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return Replay.read(buffer);
+        } catch(IOException e) {
+            throw new GdxRuntimeException("Could not map replay file " + file, e);
+        } finally {
+            if(in != null) {
+                try {
+                    in.close();
+                } catch(IOException e) {
+                    // The mapping does not depend on the file staying open
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.andrejlohn.mariobros.replay;
+
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.TimeUtils;
+
+import java.io.File;
+
+/**
+ * This class records game sessions into replay files in a directory, one file per session named
+ * after the time it started. Like the file writer it is excluded from the GWT module.
+ *
+ * @version %I%, %G%
+ * @see     ReplayFileWriter
+ */
+public class ReplayFileStore implements ReplayStore {
+
+    private File directory;
+
+    /**
+     * Creates the replay store.
+     *
+     * @param directory the directory to write the replay files to, created if needed
+     */
+    public ReplayFileStore(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Creates a new replay file.
+     *
+     * @param level the level file name of the session
+     * @return      the file writer
+     * @throws      GdxRuntimeException if the directory cannot be created
+     */
+    @Override
+    public ReplaySink open(String level) {
+        if(!directory.isDirectory() && !directory.mkdirs()) {
+            throw new GdxRuntimeException("Could not create replay directory " + directory);
+        }
+        return new ReplayFileWriter(
+                new File(directory, "replay-" + TimeUtils.millis() + "." + ReplayFormat.EXTENSION));
+    }
+}
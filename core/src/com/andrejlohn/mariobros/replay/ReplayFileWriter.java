@@ -0,0 +1,187 @@
+package com.andrejlohn.mariobros.replay;
+
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * This class writes a replay to a file on a background thread, so the game thread never waits for
+ * the disk. The bytes are copied into a small pool of direct buffers; a full buffer is queued for
+ * the writer thread, which writes it to the file channel and returns it to the pool. The game
+ * thread only blocks if all buffers are waiting to be written.
+ *
+ * Errors of the writer thread are reported on the next write or on close. The file channel API is
+ * not available in the browser, so this class is excluded from the GWT module.
+ *
+ * @version %I%, %G%
+ * @see     ReplaySink
+ * @see     FileChannel
+ */
+public class ReplayFileWriter implements ReplaySink {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int BUFFER_COUNT = 4;
+
+    // Queued after the last buffer to stop the writer thread
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private File file;
+    private FileChannel channel;
+
+    private BlockingQueue<ByteBuffer> free;
+    private BlockingQueue<ByteBuffer> full;
+    private ByteBuffer current;
+
+    private Thread thread;
+    private volatile IOException error;
+    private boolean closed;
+
+    /**
+     * Creates the replay file and starts the writer thread.
+     *
+     * @param file  the replay file, overwritten if it exists
+     * @throws      GdxRuntimeException if the file cannot be created
+     */
+    public ReplayFileWriter(File file) {
+        this.file = file;
+        try {
+            channel = new FileOutputStream(file).getChannel();
+        } catch(IOException e) {
+            throw new GdxRuntimeException("Could not create replay file " + file, e);
+        }
+
+        free = new ArrayBlockingQueue<ByteBuffer>(BUFFER_COUNT);
+        full = new ArrayBlockingQueue<ByteBuffer>(BUFFER_COUNT + 1);
+        for(int i = 0; i < BUFFER_COUNT; i++) {
+            free.add(ByteBuffer.allocateDirect(BUFFER_SIZE));
+        }
+
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "ReplayFileWriter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Copies the bytes into the current buffer and queues every buffer that fills up.
+     *
+     * @param bytes     the bytes
+     * @param offset    the index of the first byte
+     * @param length    the number of bytes
+     * @throws          GdxRuntimeException if the writer thread failed
+     */
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        checkError();
+        while(length > 0) {
+            if(current == null) {
+                current = take(free);
+            }
+            int count = Math.min(length, current.remaining());
+            current.put(bytes, offset, count);
+            offset += count;
+            length -= count;
+            if(!current.hasRemaining()) {
+                queueCurrent();
+            }
+        }
+    }
+
+    /**
+     * Queues the current buffer, waits for the writer thread to write all buffers and closes the
+     * file.
+     *
+     * @throws  GdxRuntimeException if writing the file failed
+     */
+    @Override
+    public void close() {
+        if(closed) {
+            return;
+        }
+        closed = true;
+
+        if(current != null && current.position() > 0) {
+            queueCurrent();
+        }
+        put(full, END);
+        try {
+            thread.join();
+        } catch(InterruptedException e) {
+            throw new GdxRuntimeException("Interrupted writing replay file " + file, e);
+        }
+        try {
+            channel.close();
+        } catch(IOException e) {
+            if(error == null) {
+                error = e;
+            }
+        }
+        checkError();
+    }
+
+    /**
+     * Writes the queued buffers until the end marker is reached. After an error the buffers are
+     * only returned to the pool, so the game thread never waits forever.
+     */
+    private void drain() {
+        try {
+            while(true) {
+                ByteBuffer buffer = full.take();
+                if(buffer == END) {
+                    return;
+                }
+                if(error == null) {
+                    try {
+                        while(buffer.hasRemaining()) {
+                            channel.write(buffer);
+                        }
+                    } catch(IOException e) {
+                        error = e;
+                    }
+                }
+                buffer.clear();
+                free.put(buffer);
+            }
+        } catch(InterruptedException e) {
+            error = new IOException("Replay writer interrupted");
+        }
+    }
+
+    private void queueCurrent() {
+        current.flip();
+        put(full, current);
+        current = null;
+    }
+
+    private void checkError() {
+        if(error != null) {
+            throw new GdxRuntimeException("Error writing replay file " + file, error);
+        }
+    }
+
+    private ByteBuffer take(BlockingQueue<ByteBuffer> queue) {
+        try {
+            return queue.take();
+        } catch(InterruptedException e) {
+            throw new GdxRuntimeException("Interrupted writing replay file " + file, e);
+        }
+    }
+
+    private void put(BlockingQueue<ByteBuffer> queue, ByteBuffer buffer) {
+        try {
+            queue.put(buffer);
+        } catch(InterruptedException e) {
+            throw new GdxRuntimeException("Interrupted writing replay file " + file, e);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.andrejlohn.mariobros.replay;
+
+import com.andrejlohn.mariobros.session.GameSession;
+import com.andrejlohn.mariobros.tools.InputSource;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class defines the replay file format. A replay holds the player input of a game session,
+ * one button state per simulation step, keyframes of the session state every few steps and the
+ * outcome of the session to verify a replay against. Ints and floats are big-endian, varints are
+ * unsigned with seven bits per byte, least significant group first, and strings are stored as
+ * their UTF-8 byte count as a varint followed by the bytes.
+ *
+ * <pre>
+ * int      magic, version
+ * string   level file name
+ * varint   keyframe interval in steps
+ *          records, each starting with a varint:
+ *            a run: steps &lt;&lt; {@link #BUTTON_BITS} | buttons, steps &gt; 0
+ *            {@link #KEYFRAME}: varint step, state length, session state bytes
+ *            {@link #END}: the end of the records
+ * varint   steps, score, world timer
+ * byte     dead, 1 if the player character was dead
+ * float    x, y of the player character body
+ * varint   keyframe count
+ *          per keyframe: varint step, int offset of its record
+ * int      offset of the steps after the end record
+ * </pre>
+ *
+ * A run is a number of consecutive steps with the same buttons held. Players hold their buttons
+ * for many steps, so most runs take one or two bytes. A keyframe holds the session state after
+ * the given step and is written between the runs of the steps before and after it. The records
+ * are written while the session is played, the outcome and the keyframe index at its end. Offsets
+ * are counted from the start of the file, so the index is found from the end of the file, and a
+ * replay can be played from any keyframe without reading the records before it.
+ *
+ * @version %I%, %G%
+ * @see     InputRecorder
+ * @see     Replay
+ */
+public final class ReplayFormat {
+
+    public static final String EXTENSION = "rpl";
+
+    // "MBRP"
+    public static final int MAGIC = 0x4D425250;
+    public static final int VERSION = 3;
+
+    // Record tags other than runs, runs are at least 1 << BUTTON_BITS
+    public static final int END = 0;
+    public static final int KEYFRAME = 1;
+
+    // A keyframe at every rebuild of the world, every 10 seconds of play
+    public static final int DEFAULT_KEYFRAME_INTERVAL = GameSession.REBUILD_INTERVAL;
+
+    // Button bits of a run
+    public static final int UP = 1;
+    public static final int LEFT = 2;
+    public static final int RIGHT = 4;
+    public static final int BUTTON_BITS = 3;
+
+    // Longest run stored in a single entry
+    public static final int MAX_RUN = Integer.MAX_VALUE >>> BUTTON_BITS;
+
+    private ReplayFormat() {
+    }
+
+    /**
+     * Gets the buttons currently held on an input source.
+     *
+     * @param input the input source
+     * @return      the button bits
+     */
+    public static int buttons(InputSource input) {
+        return (input.isUpPressed() ? UP : 0)
+                | (input.isLeftPressed() ? LEFT : 0)
+                | (input.isRightPressed() ? RIGHT : 0);
+    }
+
+    /**
+     * Encodes a run.
+     *
+     * @param steps     the number of steps, between 1 and {@link #MAX_RUN}
+     * @param buttons   the button bits
+     * @return          the run entry
+     */
+    public static int run(int steps, int buttons) {
+        return steps << BUTTON_BITS | buttons;
+    }
+
+    public static int runSteps(int run) {
+        return run >>> BUTTON_BITS;
+    }
+
+    public static int runButtons(int run) {
+        return run & ((1 << BUTTON_BITS) - 1);
+    }
+
+    /**
+     * Reads a varint at the buffer position.
+     *
+     * @param buffer    the buffer
+     * @return          the value
+     * @throws          GdxRuntimeException if the varint is longer than five bytes
+     */
+    public static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        for(int shift = 0; shift < 32; shift += 7) {
+            int b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new GdxRuntimeException("Corrupt replay file: varint too long");
+    }
+}
@@ -0,0 +1,27 @@
+package com.andrejlohn.mariobros.replay;
+
+/**
+ * This interface represents the destination of a replay being recorded, e.g. a file. The recorder
+ * hands over its bytes in chunks while the session is played and closes the sink at its end.
+ *
+ * @version %I%, %G%
+ * @see     InputRecorder
+ * @see     ReplayStore
+ */
+public interface ReplaySink {
+
+    /**
+     * Writes bytes to the replay. The bytes are copied or written before this returns, so the
+     * caller may reuse the array.
+     *
+     * @param bytes     the bytes
+     * @param offset    the index of the first byte
+     * @param length    the number of bytes
+     */
+    void write(byte[] bytes, int offset, int length);
+
+    /**
+     * Writes out all bytes and releases the sink.
+     */
+    void close();
+}
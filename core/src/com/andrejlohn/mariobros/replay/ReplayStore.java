@@ -0,0 +1,21 @@
+package com.andrejlohn.mariobros.replay;
+
+/**
+ * This interface represents the place game sessions are recorded to. It is given to the game by
+ * the platform launcher, so the core does not depend on file or channel APIs which are not
+ * available on every platform.
+ *
+ * @version %I%, %G%
+ * @see     ReplaySink
+ * @see     com.andrejlohn.mariobros.MarioBros#setReplayStore(ReplayStore)
+ */
+public interface ReplayStore {
+
+    /**
+     * Opens the sink of a new recording.
+     *
+     * @param level the level file name of the session
+     * @return      the sink
+     */
+    ReplaySink open(String level);
+}
@@ -1,21 +1,25 @@
 package com.andrejlohn.mariobros.scenes;
 
 import com.andrejlohn.mariobros.MarioBros;
+import com.andrejlohn.mariobros.session.GameSession;
+import com.andrejlohn.mariobros.tools.FrameProfiler;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.graphics.g2d.Batch;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
-import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.scenes.scene2d.Actor;
 import com.badlogic.gdx.scenes.scene2d.Stage;
 import com.badlogic.gdx.scenes.scene2d.ui.Label;
 import com.badlogic.gdx.scenes.scene2d.ui.Table;
 import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.StringBuilder;
 import com.badlogic.gdx.utils.viewport.FitViewport;
 import com.badlogic.gdx.utils.viewport.Viewport;
 
 /**
  * Represents the games HUD containing world, timer and score information.
- * This information is displayed via libGDX scene2D labels.
+ * This information is displayed via libGDX scene2D labels. The timer and score are owned by the
+ * game session; the HUD only shows them.
  *
  * @version %I%, %G%
  * @see Disposable
@@ -26,22 +30,30 @@ public class Hud implements Disposable {
     public Stage stage;
     private Viewport viewport;
 
-    private Integer worldTimer;
-    private float timeCount;
-    private static Integer score;
+    private GameSession session;
+    private int worldTimer;
+    private int score;
+
+    // Reused label text, so updating the labels does not allocate
+    private StringBuilder text;
 
     private Label countdownLabel;
-    private static Label scoreLabel;
+    private Label scoreLabel;
     private Label timeLabel;
     private Label levelLabel;
     private Label worldLabel;
     private Label marioLabel;
 
+    // Profiler overlay, hidden by default
+    private StringBuilder profileText;
+    private Label profileLabel;
+
     /**
      * Creates the HUD and sets up the stage, the viewport, all needed labels and the label table
-     * based on the games SpriteBatch.
+     * based on the games batch.
      *
-     * @param sb    the games SpriteBatch
+     * @param sb        the games batch
+     * @param session   the game session to show the timer and score of
      * @see         Viewport
      * @see         Stage
      * @see         Label
@@ -49,10 +61,11 @@ public class Hud implements Disposable {
      * @see         Table#row()
      * @see         Stage#addActor(Actor)
      */
-    public Hud(SpriteBatch sb) {
-        worldTimer = 300;
-        timeCount = 0;
-        score = 0;
+    public Hud(Batch sb, GameSession session) {
+        this.session = session;
+        worldTimer = session.getWorldTimer();
+        score = session.getScore();
+        text = new StringBuilder(8);
 
         viewport = new FitViewport(MarioBros.V_WIDTH, MarioBros.V_HEIGHT, new OrthographicCamera());
 
@@ -63,10 +76,10 @@ public class Hud implements Disposable {
         table.setFillParent(true);
 
         countdownLabel = new Label(
-                String.format("%03d", worldTimer),
+                digits(worldTimer, 3),
                 new Label.LabelStyle(new BitmapFont(), Color.WHITE));
         scoreLabel = new Label(
-                String.format("%06d", score),
+                digits(score, 6),
                 new Label.LabelStyle(new BitmapFont(), Color.WHITE));
         timeLabel = new Label(
                 "TIME",
@@ -88,25 +101,71 @@ public class Hud implements Disposable {
         table.add(countdownLabel).expandX();
 
         stage.addActor(table);
+
+        profileText = new StringBuilder(256);
+        profileLabel = new Label("", new Label.LabelStyle(new BitmapFont(), Color.YELLOW));
+        profileLabel.setFontScale(0.7f);
+        profileLabel.setPosition(4, 4);
+        profileLabel.setVisible(false);
+        stage.addActor(profileLabel);
     }
 
     /**
-     * Updates the HUD based on the time passed.
+     * Updates the HUD labels whenever the timer or the score of the game session changed. The
+     * labels copy the reused label text, so no strings are allocated.
      *
-     * @param dt    the time passed
+     * @see GameSession#getWorldTimer()
+     * @see GameSession#getScore()
+     * @see Label#setText(CharSequence)
      */
-    public void update(float dt) {
-        timeCount += dt;
-        if(timeCount >= 1) {
-            worldTimer--;
-            countdownLabel.setText(String.format("%03d", worldTimer));
-            timeCount = 0;
+    public void update() {
+        if(worldTimer != session.getWorldTimer()) {
+            worldTimer = session.getWorldTimer();
+            countdownLabel.setText(digits(worldTimer, 3));
+        }
+        if(score != session.getScore()) {
+            score = session.getScore();
+            scoreLabel.setText(digits(score, 6));
         }
     }
 
-    public static void addScore(int value) {
-        score += value;
-        scoreLabel.setText(String.format("%06d", score));
+    /**
+     * Shows the percentiles of the given profiler in the overlay, if visible. The overlay text is
+     * reused, so no strings are allocated.
+     *
+     * @param profiler  the frame profiler
+     * @see             FrameProfiler#describe(StringBuilder)
+     */
+    public void updateProfile(FrameProfiler profiler) {
+        if(!profileLabel.isVisible()) {
+            return;
+        }
+        profileText.setLength(0);
+        profiler.describe(profileText);
+        profileLabel.setText(profileText);
+        profileLabel.pack();
+    }
+
+    public boolean isProfileVisible() {
+        return profileLabel.isVisible();
+    }
+
+    public void setProfileVisible(boolean visible) {
+        profileLabel.setVisible(visible);
+    }
+
+    /**
+     * Writes a value with leading zeros into the reused label text.
+     *
+     * @param value     the value
+     * @param length    the minimum number of digits
+     * @return          the label text
+     * @see             StringBuilder#append(int, int)
+     */
+    private StringBuilder digits(int value, int length) {
+        text.setLength(0);
+        text.append(value, length);
+        return text;
     }
 
     /**
@@ -0,0 +1,149 @@
+package com.andrejlohn.mariobros.screens;
+
+import com.andrejlohn.mariobros.MarioBros;
+import com.andrejlohn.mariobros.level.LevelData;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Screen;
+import com.badlogic.gdx.assets.AssetManager;
+import com.badlogic.gdx.audio.Music;
+import com.badlogic.gdx.audio.Sound;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.badlogic.gdx.utils.viewport.FitViewport;
+import com.badlogic.gdx.utils.viewport.Viewport;
+
+/**
+ * This class represents the loading screen shown before a game starts. It queues all assets the
+ * PlayScreen needs which are not resident yet and loads them incrementally, spending at most
+ * {@link #LOAD_BUDGET_MILLIS} per frame, so the screen keeps rendering and the app stays
+ * responsive. A progress bar shows the loading progress. Once all assets are loaded the
+ * PlayScreen is shown.
+ *
+ * @version %I%, %G%
+ * @see     AssetManager#update(int)
+ * @see     PlayScreen
+ */
+public class LoadingScreen implements Screen {
+
+    // Leave some of a 60 fps frame for rendering the loading screen
+    public static final int LOAD_BUDGET_MILLIS = 10;
+
+    private static final float BAR_WIDTH = 200;
+    private static final float BAR_HEIGHT = 8;
+
+    private static final String[] SOUNDS = {
+            "audio/sounds/smb_coin.wav",
+            "audio/sounds/smb_bump.wav",
+            "audio/sounds/smb_breakblock.wav",
+            "audio/sounds/smb_powerup_appears.wav",
+            "audio/sounds/smb_powerup.wav",
+            "audio/sounds/smb_pipe.wav",
+            "audio/sounds/smb_stomp.wav",
+            "audio/music/smb_mariodie.wav"
+    };
+
+    private static final String[] MUSIC = {
+            "audio/music/01_main_theme_overworld.mp3",
+            "audio/music/smb_stage_clear.wav"
+    };
+
+    private MarioBros game;
+    private AssetManager manager;
+
+    private Viewport viewport;
+    private ShapeRenderer shapes;
+
+    /**
+     * Creates the loading screen and queues the assets not loaded yet.
+     *
+     * @param game  the MarioBros game
+     * @see         AssetManager#load(String, Class)
+     */
+    public LoadingScreen(MarioBros game) {
+        this.game = game;
+        manager = game.getManager();
+
+        viewport = new FitViewport(MarioBros.V_WIDTH, MarioBros.V_HEIGHT, new OrthographicCamera());
+        shapes = new ShapeRenderer();
+
+        for(int i = 0; i < SOUNDS.length; i++) {
+            queue(SOUNDS[i], Sound.class);
+        }
+        for(int i = 0; i < MUSIC.length; i++) {
+            queue(MUSIC[i], Music.class);
+        }
+        queue(MarioBros.ATLAS, TextureAtlas.class);
+        queue(MarioBros.LEVEL, LevelData.class);
+    }
+
+    private void queue(String fileName, Class<?> type) {
+        if(!manager.isLoaded(fileName, type)) {
+            manager.load(fileName, type);
+        }
+    }
+
+    @Override
+    public void show() {
+
+    }
+
+    /**
+     * Loads assets for at most {@link #LOAD_BUDGET_MILLIS} and draws the progress bar. Shows the
+     * PlayScreen once all assets are loaded.
+     *
+     * @param delta the time passed
+     * @see         AssetManager#update(int)
+     * @see         AssetManager#getProgress()
+     */
+    @Override
+    public void render(float delta) {
+        if(manager.update(LOAD_BUDGET_MILLIS)) {
+            game.setScreen(new PlayScreen(game));
+            dispose();
+            return;
+        }
+
+        Gdx.gl.glClearColor(0, 0, 0, 1);
+        Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
+
+        float x = (MarioBros.V_WIDTH - BAR_WIDTH) / 2;
+        float y = (MarioBros.V_HEIGHT - BAR_HEIGHT) / 2;
+        viewport.apply();
+        shapes.setProjectionMatrix(viewport.getCamera().combined);
+        shapes.begin(ShapeRenderer.ShapeType.Line);
+        shapes.setColor(Color.WHITE);
+        shapes.rect(x, y, BAR_WIDTH, BAR_HEIGHT);
+        shapes.end();
+        shapes.begin(ShapeRenderer.ShapeType.Filled);
+        shapes.rect(x, y, BAR_WIDTH * manager.getProgress(), BAR_HEIGHT);
+        shapes.end();
+    }
+
+    @Override
+    public void resize(int width, int height) {
+        viewport.update(width, height);
+    }
+
+    @Override
+    public void pause() {
+
+    }
+
+    @Override
+    public void resume() {
+
+    }
+
+    @Override
+    public void hide() {
+
+    }
+
+    @Override
+    public void dispose() {
+        shapes.dispose();
+    }
+}
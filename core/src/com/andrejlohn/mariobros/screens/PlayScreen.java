@@ -1,15 +1,21 @@
 package com.andrejlohn.mariobros.screens;
 
 import com.andrejlohn.mariobros.MarioBros;
+import com.andrejlohn.mariobros.level.LevelData;
+import com.andrejlohn.mariobros.level.LevelMapBuilder;
+import com.andrejlohn.mariobros.replay.InputRecorder;
 import com.andrejlohn.mariobros.scenes.Hud;
+import com.andrejlohn.mariobros.session.GameSession;
+import com.andrejlohn.mariobros.session.SnapshotRing;
 import com.andrejlohn.mariobros.sprites.enemies.Enemy;
 import com.andrejlohn.mariobros.sprites.Mario;
+import com.andrejlohn.mariobros.sprites.SpriteRegistry;
 import com.andrejlohn.mariobros.sprites.items.Item;
-import com.andrejlohn.mariobros.sprites.items.ItemDef;
-import com.andrejlohn.mariobros.sprites.items.Mushroom;
-import com.andrejlohn.mariobros.tools.B2WorldCreator;
 import com.andrejlohn.mariobros.tools.Controller;
-import com.andrejlohn.mariobros.tools.WorldContactListener;
+import com.andrejlohn.mariobros.tools.FrameProfiler;
+import com.andrejlohn.mariobros.tools.InputSource;
+import com.andrejlohn.mariobros.tools.LevelStreamer;
+import com.andrejlohn.mariobros.tools.TileChunkRenderer;
 import com.badlogic.gdx.Application;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Input;
@@ -17,31 +23,40 @@ import com.badlogic.gdx.Screen;
 import com.badlogic.gdx.audio.Music;
 import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.graphics.g2d.Sprite;
 import com.badlogic.gdx.graphics.g2d.TextureAtlas;
-import com.badlogic.gdx.maps.Map;
+import com.badlogic.gdx.graphics.profiling.GLProfiler;
 import com.badlogic.gdx.maps.tiled.TiledMap;
-import com.badlogic.gdx.maps.tiled.TmxMapLoader;
-import com.badlogic.gdx.maps.tiled.renderers.OrthogonalTiledMapRenderer;
 import com.badlogic.gdx.math.Matrix4;
-import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.Box2DDebugRenderer;
 import com.badlogic.gdx.physics.box2d.World;
-import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.TimeUtils;
+import com.badlogic.gdx.utils.async.AsyncExecutor;
 import com.badlogic.gdx.utils.viewport.FitViewport;
 import com.badlogic.gdx.utils.viewport.Viewport;
 
-import java.util.concurrent.LinkedBlockingQueue;
-
 /**
  * This class represents the game screen in a running game. It implements the libGDX Screen
  * interface. It contains the game camera, viewport and HUD. An orthogonal tiled map is used as the
- * game map.
+ * game map. The game itself is simulated by a game session which this screen renders.
  *
  * @version %I%, %G%
  * @see     Screen
+ * @see     GameSession
  */
 public class PlayScreen implements Screen {
 
+    public static final float STEP_TIME = GameSession.STEP_TIME;
+    public static final int MAX_STEPS_PER_FRAME = 5;
+
+    // Sprites are drawn at interpolated positions, so they are culled with a margin of one tile
+    private static final float VIEW_MARGIN = 16 / MarioBros.PPM;
+
+    // Keep the last 10 seconds of frames at 60 fps, refresh the overlay twice a second
+    public static final int PROFILE_FRAMES = 600;
+    public static final int PROFILE_REFRESH = 30;
+
     // Game
     private MarioBros game;
     private TextureAtlas atlas;
@@ -51,43 +66,59 @@ public class PlayScreen implements Screen {
     private Viewport gamePort;
     private Hud hud;
 
-    // Tiled map
-    private TmxMapLoader mapLoader;
+    // Tiled map, streamed by the session
     private TiledMap map;
-    private OrthogonalTiledMapRenderer renderer;
+    private TileChunkRenderer renderer;
+    private AsyncExecutor streamingExecutor;
 
     // Box2D
-    private World world;
     private Box2DDebugRenderer b2dr;
-    private B2WorldCreator creator;
 
-    // Sprites
-    private Mario player;
-    private Array<Item> items;
-    private LinkedBlockingQueue<ItemDef> itemsToSpawn;
+    // Game session
+    private GameSession session;
 
     // Music
     private Music music;
 
-    // Controller
+    // Controller and the recorder of its input, null when not recording
     private Controller controller;
+    private InputRecorder recorder;
+
+    // Checkpoint to retry from, null unless debugging or while recording
+    private SnapshotRing checkpoint;
+
+    // Fixed time step
+    private float accumulator;
+    private float alpha;
+
+    // Profiling, disabled and null until turned on
+    private FrameProfiler profiler;
+    private GLProfiler glProfiler;
 
 
     /**
-     * Creates the PlayScreen for a running MarioBros game. Sets up the game camera, viewport, HUD
-     * and game map.
+     * Creates the PlayScreen for a running MarioBros game. Sets up the game camera, viewport, HUD,
+     * game map and the game session. All assets must have been loaded by the AssetManager, see
+     * LoadingScreen. The tiled map is built from the loaded level data with empty tile layers,
+     * which the game session streams the tiles into. Level chunks are prepared on a background
+     * thread. If the game has a replay store, the controller input is recorded into a new replay.
+     * If the game is set to profile, profiling starts right away.
      *
      * @param game  the MarioBros game
      * @see         FitViewport
      * @see         Hud
-     * @see         B2WorldCreator
-     * @see         OrthogonalTiledMapRenderer
-     * @see         TmxMapLoader#load(String)
+     * @see         GameSession
+     * @see         FrameProfiler
+     * @see         GLProfiler
+     * @see         LevelMapBuilder
+     * @see         LevelStreamer
+     * @see         TileChunkRenderer
+     * @see         LoadingScreen
      * @see         OrthographicCamera#position
      */
     public PlayScreen(MarioBros game) {
         this.game = game;
-        atlas = new TextureAtlas("Mario_and_Enemies.pack");
+        atlas = game.getManager().get(MarioBros.ATLAS, TextureAtlas.class);
 
         gameCam = new OrthographicCamera();
         gamePort = new FitViewport(
@@ -95,149 +126,152 @@ public class PlayScreen implements Screen {
                 MarioBros.V_HEIGHT / MarioBros.PPM,
                 gameCam);
 
-        hud = new Hud(game.batch);
         controller = new Controller(game);
+        if(game.getReplayStore() != null) {
+            recorder = new InputRecorder(
+                    controller,
+                    game.getReplayStore().open(MarioBros.LEVEL),
+                    MarioBros.LEVEL);
+        }
 
-        mapLoader = new TmxMapLoader();
-        map = mapLoader.load("level1.tmx");
-        renderer = new OrthogonalTiledMapRenderer(map, 1 / MarioBros.PPM);
+        LevelData level = game.getManager().get(MarioBros.LEVEL, LevelData.class);
+        map = new LevelMapBuilder().buildEmpty(
+                level,
+                Gdx.files.internal(MarioBros.LEVEL),
+                game.getManager());
+        renderer = new TileChunkRenderer(map, 1 / MarioBros.PPM);
         gameCam.position.set(
                 gamePort.getWorldWidth() / 2,
                 gamePort.getWorldHeight() / 2,
                 0);
 
-        world = new World(new Vector2(0, -10), true);
         b2dr = new Box2DDebugRenderer();
 
-        creator = new B2WorldCreator(this, game.getManager());
-
-        player = new Mario(this, game.getManager());
+        session = new GameSession(
+                level,
+                recorder != null ? recorder : (InputSource) controller,
+                atlas,
+                map,
+                game.getManager());
+        session.getTiles().setTileListener(renderer);
+        streamingExecutor = new AsyncExecutor(1);
+        session.getStreamer().setExecutor(streamingExecutor);
+        session.getStreamer().setChunkListener(renderer);
+
+        profiler = FrameProfiler.disabled();
+
+        if(game.isDebug() && recorder == null) {
+            checkpoint = new SnapshotRing(session, 1);
+        }
 
-        world.setContactListener(new WorldContactListener());
+        hud = new Hud(game.batch, session);
+        if(game.isProfiling()) {
+            startProfiling();
+        }
 
         music = game.getManager().get("audio/music/01_main_theme_overworld.mp3", Music.class);
         music.setLooping(true);
         music.play();
-
-        items = new Array<Item>();
-        itemsToSpawn = new LinkedBlockingQueue<ItemDef>();
-    }
-
-    public void spawnItem(ItemDef iDef) {
-        itemsToSpawn.add(iDef);
-    }
-
-    public void handleSpawningItems() {
-        if(!itemsToSpawn.isEmpty()) {
-            ItemDef iDef = itemsToSpawn.poll();
-            if(iDef.type == Mushroom.class) {
-                items.add(new Mushroom(this, iDef.position.x, iDef.position.y));
-            }
-        }
     }
 
     /**
-     * Handles user input with respect to the time passed since the last update.
+     * Updates the play screen based on the time passed since the last update.
+     * This represents the update part of the game cycle. The game session is simulated in fixed
+     * time steps of {@link #STEP_TIME}. The time passed is accumulated and as many steps are run as
+     * fit into the accumulated time. The remainder is used to interpolate the sprite positions when
+     * rendering. At most {@link #MAX_STEPS_PER_FRAME} steps are run per update so a slow device
+     * drops simulation time instead of falling further and further behind. Once the game is over
+     * no further steps are run, so a recorded session ends on the same step as its replay. While
+     * recording, a keyframe of the session is written every keyframe interval.
+     * F3 or the menu key toggle the profiler overlay, the first press starts profiling. If the game
+     * is set to debug and not recording, F5 saves a checkpoint and F9 retries from it.
      *
      * @param dt    the time passed
-     * @see         Input#isTouched()
-     * @see         OrthographicCamera#position
+     * @see         GameSession#step()
+     * @see         SnapshotRing
+     * @see         OrthographicCamera#update()
+     * @see         TileChunkRenderer#setView(OrthographicCamera)
      */
-    public void handleInput(float dt) {
-        if(player.currentState != Mario.State.DEAD) {
-
-            if(controller.isUpPressed()) {
-
-                if(player.b2Body.getLinearVelocity().y == 0) {
-
-                    player.b2Body.applyLinearImpulse(
-                            new Vector2(0, 4f),
-                            player.b2Body.getWorldCenter(),
-                            true);
-                }
+    public void update(float dt) {
+        if(Gdx.input.isKeyJustPressed(Input.Keys.F3)
+                || Gdx.input.isKeyJustPressed(Input.Keys.MENU)) {
+            if(!profiler.isEnabled()) {
+                startProfiling();
+            } else {
+                hud.setProfileVisible(!hud.isProfileVisible());
             }
-
-            if(controller.isRightPressed() &&
-                    player.b2Body.getLinearVelocity().x <= 2) {
-
-                player.b2Body.applyLinearImpulse(
-                        new Vector2(0.1f, 0),
-                        player.b2Body.getWorldCenter(),
-                        true);
+        }
+        if(checkpoint != null && !session.isGameOver()) {
+            if(Gdx.input.isKeyJustPressed(Input.Keys.F5)) {
+                checkpoint.capture();
+            } else if(Gdx.input.isKeyJustPressed(Input.Keys.F9)
+                    && checkpoint.restoreNewest() >= 0
+                    && session.getPlayer().currentState != Mario.State.DEAD) {
+                music.play();
             }
+        }
 
-            if(controller.isLeftPressed() &&
-                    player.b2Body.getLinearVelocity().x >= -2) {
+        accumulator += dt;
 
-                player.b2Body.applyLinearImpulse(
-                        new Vector2(-0.1f, 0),
-                        player.b2Body.getWorldCenter(),
-                        true);
+        int steps = 0;
+        while(accumulator >= STEP_TIME
+                && steps < MAX_STEPS_PER_FRAME
+                && !session.isGameOver()) {
+            if(recorder != null) {
+                recorder.next();
             }
-        }
-    }
-
-    /**
-     * Updates the play screen based on the time passed since the last update.
-     * This represents the update part of the game cycle.
-     *
-     * @param dt    the time passed
-     * @see         World#step(float, int, int)
-     * @see         OrthographicCamera#update()
-     * @see         OrthogonalTiledMapRenderer#setView(OrthographicCamera)
-     * @see         Mario#update(float)
-     */
-    public void update(float dt) {
-        handleInput(dt);
-        handleSpawningItems();
-
-        world.step(1/60f, 6, 2);
-
-        player.update(dt);
-        for(Enemy enemy: creator.getEnemies()) {
-            // Activate enemies only when they are at most 2 tiles away from the screen edge
-            // (12+2)*16 = 224
-            //TODO check if enemy deactivation is necessary
-            if(enemy.getX() < player.getX() + 224 / MarioBros.PPM) {
-                enemy.b2Body.setActive(true);
+            session.step();
+            if(recorder != null) {
+                recorder.stepped(session);
             }
-            enemy.update(dt);
+            accumulator -= STEP_TIME;
+            steps++;
         }
-
-        for(Item item: items) {
-            item.update(dt);
+        if(accumulator >= STEP_TIME) {
+            accumulator %= STEP_TIME;
         }
+        alpha = accumulator / STEP_TIME;
 
-        hud.update(dt);
+        profiler.begin(FrameProfiler.Phase.UPDATE);
+        hud.update();
 
+        Mario player = session.getPlayer();
         if(player.currentState != Mario.State.DEAD) {
-            if(player.b2Body.getPosition().x < MarioBros.V_WIDTH / 2 / MarioBros.PPM) {
+            float playerX = player.getInterpolatedX(alpha) + player.getWidth() / 2;
+            if(playerX < MarioBros.V_WIDTH / 2 / MarioBros.PPM) {
                 gameCam.position.x = MarioBros.V_WIDTH / 2 / MarioBros.PPM;
             } else {
-                gameCam.position.x = player.b2Body.getPosition().x;
+                gameCam.position.x = playerX;
             }
         }
 
         gameCam.update();
         renderer.setView(gameCam);
+        profiler.end(FrameProfiler.Phase.UPDATE);
     }
 
     /**
-     * Gets the texture atlas.
+     * Starts measuring the frames and the simulation steps and shows the profiler overlay. The GL
+     * calls are only intercepted from now on.
      *
-     * @see TextureAtlas
+     * @see FrameProfiler
+     * @see GLProfiler#enable()
      */
-    public TextureAtlas getTextureAtlas() {
-        return atlas;
+    private void startProfiling() {
+        profiler = new FrameProfiler(PROFILE_FRAMES);
+        session.setProfiler(profiler);
+        glProfiler = new GLProfiler(Gdx.graphics);
+        glProfiler.enable();
+        hud.setProfileVisible(true);
     }
 
     /**
-     * Gets the game world.
+     * Gets the texture atlas.
      *
-     * @return  the world
+     * @see TextureAtlas
      */
-    public World getWorld() {
-        return world;
+    public TextureAtlas getTextureAtlas() {
+        return atlas;
     }
 
     /**
@@ -249,6 +283,15 @@ public class PlayScreen implements Screen {
         return map;
     }
 
+    /**
+     * Gets the game session.
+     *
+     * @return  the session
+     */
+    public GameSession getSession() {
+        return session;
+    }
+
     public MarioBros getGame() {
         return game;
     }
@@ -260,42 +303,81 @@ public class PlayScreen implements Screen {
 
     /**
      * Renders the game to the device screen based on the time passed since the last rendering.
-     * This represents the render part of the game cycle.
+     * This represents the render part of the game cycle. While profiling, each phase of the frame
+     * is measured by the frame profiler, together with the render calls and texture bindings of the
+     * frame.
      *
      * @param delta the time passed
      * @see         OrthographicCamera#combined
      * @see         com.badlogic.gdx.graphics.g2d.SpriteBatch#setProjectionMatrix(Matrix4)
      * @see         Box2DDebugRenderer#render(World, Matrix4)
+     * @see         FrameProfiler
      */
     @Override
     public void render(float delta) {
+        profiler.beginFrame();
+        if(glProfiler != null) {
+            glProfiler.reset();
+        }
+        int renderCalls = game.batch.totalRenderCalls;
+
         update(delta);
 
+        profiler.begin(FrameProfiler.Phase.MAP);
         Gdx.gl.glClearColor(0, 0, 0, 1);
         Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
 
         renderer.render();
+        profiler.end(FrameProfiler.Phase.MAP);
 
         // render Box2DDebugLines
-        //b2dr.render(world, gameCam.combined);
+        //b2dr.render(session.getWorld(), gameCam.combined);
 
+        profiler.begin(FrameProfiler.Phase.SPRITES);
         game.batch.setProjectionMatrix(gameCam.combined);
         game.batch.begin();
-        player.draw(game.batch);
-        for(Enemy enemy: creator.getEnemies()) {
-            enemy.draw(game.batch);
+        session.getPlayer().draw(game.batch, alpha);
+        // Only draw the enemies and items in view
+        float viewLeft = gameCam.position.x - gamePort.getWorldWidth() / 2 - VIEW_MARGIN;
+        float viewRight = gameCam.position.x + gamePort.getWorldWidth() / 2 + VIEW_MARGIN;
+        float viewBottom = gameCam.position.y - gamePort.getWorldHeight() / 2 - VIEW_MARGIN;
+        float viewTop = gameCam.position.y + gamePort.getWorldHeight() / 2 + VIEW_MARGIN;
+        SpriteRegistry<Enemy> enemies = session.getEnemies().getLiveEnemies();
+        for(int i = enemies.first(viewLeft), end = enemies.end(viewRight); i < end; i++) {
+            Enemy enemy = enemies.get(i);
+            if(isInView(enemy, viewLeft, viewBottom, viewTop)) {
+                enemy.draw(game.batch, alpha);
+            }
         }
-        for(Item item: items) {
-            item.draw(game.batch);
+        SpriteRegistry<Item> items = session.getItems().getLiveItems();
+        for(int i = items.first(viewLeft), end = items.end(viewRight); i < end; i++) {
+            Item item = items.get(i);
+            if(isInView(item, viewLeft, viewBottom, viewTop)) {
+                item.draw(game.batch, alpha);
+            }
         }
         game.batch.end();
+        profiler.end(FrameProfiler.Phase.SPRITES);
 
+        profiler.begin(FrameProfiler.Phase.HUD);
+        if(profiler.getFrames() % PROFILE_REFRESH == 0) {
+            hud.updateProfile(profiler);
+        }
         game.batch.setProjectionMatrix(hud.stage.getCamera().combined);
         hud.stage.draw();
+        profiler.end(FrameProfiler.Phase.HUD);
 
+        profiler.begin(FrameProfiler.Phase.CONTROLLER);
         if(Gdx.app.getType() == Application.ApplicationType.Android) {
             controller.draw();
         }
+        profiler.end(FrameProfiler.Phase.CONTROLLER);
+
+        if(glProfiler != null) {
+            profiler.endFrame(
+                    game.batch.totalRenderCalls - renderCalls,
+                    glProfiler.getTextureBindings());
+        }
 
         if(gameOver()) {
             game.setScreen(new GameOverScreen(game));
@@ -303,6 +385,23 @@ public class PlayScreen implements Screen {
         }
     }
 
+    /**
+     * Checks whether a sprite from a range query overlaps the view. The range query only bounds
+     * the sprite x-coordinate, so the sprite extent is checked here.
+     *
+     * @param sprite        the sprite
+     * @param viewLeft      the left view edge, including the margin
+     * @param viewBottom    the bottom view edge, including the margin
+     * @param viewTop       the top view edge, including the margin
+     * @return              <code>true</code> if the sprite is in view
+     *                      <code>false</code> else
+     */
+    private boolean isInView(Sprite sprite, float viewLeft, float viewBottom, float viewTop) {
+        return sprite.getX() + sprite.getWidth() >= viewLeft
+                && sprite.getY() + sprite.getHeight() >= viewBottom
+                && sprite.getY() <= viewTop;
+    }
+
     /**
      * Resizes the viewport to a given screen size.
      *
@@ -332,27 +431,59 @@ public class PlayScreen implements Screen {
 
     /**
      * Disposes als play screen components not subject to the garbage collection. Prevents memory
-     * leak.
+     * leak. If profiling was turned on, the recorded frames are written to a CSV file in the local
+     * storage, if available.
+     * The tiled map is disposed, as the session changed its tiles, so the next game builds it
+     * again. The level data and the other assets stay loaded. A recording is finished with the
+     * outcome of the session.
      *
-     * @see Map#dispose()
-     * @see OrthogonalTiledMapRenderer#dispose()
-     * @see World#dispose()
+     * @see AsyncExecutor#dispose()
+     * @see TiledMap#dispose()
+     * @see TileChunkRenderer#dispose()
+     * @see GameSession#dispose()
      * @see Box2DDebugRenderer#dispose()
      * @see Hud#dispose()
+     * @see FrameProfiler#writeCsv(com.badlogic.gdx.files.FileHandle)
+     * @see InputRecorder#finish(int, int, boolean, float, float)
      */
     @Override
     public void dispose() {
+        if(glProfiler != null) {
+            glProfiler.disable();
+        }
+        if(profiler.isEnabled()
+                && Gdx.files.isLocalStorageAvailable()
+                && profiler.getFrames() > 0) {
+            try {
+                profiler.writeCsv(Gdx.files.local("profile-" + TimeUtils.millis() + ".csv"));
+            } catch(GdxRuntimeException e) {
+                Gdx.app.error("PlayScreen", "Could not write the frame profile", e);
+            }
+        }
+
+        if(recorder != null) {
+            Mario player = session.getPlayer();
+            try {
+                recorder.finish(
+                        session.getScore(),
+                        session.getWorldTimer(),
+                        player.currentState == Mario.State.DEAD,
+                        player.b2Body.getPosition().x,
+                        player.b2Body.getPosition().y);
+            } catch(GdxRuntimeException e) {
+                Gdx.app.error("PlayScreen", "Could not write the replay", e);
+            }
+        }
+
+        streamingExecutor.dispose();
         map.dispose();
         renderer.dispose();
-        world.dispose();
+        session.dispose();
         b2dr.dispose();
         hud.dispose();
     }
 
     public boolean gameOver() {
-        if(player.currentState == Mario.State.DEAD && player.getStateTimer() > 3) {
-            return true;
-        }
-        return false;
+        return session.isGameOver();
     }
 }
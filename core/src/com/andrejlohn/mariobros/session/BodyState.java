@@ -0,0 +1,104 @@
+package com.andrejlohn.mariobros.session;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.Filter;
+import com.badlogic.gdx.physics.box2d.Fixture;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class writes the state of a Box2D body into a session state buffer and reads it back into
+ * a body with the same fixtures. The state is the transform, the velocities and the collision
+ * filters of the fixtures, in the order of the fixture list.
+ *
+ * <pre>
+ * float    x, y, angle, linear velocity x, y, angular velocity
+ * byte     fixture count
+ *          per fixture: short category bits, mask bits, group index
+ * </pre>
+ *
+ * Sleeping is not part of the state, the bodies of a session never fall asleep.
+ *
+ * @version %I%, %G%
+ * @see     GameSession#saveState(ByteBuffer)
+ */
+public final class BodyState {
+
+    public static final int MAX_FIXTURES = 4;
+
+    // The size of a body state in bytes, at most
+    public static final int SIZE = 6 * 4 + 1 + MAX_FIXTURES * 3 * 2;
+
+    private BodyState() {
+    }
+
+    /**
+     * Writes the state of a body.
+     *
+     * @param buffer    the buffer to write to
+     * @param body      the body
+     */
+    public static void write(ByteBuffer buffer, Body body) {
+        Vector2 position = body.getPosition();
+        Vector2 velocity = body.getLinearVelocity();
+        buffer.putFloat(position.x);
+        buffer.putFloat(position.y);
+        buffer.putFloat(body.getAngle());
+        buffer.putFloat(velocity.x);
+        buffer.putFloat(velocity.y);
+        buffer.putFloat(body.getAngularVelocity());
+
+        Array<Fixture> fixtures = body.getFixtureList();
+        buffer.put((byte) fixtures.size);
+        for(int i = 0; i < fixtures.size; i++) {
+            Filter filter = fixtures.get(i).getFilterData();
+            buffer.putShort(filter.categoryBits);
+            buffer.putShort(filter.maskBits);
+            buffer.putShort(filter.groupIndex);
+        }
+    }
+
+    /**
+     * Reads the state of a body into it in place. The body must have been defined with the
+     * fixtures it had when its state was written. The filters are only set if they differ, as
+     * setting them makes the world filter the contacts of the fixture again.
+     *
+     * @param buffer    the buffer to read from
+     * @param body      the body
+     * @throws          GdxRuntimeException if the number of fixtures differs
+     */
+    public static void read(ByteBuffer buffer, Body body) {
+        float x = buffer.getFloat();
+        float y = buffer.getFloat();
+        body.setTransform(x, y, buffer.getFloat());
+        float velocityX = buffer.getFloat();
+        float velocityY = buffer.getFloat();
+        body.setLinearVelocity(velocityX, velocityY);
+        body.setAngularVelocity(buffer.getFloat());
+
+        Array<Fixture> fixtures = body.getFixtureList();
+        int count = buffer.get();
+        if(count != fixtures.size) {
+            throw new GdxRuntimeException("Corrupt session state: " + count
+                    + " fixtures saved, " + fixtures.size + " defined");
+        }
+        for(int i = 0; i < count; i++) {
+            Fixture fixture = fixtures.get(i);
+            short categoryBits = buffer.getShort();
+            short maskBits = buffer.getShort();
+            short groupIndex = buffer.getShort();
+            Filter filter = fixture.getFilterData();
+            if(filter.categoryBits != categoryBits
+                    || filter.maskBits != maskBits
+                    || filter.groupIndex != groupIndex) {
+                filter.categoryBits = categoryBits;
+                filter.maskBits = maskBits;
+                filter.groupIndex = groupIndex;
+                fixture.setFilterData(filter);
+            }
+        }
+    }
+}
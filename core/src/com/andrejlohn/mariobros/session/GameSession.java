@@ -0,0 +1,644 @@
+package com.andrejlohn.mariobros.session;
+
+import com.andrejlohn.mariobros.MarioBros;
+import com.andrejlohn.mariobros.level.LevelData;
+import com.andrejlohn.mariobros.screens.PlayScreen;
+import com.andrejlohn.mariobros.sprites.Mario;
+import com.andrejlohn.mariobros.sprites.items.ItemType;
+import com.andrejlohn.mariobros.tools.B2WorldCreator;
+import com.andrejlohn.mariobros.tools.EnemyManager;
+import com.andrejlohn.mariobros.tools.FrameProfiler;
+import com.andrejlohn.mariobros.tools.InputSource;
+import com.andrejlohn.mariobros.tools.ItemManager;
+import com.andrejlohn.mariobros.tools.LevelStreamer;
+import com.andrejlohn.mariobros.tools.TileObjectManager;
+import com.andrejlohn.mariobros.tools.WorldCommandBuffer;
+import com.andrejlohn.mariobros.tools.WorldContactListener;
+import com.badlogic.gdx.assets.AssetManager;
+import com.badlogic.gdx.audio.Music;
+import com.badlogic.gdx.audio.Sound;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.maps.tiled.TiledMap;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.BodyDef;
+import com.badlogic.gdx.physics.box2d.CircleShape;
+import com.badlogic.gdx.physics.box2d.World;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class represents a running game session. It contains the Box2D world, the player
+ * character, enemies and items as well as the score and the world timer and simulates the game in
+ * fixed time steps. Game logic counts time in steps rather than adding up floats, the sprites are
+ * updated in a stable order, and a rolling checksum of the state is computed after every step, so
+ * two simulations of the session with the same input can be checked to run alike step by step.
+ * Bodies never fall asleep and contacts do not warm start their solver from the previous step, so
+ * Box2D keeps little state between steps beyond what the session state holds. What it keeps, the
+ * broadphase proxies and the order of the contacts, depends on the history of the world, so every
+ * {@link #REBUILD_INTERVAL} steps the world is rebuilt from the session state alone. From a
+ * rebuild on, a session restored from the state of that step runs exactly like the original one.
+ * The session does not depend on a graphics or audio back end: without a texture
+ * atlas, tiled map and asset manager it runs headless, e.g. for automated playthroughs. The
+ * PlayScreen renders a session created with all of them.
+ *
+ * @version %I%, %G%
+ * @see     PlayScreen
+ * @see     TileGrid
+ * @see     Disposable
+ */
+public class GameSession implements Disposable {
+
+    public static final int TICKS_PER_SECOND = 60;
+    public static final float STEP_TIME = 1f / TICKS_PER_SECOND;
+    public static final int WORLD_TIME = 300;
+
+    // Rebuild the Box2D world every 10 seconds of play
+    public static final int REBUILD_INTERVAL = 600;
+
+    // Header of a saved session state
+    public static final int STATE_MAGIC = 0x4D425353;
+    public static final int STATE_VERSION = 3;
+
+    // Level
+    private LevelData level;
+    private TileGrid tiles;
+    private TiledMap map;
+
+    // Graphics and audio, null when running headless
+    private TextureAtlas atlas;
+    private AssetManager manager;
+
+    // Box2D
+    private World world;
+    private B2WorldCreator creator;
+    private LevelStreamer streamer;
+    private TileObjectManager tileObjects;
+    private WorldCommandBuffer commands;
+    private WorldContactListener contacts;
+    private EnemyManager enemies;
+
+    // An inactive body to create a fixture on, which makes the world look for new contacts
+    private Body contactTrigger;
+    private CircleShape triggerShape;
+
+    // Sprites
+    private Mario player;
+    private ItemManager items;
+
+    // Input
+    private InputSource input;
+
+    // Steps simulated, score and timer, steps since the timer last counted down
+    private int stepCount;
+    private int score;
+    private int worldTimer;
+    private int timeTicks;
+
+    // Rolling checksum of the state after each step
+    private StateHash hash;
+    private int checksum;
+
+    // Reused buffer to rebuild the world from
+    private ByteBuffer rebuildState;
+
+    // Profiler
+    private FrameProfiler profiler;
+
+    /**
+     * Creates a headless game session.
+     *
+     * @param level the level data
+     * @param input the player input
+     */
+    public GameSession(LevelData level, InputSource input) {
+        this(level, input, null, null, null);
+    }
+
+    /**
+     * Creates the game session. Sets up the Box2D world and the player character and materializes
+     * the level around the start position.
+     *
+     * @param level     the level data
+     * @param input     the player input
+     * @param atlas     the texture atlas, <code>null</code> to run headless
+     * @param map       the tiled map with empty tile layers to stream the tiles into, may be
+     *                  <code>null</code>
+     * @param manager   the asset manager to play sounds with, may be <code>null</code>
+     * @see             B2WorldCreator
+     * @see             LevelStreamer
+     * @see             TileObjectManager
+     * @see             WorldContactListener
+     */
+    public GameSession(
+            LevelData level,
+            InputSource input,
+            TextureAtlas atlas,
+            TiledMap map,
+            AssetManager manager) {
+        this.level = level;
+        this.input = input;
+        this.atlas = atlas;
+        this.map = map;
+        this.manager = manager;
+
+        tiles = new TileGrid(level, map);
+        worldTimer = WORLD_TIME;
+        timeTicks = 0;
+        score = 0;
+        hash = new StateHash();
+        checksum = 0;
+        profiler = FrameProfiler.disabled();
+
+        contacts = new WorldContactListener();
+        createWorld();
+        triggerShape = new CircleShape();
+        commands = new WorldCommandBuffer(this);
+        creator = new B2WorldCreator(this);
+        tileObjects = new TileObjectManager(this);
+        streamer = new LevelStreamer(this, creator, map);
+        enemies = new EnemyManager(this);
+        player = new Mario(this);
+        items = new ItemManager(this);
+        streamer.update(getCameraX());
+        tileObjects.update();
+        updateContacts();
+        rebuildState = ByteBuffer.allocate(getMaxStateSize());
+    }
+
+    /**
+     * Creates the Box2D world without sleeping and warm starting, and the inactive body to trigger
+     * the search for new contacts on.
+     *
+     * @see #updateContacts()
+     */
+    private void createWorld() {
+        world = new World(new Vector2(0, -10), false);
+        world.setWarmStarting(false);
+        world.setContactListener(contacts);
+        BodyDef bDef = new BodyDef();
+        bDef.active = false;
+        contactTrigger = world.createBody(bDef);
+    }
+
+    /**
+     * Spawns an item right after the current or next world step. May be called from contact
+     * callbacks and other threads.
+     *
+     * @param type  the item type
+     * @param x     the position x-coordinate
+     * @param y     the position y-coordinate
+     * @see         WorldCommandBuffer#spawnItem(ItemType, float, float)
+     */
+    public void spawnItem(ItemType type, float x, float y) {
+        commands.spawnItem(type, x, y);
+    }
+
+    /**
+     * Handles the player input of a step. The player character only jumps while its feet touch
+     * something to stand on.
+     *
+     * @see InputSource
+     * @see Mario#isOnGround()
+     */
+    public void handleInput() {
+        if(player.currentState != Mario.State.DEAD) {
+
+            if(input.isUpPressed()) {
+
+                if(player.isOnGround() && player.b2Body.getLinearVelocity().y == 0) {
+
+                    player.b2Body.applyLinearImpulse(
+                            0,
+                            4f,
+                            player.b2Body.getWorldCenter().x,
+                            player.b2Body.getWorldCenter().y,
+                            true);
+                }
+            }
+
+            if(input.isRightPressed() &&
+                    player.b2Body.getLinearVelocity().x <= 2) {
+
+                player.b2Body.applyLinearImpulse(
+                        0.1f,
+                        0,
+                        player.b2Body.getWorldCenter().x,
+                        player.b2Body.getWorldCenter().y,
+                        true);
+            }
+
+            if(input.isLeftPressed() &&
+                    player.b2Body.getLinearVelocity().x >= -2) {
+
+                player.b2Body.applyLinearImpulse(
+                        -0.1f,
+                        0,
+                        player.b2Body.getWorldCenter().x,
+                        player.b2Body.getWorldCenter().y,
+                        true);
+            }
+        }
+    }
+
+    /**
+     * Runs a single simulation step of {@link #STEP_TIME}. The level is streamed and the brick
+     * and coin fixtures near the actors are materialized before the world step, so the contacts
+     * of the step see them. The world commands enqueued during the step, e.g. by contact callbacks,
+     * are applied right after it. After the sprites are updated, the contacts are brought up to
+     * date with the positions the step ended at, so between steps whether a contact touches only
+     * depends on where the bodies are, and no commands are pending. The checksum of the state is
+     * updated at the end of the step, and every {@link #REBUILD_INTERVAL} steps the world is
+     * rebuilt after it. The input, streaming, physics and update phases are measured by the
+     * profiler.
+     *
+     * @see World#step(float, int, int)
+     * @see WorldCommandBuffer#apply()
+     * @see #updateContacts()
+     * @see LevelStreamer#update(float)
+     * @see TileObjectManager#update()
+     * @see Mario#update()
+     * @see EnemyManager#update(float)
+     * @see ItemManager#update()
+     * @see #getChecksum()
+     * @see #rebuildWorld()
+     * @see FrameProfiler
+     */
+    public void step() {
+        profiler.step();
+
+        profiler.begin(FrameProfiler.Phase.INPUT);
+        player.savePreviousPosition();
+        enemies.savePreviousPositions();
+        items.savePreviousPositions();
+
+        handleInput();
+        profiler.end(FrameProfiler.Phase.INPUT);
+
+        profiler.begin(FrameProfiler.Phase.STREAMING);
+        streamer.update(getCameraX());
+        tileObjects.update();
+        profiler.end(FrameProfiler.Phase.STREAMING);
+
+        profiler.begin(FrameProfiler.Phase.PHYSICS);
+        contacts.beginStep();
+        world.step(STEP_TIME, 6, 2);
+        contacts.endStep();
+        commands.apply();
+        profiler.end(FrameProfiler.Phase.PHYSICS);
+
+        profiler.begin(FrameProfiler.Phase.UPDATE);
+        player.update();
+        enemies.update(getCameraX());
+
+        items.update();
+        profiler.end(FrameProfiler.Phase.UPDATE);
+
+        profiler.begin(FrameProfiler.Phase.PHYSICS);
+        updateContacts();
+        commands.apply();
+        profiler.end(FrameProfiler.Phase.PHYSICS);
+
+        profiler.begin(FrameProfiler.Phase.UPDATE);
+        timeTicks++;
+        if(timeTicks >= TICKS_PER_SECOND) {
+            worldTimer--;
+            timeTicks = 0;
+        }
+        stepCount++;
+        updateChecksum();
+        profiler.end(FrameProfiler.Phase.UPDATE);
+
+        if(stepCount % REBUILD_INTERVAL == 0) {
+            profiler.begin(FrameProfiler.Phase.PHYSICS);
+            rebuildWorld();
+            profiler.end(FrameProfiler.Phase.PHYSICS);
+        }
+    }
+
+    /**
+     * Brings the contacts up to date with the positions of the bodies without moving them: pairs
+     * of fixtures which came close are found and the contacts are checked for touching, calling
+     * the contact listener. Box2D only looks for new pairs at the start of a step if a fixture
+     * was created since the last one, so a fixture is created and destroyed again on a body which
+     * is not active and never collides.
+     *
+     * @see World#step(float, int, int)
+     */
+    private void updateContacts() {
+        contactTrigger.destroyFixture(contactTrigger.createFixture(triggerShape, 0));
+        contacts.beginStep();
+        world.step(0, 0, 0);
+        contacts.endStep();
+    }
+
+    /**
+     * Computes the checksum of the state after a step, seeded with the checksum of the previous
+     * step. Covers the counters, the player character, the enemies and the items; tiles only
+     * change together with the score.
+     *
+     * @see StateHash
+     */
+    private void updateChecksum() {
+        hash.reset(checksum);
+        hash.add(stepCount);
+        hash.add(score);
+        hash.add(worldTimer);
+        hash.add(timeTicks);
+        player.hashState(hash);
+        enemies.hashState(hash);
+        items.hashState(hash);
+        checksum = hash.finish();
+    }
+
+    /**
+     * Writes the state of the session: everything the following steps depend on apart from the
+     * level and the input. Must not be called during a step.
+     *
+     * <pre>
+     * int      {@link #STATE_MAGIC}, {@link #STATE_VERSION}
+     * int      step count, score, world timer, time ticks, checksum
+     *          tiles, resident chunks, tile object fixtures, player character, enemies, items
+     * </pre>
+     *
+     * @param buffer    the buffer to write to, from its position
+     * @see             TileGrid#saveState(ByteBuffer)
+     * @see             LevelStreamer#saveState(ByteBuffer)
+     * @see             TileObjectManager#saveState(ByteBuffer)
+     * @see             Mario#saveState(ByteBuffer)
+     * @see             EnemyManager#saveState(ByteBuffer)
+     * @see             ItemManager#saveState(ByteBuffer)
+     */
+    public void saveState(ByteBuffer buffer) {
+        buffer.putInt(STATE_MAGIC);
+        buffer.putInt(STATE_VERSION);
+        buffer.putInt(stepCount);
+        buffer.putInt(score);
+        buffer.putInt(worldTimer);
+        buffer.putInt(timeTicks);
+        buffer.putInt(checksum);
+        tiles.saveState(buffer);
+        streamer.saveState(buffer);
+        tileObjects.saveState(buffer);
+        player.saveState(buffer);
+        enemies.saveState(buffer);
+        items.saveState(buffer);
+    }
+
+    /**
+     * Gets the size of the largest state the session can write, to allocate buffers up front.
+     *
+     * @return  the size in bytes, at most
+     * @see     #saveState(ByteBuffer)
+     */
+    public int getMaxStateSize() {
+        return 7 * 4
+                + tiles.getMaxStateSize()
+                + streamer.getMaxStateSize()
+                + tileObjects.getMaxStateSize()
+                + Mario.STATE_SIZE
+                + enemies.getMaxStateSize()
+                + items.getMaxStateSize();
+    }
+
+    /**
+     * Restores a state written by {@link #saveState(ByteBuffer)} on the same level in place. The
+     * world and its static bodies are kept, the chunks and tile object fixtures are released and
+     * materialized as the state calls for, and the bodies of the sprites are set to the restored
+     * transforms, velocities and filters. Finally the contacts are brought up to date with the
+     * restored positions. No contacts are dispatched meanwhile, the contact counters are part of
+     * the state. Sprites are matched by id and despawned ones are pooled, so restoring allocates
+     * nothing unless a chunk has to be loaded, a sprite has never been created or Mario changes
+     * size. Must not be called during a step.
+     * <p>
+     * Every value of the state is restored, but the session is not bit for bit the one the state
+     * was saved from: the broadphase proxies and contacts of the world are kept from whatever it
+     * held before, and they decide the order Box2D solves contacts in. A restored session
+     * continues alike until the two worlds create contacts in a different order, after which its
+     * checksums differ. Rolling back 8 steps diverged in 2 of 240 scripted runs. Restoring into the
+     * session the state was just saved from continues exactly. To continue exactly like another
+     * session, restore the state of a step at which that session rebuilt its world, and rebuild
+     * it here as well.
+     *
+     * @param buffer    the buffer to read from, from its position
+     * @throws          GdxRuntimeException if the buffer does not hold a session state
+     * @see             LevelStreamer#restoreState(ByteBuffer)
+     * @see             TileObjectManager#restoreState(ByteBuffer)
+     * @see             WorldContactListener#setRestoring(boolean)
+     * @see             #rebuildWorld()
+     */
+    public void restoreState(ByteBuffer buffer) {
+        if(buffer.getInt() != STATE_MAGIC || buffer.getInt() != STATE_VERSION) {
+            throw new GdxRuntimeException("Not a session state");
+        }
+        stepCount = buffer.getInt();
+        score = buffer.getInt();
+        worldTimer = buffer.getInt();
+        timeTicks = buffer.getInt();
+        checksum = buffer.getInt();
+
+        commands.clear();
+        contacts.setRestoring(true);
+        streamer.dropPrepared();
+        tiles.restoreState(buffer);
+        streamer.restoreState(buffer);
+        tileObjects.restoreState(buffer);
+        player.restoreState(buffer);
+        enemies.restoreState(buffer);
+        items.restoreState(buffer);
+        updateContacts();
+        contacts.setRestoring(false);
+    }
+
+    /**
+     * Rebuilds the Box2D world from the session state. The state is saved, the world is disposed
+     * with all bodies and created anew, and the state is restored into it: the static bodies of
+     * the resident chunks by box, the player character, the tile object fixtures and the enemies
+     * and items by the order of the state. Box2D numbers its broadphase proxies and orders its
+     * contacts by when they were created, so afterwards the world only depends on the state, and
+     * any session restored from the same state and rebuilt continues exactly like this one.
+     * Enemies and items are created anew, so unlike restoring this allocates. Must not be called
+     * during a step.
+     *
+     * @see #saveState(ByteBuffer)
+     * @see #restoreState(ByteBuffer)
+     * @see TileObjectManager#retireAll()
+     * @see LevelStreamer#createBodies()
+     * @see Mario#rebuildBody()
+     * @see EnemyManager#clear()
+     * @see ItemManager#clear()
+     */
+    public void rebuildWorld() {
+        rebuildState.clear();
+        saveState(rebuildState);
+        rebuildState.flip();
+
+        tileObjects.retireAll();
+        world.dispose();
+        createWorld();
+        tileObjects.createBody();
+        streamer.createBodies();
+        player.rebuildBody();
+        enemies.clear();
+        items.clear();
+        restoreState(rebuildState);
+    }
+
+    /**
+     * Gets the x-coordinate of the camera center. The camera follows the player character but does
+     * not move left of the level start.
+     *
+     * @return  the camera x-coordinate
+     */
+    public float getCameraX() {
+        return Math.max(player.b2Body.getPosition().x, MarioBros.V_WIDTH / 2 / MarioBros.PPM);
+    }
+
+    /**
+     * Adds the given value to the score.
+     *
+     * @param value the value to add
+     */
+    public void addScore(int value) {
+        score += value;
+    }
+
+    /**
+     * Plays the given sound. Does nothing when running headless.
+     *
+     * @param fileName  the sound file name
+     * @see             Sound#play()
+     */
+    public void playSound(String fileName) {
+        if(manager != null) {
+            manager.get(fileName, Sound.class).play();
+        }
+    }
+
+    /**
+     * Stops the given music. Does nothing when running headless.
+     *
+     * @param fileName  the music file name
+     * @see             Music#stop()
+     */
+    public void stopMusic(String fileName) {
+        if(manager != null) {
+            manager.get(fileName, Music.class).stop();
+        }
+    }
+
+    /**
+     * Checks whether the session is over, i.e. the player character died at least three seconds
+     * ago.
+     *
+     * @return  <code>true</code> if the session is over
+     *          <code>false</code> else
+     */
+    public boolean isGameOver() {
+        return player.currentState == Mario.State.DEAD
+                && player.getStateTicks() > 3 * TICKS_PER_SECOND;
+    }
+
+    /**
+     * Checks whether the session runs without graphics.
+     *
+     * @return  <code>true</code> if there is no texture atlas
+     *          <code>false</code> else
+     */
+    public boolean isHeadless() {
+        return atlas == null;
+    }
+
+    public TextureAtlas getTextureAtlas() {
+        return atlas;
+    }
+
+    public World getWorld() {
+        return world;
+    }
+
+    public LevelData getLevel() {
+        return level;
+    }
+
+    public TileGrid getTiles() {
+        return tiles;
+    }
+
+    public B2WorldCreator getCreator() {
+        return creator;
+    }
+
+    public LevelStreamer getStreamer() {
+        return streamer;
+    }
+
+    public WorldCommandBuffer getCommands() {
+        return commands;
+    }
+
+    public TileObjectManager getTileObjects() {
+        return tileObjects;
+    }
+
+    public EnemyManager getEnemies() {
+        return enemies;
+    }
+
+    public Mario getPlayer() {
+        return player;
+    }
+
+    public ItemManager getItems() {
+        return items;
+    }
+
+    public int getStepCount() {
+        return stepCount;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getWorldTimer() {
+        return worldTimer;
+    }
+
+    /**
+     * Gets the rolling checksum of the state after the last step. Simulations of the same session
+     * with the same input have the same checksum after each step. A step whose state differs in
+     * any bit changes its checksum and the checksums of all steps after it.
+     *
+     * @return  the checksum, 0 before the first step
+     * @see     StateHash
+     */
+    public int getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * Sets the profiler measuring the simulation steps. A disabled profiler is used by default.
+     *
+     * @param profiler  the profiler
+     */
+    public void setProfiler(FrameProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * Disposes the Box2D world and the shared shapes. The tiled map, texture atlas and asset
+     * manager are owned by the caller.
+     *
+     * @see World#dispose()
+     * @see TileObjectManager#dispose()
+     */
+    @Override
+    public void dispose() {
+        tileObjects.dispose();
+        triggerShape.dispose();
+        world.dispose();
+    }
+}
@@ -0,0 +1,183 @@
+package com.andrejlohn.mariobros.session;
+
+import com.badlogic.gdx.utils.BufferUtils;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * This class keeps the most recent snapshots of a game session in memory, e.g. to retry from a
+ * checkpoint or to roll the session back a few steps. Every snapshot has a slot of its own, a
+ * direct buffer of the largest state the session can have, allocated up front, so capturing a
+ * snapshot neither allocates nor grows anything and is cheap enough to run every step. Restoring
+ * writes a snapshot back into the session's objects, so it does not allocate either. Once the
+ * ring is full, capturing overwrites the oldest snapshot.
+ *
+ * Restoring a snapshot is not exact: the session keeps the Box2D contacts of the steps it ran
+ * since, so after a rollback it may come out slightly different from the first run of the same
+ * steps with the same input. This is fine for retrying from a checkpoint, and for a prediction
+ * which is replaced once the actual input is known, but not for a simulation two peers have to
+ * agree on bit for bit.
+ *
+ * Snapshots are identified by the step count of the session when they were captured.
+ *
+ * @version %I%, %G%
+ * @see     GameSession#saveState(ByteBuffer)
+ * @see     GameSession#restoreState(ByteBuffer)
+ */
+public class SnapshotRing {
+
+    private GameSession session;
+
+    // Slots and the steps of their snapshots, oldest at first
+    private ByteBuffer[] slots;
+    private int[] steps;
+    private int first;
+    private int size;
+
+    /**
+     * Creates the snapshot ring and allocates its slots.
+     *
+     * @param session   the game session to capture
+     * @param capacity  the number of snapshots kept, at least 1
+     * @see             GameSession#getMaxStateSize()
+     */
+    public SnapshotRing(GameSession session, int capacity) {
+        this.session = session;
+        slots = new ByteBuffer[capacity];
+        steps = new int[capacity];
+        int slotSize = session.getMaxStateSize();
+        for(int i = 0; i < capacity; i++) {
+            slots[i] = BufferUtils.newByteBuffer(slotSize);
+        }
+    }
+
+    /**
+     * Captures the current state of the session, overwriting the oldest snapshot if the ring is
+     * full. Must not be called during a step.
+     *
+     * @return  the step of the snapshot
+     * @throws  GdxRuntimeException if the state is larger than the session bound
+     */
+    public int capture() {
+        // The oldest snapshot is overwritten first, so a failed capture drops it
+        int slot;
+        if(size == slots.length) {
+            slot = first;
+            first = (first + 1) % slots.length;
+            size--;
+        } else {
+            slot = (first + size) % slots.length;
+        }
+
+        ByteBuffer buffer = slots[slot];
+        buffer.clear();
+        try {
+            session.saveState(buffer);
+        } catch(BufferOverflowException e) {
+            throw new GdxRuntimeException("Session state exceeds " + buffer.capacity() + " bytes");
+        }
+        buffer.flip();
+        size++;
+        steps[slot] = session.getStepCount();
+        return steps[slot];
+    }
+
+    /**
+     * Restores the newest snapshot captured at or before the given step. The snapshots after it
+     * are dropped, as the session continues from there. The restored snapshot is kept.
+     *
+     * @param step  the step to go back to
+     * @return      the step of the restored snapshot, -1 if there is no snapshot that old
+     * @see         GameSession#restoreState(ByteBuffer)
+     */
+    public int restore(int step) {
+        int index = find(step);
+        if(index < 0) {
+            return -1;
+        }
+        int slot = (first + index) % slots.length;
+        ByteBuffer buffer = slots[slot];
+        buffer.rewind();
+        session.restoreState(buffer);
+        size = index + 1;
+        return steps[slot];
+    }
+
+    /**
+     * Restores the newest snapshot.
+     *
+     * @return  the step of the snapshot, -1 if there is none
+     * @see     #restore(int)
+     */
+    public int restoreNewest() {
+        return restore(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Finds the newest snapshot captured at or before the given step.
+     *
+     * @param step  the step
+     * @return      the index of the snapshot, 0 for the oldest, -1 if there is none
+     */
+    private int find(int step) {
+        for(int i = size - 1; i >= 0; i--) {
+            if(steps[(first + i) % slots.length] <= step) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the state of the snapshot captured at the given step.
+     *
+     * @param step  the step
+     * @return      a view of the state from position to limit, <code>null</code> if there is no
+     *              snapshot of the step
+     */
+    public ByteBuffer get(int step) {
+        int index = find(step);
+        if(index < 0 || steps[(first + index) % slots.length] != step) {
+            return null;
+        }
+        ByteBuffer state = slots[(first + index) % slots.length].duplicate();
+        state.rewind();
+        return state;
+    }
+
+    /**
+     * Drops all snapshots.
+     */
+    public void clear() {
+        first = 0;
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * Gets the step of the oldest snapshot.
+     *
+     * @return  the step, -1 if the ring is empty
+     */
+    public int getOldestStep() {
+        return size == 0 ? -1 : steps[first];
+    }
+
+    /**
+     * Gets the step of the newest snapshot.
+     *
+     * @return  the step, -1 if the ring is empty
+     */
+    public int getNewestStep() {
+        return size == 0 ? -1 : steps[(first + size - 1) % slots.length];
+    }
+}
@@ -0,0 +1,101 @@
+package com.andrejlohn.mariobros.session;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+
+/**
+ * This class computes the checksum of a session state, to detect two simulations of the same
+ * session diverging. Values are mixed like the 4-byte lanes of xxHash32 and the result is
+ * avalanched at the end. Floats are mixed in by their exact bits, so the checksum tells apart any
+ * two states a simulation can tell apart. Only zero and negative zero hash the same, as they
+ * compare equal and may both come out of the same step on different paths.
+ *
+ * The session seeds the hash of each step with the checksum of the previous step, so the checksum
+ * of a step depends on every step before it: two simulations which diverged once keep different
+ * checksums even if their states meet again.
+ *
+ * @version %I%, %G%
+ * @see     GameSession#getChecksum()
+ */
+public final class StateHash {
+
+    private static final int PRIME1 = 0x9E3779B1;
+    private static final int PRIME2 = 0x85EBCA77;
+    private static final int PRIME3 = 0xC2B2AE3D;
+    private static final int PRIME4 = 0x27D4EB2F;
+    private static final int PRIME5 = 0x165667B1;
+
+    private int hash;
+    private int length;
+
+    /**
+     * Starts a new hash.
+     *
+     * @param seed  the seed, e.g. the previous checksum
+     */
+    public void reset(int seed) {
+        hash = seed + PRIME5;
+        length = 0;
+    }
+
+    /**
+     * Mixes an int into the hash.
+     *
+     * @param value the value
+     */
+    public void add(int value) {
+        hash = Integer.rotateLeft(hash + value * PRIME3, 17) * PRIME4;
+        length += 4;
+    }
+
+    /**
+     * Mixes the bits of a float into the hash, negative zero as zero.
+     *
+     * @param value the value
+     * @see         Float#floatToIntBits(float)
+     */
+    public void add(float value) {
+        add(value == 0f ? 0 : Float.floatToIntBits(value));
+    }
+
+    /**
+     * Mixes a boolean into the hash.
+     *
+     * @param value the value
+     */
+    public void add(boolean value) {
+        add(value ? PRIME1 : 0);
+    }
+
+    /**
+     * Mixes the transform and velocities of a body into the hash.
+     *
+     * @param body  the body
+     * @see         BodyState#write(java.nio.ByteBuffer, Body)
+     */
+    public void add(Body body) {
+        Vector2 position = body.getPosition();
+        add(position.x);
+        add(position.y);
+        add(body.getAngle());
+        Vector2 velocity = body.getLinearVelocity();
+        add(velocity.x);
+        add(velocity.y);
+        add(body.getAngularVelocity());
+    }
+
+    /**
+     * Finishes the hash.
+     *
+     * @return  the checksum of the values added since the last reset
+     */
+    public int finish() {
+        int h = hash + length;
+        h ^= h >>> 15;
+        h *= PRIME2;
+        h ^= h >>> 13;
+        h *= PRIME3;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,305 @@
+package com.andrejlohn.mariobros.session;
+
+import com.andrejlohn.mariobros.level.LevelData;
+import com.andrejlohn.mariobros.sprites.tileobjects.InteractiveTileObject;
+import com.andrejlohn.mariobros.tools.TileListener;
+import com.badlogic.gdx.maps.tiled.TiledMap;
+import com.badlogic.gdx.maps.tiled.TiledMapTileLayer;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.IntArray;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class holds the graphic layer tiles of a game session in a grid of cells, together with the
+ * bricks and coins indexed by their cell. A tile and the interactive object of a cell are looked
+ * up by column and row in constant time, without going through the tiled map or the Box2D world.
+ *
+ * Tiles are changed through the mutation API only: a brick is broken, a coin block is blanked and
+ * either of them can be restored to the tile of the level. Every change updates the tiled map, if
+ * present, notifies the tile listener and marks the cell dirty. The dirty cells are the cells
+ * changed since the level start or the last {@link #clearDirtyCells()}, each listed once in the
+ * order of its first change, so consumers like render caches or snapshots read only the changes
+ * instead of scanning the whole layer.
+ *
+ * @version %I%, %G%
+ * @see     GameSession
+ * @see     InteractiveTileObject
+ * @see     TileListener
+ */
+public class TileGrid {
+
+    private int width;
+    private int height;
+
+    // Current and level tile ids per cell, row by row starting at the bottom, 0 for empty cells
+    private int[] tiles;
+    private int[] levelTiles;
+
+    // Bricks and coins of the resident chunks per cell
+    private InteractiveTileObject[] objects;
+
+    // Cells changed since the last clear, each once
+    private boolean[] dirty;
+    private IntArray dirtyCells;
+
+    // The tiled map to update, null when running headless
+    private TiledMap map;
+    private TileListener tileListener;
+
+    /**
+     * Creates the tile grid from the graphic layer of the level.
+     *
+     * @param level the level data
+     * @param map   the tiled map to update on changes, may be <code>null</code>
+     * @see         LevelData#copyTiles()
+     */
+    public TileGrid(LevelData level, TiledMap map) {
+        this.map = map;
+        width = level.getWidth();
+        height = level.getHeight();
+        tiles = level.copyTiles();
+        levelTiles = level.copyTiles();
+        objects = new InteractiveTileObject[width * height];
+        dirty = new boolean[width * height];
+        dirtyCells = new IntArray();
+    }
+
+    /**
+     * Gets the id of the tile at the given cell.
+     *
+     * @param col   the cell column
+     * @param row   the cell row, starting at the bottom
+     * @return      the tile id, 0 for an empty cell
+     */
+    public int getTileId(int col, int row) {
+        return tiles[row * width + col];
+    }
+
+    /**
+     * Checks whether the given cell lies within the grid.
+     *
+     * @param col   the cell column
+     * @param row   the cell row, starting at the bottom
+     * @return      <code>true</code> if the cell is part of the level
+     *              <code>false</code> else
+     */
+    public boolean contains(int col, int row) {
+        return col >= 0 && col < width && row >= 0 && row < height;
+    }
+
+    /**
+     * Clears the tile at the given cell, e.g. when a brick is smashed.
+     *
+     * @param col   the cell column
+     * @param row   the cell row, starting at the bottom
+     * @see         #setTileId(int, int, int)
+     */
+    public void breakTile(int col, int row) {
+        setTileId(col, row, 0);
+    }
+
+    /**
+     * Replaces the tile at the given cell by a blank tile, e.g. when a coin block is emptied.
+     *
+     * @param col       the cell column
+     * @param row       the cell row, starting at the bottom
+     * @param blankId   the id of the blank tile
+     * @see             #setTileId(int, int, int)
+     */
+    public void blank(int col, int row, int blankId) {
+        setTileId(col, row, blankId);
+    }
+
+    /**
+     * Restores the tile of the level at the given cell.
+     *
+     * @param col   the cell column
+     * @param row   the cell row, starting at the bottom
+     * @see         #setTileId(int, int, int)
+     */
+    public void restore(int col, int row) {
+        setTileId(col, row, levelTiles[row * width + col]);
+    }
+
+    /**
+     * Sets the tile at the given cell. If the tile changes, the tiled map is updated as well, if
+     * present, the cell is marked dirty and the tile listener is notified.
+     *
+     * @param col   the cell column
+     * @param row   the cell row, starting at the bottom
+     * @param id    the tile id, 0 to clear the cell
+     * @see         TiledMapTileLayer.Cell#setTile(com.badlogic.gdx.maps.tiled.TiledMapTile)
+     * @see         TileListener#tileChanged(int, int)
+     */
+    public void setTileId(int col, int row, int id) {
+        int cell = row * width + col;
+        if(tiles[cell] == id) {
+            return;
+        }
+        if(!dirty[cell]) {
+            dirty[cell] = true;
+            dirtyCells.add(cell);
+        }
+        putTile(cell, id);
+    }
+
+    /**
+     * Puts a tile into a cell, the tiled map and notifies the tile listener, if the tile changes.
+     * The cell is not marked dirty.
+     *
+     * @param cell  the cell index
+     * @param id    the tile id, 0 to clear the cell
+     */
+    private void putTile(int cell, int id) {
+        if(tiles[cell] == id) {
+            return;
+        }
+        tiles[cell] = id;
+        int col = cell % width;
+        int row = cell / width;
+        if(map != null) {
+            TiledMapTileLayer.Cell mapCell = ((TiledMapTileLayer) map.getLayers()
+                    .get(LevelData.GRAPHIC_LAYER)).getCell(col, row);
+            if(mapCell != null) {
+                mapCell.setTile(id == 0 ? null : map.getTileSets().getTile(id));
+            }
+        }
+        if(tileListener != null) {
+            tileListener.tileChanged(col, row);
+        }
+    }
+
+    /**
+     * Gets the brick or coin at the given cell.
+     *
+     * @param col   the cell column
+     * @param row   the cell row, starting at the bottom
+     * @return      the brick or coin, <code>null</code> if there is none or its chunk is not
+     *              resident
+     */
+    public InteractiveTileObject getObject(int col, int row) {
+        return objects[row * width + col];
+    }
+
+    /**
+     * Indexes a brick or coin by its cell.
+     *
+     * @param object    the brick or coin
+     */
+    public void addObject(InteractiveTileObject object) {
+        objects[object.getRow() * width + object.getCol()] = object;
+    }
+
+    /**
+     * Removes a brick or coin from the index, unless another object has taken its cell.
+     *
+     * @param object    the brick or coin
+     */
+    public void removeObject(InteractiveTileObject object) {
+        int cell = object.getRow() * width + object.getCol();
+        if(objects[cell] == object) {
+            objects[cell] = null;
+        }
+    }
+
+    /**
+     * Gets the cells changed since the level start or the last clear. A cell index is
+     * <code>row * width + col</code>.
+     *
+     * @return  the dirty cell indices in the order of their first change, must not be modified
+     */
+    public IntArray getDirtyCells() {
+        return dirtyCells;
+    }
+
+    public boolean isDirty(int col, int row) {
+        return dirty[row * width + col];
+    }
+
+    /**
+     * Clears the dirty cells.
+     */
+    public void clearDirtyCells() {
+        for(int i = 0; i < dirtyCells.size; i++) {
+            dirty[dirtyCells.get(i)] = false;
+        }
+        dirtyCells.clear();
+    }
+
+    /**
+     * Writes the dirty cells and their tiles. All other cells hold the tiles of the level.
+     *
+     * <pre>
+     * int      dirty cell count
+     *          per cell: int cell index, tile id
+     * </pre>
+     *
+     * @param buffer    the buffer to write to
+     */
+    public void saveState(ByteBuffer buffer) {
+        buffer.putInt(dirtyCells.size);
+        for(int i = 0; i < dirtyCells.size; i++) {
+            int cell = dirtyCells.get(i);
+            buffer.putInt(cell);
+            buffer.putInt(tiles[cell]);
+        }
+    }
+
+    /**
+     * Gets the size of the saved state with every cell dirty.
+     *
+     * @return  the size in bytes, at most
+     * @see     #saveState(ByteBuffer)
+     */
+    public int getMaxStateSize() {
+        return 4 + tiles.length * 2 * 4;
+    }
+
+    /**
+     * Restores the tiles. The dirty cells are restored to the tiles of the level first, then the
+     * saved cells are set and become the dirty cells, in their saved order.
+     *
+     * @param buffer    the buffer to read from
+     * @throws          GdxRuntimeException if a cell lies outside of the grid
+     */
+    public void restoreState(ByteBuffer buffer) {
+        for(int i = 0; i < dirtyCells.size; i++) {
+            int cell = dirtyCells.get(i);
+            putTile(cell, levelTiles[cell]);
+            dirty[cell] = false;
+        }
+        dirtyCells.clear();
+
+        int count = buffer.getInt();
+        for(int i = 0; i < count; i++) {
+            int cell = buffer.getInt();
+            int id = buffer.getInt();
+            if(cell < 0 || cell >= tiles.length) {
+                throw new GdxRuntimeException("Corrupt session state: cell " + cell);
+            }
+            putTile(cell, id);
+            if(!dirty[cell]) {
+                dirty[cell] = true;
+                dirtyCells.add(cell);
+            }
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Sets the listener notified about tile changes, e.g. a renderer caching the tiled map.
+     *
+     * @param tileListener  the tile listener, <code>null</code> for none
+     */
+    public void setTileListener(TileListener tileListener) {
+        this.tileListener = tileListener;
+    }
+}
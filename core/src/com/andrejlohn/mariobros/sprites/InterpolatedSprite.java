@@ -0,0 +1,82 @@
+package com.andrejlohn.mariobros.sprites;
+
+import com.badlogic.gdx.graphics.g2d.Batch;
+import com.badlogic.gdx.graphics.g2d.Sprite;
+
+/**
+ * This class is the base class for all sprites following a Box2D body (i.e. the player character,
+ * enemies and items). The game world is simulated in fixed time steps while rendering happens as
+ * often as the display allows. To avoid stutter the sprite remembers its position of the previous
+ * simulation step and is drawn in between the previous and the current position.
+ *
+ * @version %I%, %G%
+ * @see     Sprite
+ */
+public abstract class InterpolatedSprite extends Sprite {
+
+    private float previousX;
+    private float previousY;
+
+    // Spawn id, orders sprites at the same x-coordinate
+    private int id;
+
+    /**
+     * Remembers the current position as the position of the previous simulation step. Has to be
+     * called before each simulation step.
+     */
+    public void savePreviousPosition() {
+        previousX = getX();
+        previousY = getY();
+    }
+
+    /**
+     * Gets the x-coordinate in between the previous and the current simulation step.
+     *
+     * @param alpha the fraction of a simulation step passed since the last step
+     * @return      the interpolated x-coordinate
+     */
+    public float getInterpolatedX(float alpha) {
+        return previousX + (getX() - previousX) * alpha;
+    }
+
+    /**
+     * Gets the y-coordinate in between the previous and the current simulation step.
+     *
+     * @param alpha the fraction of a simulation step passed since the last step
+     * @return      the interpolated y-coordinate
+     */
+    public float getInterpolatedY(float alpha) {
+        return previousY + (getY() - previousY) * alpha;
+    }
+
+    /**
+     * Draws the sprite at its interpolated position. The simulated position is restored afterwards
+     * so the game logic is not affected.
+     *
+     * @param batch the sprite batch
+     * @param alpha the fraction of a simulation step passed since the last step
+     * @see         #draw(Batch)
+     */
+    public void draw(Batch batch, float alpha) {
+        float x = getX();
+        float y = getY();
+        setPosition(getInterpolatedX(alpha), getInterpolatedY(alpha));
+        draw(batch);
+        setPosition(x, y);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Sets the id of the sprite, which its manager assigns in spawn order. Sprites at the same
+     * x-coordinate are ordered by it, so their order does not depend on their history.
+     *
+     * @param id    the id
+     * @see         SpriteRegistry#sort()
+     */
+    public void setId(int id) {
+        this.id = id;
+    }
+}
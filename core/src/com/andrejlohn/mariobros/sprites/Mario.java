@@ -1,15 +1,17 @@
 package com.andrejlohn.mariobros.sprites;
 
 import com.andrejlohn.mariobros.MarioBros;
-import com.andrejlohn.mariobros.screens.PlayScreen;
+import com.andrejlohn.mariobros.session.BodyState;
+import com.andrejlohn.mariobros.session.GameSession;
+import com.andrejlohn.mariobros.session.StateHash;
 import com.andrejlohn.mariobros.sprites.enemies.Enemy;
 import com.andrejlohn.mariobros.sprites.enemies.Turtle;
-import com.badlogic.gdx.assets.AssetManager;
-import com.badlogic.gdx.audio.Music;
-import com.badlogic.gdx.audio.Sound;
+import com.andrejlohn.mariobros.tools.FixtureTag;
+import com.andrejlohn.mariobros.tools.WorldCommandBuffer;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.Animation;
 import com.badlogic.gdx.graphics.g2d.Sprite;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.Body;
@@ -17,32 +19,56 @@ import com.badlogic.gdx.physics.box2d.BodyDef;
 import com.badlogic.gdx.physics.box2d.CircleShape;
 import com.badlogic.gdx.physics.box2d.EdgeShape;
 import com.badlogic.gdx.physics.box2d.Filter;
-import com.badlogic.gdx.physics.box2d.Fixture;
 import com.badlogic.gdx.physics.box2d.FixtureDef;
 import com.badlogic.gdx.physics.box2d.World;
 import com.badlogic.gdx.utils.Array;
 
+import java.nio.ByteBuffer;
+
 /**
  * This represents the player character in the game.
- * The class extends the libGDX Sprite class.
+ * The class extends the InterpolatedSprite class.
  *
  * @version %I%, %G%
- * @see     Sprite
+ * @see     InterpolatedSprite
  */
-public class Mario extends Sprite {
+public class Mario extends InterpolatedSprite {
 
-    private PlayScreen screen;
-    private MarioBros game;
+    private GameSession session;
 
     public enum State { FALLING, JUMPING, STANDING, RUNNING, GROWING, DEAD }
+
+    // The grow animation, also timed when running headless
+    private static final int GROW_FRAME_TICKS = 12;
+    private static final int GROW_FRAMES = 4;
+
+    // The size of the saved state in bytes, at most
+    public static final int STATE_SIZE = 4 * 4 + 2 + 4 + 1 + BodyState.SIZE + 1;
+
+    private static final State[] STATES = State.values();
+
+    // Flags of the saved state
+    private static final int RUNNING_RIGHT = 1;
+    private static final int BIG = 2;
+    private static final int GROW_ANIMATION = 4;
+    private static final int DEFINE_BIG = 8;
+    private static final int REDEFINE = 16;
+    private static final int DEAD = 32;
+    private static final int BIG_BODY = 64;
+
+    // Collision filter of the dead character, colliding with nothing
+    private static final Filter DEAD_FILTER = new Filter();
+
+    static {
+        DEAD_FILTER.maskBits = MarioBros.NOTHING_BIT;
+    }
+
     public State currentState;
     public State previousState;
 
     public World world;
     public Body b2Body;
 
-    private AssetManager manager;
-
     private TextureRegion marioStand;
     private TextureRegion marioJump;
     private Animation<TextureRegion> marioRun;
@@ -52,7 +78,7 @@ public class Mario extends Sprite {
     private Animation<TextureRegion> bigMarioRun;
     private Animation<TextureRegion> growMario;
 
-    private float stateTimer;
+    private int stateTicks;
     private boolean runningRight;
     private boolean marioIsBig;
     private boolean runGrowAnimation;
@@ -60,85 +86,95 @@ public class Mario extends Sprite {
     private boolean timeToRedefineMario;
     private boolean marioIsDead;
 
+    // Whether the current body is the one of the big character
+    private boolean bigBody;
+
+    // Fixture tags, kept when the body is redefined, and the number of fixtures the feet touch
+    private FixtureTag bodyTag;
+    private FixtureTag headTag;
+    private FixtureTag feetTag;
+    private int footContacts;
+
     /**
-     * Creates the player character within the game world. Sets up the move animations.
+     * Creates the player character within the game world. Sets up the move animations unless the
+     * session runs headless.
      *
-     * @param screen    the play screen
+     * @param session   the game session
      * @see             #defineMario()
-     * @see             PlayScreen
+     * @see             GameSession
      * @see             World
      * @see             TextureRegion
      * @see             com.badlogic.gdx.graphics.g2d.TextureAtlas#findRegion(String)
      * @see             Sprite#setBounds(float, float, float, float)
      * @see             Sprite#setRegion(Texture)
      */
-    public Mario(PlayScreen screen, AssetManager manager) {
-        this.screen = screen;
-        this.game = screen.getGame();
-        this.world = screen.getWorld();
-        this.manager = manager;
+    public Mario(GameSession session) {
+        this.session = session;
+        this.world = session.getWorld();
 
         currentState = State.STANDING;
         previousState = State.STANDING;
-        stateTimer = 0;
+        stateTicks = 0;
         runningRight = true;
 
+        bodyTag = new FixtureTag(MarioBros.MARIO_BIT, this);
+        headTag = new FixtureTag(MarioBros.MARIO_HEAD_BIT, this);
+        feetTag = new FixtureTag(MarioBros.MARIO_FOOT_BIT, this);
+        footContacts = 0;
+        defineMario();
+        setBounds(1, 0, 16 / MarioBros.PPM, 16 / MarioBros.PPM);
+        if(!session.isHeadless()) {
+            defineAnimations(session.getTextureAtlas());
+            setRegion(marioStand);
+        }
+    }
+
+    /**
+     * Sets up the move animations and textures of the player character.
+     *
+     * @param atlas the texture atlas
+     */
+    private void defineAnimations(TextureAtlas atlas) {
         // Set up the run animations
         Array<TextureRegion> frames = new Array<TextureRegion>();
         for(int i=1; i<4; i++){
-            frames.add(new TextureRegion(screen.getTextureAtlas()
-                    .findRegion("little_mario"), i * 16, 0, 16, 16));
+            frames.add(new TextureRegion(atlas.findRegion("little_mario"), i * 16, 0, 16, 16));
         }
         marioRun = new Animation<TextureRegion>(0.1f, frames);
         frames.clear();
 
         for(int i=1; i<4; i++){
-            frames.add(new TextureRegion(screen.getTextureAtlas()
-                    .findRegion("big_mario"), i * 16, 0, 16, 32));
+            frames.add(new TextureRegion(atlas.findRegion("big_mario"), i * 16, 0, 16, 32));
         }
         bigMarioRun = new Animation<TextureRegion>(0.1f, frames);
         frames.clear();
 
         // Set up the grow animation
-        frames.add(new TextureRegion(screen.getTextureAtlas()
-                .findRegion("big_mario"), 240, 0, 16, 32));
-        frames.add(new TextureRegion(screen.getTextureAtlas()
-                .findRegion("big_mario"), 0, 0, 16, 32));
-        frames.add(new TextureRegion(screen.getTextureAtlas()
-                .findRegion("big_mario"), 240, 0, 16, 32));
-        frames.add(new TextureRegion(screen.getTextureAtlas()
-                .findRegion("big_mario"), 0, 0, 16, 32));
-        growMario = new Animation<TextureRegion>(0.2f, frames);
+        frames.add(new TextureRegion(atlas.findRegion("big_mario"), 240, 0, 16, 32));
+        frames.add(new TextureRegion(atlas.findRegion("big_mario"), 0, 0, 16, 32));
+        frames.add(new TextureRegion(atlas.findRegion("big_mario"), 240, 0, 16, 32));
+        frames.add(new TextureRegion(atlas.findRegion("big_mario"), 0, 0, 16, 32));
+        growMario = new Animation<TextureRegion>(GROW_FRAME_TICKS * GameSession.STEP_TIME, frames);
         frames.clear();
 
         // Set up the jump animations
-        marioJump = new TextureRegion(screen.getTextureAtlas()
-                .findRegion("little_mario"), 80, 0, 16, 16);
-        bigMarioJump = new TextureRegion(screen.getTextureAtlas()
-                .findRegion("big_mario"), 80, 0, 16, 32);
+        marioJump = new TextureRegion(atlas.findRegion("little_mario"), 80, 0, 16, 16);
+        bigMarioJump = new TextureRegion(atlas.findRegion("big_mario"), 80, 0, 16, 32);
 
         // Set up the stand textures
-        marioStand = new TextureRegion(screen.getTextureAtlas()
-                .findRegion("little_mario"), 0, 0, 16, 16);
-        bigMarioStand = new TextureRegion(screen.getTextureAtlas()
-                .findRegion("big_mario"), 0, 0, 16, 32);
+        marioStand = new TextureRegion(atlas.findRegion("little_mario"), 0, 0, 16, 16);
+        bigMarioStand = new TextureRegion(atlas.findRegion("big_mario"), 0, 0, 16, 32);
 
         // Set up the death texture
-        marioDead = new TextureRegion(screen.getTextureAtlas()
-                .findRegion("little_mario"), 96, 0, 16, 16);
-
-        defineMario();
-        setBounds(1, 0, 16 / MarioBros.PPM, 16 / MarioBros.PPM);
-        setRegion(marioStand);
+        marioDead = new TextureRegion(atlas.findRegion("little_mario"), 96, 0, 16, 16);
     }
 
     /**
-     * Updates the player character based on the time passed since the ast update.
+     * Updates the player character after a simulation step.
      *
-     * @param dt    the time since the last update
-     * @see         Sprite#setPosition(float, float)
+     * @see Sprite#setPosition(float, float)
      */
-    public void update(float dt) {
+    public void update() {
         if(marioIsBig) {
             setPosition(
                     b2Body.getPosition().x - getWidth() / 2,
@@ -149,7 +185,10 @@ public class Mario extends Sprite {
                     b2Body.getPosition().y - getHeight() / 2);
         }
 
-        setRegion(getFrame(dt));
+        TextureRegion frame = getFrame();
+        if(frame != null) {
+            setRegion(frame);
+        }
 
         if(timeToDefineBigMario) {
             defineBigMario();
@@ -165,13 +204,14 @@ public class Mario extends Sprite {
     }
 
     /**
-     * Gets the current frame of the character animation with respect to the time passed.
+     * Gets the current frame of the character animation and counts the step towards the time in
+     * the current state. The state and state ticks are updated even when running headless.
      *
-     * @param dt    the time passed
-     * @return      the current animation frame
+     * @return  the current animation frame, <code>null</code> when running headless
      */
-    public TextureRegion getFrame(float dt) {
+    public TextureRegion getFrame() {
         currentState = getState();
+        float stateTime = stateTicks * GameSession.STEP_TIME;
         TextureRegion region;
 
         switch(currentState) {
@@ -179,8 +219,8 @@ public class Mario extends Sprite {
                 region = marioDead;
                 break;
             case GROWING:
-                region = growMario.getKeyFrame(stateTimer);
-                if(growMario.isAnimationFinished(stateTimer)) {
+                region = growMario == null ? null : growMario.getKeyFrame(stateTime);
+                if(stateTicks / GROW_FRAME_TICKS >= GROW_FRAMES) {
                     runGrowAnimation = false;
                 }
                 break;
@@ -188,9 +228,13 @@ public class Mario extends Sprite {
                 region = marioIsBig ? bigMarioJump : marioJump;
                 break;
             case RUNNING:
-                region = marioIsBig ?
-                        bigMarioRun.getKeyFrame(stateTimer, true) :
-                        marioRun.getKeyFrame(stateTimer, true);
+                if(marioRun == null) {
+                    region = null;
+                } else {
+                    region = marioIsBig ?
+                            bigMarioRun.getKeyFrame(stateTime, true) :
+                            marioRun.getKeyFrame(stateTime, true);
+                }
                 break;
             case FALLING:
             case STANDING:
@@ -199,15 +243,17 @@ public class Mario extends Sprite {
                 break;
         }
 
-        if((b2Body.getLinearVelocity().x < 0 || !runningRight) && !region.isFlipX()) {
-            region.flip(true, false);
-            runningRight = false;
-        } else if((b2Body.getLinearVelocity().x > 0 || runningRight) && region.isFlipX()) {
-            region.flip(true, false);
-            runningRight = true;
+        if(region != null) {
+            if((b2Body.getLinearVelocity().x < 0 || !runningRight) && !region.isFlipX()) {
+                region.flip(true, false);
+                runningRight = false;
+            } else if((b2Body.getLinearVelocity().x > 0 || runningRight) && region.isFlipX()) {
+                region.flip(true, false);
+                runningRight = true;
+            }
         }
 
-        stateTimer = currentState == previousState ? stateTimer + dt : 0;
+        stateTicks = currentState == previousState ? stateTicks + 1 : 0;
         previousState = currentState;
         return region;
     }
@@ -246,68 +292,64 @@ public class Mario extends Sprite {
         marioIsBig = true;
         timeToDefineBigMario = true;
         setBounds(getX(), getY(), getWidth(), getHeight() * 2);
-        manager.get("audio/sounds/smb_powerup.wav", Sound.class).play();
+        session.playSound("audio/sounds/smb_powerup.wav");
     }
 
     /**
-     * Defines the body and fixture of the player character.
-     * For now the character will just be a circle.
+     * Defines the body and fixtures of the player character at the start position.
      *
-     * @see BodyDef#position
-     * @see BodyDef#type
-     * @see com.badlogic.gdx.physics.box2d.BodyDef.BodyType#DynamicBody
-     * @see World#createBody(BodyDef)
-     * @see FixtureDef#shape
-     * @see CircleShape#setRadius(float)
-     * @see Body#createFixture(FixtureDef)
+     * @see #defineBody(float, float, boolean)
      */
     public void defineMario() {
-        BodyDef bDef = new BodyDef();
-        bDef.position.set((16 * 7 + 8) / MarioBros.PPM, 32 / MarioBros.PPM);
-        bDef.type = BodyDef.BodyType.DynamicBody;
-        b2Body = world.createBody(bDef);
-
-        FixtureDef fDef = new FixtureDef();
-        CircleShape shape = new CircleShape();
-        shape.setRadius(6 / MarioBros.PPM);
-        fDef.filter.categoryBits = MarioBros.MARIO_BIT;
-        fDef.filter.maskBits = MarioBros.GROUND_BIT |
-                MarioBros.BRICK_BIT |
-                MarioBros.COIN_BIT |
-                MarioBros.ENEMY_BIT |
-                MarioBros.OBJECT_BIT |
-                MarioBros.ENEMY_HEAD_BIT |
-                MarioBros.ITEM_BIT;
-
-        fDef.shape = shape;
-        b2Body.createFixture(fDef).setUserData(this);
-
-        // Additional shape to act as the characters feet. this avoids the issue of a jump animation
-        // trigger if the character walks over a connection between game objects.
-        EdgeShape feet = new EdgeShape();
-        feet.set(
-                new Vector2(-2 / MarioBros.PPM, -6 / MarioBros.PPM),
-                new Vector2(2 / MarioBros.PPM, -6 / MarioBros.PPM));
-        fDef.filter.categoryBits = MarioBros.MARIO_FOOT_BIT;
-        fDef.shape = feet;
-        b2Body.createFixture(fDef);
+        defineBody((16 * 7 + 8) / MarioBros.PPM, 32 / MarioBros.PPM, false);
+    }
 
-        EdgeShape head = new EdgeShape();
-        head.set(
-                new Vector2(-2 / MarioBros.PPM, 6 / MarioBros.PPM),
-                new Vector2(2 / MarioBros.PPM, 6 / MarioBros.PPM));
-        fDef.filter.categoryBits = MarioBros.MARIO_HEAD_BIT;
-        fDef.shape = head;
-        fDef.isSensor = true;
-        b2Body.createFixture(fDef).setUserData(this);
+    /**
+     * Defines the body of the current size in the world of the session, after it was rebuilt.
+     * The state of the body is restored afterwards.
+     *
+     * @see com.andrejlohn.mariobros.session.GameSession#rebuildWorld()
+     */
+    public void rebuildBody() {
+        world = session.getWorld();
+        defineBody(0, 0, bigBody);
     }
 
+    /**
+     * Replaces the body of the small player character by the body of the big one, which is
+     * lifted so its lower circle stands where the small one did.
+     *
+     * @see #defineBody(float, float, boolean)
+     */
     public void defineBigMario() {
-        Vector2 currentPosition = b2Body.getPosition();
+        float x = b2Body.getPosition().x;
+        float y = b2Body.getPosition().y;
         world.destroyBody(b2Body);
+        defineBody(x, y + 10 / MarioBros.PPM, true);
+
+        timeToDefineBigMario = false;
+    }
 
+    /**
+     * Defines the body and fixtures of the player character.
+     * The small character is a circle, the big one two circles on top of each other. Both have an
+     * edge for the feet below and a sensor edge for the head above.
+     *
+     * @param x     the body x-coordinate
+     * @param y     the body y-coordinate
+     * @param big   <code>true</code> for the body of the big character
+     *              <code>false</code> else
+     * @see         BodyDef#position
+     * @see         BodyDef#type
+     * @see         com.badlogic.gdx.physics.box2d.BodyDef.BodyType#DynamicBody
+     * @see         World#createBody(BodyDef)
+     * @see         FixtureDef#shape
+     * @see         CircleShape#setRadius(float)
+     * @see         Body#createFixture(FixtureDef)
+     */
+    private void defineBody(float x, float y, boolean big) {
         BodyDef bDef = new BodyDef();
-        bDef.position.set(currentPosition.add(0, 10 / MarioBros.PPM));
+        bDef.position.set(x, y);
         bDef.type = BodyDef.BodyType.DynamicBody;
         b2Body = world.createBody(bDef);
 
@@ -324,19 +366,21 @@ public class Mario extends Sprite {
                 MarioBros.ITEM_BIT;
 
         fDef.shape = shape;
-        b2Body.createFixture(fDef).setUserData(this);
-        shape.setPosition(new Vector2(0, -14 / MarioBros.PPM));
-        b2Body.createFixture(fDef).setUserData(this);
+        b2Body.createFixture(fDef).setUserData(bodyTag);
+        if(big) {
+            shape.setPosition(new Vector2(0, -14 / MarioBros.PPM));
+            b2Body.createFixture(fDef).setUserData(bodyTag);
+        }
 
         // Additional shape to act as the characters feet. this avoids the issue of a jump animation
-        // trigger if the character walks over a connection between game objects.
+        // trigger if the character walks over a connection between game objects. The feet of the
+        // big character are at the bottom of the lower circle, so they touch the ground.
+        float feetY = (big ? -20 : -6) / MarioBros.PPM;
         EdgeShape feet = new EdgeShape();
-        feet.set(
-                new Vector2(-2 / MarioBros.PPM, -6 / MarioBros.PPM),
-                new Vector2(2 / MarioBros.PPM, -6 / MarioBros.PPM));
+        feet.set(new Vector2(-2 / MarioBros.PPM, feetY), new Vector2(2 / MarioBros.PPM, feetY));
         fDef.filter.categoryBits = MarioBros.MARIO_FOOT_BIT;
         fDef.shape = feet;
-        b2Body.createFixture(fDef);
+        b2Body.createFixture(fDef).setUserData(feetTag);
 
         EdgeShape head = new EdgeShape();
         head.set(
@@ -345,11 +389,15 @@ public class Mario extends Sprite {
         fDef.filter.categoryBits = MarioBros.MARIO_HEAD_BIT;
         fDef.shape = head;
         fDef.isSensor = true;
-        b2Body.createFixture(fDef).setUserData(this);
+        b2Body.createFixture(fDef).setUserData(headTag);
 
-        timeToDefineBigMario = false;
-    }
+        // Fixtures copy their shapes
+        shape.dispose();
+        feet.dispose();
+        head.dispose();
 
+        bigBody = big;
+    }
 
     /**
      * Gets the player characters size.
@@ -373,7 +421,7 @@ public class Mario extends Sprite {
                 marioIsBig = false;
                 timeToRedefineMario = true;
                 setBounds(getX(), getY(), getWidth(), getHeight() / 2);
-                manager.get("audio/sounds/smb_pipe.wav", Sound.class).play();
+                session.playSound("audio/sounds/smb_pipe.wav");
             } else {
                 kill();
             }
@@ -382,68 +430,146 @@ public class Mario extends Sprite {
 
     /**
      * Turns the player character from big to small.
+     *
+     * @see #defineBody(float, float, boolean)
      */
     public void redefineMario() {
-        Vector2 position = b2Body.getPosition();
+        float x = b2Body.getPosition().x;
+        float y = b2Body.getPosition().y;
         world.destroyBody(b2Body);
+        defineBody(x, y, false);
 
-        BodyDef bDef = new BodyDef();
-        bDef.position.set(position.x, position.y);
-        bDef.type = BodyDef.BodyType.DynamicBody;
-        b2Body = world.createBody(bDef);
+        timeToRedefineMario = false;
+    }
 
-        FixtureDef fDef = new FixtureDef();
-        CircleShape shape = new CircleShape();
-        shape.setRadius(6 / MarioBros.PPM);
-        fDef.filter.categoryBits = MarioBros.MARIO_BIT;
-        fDef.filter.maskBits = MarioBros.GROUND_BIT |
-                MarioBros.BRICK_BIT |
-                MarioBros.COIN_BIT |
-                MarioBros.ENEMY_BIT |
-                MarioBros.OBJECT_BIT |
-                MarioBros.ENEMY_HEAD_BIT |
-                MarioBros.ITEM_BIT;
+    /**
+     * Counts a fixture the feet started to touch, i.e. ground, a pipe, a brick or a coin.
+     */
+    public void beginFootContact() {
+        footContacts++;
+    }
 
-        fDef.shape = shape;
-        b2Body.createFixture(fDef).setUserData(this);
+    /**
+     * Counts a fixture the feet no longer touch.
+     */
+    public void endFootContact() {
+        footContacts--;
+    }
 
-        // Additional shape to act as the characters feet. this avoids the issue of a jump animation
-        // trigger if the character walks over a connection between game objects.
-        EdgeShape feet = new EdgeShape();
-        feet.set(
-                new Vector2(-2 / MarioBros.PPM, -6 / MarioBros.PPM),
-                new Vector2(2 / MarioBros.PPM, -6 / MarioBros.PPM));
-        fDef.shape = feet;
-        b2Body.createFixture(fDef);
+    /**
+     * Checks whether the feet of the player character touch anything to stand on.
+     *
+     * @return  <code>true</code> if the character stands on something
+     *          <code>false</code> else
+     */
+    public boolean isOnGround() {
+        return footContacts > 0;
+    }
 
-        EdgeShape head = new EdgeShape();
-        head.set(
-                new Vector2(-2 / MarioBros.PPM, 6 / MarioBros.PPM),
-                new Vector2(2 / MarioBros.PPM, 6 / MarioBros.PPM));
-        fDef.filter.categoryBits = MarioBros.MARIO_HEAD_BIT;
-        fDef.shape = head;
-        fDef.isSensor = true;
-        b2Body.createFixture(fDef).setUserData(this);
+    /**
+     * Gets the number of steps the player character has been in its current state.
+     *
+     * @return  the number of steps
+     */
+    public int getStateTicks() {
+        return stateTicks;
+    }
 
-        timeToRedefineMario = false;
+    /**
+     * Mixes the state the following steps depend on into the session checksum.
+     *
+     * @param hash  the hash
+     * @see         GameSession#getChecksum()
+     */
+    public void hashState(StateHash hash) {
+        hash.add(currentState.ordinal());
+        hash.add(stateTicks);
+        hash.add(marioIsBig);
+        hash.add(marioIsDead);
+        hash.add(b2Body);
+    }
+
+    /**
+     * Writes the state of the player character: the sprite bounds, the state machine, the size,
+     * the body and the number of fixtures the feet touch.
+     *
+     * <pre>
+     * float    x, y, width, height
+     * byte     current state, previous state
+     * int      state ticks
+     * byte     flags
+     *          body state
+     * byte     foot contacts
+     * </pre>
+     *
+     * @param buffer    the buffer to write to
+     * @see             BodyState#write(ByteBuffer, Body)
+     */
+    public void saveState(ByteBuffer buffer) {
+        buffer.putFloat(getX());
+        buffer.putFloat(getY());
+        buffer.putFloat(getWidth());
+        buffer.putFloat(getHeight());
+        buffer.put((byte) currentState.ordinal());
+        buffer.put((byte) previousState.ordinal());
+        buffer.putInt(stateTicks);
+        buffer.put((byte) ((runningRight ? RUNNING_RIGHT : 0)
+                | (marioIsBig ? BIG : 0)
+                | (runGrowAnimation ? GROW_ANIMATION : 0)
+                | (timeToDefineBigMario ? DEFINE_BIG : 0)
+                | (timeToRedefineMario ? REDEFINE : 0)
+                | (marioIsDead ? DEAD : 0)
+                | (bigBody ? BIG_BODY : 0)));
+        BodyState.write(buffer, b2Body);
+        buffer.put((byte) footContacts);
     }
 
-    public float getStateTimer() {
-        return stateTimer;
+    /**
+     * Restores the state of the player character in place. The body is kept and set to the
+     * restored state, it is only defined again if the character had the body of the other size.
+     *
+     * @param buffer    the buffer to read from
+     * @see             #saveState(ByteBuffer)
+     * @see             BodyState#read(ByteBuffer, Body)
+     */
+    public void restoreState(ByteBuffer buffer) {
+        float x = buffer.getFloat();
+        float y = buffer.getFloat();
+        float width = buffer.getFloat();
+        setBounds(x, y, width, buffer.getFloat());
+        currentState = STATES[buffer.get()];
+        previousState = STATES[buffer.get()];
+        stateTicks = buffer.getInt();
+        int flags = buffer.get();
+        runningRight = (flags & RUNNING_RIGHT) != 0;
+        marioIsBig = (flags & BIG) != 0;
+        runGrowAnimation = (flags & GROW_ANIMATION) != 0;
+        timeToDefineBigMario = (flags & DEFINE_BIG) != 0;
+        timeToRedefineMario = (flags & REDEFINE) != 0;
+        marioIsDead = (flags & DEAD) != 0;
+
+        boolean big = (flags & BIG_BODY) != 0;
+        if(big != bigBody) {
+            world.destroyBody(b2Body);
+            defineBody(0, 0, big);
+        }
+        BodyState.read(buffer, b2Body);
+        footContacts = buffer.get();
+        savePreviousPosition();
     }
 
+    /**
+     * Kills the player character. It stops colliding and jumps out of the level once the world
+     * commands are applied, so it may be killed from a contact callback.
+     *
+     * @see WorldCommandBuffer#setFilter(Body, Filter)
+     * @see WorldCommandBuffer#applyImpulse(Body, float, float)
+     */
     public void kill() {
-        manager.get("audio/music/01_main_theme_overworld.mp3", Music.class).stop();
-        manager.get("audio/music/smb_mariodie.wav", Sound.class).play();
+        session.stopMusic("audio/music/01_main_theme_overworld.mp3");
+        session.playSound("audio/music/smb_mariodie.wav");
         marioIsDead = true;
-        Filter filter = new Filter();
-        filter.maskBits = MarioBros.NOTHING_BIT;
-        for (Fixture fixture : b2Body.getFixtureList()) {
-            fixture.setFilterData(filter);
-        }
-        b2Body.applyLinearImpulse(
-                new Vector2(0, 4f),
-                b2Body.getWorldCenter(),
-                true);
+        session.getCommands().setFilter(b2Body, DEAD_FILTER);
+        session.getCommands().applyImpulse(b2Body, 0, 4f);
     }
 }
@@ -0,0 +1,162 @@
+package com.andrejlohn.mariobros.sprites;
+
+import com.badlogic.gdx.graphics.g2d.Sprite;
+import com.badlogic.gdx.utils.Array;
+
+/**
+ * This class keeps the sprites of one kind (e.g. all live enemies) sorted by their x-coordinate,
+ * and sprites at the same x-coordinate by their id. The order only depends on the positions and
+ * ids, not on the order the sprites were registered or moved in, so simulations of the same
+ * session always iterate the sprites alike.
+ * Sprites are registered when they enter the game and unregistered when they leave it. The
+ * sprites can be iterated by index without allocating, and range queries return the index range of
+ * the sprites overlapping a horizontal interval, so callers only touch the relevant slice.
+ *
+ * Sprites move, so the order has to be restored with {@link #sort()} after they have been updated.
+ * Between two updates sprites move only a little, so sorting is close to linear.
+ *
+ * @param <T>   the sprite type
+ * @version     %I%, %G%
+ * @see         Sprite#getX()
+ * @see         InterpolatedSprite#getId()
+ */
+public class SpriteRegistry<T extends InterpolatedSprite> {
+
+    private Array<T> sprites;
+
+    // The widest sprite ever registered, used to find sprites reaching into a range from the left
+    private float maxWidth;
+
+    /**
+     * Creates an empty registry.
+     *
+     * @param capacity  the initial capacity
+     */
+    public SpriteRegistry(int capacity) {
+        sprites = new Array<T>(capacity);
+        maxWidth = 0;
+    }
+
+    /**
+     * Registers a sprite at its position in the order.
+     *
+     * @param sprite    the sprite
+     */
+    public void register(T sprite) {
+        int index = end(sprite.getX());
+        while(index > 0 && isAfter(sprites.get(index - 1), sprite)) {
+            index--;
+        }
+        sprites.insert(index, sprite);
+        maxWidth = Math.max(maxWidth, sprite.getWidth());
+    }
+
+    /**
+     * Unregisters the sprite at the given index. The order of the other sprites is kept.
+     *
+     * @param index the sprite index
+     * @return      the unregistered sprite
+     */
+    public T unregister(int index) {
+        return sprites.removeIndex(index);
+    }
+
+    /**
+     * Unregisters the given sprite. The order of the other sprites is kept.
+     *
+     * @param sprite    the sprite
+     * @return          <code>true</code> if the sprite was registered
+     *                  <code>false</code> else
+     */
+    public boolean unregister(T sprite) {
+        return sprites.removeValue(sprite, true);
+    }
+
+    /**
+     * Unregisters all sprites.
+     */
+    public void clear() {
+        sprites.clear();
+        maxWidth = 0;
+    }
+
+    /**
+     * Restores the order after the sprites moved. Uses an insertion sort, which is close to linear
+     * for an almost sorted order.
+     */
+    public void sort() {
+        for(int i = 1; i < sprites.size; i++) {
+            T sprite = sprites.get(i);
+            int j = i - 1;
+            while(j >= 0 && isAfter(sprites.get(j), sprite)) {
+                sprites.set(j + 1, sprites.get(j));
+                j--;
+            }
+            sprites.set(j + 1, sprite);
+        }
+    }
+
+    /**
+     * Checks whether a sprite comes after another one in the order.
+     *
+     * @param sprite    the sprite
+     * @param other     the other sprite
+     * @return          <code>true</code> if the sprite is right of the other one, or at the same
+     *                  x-coordinate with a greater id
+     *                  <code>false</code> else
+     */
+    private boolean isAfter(T sprite, T other) {
+        return sprite.getX() > other.getX()
+                || (sprite.getX() == other.getX() && sprite.getId() > other.getId());
+    }
+
+    /**
+     * Gets the index of the first sprite which may overlap the given x-coordinate or lies right of
+     * it.
+     *
+     * @param x the x-coordinate
+     * @return  the index of the first sprite, {@link #size()} if there is none
+     */
+    public int first(float x) {
+        float minX = x - maxWidth;
+        int low = 0;
+        int high = sprites.size;
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(sprites.get(middle).getX() < minX) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Gets the index after the last sprite starting at or left of the given x-coordinate.
+     *
+     * @param x the x-coordinate
+     * @return  the index after the last sprite, 0 if there is none
+     */
+    public int end(float x) {
+        int low = 0;
+        int high = sprites.size;
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(sprites.get(middle).getX() <= x) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    public T get(int index) {
+        return sprites.get(index);
+    }
+
+    public int size() {
+        return sprites.size;
+    }
+}
@@ -1,38 +1,215 @@
 package com.andrejlohn.mariobros.sprites.enemies;
 
-import com.andrejlohn.mariobros.screens.PlayScreen;
+import com.andrejlohn.mariobros.MarioBros;
+import com.andrejlohn.mariobros.session.BodyState;
+import com.andrejlohn.mariobros.session.GameSession;
+import com.andrejlohn.mariobros.session.StateHash;
+import com.andrejlohn.mariobros.sprites.InterpolatedSprite;
 import com.andrejlohn.mariobros.sprites.Mario;
-import com.badlogic.gdx.assets.AssetManager;
-import com.badlogic.gdx.graphics.g2d.Sprite;
+import com.andrejlohn.mariobros.tools.FixtureTag;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.Filter;
+import com.badlogic.gdx.physics.box2d.Fixture;
 import com.badlogic.gdx.physics.box2d.World;
+import com.badlogic.gdx.utils.Array;
 
-public abstract class Enemy extends Sprite {
+import java.nio.ByteBuffer;
+
+public abstract class Enemy extends InterpolatedSprite {
+
+    // The size of the saved state in bytes, at most, without the fields of the subclass
+    public static final int STATE_SIZE = 3 * 4 + 1 + BodyState.SIZE;
+
+    // Flags of the saved state
+    private static final int DESTROYED = 1;
+    private static final int ANIMATED = 2;
 
     protected World world;
-    protected PlayScreen screen;
+    protected GameSession session;
     public Body b2Body;
     public Vector2 velocity;
+    protected boolean destroyed;
+
+    // Tags of the body and head fixtures
+    protected FixtureTag bodyTag;
+    protected FixtureTag headTag;
 
+    // Enemies far from the camera skip choosing animation frames
+    protected boolean animated;
 
-    public Enemy(PlayScreen screen, float x, float y) {
-        this.screen = screen;
-        this.world = screen.getWorld();
+    // Collision filters of the fixtures as defined, set again when respawned
+    private Filter[] filters;
+
+    public Enemy(GameSession session, float x, float y) {
+        this.session = session;
+        this.world = session.getWorld();
         setPosition(x, y);
+        bodyTag = new FixtureTag(MarioBros.ENEMY_BIT, this);
+        headTag = new FixtureTag(MarioBros.ENEMY_HEAD_BIT, this);
         defineEnemy();
+        Array<Fixture> fixtures = b2Body.getFixtureList();
+        filters = new Filter[fixtures.size];
+        for(int i = 0; i < filters.length; i++) {
+            Filter filter = fixtures.get(i).getFilterData();
+            filters[i] = new Filter();
+            filters[i].categoryBits = filter.categoryBits;
+            filters[i].maskBits = filter.maskBits;
+            filters[i].groupIndex = filter.groupIndex;
+        }
         velocity = new Vector2(-1, -2);
-        b2Body.setActive(false);
+        destroyed = false;
+        animated = true;
     }
 
     protected abstract void defineEnemy();
 
     public abstract void hitOnHead(Mario mario);
 
-    public abstract void update(float dt);
+    /**
+     * Updates the enemy after a simulation step.
+     */
+    public abstract void update();
 
     public abstract void onEnemyHit(Enemy enemy);
 
+    /**
+     * Destroys the enemy, unless it has already been destroyed. Its body is deactivated rather
+     * than destroyed, so the enemy can be respawned.
+     *
+     * @see Body#setActive(boolean)
+     * @see #respawn(float, float)
+     */
+    public void despawn() {
+        if(!destroyed) {
+            b2Body.setActive(false);
+            destroyed = true;
+        }
+    }
+
+    /**
+     * Brings a despawned enemy back as if it had just been created at the given position. The
+     * body is moved there, stopped, gets the collision filters it was defined with and is
+     * activated again. Subclasses reset their state machine.
+     *
+     * @param x the position x-coordinate
+     * @param y the position y-coordinate
+     * @see     #despawn()
+     */
+    public void respawn(float x, float y) {
+        setPosition(x, y);
+        setRotation(0);
+        b2Body.setTransform(x, y, 0);
+        b2Body.setLinearVelocity(0, 0);
+        b2Body.setAngularVelocity(0);
+        Array<Fixture> fixtures = b2Body.getFixtureList();
+        for(int i = 0; i < filters.length; i++) {
+            Fixture fixture = fixtures.get(i);
+            Filter filter = fixture.getFilterData();
+            if(filter.categoryBits != filters[i].categoryBits
+                    || filter.maskBits != filters[i].maskBits
+                    || filter.groupIndex != filters[i].groupIndex) {
+                fixture.setFilterData(filters[i]);
+            }
+        }
+        b2Body.setActive(true);
+        velocity.set(-1, -2);
+        destroyed = false;
+        animated = true;
+    }
+
+    /**
+     * Checks whether the enemy has been destroyed and is no longer shown, so it can be removed
+     * from the game.
+     *
+     * @return  <code>true</code> if the enemy is finished
+     *          <code>false</code> else
+     */
+    public boolean isFinished() {
+        return destroyed;
+    }
+
+    public boolean isDestroyed() {
+        return destroyed;
+    }
+
+    /**
+     * Sets whether the enemy chooses its animation frames when updated. Enemies which are not
+     * animated still count their state ticks, so their animation continues in the right phase
+     * once they are animated again.
+     *
+     * @param animated  <code>true</code> if the enemy is animated
+     *                  <code>false</code> else
+     */
+    public void setAnimated(boolean animated) {
+        this.animated = animated;
+    }
+
+    /**
+     * Mixes the state the following steps depend on into the session checksum. Subclasses add the
+     * state of their state machine.
+     *
+     * @param hash  the hash
+     * @see         GameSession#getChecksum()
+     */
+    public void hashState(StateHash hash) {
+        hash.add(getId());
+        hash.add(destroyed);
+        hash.add(velocity.x);
+        hash.add(velocity.y);
+        if(!destroyed) {
+            hash.add(b2Body);
+        }
+    }
+
+    /**
+     * Writes the state of the enemy, apart from its type and position, which the enemy manager
+     * writes to create it again. Subclasses append the state of their state machine.
+     *
+     * <pre>
+     * float    rotation, velocity x, y
+     * byte     flags
+     *          body state, unless destroyed
+     * </pre>
+     *
+     * @param buffer    the buffer to write to
+     * @see             BodyState#write(ByteBuffer, Body)
+     */
+    public void saveState(ByteBuffer buffer) {
+        buffer.putFloat(getRotation());
+        buffer.putFloat(velocity.x);
+        buffer.putFloat(velocity.y);
+        buffer.put((byte) ((destroyed ? DESTROYED : 0) | (animated ? ANIMATED : 0)));
+        if(!destroyed) {
+            BodyState.write(buffer, b2Body);
+        }
+    }
+
+    /**
+     * Restores the state of the enemy in place, after the enemy manager set its id and position.
+     * The body is set to the restored state and activated, the body of a destroyed enemy is
+     * deactivated.
+     *
+     * @param buffer    the buffer to read from
+     * @see             #saveState(ByteBuffer)
+     * @see             BodyState#read(ByteBuffer, Body)
+     */
+    public void restoreState(ByteBuffer buffer) {
+        setRotation(buffer.getFloat());
+        float x = buffer.getFloat();
+        velocity.set(x, buffer.getFloat());
+        int flags = buffer.get();
+        destroyed = (flags & DESTROYED) != 0;
+        animated = (flags & ANIMATED) != 0;
+        if(destroyed) {
+            b2Body.setActive(false);
+        } else {
+            BodyState.read(buffer, b2Body);
+            b2Body.setActive(true);
+        }
+        savePreviousPosition();
+    }
+
     public void reverseVelocity(boolean x, boolean y) {
         if(x) {
             velocity.x *= -1;
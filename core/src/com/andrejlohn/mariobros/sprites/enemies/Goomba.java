@@ -1,10 +1,10 @@
 package com.andrejlohn.mariobros.sprites.enemies;
 
 import com.andrejlohn.mariobros.MarioBros;
-import com.andrejlohn.mariobros.screens.PlayScreen;
+import com.andrejlohn.mariobros.session.GameSession;
+import com.andrejlohn.mariobros.session.StateHash;
 import com.andrejlohn.mariobros.sprites.Mario;
-import com.badlogic.gdx.assets.AssetManager;
-import com.badlogic.gdx.audio.Sound;
+import com.andrejlohn.mariobros.tools.WorldCommandBuffer;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.Animation;
 import com.badlogic.gdx.graphics.g2d.Batch;
@@ -17,6 +17,8 @@ import com.badlogic.gdx.physics.box2d.FixtureDef;
 import com.badlogic.gdx.physics.box2d.PolygonShape;
 import com.badlogic.gdx.utils.Array;
 
+import java.nio.ByteBuffer;
+
 /**
  * This class represents a Goomba enemy character.
  * Goombas will only move horizontally and change direction when bumping into an object. Jumping on
@@ -28,70 +30,92 @@ import com.badlogic.gdx.utils.Array;
  */
 public class Goomba extends Enemy {
 
-    private float stateTime;
+    // The size of the saved state in bytes, at most
+    public static final int STATE_SIZE = Enemy.STATE_SIZE + 4 + 1;
+
+    private int stateTicks;
     private Animation<TextureRegion> walkAnimation;
     private Array<TextureRegion> frames;
-    private AssetManager manager;
+    private TextureRegion squashed;
     private boolean setToDestroy;
-    private boolean destroyed;
 
     /**
      * Creates the Goomba. Sets the Goombas animation and bounding box. Positions the Goomba in the
-     * game world according to a given position.
+     * game world according to a given position. The animation is only set up if the session does
+     * not run headless.
      *
-     * @param screen    the play screen
+     * @param session   the game session
      * @param x         the position x-coordinate
      * @param y         the position y-coordinate
      */
-    public Goomba(PlayScreen screen, float x, float y, AssetManager manager) {
-        super(screen, x, y);
-        this.manager = manager;
-        frames = new Array<TextureRegion>();
-        for(int i=0; i<2; i++) {
-            frames.add(
-                    new TextureRegion(
-                            screen.getTextureAtlas().findRegion("goomba"),
-                            i * 16,
-                            0,
-                            16,
-                            16));
+    public Goomba(GameSession session, float x, float y) {
+        super(session, x, y);
+        if(!session.isHeadless()) {
+            frames = new Array<TextureRegion>();
+            for(int i=0; i<2; i++) {
+                frames.add(
+                        new TextureRegion(
+                                session.getTextureAtlas().findRegion("goomba"),
+                                i * 16,
+                                0,
+                                16,
+                                16));
+            }
+            walkAnimation = new Animation<TextureRegion>(0.4f, frames);
+            squashed = new TextureRegion(
+                    session.getTextureAtlas().findRegion("goomba"),
+                    32,
+                    0,
+                    16,
+                    16);
         }
-        walkAnimation = new Animation<TextureRegion>(0.4f, frames);
-        stateTime = 0;
+        stateTicks = 0;
         setBounds(getX(), getY(), 16 / MarioBros.PPM, 16 / MarioBros.PPM);
 
         setToDestroy = false;
-        destroyed = false;
     }
 
     /**
-     * Updates the Gommba with respect to the time passed since the last update. Only not destroyed
-     * Goombas will be updated. Stomped Goombas will be destroyed.
+     * Brings the despawned Goomba back walking.
      *
-     * @param dt    the time passed
-     * @see         com.badlogic.gdx.physics.box2d.World#destroyBody(Body)
-     * @see         Enemy#setRegion(Texture)
-     * @see         Enemy#setPosition(float, float)
-     * @see         Body#setLinearVelocity(Vector2)
+     * @param x the position x-coordinate
+     * @param y the position y-coordinate
      */
-    public void update(float dt) {
-        stateTime += dt;
-        if(setToDestroy && !destroyed) {
-            world.destroyBody(b2Body);
-            destroyed = true;
-            setRegion(new TextureRegion(
-                    screen.getTextureAtlas().findRegion("goomba"),
-                    32,
-                    0,
-                    16,
-                    16));
-            stateTime = 0;
+    @Override
+    public void respawn(float x, float y) {
+        super.respawn(x, y);
+        stateTicks = 0;
+        setToDestroy = false;
+        if(frames != null) {
+            setRegion(frames.get(0));
+        }
+    }
+
+    /**
+     * Updates the Gommba after a simulation step. Only not destroyed Goombas will be updated.
+     * Stomped Goombas have been despawned after the world step and show the squashed frame. The
+     * walk animation frame is only chosen while the Goomba is animated.
+     *
+     * @see Enemy#setRegion(Texture)
+     * @see Enemy#setPosition(float, float)
+     * @see Body#setLinearVelocity(Vector2)
+     */
+    public void update() {
+        stateTicks++;
+        if(setToDestroy && destroyed) {
+            setToDestroy = false;
+            if(squashed != null) {
+                setRegion(squashed);
+            }
+            stateTicks = 0;
         } else if(!destroyed) {
             b2Body.setLinearVelocity(velocity);
             setPosition(
                     b2Body.getPosition().x - getWidth() / 2,
                     b2Body.getPosition().y - getHeight() / 2);
-            setRegion(walkAnimation.getKeyFrame(stateTime, true));
+            if(walkAnimation != null && animated) {
+                setRegion(walkAnimation.getKeyFrame(stateTicks * GameSession.STEP_TIME, true));
+            }
         }
     }
 
@@ -129,7 +153,7 @@ public class Goomba extends Enemy {
                 MarioBros.MARIO_BIT;
 
         fDef.shape = shape;
-        b2Body.createFixture(fDef).setUserData(this);
+        b2Body.createFixture(fDef).setUserData(bodyTag);
 
         // Create the Head
         PolygonShape head = new PolygonShape();
@@ -143,7 +167,11 @@ public class Goomba extends Enemy {
         fDef.shape = head;
         fDef.restitution = 0.5f;
         fDef.filter.categoryBits = MarioBros.ENEMY_HEAD_BIT;
-        b2Body.createFixture(fDef).setUserData(this);
+        b2Body.createFixture(fDef).setUserData(headTag);
+
+        // Fixtures copy their shapes
+        shape.dispose();
+        head.dispose();
     }
 
     /**
@@ -154,27 +182,78 @@ public class Goomba extends Enemy {
      * @see         Enemy#draw(Batch)
      */
     public void draw(Batch batch) {
-        if(!destroyed || stateTime < 1) {
+        if(!destroyed || stateTicks < GameSession.TICKS_PER_SECOND) {
             super.draw(batch);
         }
     }
 
+    /**
+     * Checks whether the Goomba has been destroyed and is no longer drawn.
+     *
+     * @return  <code>true</code> if the Goomba is finished
+     *          <code>false</code> else
+     */
+    @Override
+    public boolean isFinished() {
+        return destroyed && stateTicks >= GameSession.TICKS_PER_SECOND;
+    }
+
+    @Override
+    public void hashState(StateHash hash) {
+        super.hashState(hash);
+        hash.add(stateTicks);
+        hash.add(setToDestroy);
+    }
+
+    /**
+     * Writes the state of the Goomba, followed by its state ticks and whether it has been stomped.
+     *
+     * @param buffer    the buffer to write to
+     */
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        super.saveState(buffer);
+        buffer.putInt(stateTicks);
+        buffer.put((byte) (setToDestroy ? 1 : 0));
+    }
+
+    @Override
+    public void restoreState(ByteBuffer buffer) {
+        super.restoreState(buffer);
+        stateTicks = buffer.getInt();
+        setToDestroy = buffer.get() != 0;
+        if(destroyed && squashed != null) {
+            setRegion(squashed);
+        }
+    }
+
     @Override
     public void onEnemyHit(Enemy enemy) {
         if(enemy instanceof Turtle && ((Turtle) enemy).currentState == Turtle.State.MOVING_SHELL) {
-            setToDestroy = true;
+            squash();
         } else {
             reverseVelocity(true, false);
         }
     }
 
     /**
-     * Reatchs to the Goomba being stomped. Sets the Goomba to be destroyed in the next update
-     * cycle.
+     * Reatchs to the Goomba being stomped. The Goomba is despawned right after the world step.
      */
     @Override
     public void hitOnHead(Mario mario) {
-        setToDestroy = true;
-        manager.get("audio/sounds/smb_stomp.wav", Sound.class).play();
+        squash();
+        session.playSound("audio/sounds/smb_stomp.wav");
+    }
+
+    /**
+     * Enqueues the Goomba to be despawned, once.
+     *
+     * @see WorldCommandBuffer#despawn(Enemy)
+     */
+    private void squash() {
+        if(!setToDestroy && !destroyed) {
+            setToDestroy = true;
+            session.getCommands().despawn(this);
+        }
     }
 }
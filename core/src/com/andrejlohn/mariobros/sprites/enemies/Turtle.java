@@ -1,52 +1,72 @@
 package com.andrejlohn.mariobros.sprites.enemies;
 
 import com.andrejlohn.mariobros.MarioBros;
-import com.andrejlohn.mariobros.screens.PlayScreen;
+import com.andrejlohn.mariobros.session.GameSession;
+import com.andrejlohn.mariobros.session.StateHash;
 import com.andrejlohn.mariobros.sprites.Mario;
+import com.andrejlohn.mariobros.tools.WorldCommandBuffer;
 import com.badlogic.gdx.assets.AssetManager;
 import com.badlogic.gdx.graphics.g2d.Animation;
 import com.badlogic.gdx.graphics.g2d.Batch;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
 import com.badlogic.gdx.physics.box2d.BodyDef;
 import com.badlogic.gdx.physics.box2d.CircleShape;
 import com.badlogic.gdx.physics.box2d.Filter;
-import com.badlogic.gdx.physics.box2d.Fixture;
 import com.badlogic.gdx.physics.box2d.FixtureDef;
 import com.badlogic.gdx.physics.box2d.PolygonShape;
 import com.badlogic.gdx.utils.Array;
 
+import java.nio.ByteBuffer;
+
 public class Turtle extends Enemy {
 
     public static final int KICK_LEFT_SPEED = -2;
     public static final int KICK_RIGHT_SPEED = 2;
 
+    // The size of the saved state in bytes, at most
+    public static final int STATE_SIZE = Enemy.STATE_SIZE + 2 + 2 * 4;
+
     public enum State { WALKING, STANDING_SHELL, MOVING_SHELL, DEAD }
 
+    // A shell stands still and a dead turtle spins for 5 seconds
+    private static final int STATE_TICKS = 5 * GameSession.TICKS_PER_SECOND;
+
+    private static final State[] STATES = State.values();
+
+    // Collision filter of a dead turtle, colliding with nothing
+    private static final Filter DEAD_FILTER = new Filter();
+
+    static {
+        DEAD_FILTER.maskBits = MarioBros.NOTHING_BIT;
+    }
+
     public State currentState;
     public State previousState;
-    private float stateTime;
+    private int stateTicks;
 
     private Animation<TextureRegion> walkAnimation;
     private TextureRegion shell;
     private Array<TextureRegion> frames;
 
     private float deadRotationDegrees;
-    private boolean destroyed;
 
-    public Turtle(PlayScreen screen, float x, float y) {
-        super(screen, x, y);
+    public Turtle(GameSession session, float x, float y) {
+        super(session, x, y);
 
-        frames = new Array<TextureRegion>();
-        frames.add(new TextureRegion(screen.getTextureAtlas()
-                .findRegion("turtle"), 0, 0, 16, 24));
-        frames.add(new TextureRegion(screen.getTextureAtlas()
-                .findRegion("turtle"), 16, 0, 16, 24));
-        //TODO animate the shell
-        shell = new TextureRegion(screen.getTextureAtlas()
-                        .findRegion("turtle"), 64, 0, 16, 24);
+        if(!session.isHeadless()) {
+            frames = new Array<TextureRegion>();
+            frames.add(new TextureRegion(session.getTextureAtlas()
+                    .findRegion("turtle"), 0, 0, 16, 24));
+            frames.add(new TextureRegion(session.getTextureAtlas()
+                    .findRegion("turtle"), 16, 0, 16, 24));
+            //TODO animate the shell
+            shell = new TextureRegion(session.getTextureAtlas()
+                            .findRegion("turtle"), 64, 0, 16, 24);
 
-        walkAnimation = new Animation<TextureRegion>(0.2f, frames);
+            walkAnimation = new Animation<TextureRegion>(0.2f, frames);
+        }
 
         currentState = previousState = State.WALKING;
 
@@ -55,7 +75,7 @@ public class Turtle extends Enemy {
         setBounds(getX(), getY(), 16 / MarioBros.PPM, 24 / MarioBros.PPM);
     }
 
-    public TextureRegion getFrame(float dt) {
+    public TextureRegion getFrame() {
         TextureRegion region;
 
         switch(currentState) {
@@ -65,23 +85,31 @@ public class Turtle extends Enemy {
                 break;
             case WALKING:
             default:
-                region = walkAnimation.getKeyFrame(stateTime, true);
+                region = walkAnimation == null ?
+                        null :
+                        walkAnimation.getKeyFrame(stateTicks * GameSession.STEP_TIME, true);
                 break;
         }
 
-        if(velocity.x > 0 && !region.isFlipX()) {
-            region.flip(true, false);
-        }
+        if(region != null) {
+            if(velocity.x > 0 && !region.isFlipX()) {
+                region.flip(true, false);
+            }
 
-        if(velocity.x < 0 && region.isFlipX()) {
-            region.flip(true, false);
+            if(velocity.x < 0 && region.isFlipX()) {
+                region.flip(true, false);
+            }
         }
 
-        stateTime = currentState == previousState ? stateTime + dt : 0;
-        previousState = currentState;
+        updateStateTicks();
         return region;
     }
 
+    private void updateStateTicks() {
+        stateTicks = currentState == previousState ? stateTicks + 1 : 0;
+        previousState = currentState;
+    }
+
     public void kick(int speed) {
         velocity.x = speed;
         currentState = State.MOVING_SHELL;
@@ -110,7 +138,7 @@ public class Turtle extends Enemy {
                 MarioBros.MARIO_BIT;
 
         fDef.shape = shape;
-        b2Body.createFixture(fDef).setUserData(this);
+        b2Body.createFixture(fDef).setUserData(bodyTag);
 
         // Create the Head
         PolygonShape head = new PolygonShape();
@@ -124,7 +152,25 @@ public class Turtle extends Enemy {
         fDef.shape = head;
         fDef.restitution = 1.5f;
         fDef.filter.categoryBits = MarioBros.ENEMY_HEAD_BIT;
-        b2Body.createFixture(fDef).setUserData(this);
+        b2Body.createFixture(fDef).setUserData(headTag);
+
+        // Fixtures copy their shapes
+        shape.dispose();
+        head.dispose();
+    }
+
+    /**
+     * Brings the despawned turtle back walking.
+     *
+     * @param x the position x-coordinate
+     * @param y the position y-coordinate
+     */
+    @Override
+    public void respawn(float x, float y) {
+        super.respawn(x, y);
+        currentState = previousState = State.WALKING;
+        stateTicks = 0;
+        deadRotationDegrees = 0;
     }
 
     @Override
@@ -138,9 +184,16 @@ public class Turtle extends Enemy {
     }
 
     @Override
-    public void update(float dt) {
-        setRegion(getFrame(dt));
-        if(currentState == State.STANDING_SHELL && stateTime > 5) {
+    public void update() {
+        if(animated) {
+            TextureRegion frame = getFrame();
+            if(frame != null) {
+                setRegion(frame);
+            }
+        } else {
+            updateStateTicks();
+        }
+        if(currentState == State.STANDING_SHELL && stateTicks > STATE_TICKS) {
             currentState = State.WALKING;
             velocity.x = 1;
         }
@@ -152,15 +205,44 @@ public class Turtle extends Enemy {
         if(currentState == State.DEAD) {
             deadRotationDegrees += 3;
             rotate(deadRotationDegrees);
-            if(stateTime > 5 && !destroyed) {
-                world.destroyBody(b2Body);
-                destroyed = true;
+            if(stateTicks > STATE_TICKS && !destroyed) {
+                session.getCommands().despawn(this);
             }
         } else {
             b2Body.setLinearVelocity(velocity);
         }
     }
 
+    @Override
+    public void hashState(StateHash hash) {
+        super.hashState(hash);
+        hash.add(currentState.ordinal());
+        hash.add(stateTicks);
+    }
+
+    /**
+     * Writes the state of the turtle, followed by its state machine.
+     *
+     * @param buffer    the buffer to write to
+     */
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        super.saveState(buffer);
+        buffer.put((byte) currentState.ordinal());
+        buffer.put((byte) previousState.ordinal());
+        buffer.putInt(stateTicks);
+        buffer.putFloat(deadRotationDegrees);
+    }
+
+    @Override
+    public void restoreState(ByteBuffer buffer) {
+        super.restoreState(buffer);
+        currentState = STATES[buffer.get()];
+        previousState = STATES[buffer.get()];
+        stateTicks = buffer.getInt();
+        deadRotationDegrees = buffer.getFloat();
+    }
+
     @Override
     public void onEnemyHit(Enemy enemy) {
         if(enemy instanceof Turtle) {
@@ -184,17 +266,16 @@ public class Turtle extends Enemy {
         }
     }
 
+    /**
+     * Kills the turtle, e.g. when hit by a moving shell. It stops colliding and jumps out of the
+     * level once the world commands are applied.
+     *
+     * @see WorldCommandBuffer#setFilter(Body, Filter)
+     * @see WorldCommandBuffer#applyImpulse(Body, float, float)
+     */
     public void killed() {
         currentState = State.DEAD;
-        Filter filter = new Filter();
-        filter.maskBits = MarioBros.NOTHING_BIT;
-
-        for(Fixture fixture: b2Body.getFixtureList()) {
-            fixture.setFilterData(filter);
-        }
-
-        b2Body.applyLinearImpulse(new Vector2(0, 5f), b2Body.getWorldCenter(), true);
-
-
+        session.getCommands().setFilter(b2Body, DEAD_FILTER);
+        session.getCommands().applyImpulse(b2Body, 0, 5f);
     }
 }
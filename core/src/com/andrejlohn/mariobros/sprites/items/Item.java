@@ -1,44 +1,55 @@
 package com.andrejlohn.mariobros.sprites.items;
 
 import com.andrejlohn.mariobros.MarioBros;
-import com.andrejlohn.mariobros.screens.PlayScreen;
+import com.andrejlohn.mariobros.session.BodyState;
+import com.andrejlohn.mariobros.session.GameSession;
+import com.andrejlohn.mariobros.session.StateHash;
+import com.andrejlohn.mariobros.sprites.InterpolatedSprite;
 import com.andrejlohn.mariobros.sprites.Mario;
+import com.andrejlohn.mariobros.tools.FixtureTag;
+import com.andrejlohn.mariobros.tools.WorldCommandBuffer;
 import com.badlogic.gdx.graphics.g2d.Batch;
-import com.badlogic.gdx.graphics.g2d.Sprite;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.Body;
 import com.badlogic.gdx.physics.box2d.World;
 
+import java.nio.ByteBuffer;
+
 /**
- * This class represents a generic in game item.
+ * This class represents a generic in game item. Items are pooled: a used item is disabled instead
+ * of being destroyed and can be respawned later, together with its Box2D body.
  *
  * @version %I%, %G%
- * @see     Sprite
+ * @see     InterpolatedSprite
+ * @see     com.andrejlohn.mariobros.tools.ItemManager
  */
-public abstract class Item extends Sprite {
+public abstract class Item extends InterpolatedSprite {
+
+    // The size of the saved state in bytes
+    public static final int STATE_SIZE = 2 * 4 + 1 + BodyState.SIZE;
 
-    protected PlayScreen screen;
+    protected GameSession session;
     protected World world;
     protected Vector2 velocity;
-    protected boolean toDestroy;
     protected boolean destroyed;
     protected Body body;
+    protected FixtureTag tag;
 
     /**
-     * Creates the item based on the play screen and a given position.
+     * Creates the item based on the game session and a given position.
      *
-     * @param screen    the play screen
+     * @param session   the game session
      * @param x         the position x-coordinate
      * @param y         the position y-coordinate
      */
-    public Item(PlayScreen screen, float x, float y) {
-        this.screen = screen;
-        this.world = screen.getWorld();
+    public Item(GameSession session, float x, float y) {
+        this.session = session;
+        this.world = session.getWorld();
         setPosition(x, y);
         setBounds(getX(), getY(), 16 / MarioBros.PPM, 16 / MarioBros.PPM);
-        toDestroy = false;
         destroyed = false;
 
+        tag = new FixtureTag(MarioBros.ITEM_BIT, this);
         defineItem();
     }
 
@@ -46,21 +57,115 @@ public abstract class Item extends Sprite {
 
     public abstract void use(Mario mario);
 
-    public void update(float dt) {
-        if(toDestroy && !destroyed) {
-            world.destroyBody(body);
+    public abstract ItemType getType();
+
+    /**
+     * Updates the item after a simulation step.
+     */
+    public void update() {
+    }
+
+    /**
+     * Disables the item. Its body is deactivated, so it no longer collides, and the item is no
+     * longer drawn. The body is kept to respawn the item later.
+     *
+     * @see Body#setActive(boolean)
+     */
+    public void disable() {
+        if(!destroyed) {
+            body.setActive(false);
             destroyed = true;
         }
     }
 
+    /**
+     * Respawns a disabled item at the given position. The body is reactivated in place.
+     *
+     * @param x the position x-coordinate
+     * @param y the position y-coordinate
+     * @see     Body#setTransform(float, float, float)
+     * @see     Body#setActive(boolean)
+     */
+    public void respawn(float x, float y) {
+        setPosition(x, y);
+        body.setTransform(x, y, 0);
+        body.setLinearVelocity(0, 0);
+        body.setActive(true);
+        body.setAwake(true);
+        destroyed = false;
+        savePreviousPosition();
+    }
+
     public void draw(Batch batch) {
         if(!destroyed) {
             super.draw(batch);
         }
     }
 
+    /**
+     * Disables the item right after the world step. Called from contact callbacks, while the world
+     * is locked.
+     *
+     * @see WorldCommandBuffer#disable(Item)
+     */
     public void destroy() {
-        toDestroy = true;
+        session.getCommands().disable(this);
+    }
+
+    public boolean isDestroyed() {
+        return destroyed;
+    }
+
+    /**
+     * Mixes the state the following steps depend on into the session checksum.
+     *
+     * @param hash  the hash
+     * @see         GameSession#getChecksum()
+     */
+    public void hashState(StateHash hash) {
+        hash.add(getId());
+        hash.add(getType().ordinal());
+        hash.add(destroyed);
+        hash.add(velocity.x);
+        hash.add(velocity.y);
+        hash.add(body);
+    }
+
+    /**
+     * Writes the state of the item, apart from its type and position, which the item manager
+     * writes to create it again.
+     *
+     * <pre>
+     * float    velocity x, y
+     * byte     destroyed
+     *          body state
+     * </pre>
+     *
+     * @param buffer    the buffer to write to
+     * @see             BodyState#write(ByteBuffer, Body)
+     */
+    public void saveState(ByteBuffer buffer) {
+        buffer.putFloat(velocity.x);
+        buffer.putFloat(velocity.y);
+        buffer.put((byte) (destroyed ? 1 : 0));
+        BodyState.write(buffer, body);
+    }
+
+    /**
+     * Restores the state of the item in place, after the item manager set its id and position.
+     * The body is set to the restored state and activated, unless the item is disabled.
+     *
+     * @param buffer    the buffer to read from
+     * @see             #saveState(ByteBuffer)
+     * @see             BodyState#read(ByteBuffer, Body)
+     */
+    public void restoreState(ByteBuffer buffer) {
+        float x = buffer.getFloat();
+        velocity.set(x, buffer.getFloat());
+        destroyed = buffer.get() != 0;
+        BodyState.read(buffer, body);
+        body.setActive(!destroyed);
+        savePreviousPosition();
     }
 
     public void reverseVelocity(boolean x, boolean y) {
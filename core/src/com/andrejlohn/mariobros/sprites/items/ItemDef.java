@@ -1,14 +0,0 @@
-package com.andrejlohn.mariobros.sprites.items;
-
-import com.badlogic.gdx.math.Vector2;
-
-public class ItemDef {
-
-    public Vector2 position;
-    public Class<?> type;
-
-    public ItemDef(Vector2 position, Class<?> type) {
-        this.position = position;
-        this.type = type;
-    }
-}
@@ -0,0 +1,11 @@
+package com.andrejlohn.mariobros.sprites.items;
+
+/**
+ * The types of in game items. Items are spawned and pooled by type.
+ *
+ * @version %I%, %G%
+ * @see     com.andrejlohn.mariobros.tools.ItemManager
+ */
+public enum ItemType {
+    MUSHROOM
+}
@@ -1,7 +1,7 @@
 package com.andrejlohn.mariobros.sprites.items;
 
 import com.andrejlohn.mariobros.MarioBros;
-import com.andrejlohn.mariobros.screens.PlayScreen;
+import com.andrejlohn.mariobros.session.GameSession;
 import com.andrejlohn.mariobros.sprites.Mario;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.BodyDef;
@@ -10,9 +10,11 @@ import com.badlogic.gdx.physics.box2d.FixtureDef;
 
 public class Mushroom extends Item {
 
-    public Mushroom(PlayScreen screen, float x, float y) {
-        super(screen, x, y);
-        setRegion(screen.getTextureAtlas().findRegion("mushroom"), 0, 0, 16, 16);
+    public Mushroom(GameSession session, float x, float y) {
+        super(session, x, y);
+        if(!session.isHeadless()) {
+            setRegion(session.getTextureAtlas().findRegion("mushroom"), 0, 0, 16, 16);
+        }
         velocity = new Vector2(0.7f,0);
     }
 
@@ -34,7 +36,8 @@ public class Mushroom extends Item {
                 MarioBros.BRICK_BIT;
 
         fDef.shape = shape;
-        body.createFixture(fDef).setUserData(this);
+        body.createFixture(fDef).setUserData(tag);
+        shape.dispose();
     }
 
     @Override
@@ -44,8 +47,22 @@ public class Mushroom extends Item {
     }
 
     @Override
-    public void update(float dt) {
-        super.update(dt);
+    public ItemType getType() {
+        return ItemType.MUSHROOM;
+    }
+
+    @Override
+    public void respawn(float x, float y) {
+        super.respawn(x, y);
+        velocity.set(0.7f, 0);
+    }
+
+    @Override
+    public void update() {
+        super.update();
+        if(destroyed) {
+            return;
+        }
         setPosition(
                 body.getPosition().x - getWidth() / 2,
                 body.getPosition().y - getHeight() / 2);
@@ -1,12 +1,8 @@
 package com.andrejlohn.mariobros.sprites.tileobjects;
 
 import com.andrejlohn.mariobros.MarioBros;
-import com.andrejlohn.mariobros.scenes.Hud;
-import com.andrejlohn.mariobros.screens.PlayScreen;
+import com.andrejlohn.mariobros.session.GameSession;
 import com.andrejlohn.mariobros.sprites.Mario;
-import com.badlogic.gdx.Gdx;
-import com.badlogic.gdx.assets.AssetManager;
-import com.badlogic.gdx.audio.Sound;
 import com.badlogic.gdx.maps.MapObject;
 import com.badlogic.gdx.math.Rectangle;
 
@@ -19,21 +15,31 @@ import com.badlogic.gdx.math.Rectangle;
  */
 public class Brick extends InteractiveTileObject {
 
-    AssetManager manager;
-
     /**
-     * Creates the brick.
+     * Creates the brick. A brick whose tile has been cleared is created destroyed, as it has been
+     * smashed before its level chunk was released.
      *
-     * @param screen    the play screen
+     * @param session   the game session
      * @param object    the map object
-     * @see             PlayScreen
+     * @see             GameSession
      * @see             Rectangle
      */
-    public Brick(PlayScreen screen, MapObject object, AssetManager manager) {
-        super(screen, object);
-        this.manager = manager;
-        fixture.setUserData(this);
-        setCategoryFilter(MarioBros.BRICK_BIT);
+    public Brick(GameSession session, MapObject object) {
+        super(session, object, MarioBros.BRICK_BIT);
+        if(getTileId() == 0) {
+            setCategoryFilter(MarioBros.DESTROYED_BIT);
+        }
+    }
+
+    /**
+     * Destroys the brick if its tile has been cleared and makes it whole again else.
+     */
+    @Override
+    public void restoreCategory() {
+        short category = getTileId() == 0 ? MarioBros.DESTROYED_BIT : MarioBros.BRICK_BIT;
+        if(getCategory() != category) {
+            setCategoryFilter(category);
+        }
     }
 
     /**
@@ -43,13 +49,12 @@ public class Brick extends InteractiveTileObject {
     @Override
     public void onHeadHit(Mario mario) {
         if(mario.isBig()) {
-            Gdx.app.log("Brick", "Collision");
-            setCategoryFilter(MarioBros.DESTROYED_BIT);
-            getCell().setTile(null);
-            Hud.addScore(200);
-            manager.get("audio/sounds/smb_breakblock.wav", Sound.class).play();
+            session.getCommands().setCategory(this, MarioBros.DESTROYED_BIT);
+            breakTile();
+            session.addScore(200);
+            session.playSound("audio/sounds/smb_breakblock.wav");
         } else {
-            manager.get("audio/sounds/smb_bump.wav", Sound.class).play();
+            session.playSound("audio/sounds/smb_bump.wav");
         }
     }
 }
\ No newline at end of file
@@ -1,17 +1,11 @@
 package com.andrejlohn.mariobros.sprites.tileobjects;
 
 import com.andrejlohn.mariobros.MarioBros;
-import com.andrejlohn.mariobros.scenes.Hud;
-import com.andrejlohn.mariobros.screens.PlayScreen;
+import com.andrejlohn.mariobros.session.GameSession;
 import com.andrejlohn.mariobros.sprites.Mario;
-import com.andrejlohn.mariobros.sprites.items.ItemDef;
-import com.andrejlohn.mariobros.sprites.items.Mushroom;
-import com.badlogic.gdx.assets.AssetManager;
-import com.badlogic.gdx.audio.Sound;
+import com.andrejlohn.mariobros.sprites.items.ItemType;
 import com.badlogic.gdx.maps.MapObject;
-import com.badlogic.gdx.maps.tiled.TiledMapTileSet;
 import com.badlogic.gdx.math.Rectangle;
-import com.badlogic.gdx.math.Vector2;
 
 /**
  * This class represents an interactive coin block in the game world. When the player character
@@ -22,26 +16,18 @@ import com.badlogic.gdx.math.Vector2;
  */
 public class Coin extends InteractiveTileObject {
 
-    private final int BLANK_COIN = 28;
-
-    private static TiledMapTileSet tileSet;
-
-    private AssetManager manager;
+    private static final int BLANK_COIN = 28;
 
     /**
      * Creates the coin.
      *
-     * @param screen    the play screen
+     * @param session   the game session
      * @param object    the map object
-     * @see             PlayScreen
+     * @see             GameSession
      * @see             Rectangle
      */
-    public Coin(PlayScreen screen, MapObject object, AssetManager manager) {
-        super(screen, object);
-        this.manager = manager;
-        tileSet = map.getTileSets().getTileSet("tileset_gutter");
-        fixture.setUserData(this);
-        setCategoryFilter(MarioBros.COIN_BIT);
+    public Coin(GameSession session, MapObject object) {
+        super(session, object, MarioBros.COIN_BIT);
     }
 
     /**
@@ -50,20 +36,18 @@ public class Coin extends InteractiveTileObject {
      */
     @Override
     public void onHeadHit(Mario mario) {
-        if (getCell().getTile().getId() == BLANK_COIN) {
-            manager.get("audio/sounds/smb_bump.wav", Sound.class).play();
+        if (getTileId() == BLANK_COIN) {
+            session.playSound("audio/sounds/smb_bump.wav");
         } else if (object.getProperties().containsKey("mushroom")) {
-            screen.spawnItem(
-                    new ItemDef(
-                            new Vector2(
-                                    body.getPosition().x,
-                                    body.getPosition().y + 16 / MarioBros.PPM),
-                                Mushroom.class));
-            manager.get("audio/sounds/smb_powerup_appears.wav", Sound.class).play();
+            session.spawnItem(
+                    ItemType.MUSHROOM,
+                    getCenterX(),
+                    getCenterY() + 16 / MarioBros.PPM);
+            session.playSound("audio/sounds/smb_powerup_appears.wav");
         } else {
-            manager.get("audio/sounds/smb_coin.wav", Sound.class).play();
+            session.playSound("audio/sounds/smb_coin.wav");
         }
-        Hud.addScore(100);
-        getCell().setTile(tileSet.getTile(BLANK_COIN));
+        session.addScore(100);
+        blank(BLANK_COIN);
     }
 }
@@ -1,96 +1,196 @@
 package com.andrejlohn.mariobros.sprites.tileobjects;
 
 import com.andrejlohn.mariobros.MarioBros;
-import com.andrejlohn.mariobros.screens.PlayScreen;
+import com.andrejlohn.mariobros.session.GameSession;
+import com.andrejlohn.mariobros.session.TileGrid;
 import com.andrejlohn.mariobros.sprites.Mario;
+import com.andrejlohn.mariobros.tools.FixtureTag;
+import com.andrejlohn.mariobros.tools.TileObjectManager;
 import com.badlogic.gdx.maps.MapObject;
 import com.badlogic.gdx.maps.objects.RectangleMapObject;
-import com.badlogic.gdx.maps.tiled.TiledMap;
-import com.badlogic.gdx.maps.tiled.TiledMapTile;
-import com.badlogic.gdx.maps.tiled.TiledMapTileLayer;
 import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.Body;
-import com.badlogic.gdx.physics.box2d.BodyDef;
 import com.badlogic.gdx.physics.box2d.Filter;
 import com.badlogic.gdx.physics.box2d.Fixture;
 import com.badlogic.gdx.physics.box2d.FixtureDef;
 import com.badlogic.gdx.physics.box2d.PolygonShape;
-import com.badlogic.gdx.physics.box2d.World;
 
 /**
  * This class is the base class for all interactive game world objects (i.e. bricks and coins).
+ * An interactive tile object is a lightweight record of its cell, bounds, category and map object
+ * properties. It has no Box2D body of its own: the TileObjectManager materializes its fixture on
+ * a shared static body while something which can collide with it is near, and retires it again
+ * afterwards.
+ *
+ * @see TileObjectManager
+ * @see TileGrid
  */
 public abstract class InteractiveTileObject {
 
-    protected World world;
-    protected TiledMap map;
-    protected TiledMapTile tile;
-    protected Rectangle bounds;
-    protected Body body;
-    protected Fixture fixture;
-    protected PlayScreen screen;
+    protected GameSession session;
     protected MapObject object;
 
+    // The bounds in pixels and the graphic layer cell this object is indexed by
+    protected Rectangle bounds;
+    protected int col;
+    protected int row;
+
+    // The collision category, applied to the fixture while materialized
+    private FixtureTag tag;
+    private Fixture fixture;
+
     /**
-     * Creates the interactive game world object.
+     * Creates the interactive game world object. No fixture is created yet.
      *
-     * @param screen    the play screen
-     * @param object    the map object
-     * @see             PlayScreen
-     * @see             Rectangle
+     * @param session       the game session
+     * @param object        the map object
+     * @param categoryBits  the collision category
+     * @see                 GameSession
+     * @see                 Rectangle
      */
-    public InteractiveTileObject(PlayScreen screen, MapObject object) {
+    public InteractiveTileObject(GameSession session, MapObject object, short categoryBits) {
         this.object = object;
-        this.screen = screen;
-        this.world = screen.getWorld();
-        this.map = screen.getMap();
+        this.session = session;
         this.bounds = ((RectangleMapObject) object).getRectangle();
+        this.col = (int) ((bounds.getX() + bounds.getWidth() / 2) / 16);
+        this.row = (int) ((bounds.getY() + bounds.getHeight() / 2) / 16);
+        this.tag = new FixtureTag(categoryBits, this);
+    }
 
-        BodyDef bDef = new BodyDef();
-        FixtureDef fDef = new FixtureDef();
-        PolygonShape shape = new PolygonShape();
-
-        bDef.type = BodyDef.BodyType.StaticBody;
-        bDef.position.set(
-                (bounds.getX() + bounds.getWidth() / 2) / MarioBros.PPM,
-                (bounds.getY() + bounds.getHeight() / 2) / MarioBros.PPM);
-
-        body = world.createBody(bDef);
+    /**
+     * Offers the functionality to react to a collision with the player characters head.
+     */
+    public abstract void onHeadHit(Mario mario);
 
+    /**
+     * Creates the fixture of this game world object on the given static body. The shape and
+     * fixture definition are shared by all objects, Box2D copies them into the fixture.
+     *
+     * @param body      the shared static body at the origin
+     * @param shape     the shared shape
+     * @param fDef      the shared fixture definition
+     * @param center    a vector to compute the center in
+     * @see             Body#createFixture(FixtureDef)
+     */
+    public void materialize(Body body, PolygonShape shape, FixtureDef fDef, Vector2 center) {
+        center.set(getCenterX(), getCenterY());
         shape.setAsBox(
                 (bounds.getWidth() / 2) / MarioBros.PPM,
-                (bounds.getHeight() / 2) / MarioBros.PPM);
+                (bounds.getHeight() / 2) / MarioBros.PPM,
+                center,
+                0);
         fDef.shape = shape;
+        fDef.filter.categoryBits = tag.getCategory();
         fixture = body.createFixture(fDef);
+        fixture.setUserData(tag);
     }
 
     /**
-     * Offers the functionality to react to a collision with the player characters head.
+     * Destroys the fixture of this game world object. Its state is kept in the tiles of the
+     * session.
+     *
+     * @param body  the shared static body
+     * @see         Body#destroyFixture(Fixture)
      */
-    public abstract void onHeadHit(Mario mario);
+    public void retire(Body body) {
+        body.destroyFixture(fixture);
+        fixture = null;
+    }
+
+    public boolean isMaterialized() {
+        return fixture != null;
+    }
 
     /**
-     * Sets the collision filter based on a given filter bit.
+     * Sets the collision filter based on a given filter bit. The fixture tag is updated, and the
+     * fixture as well if it is materialized.
      *
      * @param filterBit the filter bit
      * @see             Filter
      */
     public void setCategoryFilter(short filterBit) {
-        Filter filter = new Filter();
+        tag.setCategory(filterBit);
+        if(fixture != null) {
+            Filter filter = fixture.getFilterData();
+            filter.categoryBits = filterBit;
+            fixture.setFilterData(filter);
+        }
+    }
+
+    /**
+     * Sets the collision category the tile in this game world objects cell calls for, after the
+     * tiles of the session have been restored. Does nothing by default.
+     *
+     * @see TileGrid#restoreState(java.nio.ByteBuffer)
+     */
+    public void restoreCategory() {
+    }
+
+    public short getCategory() {
+        return tag.getCategory();
+    }
+
+    /**
+     * Gets the id of the tile in this game world objects cell.
+     *
+     * @return  the tile id, 0 for an empty cell
+     * @see     TileGrid#getTileId(int, int)
+     */
+    public int getTileId() {
+        return session.getTiles().getTileId(col, row);
+    }
+
+    /**
+     * Clears the tile in this game world objects cell.
+     *
+     * @see TileGrid#breakTile(int, int)
+     */
+    public void breakTile() {
+        session.getTiles().breakTile(col, row);
+    }
+
+    /**
+     * Replaces the tile in this game world objects cell by a blank tile.
+     *
+     * @param blankId   the id of the blank tile
+     * @see             TileGrid#blank(int, int, int)
+     */
+    public void blank(int blankId) {
+        session.getTiles().blank(col, row, blankId);
+    }
+
+    /**
+     * Restores the tile of the level in this game world objects cell.
+     *
+     * @see TileGrid#restore(int, int)
+     */
+    public void restore() {
+        session.getTiles().restore(col, row);
+    }
+
+    public int getCol() {
+        return col;
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    public float getCenterX() {
+        return (bounds.getX() + bounds.getWidth() / 2) / MarioBros.PPM;
+    }
 
-        filter.categoryBits = filterBit;
-        fixture.setFilterData(filter);
+    public float getCenterY() {
+        return (bounds.getY() + bounds.getHeight() / 2) / MarioBros.PPM;
     }
 
     /**
-     * Gets this game world objects cell in the tiled map.
+     * Gets the bounds of this game world object.
      *
-     * @return  the objects cell
+     * @return  the bounds in pixels, must not be modified
      */
-    public TiledMapTileLayer.Cell getCell() {
-        TiledMapTileLayer layer = (TiledMapTileLayer) map.getLayers().get(1);
-        return layer.getCell(
-                (int) (body.getPosition().x * MarioBros.PPM / 16),
-                (int) (body.getPosition().y * MarioBros.PPM / 16));
+    public Rectangle getBounds() {
+        return bounds;
     }
 }
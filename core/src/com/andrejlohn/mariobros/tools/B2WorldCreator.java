@@ -1,151 +1,92 @@
 package com.andrejlohn.mariobros.tools;
 
 import com.andrejlohn.mariobros.MarioBros;
-import com.andrejlohn.mariobros.screens.PlayScreen;
-import com.andrejlohn.mariobros.sprites.enemies.Enemy;
-import com.andrejlohn.mariobros.sprites.enemies.Turtle;
+import com.andrejlohn.mariobros.level.LevelData;
+import com.andrejlohn.mariobros.session.GameSession;
 import com.andrejlohn.mariobros.sprites.tileobjects.Brick;
 import com.andrejlohn.mariobros.sprites.tileobjects.Coin;
-import com.andrejlohn.mariobros.sprites.enemies.Goomba;
-import com.badlogic.gdx.assets.AssetManager;
-import com.badlogic.gdx.maps.MapObject;
+import com.andrejlohn.mariobros.sprites.tileobjects.InteractiveTileObject;
 import com.badlogic.gdx.maps.objects.RectangleMapObject;
-import com.badlogic.gdx.maps.tiled.TiledMap;
 import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.physics.box2d.Body;
 import com.badlogic.gdx.physics.box2d.BodyDef;
 import com.badlogic.gdx.physics.box2d.FixtureDef;
 import com.badlogic.gdx.physics.box2d.PolygonShape;
-import com.badlogic.gdx.physics.box2d.World;
-import com.badlogic.gdx.utils.Array;
 
 /**
- * This class generates the game world from a given Box2D world and a tiled map.
+ * This class creates the static bodies of the game world from the level data. The ground and the
+ * pipes are stored as merged boxes in the level data and get a static body per box, bricks and
+ * coins are records whose fixtures the TileObjectManager creates on demand. The LevelStreamer
+ * decides which of them exist at a time. Enemies are created by the EnemyManager.
  *
  * @version %I%, %G%
+ * @see     LevelStreamer
+ * @see     TileObjectManager
+ * @see     EnemyManager
  */
 public class B2WorldCreator {
 
-    private Array<Goomba> goombas;
-    private Array<Turtle> turtles;
-    private AssetManager manager;
+    private GameSession session;
+
+    // Reused body and fixture definitions
+    private BodyDef bDef;
+    private FixtureDef fDef;
 
     /**
-     * Creates the game world. Sets up all map objects (ground, pipes, boxes, coins).
+     * Creates the world creator for a game session. No bodies are created yet.
      *
-     * @param screen    the play screen
-     * @see             PlayScreen
-     * @see             BodyDef
-     * @see             PolygonShape
-     * @see             FixtureDef
-     * @see             MapObject
-     * @see             TiledMap#getLayers()
-     * @see             World#createBody(BodyDef)
-     * @see             Body#createFixture(FixtureDef)
+     * @param session   the game session
+     * @see             GameSession
      */
-    public B2WorldCreator(PlayScreen screen, AssetManager manager) {
-        this.manager = manager;
-
-        TiledMap map = screen.getMap();
-        World world = screen.getWorld();
-        BodyDef bDef = new BodyDef();
-        PolygonShape shape = new PolygonShape();
-        FixtureDef fDef = new FixtureDef();
-        Body body;
-
-        // Create ground bodies and fixtures. The index of mapLayers().get() depends on the layers
-        // position in the .tmx file starting at 0.
-        for(MapObject object:
-                map.getLayers().get(2).getObjects().getByType(RectangleMapObject.class)) {
-            Rectangle rect = ((RectangleMapObject) object).getRectangle();
-
-            bDef.type = BodyDef.BodyType.StaticBody;
-            bDef.position.set(
-                    (rect.getX() + rect.getWidth() / 2) / MarioBros.PPM,
-                    (rect.getY() + rect.getHeight() / 2) / MarioBros.PPM);
-
-            body = world.createBody(bDef);
-
-            shape.setAsBox(
-                    (rect.getWidth() / 2) / MarioBros.PPM,
-                    (rect.getHeight() / 2) / MarioBros.PPM);
-            fDef.shape = shape;
-            body.createFixture(fDef);
-        }
-
-        // Create pipe bodies/fixtures
-        for(MapObject object:
-                map.getLayers().get(3).getObjects().getByType(RectangleMapObject.class)) {
-            Rectangle rect = ((RectangleMapObject) object).getRectangle();
-
-            bDef.type = BodyDef.BodyType.StaticBody;
-            bDef.position.set(
-                    (rect.getX() + rect.getWidth() / 2) / MarioBros.PPM,
-                    (rect.getY() + rect.getHeight() / 2) / MarioBros.PPM);
-
-            body = world.createBody(bDef);
-
-            shape.setAsBox(
-                    (rect.getWidth() / 2) / MarioBros.PPM,
-                    (rect.getHeight() / 2) / MarioBros.PPM);
-            fDef.shape = shape;
-            fDef.filter.categoryBits = MarioBros.OBJECT_BIT;
-            body.createFixture(fDef);
-        }
-
-        // Create brick bodies/fixtures
-        for(MapObject object:
-                map.getLayers().get(5).getObjects().getByType(RectangleMapObject.class)) {
-            new Brick(screen, object, manager);
-        }
-
-        // Create coin bodies/fixtures
-        for(MapObject object:
-                map.getLayers().get(4).getObjects().getByType(RectangleMapObject.class)) {
-            new Coin(screen, object, manager);
-        }
-
-        // Create Goombas
-        goombas = new Array<Goomba>();
-        for(MapObject object:
-                map.getLayers().get(6).getObjects().getByType(RectangleMapObject.class)) {
-            Rectangle rect = ((RectangleMapObject) object).getRectangle();
-
-            goombas.add(
-                    new Goomba(
-                            screen,
-                            rect.getX() / MarioBros.PPM,
-                            rect.getY() / MarioBros.PPM,
-                            manager));
-        }
-
-        // Create Turtles
-        turtles = new Array<Turtle>();
-        for(MapObject object:
-                map.getLayers().get(7).getObjects().getByType(RectangleMapObject.class)) {
-            Rectangle rect = ((RectangleMapObject) object).getRectangle();
-
-            turtles.add(
-                    new Turtle(
-                            screen,
-                            rect.getX() / MarioBros.PPM,
-                            rect.getY() / MarioBros.PPM));
-        }
+    public B2WorldCreator(GameSession session) {
+        this.session = session;
+        bDef = new BodyDef();
+        bDef.type = BodyDef.BodyType.StaticBody;
+        fDef = new FixtureDef();
     }
 
     /**
-     * Gets the array of all Goombas in the game world.
+     * Creates a static body for a ground or pipe box. The level data holds these surfaces as
+     * merged boxes, so the floors have no seams.
      *
-     * @return  the array of Goombas
+     * @param box           the box in pixels
+     * @param categoryBits  the category bits of the box fixture
+     * @return              the body
+     * @see                 LevelData#getBoxes(String)
+     * @see                 ShapeMerger#merge(com.badlogic.gdx.utils.Array)
      */
-    public Array<Goomba> getGoombas() {
-        return goombas;
+    public Body createBox(Rectangle box, short categoryBits) {
+        bDef.position.set(
+                (box.getX() + box.getWidth() / 2) / MarioBros.PPM,
+                (box.getY() + box.getHeight() / 2) / MarioBros.PPM);
+        Body body = session.getWorld().createBody(bDef);
+
+        PolygonShape shape = new PolygonShape();
+        shape.setAsBox(
+                (box.getWidth() / 2) / MarioBros.PPM,
+                (box.getHeight() / 2) / MarioBros.PPM);
+        fDef.shape = shape;
+        fDef.filter.categoryBits = categoryBits;
+        body.createFixture(fDef).setUserData(FixtureTag.forBox(categoryBits));
+        shape.dispose();
+        return body;
     }
 
-    public Array<Enemy> getEnemies() {
-        Array<Enemy> enemies = new Array<Enemy>();
-        enemies.addAll(goombas);
-        enemies.addAll(turtles);
-        return enemies;
+    /**
+     * Creates the record of a brick or coin. It has no fixture until the TileObjectManager
+     * materializes it.
+     *
+     * @param layer     the object layer, i.e. {@link LevelData#BRICKS} or {@link LevelData#COINS}
+     * @param object    the rectangle object
+     * @return          the brick or coin
+     * @see             Brick
+     * @see             Coin
+     * @see             TileObjectManager
+     */
+    public InteractiveTileObject createTileObject(String layer, RectangleMapObject object) {
+        if(LevelData.BRICKS.equals(layer)) {
+            return new Brick(session, object);
+        }
+        return new Coin(session, object);
     }
 }
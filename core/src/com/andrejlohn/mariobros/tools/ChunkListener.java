@@ -0,0 +1,17 @@
+package com.andrejlohn.mariobros.tools;
+
+/**
+ * This interface is notified when the level streamer materializes or releases a chunk of the
+ * level, i.e. when the tiles of the chunk are put into the tiled map or removed from it. It is
+ * implemented by renderers which cache the tile layers.
+ *
+ * @version %I%, %G%
+ * @see     LevelStreamer
+ * @see     TileChunkRenderer
+ */
+public interface ChunkListener {
+
+    void chunkLoaded(int chunk);
+
+    void chunkReleased(int chunk);
+}
@@ -0,0 +1,35 @@
+package com.andrejlohn.mariobros.tools;
+
+/**
+ * This class handles the contacts of one pair of collision categories. The WorldContactListener
+ * passes the tags of the two fixtures in canonical order: the fixture of the lower category bit
+ * comes first, so a handler never has to find out which fixture is which. For a pair of equal
+ * categories the fixture of the owner coming first in the order of the game objects is passed
+ * first.
+ *
+ * All callbacks do nothing by default.
+ *
+ * @version %I%, %G%
+ * @see     WorldContactListener
+ * @see     FixtureTag
+ */
+public abstract class ContactHandler {
+
+    /**
+     * Reacts to two fixtures starting to touch.
+     *
+     * @param a the tag of the fixture of the lower category
+     * @param b the tag of the fixture of the higher category
+     */
+    public void beginContact(FixtureTag a, FixtureTag b) {
+    }
+
+    /**
+     * Reacts to two fixtures no longer touching, including fixtures being destroyed.
+     *
+     * @param a the tag of the fixture of the lower category
+     * @param b the tag of the fixture of the higher category
+     */
+    public void endContact(FixtureTag a, FixtureTag b) {
+    }
+}
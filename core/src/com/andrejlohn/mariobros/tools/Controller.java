@@ -13,7 +13,7 @@ import com.badlogic.gdx.scenes.scene2d.ui.Table;
 import com.badlogic.gdx.utils.viewport.FitViewport;
 import com.badlogic.gdx.utils.viewport.Viewport;
 
-public class Controller {
+public class Controller implements InputSource {
 
     private MarioBros game;
     private Viewport viewport;
@@ -131,14 +131,17 @@ public class Controller {
         stage.draw();
     }
 
+    @Override
     public boolean isUpPressed() {
         return upPressed;
     }
 
+    @Override
     public boolean isLeftPressed() {
         return leftPressed;
     }
 
+    @Override
     public boolean isRightPressed() {
         return rightPressed;
     }
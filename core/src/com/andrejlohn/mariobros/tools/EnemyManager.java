@@ -0,0 +1,346 @@
+package com.andrejlohn.mariobros.tools;
+
+import com.andrejlohn.mariobros.MarioBros;
+import com.andrejlohn.mariobros.level.LevelData;
+import com.andrejlohn.mariobros.session.GameSession;
+import com.andrejlohn.mariobros.session.StateHash;
+import com.andrejlohn.mariobros.sprites.SpriteRegistry;
+import com.andrejlohn.mariobros.sprites.enemies.Enemy;
+import com.andrejlohn.mariobros.sprites.enemies.Goomba;
+import com.andrejlohn.mariobros.sprites.enemies.Turtle;
+import com.badlogic.gdx.maps.objects.RectangleMapObject;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.Array;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class manages the lifecycle of the enemies of a game session. Enemies are not created at
+ * level load but when the camera approaches their spawn point, and they are removed once they fall
+ * far behind the camera, drop out of the level or finished dying. Removed enemies keep their
+ * deactivated Box2D body and are pooled by type to be respawned at later spawn points. An enemy
+ * is spawned only once per session, and the index of its spawn point is its id.
+ *
+ * Enemies are removed further away from the camera than they are spawned, so an enemy walking
+ * along the edge of the activation window is not removed right away. As the window has a fixed
+ * size and the number of live enemies is capped, the number of enemy bodies does not grow with
+ * the level length.
+ *
+ * The state is restored in place: live enemies restored by id keep their object and body, and
+ * the other enemies restored are taken from the pools.
+ *
+ * @version %I%, %G%
+ * @see     Enemy
+ * @see     GameSession
+ */
+public class EnemyManager {
+
+    // Spawn enemies at most 2 tiles ahead of the screen edge, measured from the camera center
+    // (12+2)*16 = 224
+    public static final float SPAWN_DISTANCE = 224 / MarioBros.PPM;
+
+    // Remove enemies 8 tiles behind the screen edge, measured from the camera center
+    // (12+8)*16 = 320
+    public static final float DESPAWN_DISTANCE = 320 / MarioBros.PPM;
+
+    // Animate enemies up to a tile beyond the screen edge, measured from the camera center
+    // 200+16 = 216
+    public static final float ANIMATION_DISTANCE = 216 / MarioBros.PPM;
+
+    public static final int MAX_LIVE_ENEMIES = 16;
+
+    private GameSession session;
+
+    // Spawn points sorted by x, all points before nextSpawn have been spawned
+    private Array<SpawnPoint> spawnPoints;
+    private int nextSpawn;
+
+    // Live enemies sorted by x and id
+    private SpriteRegistry<Enemy> liveEnemies;
+
+    // Despawned enemies by spawn point type, to be respawned
+    private Array<Array<Enemy>> freeEnemies;
+
+    // The enemies restored so far while restoring
+    private Array<Enemy> restored;
+
+    /**
+     * Creates the enemy manager and indexes the enemy spawn points of the level. No enemy is
+     * created yet.
+     *
+     * @param session   the game session
+     * @see             LevelData#getObjects(String)
+     */
+    public EnemyManager(GameSession session) {
+        this.session = session;
+        LevelData level = session.getLevel();
+
+        spawnPoints = new Array<SpawnPoint>();
+        addSpawnPoints(level.getObjects(LevelData.GOOMBAS), SpawnPoint.GOOMBA);
+        addSpawnPoints(level.getObjects(LevelData.TURTLES), SpawnPoint.TURTLE);
+        spawnPoints.sort();
+        nextSpawn = 0;
+
+        liveEnemies = new SpriteRegistry<Enemy>(MAX_LIVE_ENEMIES);
+        freeEnemies = new Array<Array<Enemy>>();
+        freeEnemies.add(new Array<Enemy>());
+        freeEnemies.add(new Array<Enemy>());
+        restored = new Array<Enemy>(MAX_LIVE_ENEMIES);
+    }
+
+    /**
+     * Spawns the enemies ahead of the camera, updates all live enemies and removes the ones no
+     * longer needed. Only enemies within the spawn window are alive, so no other enemies have to
+     * be updated. Only enemies which may be on screen choose their animation frames.
+     *
+     * @param cameraX   the x-coordinate of the camera center
+     * @see             #spawn(float)
+     * @see             Enemy#setAnimated(boolean)
+     * @see             Enemy#update()
+     * @see             #despawn(float)
+     */
+    public void update(float cameraX) {
+        spawn(cameraX + SPAWN_DISTANCE);
+        for(int i = 0; i < liveEnemies.size(); i++) {
+            Enemy enemy = liveEnemies.get(i);
+            enemy.setAnimated(enemy.getX() + enemy.getWidth() >= cameraX - ANIMATION_DISTANCE
+                    && enemy.getX() <= cameraX + ANIMATION_DISTANCE);
+            enemy.update();
+        }
+        liveEnemies.sort();
+        despawn(cameraX - DESPAWN_DISTANCE);
+    }
+
+    /**
+     * Spawns the enemies of all spawn points left of the given x-coordinate, in the order of
+     * their spawn points. A despawned enemy of the same type is respawned if there is one.
+     * Spawning stops while {@link #MAX_LIVE_ENEMIES} enemies are alive.
+     *
+     * @param x the x-coordinate to spawn the enemies up to
+     * @see     Enemy#respawn(float, float)
+     */
+    public void spawn(float x) {
+        while(nextSpawn < spawnPoints.size
+                && spawnPoints.get(nextSpawn).x < x
+                && liveEnemies.size() < MAX_LIVE_ENEMIES) {
+            SpawnPoint spawnPoint = spawnPoints.get(nextSpawn);
+            Array<Enemy> free = freeEnemies.get(spawnPoint.type);
+            Enemy enemy;
+            if(free.size > 0) {
+                enemy = free.pop();
+                enemy.respawn(spawnPoint.x, spawnPoint.y);
+            } else {
+                enemy = create(spawnPoint.type, spawnPoint.x, spawnPoint.y);
+            }
+            enemy.setId(nextSpawn++);
+            enemy.savePreviousPosition();
+            liveEnemies.register(enemy);
+        }
+    }
+
+    /**
+     * Removes the enemies which finished dying, fell out of the level or are entirely left of the
+     * given x-coordinate. Their bodies are deactivated and they are pooled.
+     *
+     * @param x the x-coordinate to remove the enemies behind
+     * @see     Enemy#despawn()
+     */
+    public void despawn(float x) {
+        for(int i = liveEnemies.size() - 1; i >= 0; i--) {
+            Enemy enemy = liveEnemies.get(i);
+            if(enemy.isFinished()
+                    || enemy.getX() + enemy.getWidth() < x
+                    || enemy.getY() + enemy.getHeight() < 0) {
+                enemy.despawn();
+                liveEnemies.unregister(i);
+                freeEnemies.get(typeOf(enemy)).add(enemy);
+            }
+        }
+    }
+
+    /**
+     * Remembers the position of all live enemies for render interpolation.
+     *
+     * @see Enemy#savePreviousPosition()
+     */
+    public void savePreviousPositions() {
+        for(int i = 0; i < liveEnemies.size(); i++) {
+            liveEnemies.get(i).savePreviousPosition();
+        }
+    }
+
+    /**
+     * Mixes the spawn progress and the live enemies in their order into the session checksum.
+     *
+     * @param hash  the hash
+     * @see         Enemy#hashState(StateHash)
+     */
+    public void hashState(StateHash hash) {
+        hash.add(nextSpawn);
+        hash.add(liveEnemies.size());
+        for(int i = 0; i < liveEnemies.size(); i++) {
+            liveEnemies.get(i).hashState(hash);
+        }
+    }
+
+    /**
+     * Gets the live enemies sorted by x and id. The registry is owned by the manager and must not
+     * be modified.
+     *
+     * @return  the live enemies
+     * @see     SpriteRegistry#first(float)
+     * @see     SpriteRegistry#end(float)
+     */
+    public SpriteRegistry<Enemy> getLiveEnemies() {
+        return liveEnemies;
+    }
+
+    /**
+     * Writes the spawn progress and the live enemies in their order.
+     *
+     * <pre>
+     * int      next spawn point, live enemy count
+     *          per enemy: byte type; int id; float x, y; enemy state
+     * </pre>
+     *
+     * @param buffer    the buffer to write to
+     * @see             Enemy#saveState(ByteBuffer)
+     */
+    public void saveState(ByteBuffer buffer) {
+        buffer.putInt(nextSpawn);
+        buffer.putInt(liveEnemies.size());
+        for(int i = 0; i < liveEnemies.size(); i++) {
+            Enemy enemy = liveEnemies.get(i);
+            buffer.put((byte) typeOf(enemy));
+            buffer.putInt(enemy.getId());
+            buffer.putFloat(enemy.getX());
+            buffer.putFloat(enemy.getY());
+            enemy.saveState(buffer);
+        }
+    }
+
+    /**
+     * Restores the spawn progress and the live enemies in place. An enemy still alive with the
+     * same id and type is restored into, any other is taken from the pool of its type, or created
+     * if the pool is empty. The live enemies not restored are despawned into their pools.
+     *
+     * @param buffer    the buffer to read from
+     * @see             Enemy#restoreState(ByteBuffer)
+     */
+    public void restoreState(ByteBuffer buffer) {
+        nextSpawn = buffer.getInt();
+        restored.clear();
+        int count = buffer.getInt();
+        for(int i = 0; i < count; i++) {
+            int type = buffer.get();
+            int id = buffer.getInt();
+            float x = buffer.getFloat();
+            float y = buffer.getFloat();
+            Enemy enemy = null;
+            for(int j = 0; j < liveEnemies.size(); j++) {
+                Enemy live = liveEnemies.get(j);
+                if(live.getId() == id && typeOf(live) == type) {
+                    enemy = liveEnemies.unregister(j);
+                    break;
+                }
+            }
+            if(enemy == null) {
+                Array<Enemy> free = freeEnemies.get(type);
+                enemy = free.size > 0 ? free.pop() : create(type, x, y);
+            }
+            enemy.setId(id);
+            enemy.setPosition(x, y);
+            enemy.restoreState(buffer);
+            restored.add(enemy);
+        }
+
+        for(int i = liveEnemies.size() - 1; i >= 0; i--) {
+            Enemy enemy = liveEnemies.unregister(i);
+            enemy.despawn();
+            freeEnemies.get(typeOf(enemy)).add(enemy);
+        }
+        for(int i = 0; i < restored.size; i++) {
+            liveEnemies.register(restored.get(i));
+        }
+        restored.clear();
+    }
+
+    /**
+     * Drops all live and pooled enemies, as their bodies went with the world when it was
+     * rebuilt. The enemies of the session state are created anew when it is restored.
+     *
+     * @see GameSession#rebuildWorld()
+     */
+    public void clear() {
+        liveEnemies.clear();
+        for(int i = 0; i < freeEnemies.size; i++) {
+            freeEnemies.get(i).clear();
+        }
+    }
+
+    /**
+     * Gets the size of the saved state with as many enemies alive as there can be.
+     *
+     * @return  the size in bytes, at most
+     * @see     #saveState(ByteBuffer)
+     */
+    public int getMaxStateSize() {
+        int enemies = Math.min(MAX_LIVE_ENEMIES, spawnPoints.size);
+        return 2 * 4 + enemies * (1 + 3 * 4 + Math.max(Goomba.STATE_SIZE, Turtle.STATE_SIZE));
+    }
+
+    /**
+     * Gets the number of spawn points not yet spawned.
+     *
+     * @return  the number of pending spawn points
+     */
+    public int getPendingSpawns() {
+        return spawnPoints.size - nextSpawn;
+    }
+
+    private static int typeOf(Enemy enemy) {
+        return enemy instanceof Turtle ? SpawnPoint.TURTLE : SpawnPoint.GOOMBA;
+    }
+
+    private Enemy create(int type, float x, float y) {
+        if(type == SpawnPoint.TURTLE) {
+            return new Turtle(session, x, y);
+        }
+        return new Goomba(session, x, y);
+    }
+
+    private void addSpawnPoints(Array<RectangleMapObject> objects, int type) {
+        for(int i = 0; i < objects.size; i++) {
+            Rectangle rect = objects.get(i).getRectangle();
+            spawnPoints.add(
+                    new SpawnPoint(
+                            type,
+                            rect.getX() / MarioBros.PPM,
+                            rect.getY() / MarioBros.PPM));
+        }
+    }
+
+    /**
+     * An enemy spawn point of the level.
+     */
+    private static class SpawnPoint implements Comparable<SpawnPoint> {
+
+        static final int GOOMBA = 0;
+        static final int TURTLE = 1;
+
+        final int type;
+        final float x;
+        final float y;
+
+        SpawnPoint(int type, float x, float y) {
+            this.type = type;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public int compareTo(SpawnPoint other) {
+            return Float.compare(x, other.x);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.andrejlohn.mariobros.tools;
+
+import com.andrejlohn.mariobros.MarioBros;
+import com.andrejlohn.mariobros.sprites.InterpolatedSprite;
+import com.andrejlohn.mariobros.sprites.tileobjects.InteractiveTileObject;
+import com.badlogic.gdx.physics.box2d.Fixture;
+
+/**
+ * This class is the user data of every fixture in the game world. It caches the collision
+ * category of the fixture, together with the index of its category bit, and refers to the game
+ * object owning the fixture, so the contact listener dispatches a contact without reading the
+ * filter data of the fixtures through Box2D.
+ *
+ * The category of a tag is the category its fixture collides as. It has to be updated together
+ * with the filter data, e.g. when a brick is destroyed. Filters which only clear the mask bits,
+ * like the one of a dead player character, leave the tag as it is.
+ *
+ * Ground and pipe fixtures have no owner and share the tags {@link #GROUND} and {@link #OBJECT}.
+ *
+ * @version %I%, %G%
+ * @see     WorldContactListener
+ * @see     Fixture#setUserData(Object)
+ */
+public class FixtureTag {
+
+    public static final FixtureTag GROUND = new FixtureTag(MarioBros.GROUND_BIT, null);
+    public static final FixtureTag OBJECT = new FixtureTag(MarioBros.OBJECT_BIT, null);
+
+    private final Object owner;
+    private short category;
+    private int index;
+
+    /**
+     * Creates the tag of a fixture.
+     *
+     * @param category  the collision category, a single bit
+     * @param owner     the game object owning the fixture, <code>null</code> for level geometry
+     */
+    public FixtureTag(short category, Object owner) {
+        this.owner = owner;
+        setCategory(category);
+    }
+
+    /**
+     * Gets the tag of the given category for ground and pipe fixtures.
+     *
+     * @param category  the collision category of the box
+     * @return          the shared tag
+     */
+    public static FixtureTag forBox(short category) {
+        return category == MarioBros.OBJECT_BIT ? OBJECT : GROUND;
+    }
+
+    public Object getOwner() {
+        return owner;
+    }
+
+    public short getCategory() {
+        return category;
+    }
+
+    /**
+     * Gets the position of the owner in an order of the game objects which does not depend on
+     * Box2D: sprites by id, bricks and coins by cell.
+     *
+     * @return  the position, 0 for level geometry
+     * @see     InterpolatedSprite#getId()
+     */
+    public int getOwnerOrder() {
+        if(owner instanceof InterpolatedSprite) {
+            return ((InterpolatedSprite) owner).getId();
+        }
+        if(owner instanceof InteractiveTileObject) {
+            InteractiveTileObject object = (InteractiveTileObject) owner;
+            return object.getCol() << 16 | object.getRow();
+        }
+        return 0;
+    }
+
+    /**
+     * Gets the index of the category bit, i.e. the number of trailing zero bits.
+     *
+     * @return  the bit index, -1 for no category
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Sets the collision category. Must be called whenever the category bits of the fixture
+     * filter change.
+     *
+     * @param category  the collision category, a single bit
+     */
+    public void setCategory(short category) {
+        this.category = category;
+        this.index = category == 0 ? -1 : Integer.numberOfTrailingZeros(category & 0xFFFF);
+    }
+}
@@ -0,0 +1,242 @@
+package com.andrejlohn.mariobros.tools;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.StreamUtils;
+import com.badlogic.gdx.utils.StringBuilder;
+import com.badlogic.gdx.utils.TimeUtils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * This class measures where the frame time goes. Every frame the time spent in each phase (e.g.
+ * the Box2D world step or drawing the HUD) is summed up in nanoseconds, together with the total
+ * frame time, the number of simulation steps and the render call and texture binding counts of
+ * the frame. The records of the last frames are kept in a ring buffer, from which percentiles are
+ * computed and which can be written to a CSV file to compare devices.
+ *
+ * The ring buffer has a single writer, the render thread, and needs no locks: a frame is written
+ * into its slot first and published by incrementing the volatile frame count afterwards. Nothing
+ * is allocated while profiling, so the profiler does not cause the hitches it should find.
+ *
+ * A disabled profiler ignores all calls, so code can be profiled unconditionally.
+ *
+ * @version %I%, %G%
+ * @see     TimeUtils#nanoTime()
+ */
+public class FrameProfiler {
+
+    /**
+     * The profiled phases of a frame.
+     */
+    public enum Phase { INPUT, STREAMING, PHYSICS, UPDATE, MAP, SPRITES, HUD, CONTROLLER }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    // Record columns after the phase times
+    public static final int FRAME = PHASES.length;
+    public static final int STEPS = FRAME + 1;
+    public static final int RENDER_CALLS = STEPS + 1;
+    public static final int TEXTURE_BINDINGS = RENDER_CALLS + 1;
+    public static final int COLUMNS = TEXTURE_BINDINGS + 1;
+
+    private boolean enabled;
+
+    // The records of the last frames, COLUMNS values per frame
+    private final int capacity;
+    private final long[] records;
+    private volatile long frames;
+
+    // The frame being measured
+    private final long[] current;
+    private final long[] phaseStart;
+    private long frameStart;
+
+    // Scratch space for percentiles
+    private final long[] sorted;
+
+    /**
+     * Creates an enabled profiler keeping the given number of frames.
+     *
+     * @param capacity  the number of frames kept
+     */
+    public FrameProfiler(int capacity) {
+        this.capacity = capacity;
+        records = new long[capacity * COLUMNS];
+        frames = 0;
+        current = new long[COLUMNS];
+        phaseStart = new long[PHASES.length];
+        sorted = new long[capacity];
+        enabled = true;
+    }
+
+    /**
+     * Creates a disabled profiler, e.g. for a game session which is not rendered.
+     *
+     * @return  the disabled profiler
+     */
+    public static FrameProfiler disabled() {
+        FrameProfiler profiler = new FrameProfiler(1);
+        profiler.setEnabled(false);
+        return profiler;
+    }
+
+    /**
+     * Starts measuring a frame.
+     */
+    public void beginFrame() {
+        if(!enabled) {
+            return;
+        }
+        Arrays.fill(current, 0);
+        frameStart = TimeUtils.nanoTime();
+    }
+
+    /**
+     * Starts measuring a phase. A phase may be measured several times per frame (e.g. once per
+     * simulation step), its times are summed up.
+     *
+     * @param phase the phase
+     */
+    public void begin(Phase phase) {
+        if(!enabled) {
+            return;
+        }
+        phaseStart[phase.ordinal()] = TimeUtils.nanoTime();
+    }
+
+    /**
+     * Stops measuring a phase.
+     *
+     * @param phase the phase
+     */
+    public void end(Phase phase) {
+        if(!enabled) {
+            return;
+        }
+        current[phase.ordinal()] += TimeUtils.nanoTime() - phaseStart[phase.ordinal()];
+    }
+
+    /**
+     * Counts a simulation step of the frame.
+     */
+    public void step() {
+        if(!enabled) {
+            return;
+        }
+        current[STEPS]++;
+    }
+
+    /**
+     * Stops measuring the frame and stores it in the ring buffer, overwriting the oldest frame if
+     * the buffer is full.
+     *
+     * @param renderCalls       the render calls of the frame
+     * @param textureBindings   the texture bindings of the frame
+     * @see                     com.badlogic.gdx.graphics.g2d.SpriteBatch#totalRenderCalls
+     * @see                     com.badlogic.gdx.graphics.profiling.GLProfiler#getTextureBindings()
+     */
+    public void endFrame(int renderCalls, int textureBindings) {
+        if(!enabled) {
+            return;
+        }
+        current[FRAME] = TimeUtils.nanoTime() - frameStart;
+        current[RENDER_CALLS] = renderCalls;
+        current[TEXTURE_BINDINGS] = textureBindings;
+        long frame = frames;
+        System.arraycopy(current, 0, records, (int) (frame % capacity) * COLUMNS, COLUMNS);
+        frames = frame + 1;
+    }
+
+    /**
+     * Gets a percentile of a record column over the frames in the ring buffer.
+     *
+     * @param column        the column, a phase ordinal or one of the column constants
+     * @param percentile    the percentile, from 0 to 100
+     * @return              the value, 0 if no frame was recorded yet
+     */
+    public long percentile(int column, int percentile) {
+        int size = (int) Math.min(frames, capacity);
+        if(size == 0) {
+            return 0;
+        }
+        for(int i = 0; i < size; i++) {
+            sorted[i] = records[i * COLUMNS + column];
+        }
+        Arrays.sort(sorted, 0, size);
+        int index = (int) Math.ceil(percentile / 100f * size) - 1;
+        return sorted[Math.max(0, Math.min(size - 1, index))];
+    }
+
+    /**
+     * Writes the p50, p95 and p99 times of every phase and the whole frame in microseconds, and
+     * the median counts of the last frames, one line each.
+     *
+     * @param text  the text to append to
+     */
+    public void describe(StringBuilder text) {
+        text.append("phase  p50  p95  p99 us\n");
+        for(int i = 0; i < PHASES.length; i++) {
+            describe(text, PHASES[i].name(), i);
+        }
+        describe(text, "FRAME", FRAME);
+        text.append("steps ").append(percentile(STEPS, 50))
+                .append("  calls ").append(percentile(RENDER_CALLS, 50))
+                .append("  binds ").append(percentile(TEXTURE_BINDINGS, 50));
+    }
+
+    private void describe(StringBuilder text, String name, int column) {
+        text.append(name)
+                .append(' ').append(percentile(column, 50) / 1000)
+                .append(' ').append(percentile(column, 95) / 1000)
+                .append(' ').append(percentile(column, 99) / 1000)
+                .append('\n');
+    }
+
+    /**
+     * Writes the frames in the ring buffer to a CSV file, oldest first. Times are in nanoseconds.
+     *
+     * @param file  the CSV file
+     * @throws      GdxRuntimeException if the file could not be written
+     */
+    public void writeCsv(FileHandle file) {
+        Writer writer = file.writer(false, "UTF-8");
+        try {
+            writer.write("frame");
+            for(int i = 0; i < PHASES.length; i++) {
+                writer.write(',');
+                writer.write(PHASES[i].name().toLowerCase());
+            }
+            writer.write(",total,steps,render_calls,texture_bindings\n");
+
+            long last = frames;
+            for(long frame = Math.max(0, last - capacity); frame < last; frame++) {
+                int offset = (int) (frame % capacity) * COLUMNS;
+                writer.write(Long.toString(frame));
+                for(int i = 0; i < COLUMNS; i++) {
+                    writer.write(',');
+                    writer.write(Long.toString(records[offset + i]));
+                }
+                writer.write('\n');
+            }
+        } catch(IOException e) {
+            throw new GdxRuntimeException("Error writing frame profile: " + file, e);
+        } finally {
+            StreamUtils.closeQuietly(writer);
+        }
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+}
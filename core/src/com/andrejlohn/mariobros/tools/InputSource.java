@@ -0,0 +1,18 @@
+package com.andrejlohn.mariobros.tools;
+
+/**
+ * This interface represents a source of player input. The game session reads the input state once
+ * per simulation step. It is implemented by the on screen controller as well as by scripted or
+ * recorded input for running the game without a screen.
+ *
+ * @version %I%, %G%
+ * @see     Controller
+ */
+public interface InputSource {
+
+    boolean isUpPressed();
+
+    boolean isLeftPressed();
+
+    boolean isRightPressed();
+}
@@ -0,0 +1,260 @@
+package com.andrejlohn.mariobros.tools;
+
+import com.andrejlohn.mariobros.level.LevelData;
+import com.andrejlohn.mariobros.session.GameSession;
+import com.andrejlohn.mariobros.session.StateHash;
+import com.andrejlohn.mariobros.sprites.SpriteRegistry;
+import com.andrejlohn.mariobros.sprites.items.Item;
+import com.andrejlohn.mariobros.sprites.items.ItemType;
+import com.andrejlohn.mariobros.sprites.items.Mushroom;
+import com.badlogic.gdx.utils.Array;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class manages the items of a game session. Items are pooled by type: an item which has been
+ * used or dropped out of the level is disabled, removed from the live items and reused for the next
+ * spawn of its type, together with its Box2D body. Once the pools are warm spawning items does not
+ * allocate. Each spawn gets the next id, pooled items included.
+ *
+ * Items are usually spawned from a contact callback while the world is stepping, when no bodies
+ * can be created, so spawns go through the WorldCommandBuffer and are carried out right after the
+ * world step.
+ *
+ * The state is restored in place: live items restored by id keep their object and body, and the
+ * other items restored are taken from the pools.
+ *
+ * @version %I%, %G%
+ * @see     Item
+ * @see     ItemType
+ * @see     WorldCommandBuffer
+ */
+public class ItemManager {
+
+    private static final ItemType[] TYPES = ItemType.values();
+
+    private GameSession session;
+
+    // Live items sorted by x and id, items spawned so far
+    private SpriteRegistry<Item> liveItems;
+    private int spawnCount;
+
+    // Disabled items by type ordinal
+    private Array<Array<Item>> freeItems;
+
+    // The items restored so far while restoring
+    private Array<Item> restored;
+
+    /**
+     * Creates the item manager. No item is created yet.
+     *
+     * @param session   the game session
+     */
+    public ItemManager(GameSession session) {
+        this.session = session;
+
+        liveItems = new SpriteRegistry<Item>(4);
+
+        freeItems = new Array<Array<Item>>(ItemType.values().length);
+        for(int i = 0; i < ItemType.values().length; i++) {
+            freeItems.add(new Array<Item>());
+        }
+        restored = new Array<Item>(4);
+    }
+
+    /**
+     * Spawns an item. A disabled item of the same type is reused. Must not be called while the
+     * world is locked.
+     *
+     * @param type  the item type
+     * @param x     the position x-coordinate
+     * @param y     the position y-coordinate
+     * @see         Item#respawn(float, float)
+     * @see         WorldCommandBuffer#spawnItem(ItemType, float, float)
+     */
+    public void spawn(ItemType type, float x, float y) {
+        Array<Item> free = freeItems.get(type.ordinal());
+        Item item;
+        if(free.size > 0) {
+            item = free.pop();
+            item.respawn(x, y);
+        } else {
+            item = create(type, x, y);
+            item.savePreviousPosition();
+        }
+        item.setId(spawnCount++);
+        liveItems.register(item);
+    }
+
+    /**
+     * Updates all live items. Used items and items which fell out of the level are disabled and
+     * returned to their pool.
+     *
+     * @see Item#update()
+     * @see Item#disable()
+     */
+    public void update() {
+        for(int i = 0; i < liveItems.size(); i++) {
+            liveItems.get(i).update();
+        }
+        liveItems.sort();
+
+        for(int i = liveItems.size() - 1; i >= 0; i--) {
+            Item item = liveItems.get(i);
+            if(item.getY() + item.getHeight() < 0) {
+                item.disable();
+            }
+            if(item.isDestroyed()) {
+                liveItems.unregister(i);
+                freeItems.get(item.getType().ordinal()).add(item);
+            }
+        }
+    }
+
+    /**
+     * Remembers the position of all live items for render interpolation.
+     *
+     * @see Item#savePreviousPosition()
+     */
+    public void savePreviousPositions() {
+        for(int i = 0; i < liveItems.size(); i++) {
+            liveItems.get(i).savePreviousPosition();
+        }
+    }
+
+    /**
+     * Mixes the live items in their order into the session checksum.
+     *
+     * @param hash  the hash
+     * @see         Item#hashState(StateHash)
+     */
+    public void hashState(StateHash hash) {
+        hash.add(spawnCount);
+        hash.add(liveItems.size());
+        for(int i = 0; i < liveItems.size(); i++) {
+            liveItems.get(i).hashState(hash);
+        }
+    }
+
+    /**
+     * Gets the live items sorted by x and id. The registry is owned by the manager and must not be
+     * modified.
+     *
+     * @return  the live items
+     */
+    public SpriteRegistry<Item> getLiveItems() {
+        return liveItems;
+    }
+
+    /**
+     * Writes the live items in their order. The pools are not written, which item of a pool is
+     * respawned does not matter.
+     *
+     * <pre>
+     * int      items spawned, live item count
+     *          per item: byte type; int id; float x, y; item state
+     * </pre>
+     *
+     * @param buffer    the buffer to write to
+     * @see             Item#saveState(ByteBuffer)
+     */
+    public void saveState(ByteBuffer buffer) {
+        buffer.putInt(spawnCount);
+        buffer.putInt(liveItems.size());
+        for(int i = 0; i < liveItems.size(); i++) {
+            Item item = liveItems.get(i);
+            buffer.put((byte) item.getType().ordinal());
+            buffer.putInt(item.getId());
+            buffer.putFloat(item.getX());
+            buffer.putFloat(item.getY());
+            item.saveState(buffer);
+        }
+    }
+
+    /**
+     * Restores the live items in place. An item still alive with the same id and type is restored
+     * into, any other is taken from the pool of its type, or created if the pool is empty. The
+     * live items not restored are disabled into their pools.
+     *
+     * @param buffer    the buffer to read from
+     * @see             Item#restoreState(ByteBuffer)
+     */
+    public void restoreState(ByteBuffer buffer) {
+        spawnCount = buffer.getInt();
+        restored.clear();
+        int count = buffer.getInt();
+        for(int i = 0; i < count; i++) {
+            ItemType type = TYPES[buffer.get()];
+            int id = buffer.getInt();
+            float x = buffer.getFloat();
+            float y = buffer.getFloat();
+            Item item = null;
+            for(int j = 0; j < liveItems.size(); j++) {
+                Item live = liveItems.get(j);
+                if(live.getId() == id && live.getType() == type) {
+                    item = liveItems.unregister(j);
+                    break;
+                }
+            }
+            if(item == null) {
+                Array<Item> free = freeItems.get(type.ordinal());
+                item = free.size > 0 ? free.pop() : create(type, x, y);
+            }
+            item.setId(id);
+            item.setPosition(x, y);
+            item.restoreState(buffer);
+            restored.add(item);
+        }
+
+        for(int i = liveItems.size() - 1; i >= 0; i--) {
+            Item item = liveItems.unregister(i);
+            item.disable();
+            freeItems.get(item.getType().ordinal()).add(item);
+        }
+        for(int i = 0; i < restored.size; i++) {
+            liveItems.register(restored.get(i));
+        }
+        restored.clear();
+    }
+
+    /**
+     * Drops all live and disabled items, as their bodies went with the world when it was
+     * rebuilt. The items of the session state are created anew when it is restored.
+     *
+     * @see GameSession#rebuildWorld()
+     */
+    public void clear() {
+        liveItems.clear();
+        for(int i = 0; i < freeItems.size; i++) {
+            freeItems.get(i).clear();
+        }
+    }
+
+    /**
+     * Gets the size of the saved state with as many items alive as there can be. Items are only
+     * spawned from coins, each coin spawns one at most.
+     *
+     * @return  the size in bytes, at most
+     * @see     #saveState(ByteBuffer)
+     */
+    public int getMaxStateSize() {
+        int items = session.getLevel().getObjects(LevelData.COINS).size;
+        return 2 * 4 + items * (1 + 3 * 4 + Item.STATE_SIZE);
+    }
+
+    /**
+     * Creates a new item of the given type.
+     *
+     * @param type  the item type
+     * @param x     the position x-coordinate
+     * @param y     the position y-coordinate
+     * @return      the item
+     */
+    private Item create(ItemType type, float x, float y) {
+        switch(type) {
+            case MUSHROOM:
+            default:
+                return new Mushroom(session, x, y);
+        }
+    }
+}
@@ -0,0 +1,561 @@
+package com.andrejlohn.mariobros.tools;
+
+import com.andrejlohn.mariobros.MarioBros;
+import com.andrejlohn.mariobros.level.LevelData;
+import com.andrejlohn.mariobros.session.GameSession;
+import com.andrejlohn.mariobros.sprites.tileobjects.InteractiveTileObject;
+import com.badlogic.gdx.maps.MapLayer;
+import com.badlogic.gdx.maps.objects.RectangleMapObject;
+import com.badlogic.gdx.maps.tiled.TiledMap;
+import com.badlogic.gdx.maps.tiled.TiledMapTileLayer;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.async.AsyncExecutor;
+import com.badlogic.gdx.utils.async.AsyncResult;
+import com.badlogic.gdx.utils.async.AsyncTask;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class streams the level of a game session by camera position. The level is split into
+ * chunks of {@link #CHUNK_COLUMNS} columns. A chunk is materialized when the camera gets within
+ * {@link #MATERIALIZE_DISTANCE} of it: its tiles are put into the tiled map, the Box2D bodies
+ * of its ground and pipes are created and its bricks and coins are handed to the
+ * TileObjectManager, which gives them fixtures only near actors. Once the camera is further than
+ * {@link #RELEASE_DISTANCE} away, the chunk is released again, its bodies are destroyed and its
+ * tiles removed from the map. The number of resident chunks, map cells and static bodies
+ * therefore does not depend on the level length.
+ *
+ * Chunks within the release distance are prepared ahead of time: the map cells of their tiles are
+ * created from the level data and the current tiles of the session. Given an executor, this runs
+ * on a background thread, otherwise a chunk is prepared on the game thread when it is
+ * materialized. Bodies are always created on the game thread, and a chunk is materialized at the
+ * same camera position either way, waiting for its preparation if needed, so the simulation does
+ * not depend on the timing of the background thread.
+ *
+ * Ground and pipe boxes may span several chunks. A box body exists as long as any of the chunks
+ * it overlaps is resident, so the floors have no seams at chunk borders. Bricks and coins belong
+ * to the chunk of their center; their state is kept in the tiles of the session, so a released
+ * brick or coin comes back the way it was left.
+ *
+ * Enemies are spawned and despawned within the materialize distance, so they always have ground
+ * to walk on. Enemies and items which move into a released chunk drop out of the level.
+ *
+ * Chunks are released further away than they are materialized, so which chunks are resident
+ * depends on where the camera was before and is part of the session state.
+ *
+ * @version %I%, %G%
+ * @see     B2WorldCreator
+ * @see     ChunkListener
+ * @see     EnemyManager
+ */
+public class LevelStreamer {
+
+    public static final int CHUNK_COLUMNS = 16;
+
+    // Materialize chunks a tile beyond the enemy despawn distance, measured from the camera center
+    // 320+16 = 336
+    public static final float MATERIALIZE_DISTANCE =
+            EnemyManager.DESPAWN_DISTANCE + 16 / MarioBros.PPM;
+
+    // Release chunks a chunk beyond the materialize distance, prepare the ones in between
+    // 336+256 = 592
+    public static final float RELEASE_DISTANCE = MATERIALIZE_DISTANCE + 256 / MarioBros.PPM;
+
+    private GameSession session;
+    private LevelData level;
+    private B2WorldCreator creator;
+    private AsyncExecutor executor;
+    private ChunkListener chunkListener;
+
+    // The tiled map to put the tiles into, null when running headless
+    private TiledMap map;
+    private TiledMapTileLayer[] mapLayers;
+
+    private int chunkCount;
+    private float chunkWidth;
+
+    // Ground and pipe boxes: geometry, category, body and number of resident chunks overlapping
+    private Array<Rectangle> boxes;
+    private short[] boxCategories;
+    private Body[] boxBodies;
+    private int[] boxRefs;
+
+    // Per chunk: indices of the overlapping boxes, the bricks and the coins
+    private int[][] chunkBoxes;
+    private int[][] chunkBricks;
+    private int[][] chunkCoins;
+
+    // Prepared or resident chunks, null for the others, all within first and last
+    private Chunk[] chunks;
+    private int first;
+    private int last;
+    private int residentCount;
+
+    // The chunks to be resident while restoring
+    private boolean[] restoredResident;
+
+    /**
+     * Creates the level streamer and indexes the level objects by chunk. No chunk is materialized
+     * yet.
+     *
+     * @param session   the game session
+     * @param creator   the creator of the Box2D bodies
+     * @param map       the tiled map with empty tile layers, <code>null</code> when running
+     *                  headless
+     * @see             #update(float)
+     */
+    public LevelStreamer(GameSession session, B2WorldCreator creator, TiledMap map) {
+        this.session = session;
+        this.level = session.getLevel();
+        this.creator = creator;
+        this.map = map;
+
+        chunkCount = Math.max(1, (level.getWidth() + CHUNK_COLUMNS - 1) / CHUNK_COLUMNS);
+        chunkWidth = CHUNK_COLUMNS * level.getTileWidth() / MarioBros.PPM;
+
+        if(map != null) {
+            mapLayers = new TiledMapTileLayer[level.getTileLayerCount()];
+            for(int i = 0; i < mapLayers.length; i++) {
+                MapLayer layer = map.getLayers().get(level.getTileLayerName(i));
+                if(layer instanceof TiledMapTileLayer) {
+                    mapLayers[i] = (TiledMapTileLayer) layer;
+                }
+            }
+        }
+
+        boxes = new Array<Rectangle>();
+        Array<Rectangle> ground = level.getBoxes(LevelData.GROUND);
+        Array<Rectangle> pipes = level.getBoxes(LevelData.PIPES);
+        boxes.addAll(ground);
+        boxes.addAll(pipes);
+        boxCategories = new short[boxes.size];
+        for(int i = 0; i < boxes.size; i++) {
+            boxCategories[i] = i < ground.size ? MarioBros.GROUND_BIT : MarioBros.OBJECT_BIT;
+        }
+        boxBodies = new Body[boxes.size];
+        boxRefs = new int[boxes.size];
+
+        chunkBoxes = indexBoxes();
+        chunkBricks = indexObjects(level.getObjects(LevelData.BRICKS));
+        chunkCoins = indexObjects(level.getObjects(LevelData.COINS));
+
+        chunks = new Chunk[chunkCount];
+        first = 0;
+        last = -1;
+        residentCount = 0;
+        restoredResident = new boolean[chunkCount];
+    }
+
+    /**
+     * Streams the level around the given camera position. Chunks beyond the release distance are
+     * released, chunks within it are prepared and chunks within the materialize distance are
+     * materialized. Must not be called while the world is stepping.
+     *
+     * @param cameraX   the x-coordinate of the camera center
+     * @see             #materialize(Chunk)
+     * @see             #release(Chunk)
+     */
+    public void update(float cameraX) {
+        int keepFirst = chunkAt(cameraX - RELEASE_DISTANCE);
+        int keepLast = chunkAt(cameraX + RELEASE_DISTANCE);
+
+        for(int i = first; i <= last; i++) {
+            if(chunks[i] != null && (i < keepFirst || i > keepLast)) {
+                release(chunks[i]);
+                chunks[i] = null;
+            }
+        }
+        first = keepFirst;
+        last = keepLast;
+
+        for(int i = first; i <= last; i++) {
+            if(chunks[i] == null) {
+                chunks[i] = new Chunk(i);
+                if(executor != null) {
+                    chunks[i].result = executor.submit(chunks[i]);
+                }
+            }
+        }
+
+        int materializeFirst = chunkAt(cameraX - MATERIALIZE_DISTANCE);
+        int materializeLast = chunkAt(cameraX + MATERIALIZE_DISTANCE);
+        for(int i = materializeFirst; i <= materializeLast; i++) {
+            if(!chunks[i].resident) {
+                materialize(chunks[i]);
+            }
+        }
+    }
+
+    /**
+     * Puts the tiles of a chunk into the tiled map, creates its box bodies and adds its bricks and
+     * coins to the tile object manager. Waits for the chunk to be prepared first.
+     *
+     * @param chunk the chunk
+     * @see         B2WorldCreator#createBox(Rectangle, short)
+     * @see         B2WorldCreator#createTileObject(String, RectangleMapObject)
+     * @see         TileObjectManager#add(InteractiveTileObject)
+     */
+    private void materialize(Chunk chunk) {
+        if(chunk.result != null) {
+            chunk.result.get();
+            chunk.result = null;
+        } else if(!chunk.prepared) {
+            chunk.prepare();
+        }
+
+        int[] indices = chunkBoxes[chunk.index];
+        for(int i = 0; i < indices.length; i++) {
+            int box = indices[i];
+            if(boxRefs[box]++ == 0) {
+                boxBodies[box] = creator.createBox(boxes.get(box), boxCategories[box]);
+            }
+        }
+        createTileObjects(chunk, LevelData.BRICKS, chunkBricks[chunk.index]);
+        createTileObjects(chunk, LevelData.COINS, chunkCoins[chunk.index]);
+
+        if(map != null) {
+            int start = chunk.index * CHUNK_COLUMNS;
+            int end = Math.min(level.getWidth(), start + CHUNK_COLUMNS);
+            for(int i = 0; i < mapLayers.length; i++) {
+                if(mapLayers[i] == null) {
+                    continue;
+                }
+                TiledMapTileLayer.Cell[] cells = chunk.cells[i];
+                for(int col = start; col < end; col++) {
+                    for(int row = 0; row < level.getHeight(); row++) {
+                        mapLayers[i].setCell(
+                                col,
+                                row,
+                                cells[(col - start) * level.getHeight() + row]);
+                    }
+                }
+            }
+            chunk.cells = null;
+        }
+
+        chunk.resident = true;
+        residentCount++;
+        if(chunkListener != null) {
+            chunkListener.chunkLoaded(chunk.index);
+        }
+    }
+
+    private void createTileObjects(Chunk chunk, String layer, int[] indices) {
+        Array<RectangleMapObject> objects = level.getObjects(layer);
+        for(int i = 0; i < indices.length; i++) {
+            InteractiveTileObject object =
+                    creator.createTileObject(layer, objects.get(indices[i]));
+            chunk.objects.add(object);
+            session.getTileObjects().add(object);
+        }
+    }
+
+    /**
+     * Destroys the box bodies of a resident chunk, removes its bricks and coins and removes its
+     * tiles from the tiled map. A chunk which has only been prepared is dropped.
+     *
+     * @param chunk the chunk
+     * @see         TileObjectManager#remove(InteractiveTileObject)
+     */
+    private void release(Chunk chunk) {
+        if(!chunk.resident) {
+            return;
+        }
+
+        int[] indices = chunkBoxes[chunk.index];
+        for(int i = 0; i < indices.length; i++) {
+            int box = indices[i];
+            if(--boxRefs[box] == 0) {
+                session.getWorld().destroyBody(boxBodies[box]);
+                boxBodies[box] = null;
+            }
+        }
+        for(int i = 0; i < chunk.objects.size; i++) {
+            session.getTileObjects().remove(chunk.objects.get(i));
+        }
+        chunk.objects.clear();
+
+        if(map != null) {
+            int start = chunk.index * CHUNK_COLUMNS;
+            int end = Math.min(level.getWidth(), start + CHUNK_COLUMNS);
+            for(int i = 0; i < mapLayers.length; i++) {
+                if(mapLayers[i] == null) {
+                    continue;
+                }
+                for(int col = start; col < end; col++) {
+                    for(int row = 0; row < level.getHeight(); row++) {
+                        mapLayers[i].setCell(col, row, null);
+                    }
+                }
+            }
+        }
+
+        chunk.resident = false;
+        residentCount--;
+        if(chunkListener != null) {
+            chunkListener.chunkReleased(chunk.index);
+        }
+    }
+
+    /**
+     * Creates the box bodies of the resident chunks by box, after the world was rebuilt. The
+     * bodies of the old world went with it.
+     *
+     * @see GameSession#rebuildWorld()
+     */
+    public void createBodies() {
+        for(int box = 0; box < boxes.size; box++) {
+            if(boxRefs[box] > 0) {
+                boxBodies[box] = creator.createBox(boxes.get(box), boxCategories[box]);
+            }
+        }
+    }
+
+    /**
+     * Drops the chunks which are prepared but not resident, before the tiles of the session are
+     * restored. Pending preparations are waited for, as they read the tiles of the session. The
+     * next update prepares the chunks again from the restored tiles.
+     *
+     * @see GameSession#restoreState(ByteBuffer)
+     */
+    public void dropPrepared() {
+        for(int i = first; i <= last; i++) {
+            if(chunks[i] != null) {
+                if(chunks[i].result != null) {
+                    chunks[i].result.get();
+                    chunks[i].result = null;
+                }
+                if(!chunks[i].resident) {
+                    chunks[i] = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the resident chunks.
+     *
+     * <pre>
+     * int      resident chunk count
+     *          per chunk: int chunk index
+     * </pre>
+     *
+     * @param buffer    the buffer to write to
+     */
+    public void saveState(ByteBuffer buffer) {
+        buffer.putInt(residentCount);
+        for(int i = first; i <= last; i++) {
+            if(chunks[i] != null && chunks[i].resident) {
+                buffer.putInt(i);
+            }
+        }
+    }
+
+    /**
+     * Gets the size of the saved state with every chunk resident.
+     *
+     * @return  the size in bytes, at most
+     * @see     #saveState(ByteBuffer)
+     */
+    public int getMaxStateSize() {
+        return 4 + chunkCount * 4;
+    }
+
+    /**
+     * Restores the resident chunks after the tiles of the session. Chunks which stay resident are
+     * kept and their bricks and coins take the category of their restored tiles, the other chunks
+     * are released or materialized. Prepared chunks must have been dropped before.
+     *
+     * @param buffer    the buffer to read from
+     * @throws          GdxRuntimeException if a chunk lies outside of the level
+     * @see             #dropPrepared()
+     * @see             InteractiveTileObject#restoreCategory()
+     */
+    public void restoreState(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        for(int i = 0; i < count; i++) {
+            int index = buffer.getInt();
+            if(index < 0 || index >= chunkCount) {
+                throw new GdxRuntimeException("Corrupt session state: chunk " + index);
+            }
+            restoredResident[index] = true;
+            first = Math.min(first, index);
+            last = Math.max(last, index);
+        }
+
+        for(int i = first; i <= last; i++) {
+            Chunk chunk = chunks[i];
+            if(chunk != null && !restoredResident[i]) {
+                release(chunk);
+                chunks[i] = null;
+            } else if(chunk != null) {
+                for(int j = 0; j < chunk.objects.size; j++) {
+                    chunk.objects.get(j).restoreCategory();
+                }
+            } else if(restoredResident[i]) {
+                chunks[i] = new Chunk(i);
+                materialize(chunks[i]);
+            }
+            restoredResident[i] = false;
+        }
+    }
+
+    /**
+     * Gets the chunk at the given x-coordinate, clamped to the chunks of the level.
+     *
+     * @param x the x-coordinate
+     * @return  the chunk index
+     */
+    private int chunkAt(float x) {
+        return Math.max(0, Math.min(chunkCount - 1, (int) Math.floor(x / chunkWidth)));
+    }
+
+    private int[][] indexBoxes() {
+        float pixelWidth = CHUNK_COLUMNS * level.getTileWidth();
+        int[] counts = new int[chunkCount];
+        for(int i = 0; i < boxes.size; i++) {
+            Rectangle box = boxes.get(i);
+            int end = chunkOf(box.getX() + box.getWidth(), pixelWidth);
+            for(int c = chunkOf(box.getX(), pixelWidth); c <= end; c++) {
+                counts[c]++;
+            }
+        }
+        int[][] index = allocate(counts);
+        for(int i = 0; i < boxes.size; i++) {
+            Rectangle box = boxes.get(i);
+            int end = chunkOf(box.getX() + box.getWidth(), pixelWidth);
+            for(int c = chunkOf(box.getX(), pixelWidth); c <= end; c++) {
+                index[c][--counts[c]] = i;
+            }
+        }
+        return index;
+    }
+
+    private int[][] indexObjects(Array<RectangleMapObject> objects) {
+        float pixelWidth = CHUNK_COLUMNS * level.getTileWidth();
+        int[] counts = new int[chunkCount];
+        for(int i = 0; i < objects.size; i++) {
+            Rectangle rect = objects.get(i).getRectangle();
+            counts[chunkOf(rect.getX() + rect.getWidth() / 2, pixelWidth)]++;
+        }
+        int[][] index = allocate(counts);
+        for(int i = objects.size - 1; i >= 0; i--) {
+            Rectangle rect = objects.get(i).getRectangle();
+            int c = chunkOf(rect.getX() + rect.getWidth() / 2, pixelWidth);
+            index[c][--counts[c]] = i;
+        }
+        return index;
+    }
+
+    private int chunkOf(float x, float pixelWidth) {
+        return Math.max(0, Math.min(chunkCount - 1, (int) Math.floor(x / pixelWidth)));
+    }
+
+    private int[][] allocate(int[] counts) {
+        int[][] index = new int[counts.length][];
+        for(int i = 0; i < counts.length; i++) {
+            index[i] = new int[counts[i]];
+        }
+        return index;
+    }
+
+    /**
+     * Sets the executor to prepare chunks on. Without an executor chunks are prepared on the game
+     * thread when they are materialized.
+     *
+     * @param executor  the executor, <code>null</code> for none
+     */
+    public void setExecutor(AsyncExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Sets the listener notified about materialized and released chunks. It is notified about the
+     * chunks which are resident already right away.
+     *
+     * @param chunkListener the chunk listener, <code>null</code> for none
+     */
+    public void setChunkListener(ChunkListener chunkListener) {
+        this.chunkListener = chunkListener;
+        if(chunkListener != null) {
+            for(int i = first; i <= last; i++) {
+                if(chunks[i] != null && chunks[i].resident) {
+                    chunkListener.chunkLoaded(i);
+                }
+            }
+        }
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    public int getResidentCount() {
+        return residentCount;
+    }
+
+    /**
+     * A prepared or resident chunk of the level. Preparing only reads the level data, the tiles
+     * of the session and the tile sets of the map, none of which change for chunks which are not
+     * resident, so it can run on any thread.
+     */
+    private class Chunk implements AsyncTask<Chunk> {
+
+        final int index;
+
+        // The pending preparation on the executor
+        AsyncResult<Chunk> result;
+        boolean prepared;
+        boolean resident;
+
+        // Per map layer: the cells column by column, null for empty cells
+        TiledMapTileLayer.Cell[][] cells;
+
+        // The bricks and coins while resident
+        final Array<InteractiveTileObject> objects;
+
+        Chunk(int index) {
+            this.index = index;
+            objects = new Array<InteractiveTileObject>();
+        }
+
+        @Override
+        public Chunk call() {
+            prepare();
+            return this;
+        }
+
+        void prepare() {
+            if(map != null) {
+                int start = index * CHUNK_COLUMNS;
+                int end = Math.min(level.getWidth(), start + CHUNK_COLUMNS);
+                int height = level.getHeight();
+                cells = new TiledMapTileLayer.Cell[mapLayers.length][];
+                for(int i = 0; i < mapLayers.length; i++) {
+                    if(mapLayers[i] == null) {
+                        continue;
+                    }
+                    boolean graphic = LevelData.GRAPHIC_LAYER.equals(level.getTileLayerName(i));
+                    int[] tiles = level.getTileLayer(i);
+                    cells[i] = new TiledMapTileLayer.Cell[CHUNK_COLUMNS * height];
+                    for(int col = start; col < end; col++) {
+                        for(int row = 0; row < height; row++) {
+                            int id = graphic ?
+                                    session.getTiles().getTileId(col, row) :
+                                    tiles[row * level.getWidth() + col];
+                            if(id != 0) {
+                                TiledMapTileLayer.Cell cell = new TiledMapTileLayer.Cell();
+                                cell.setTile(map.getTileSets().getTile(id));
+                                cells[i][(col - start) * height + row] = cell;
+                            }
+                        }
+                    }
+                }
+            }
+            prepared = true;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.andrejlohn.mariobros.tools;
+
+import com.badlogic.gdx.maps.objects.RectangleMapObject;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.physics.box2d.PolygonShape;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+
+import java.util.Arrays;
+
+/**
+ * This class merges touching or overlapping rectangles into as few boxes as possible. The union of
+ * the rectangles is split into horizontal strips, each as wide as possible, and strips of the same
+ * width stacked on each other are joined. Any floor of the union is therefore the top of a single
+ * box, so bodies sliding along it do not catch on seams between neighbouring rectangles (ghost
+ * collisions), and the world needs fewer fixtures.
+ *
+ * The boxes stay solid, unlike chain shapes, so bodies spawned overlapping a surface are still
+ * pushed out of it. The union is built on a grid made of all rectangle edges, so the boxes are
+ * exact for any rectangle positions and sizes. Rectangles without an area are ignored.
+ *
+ * @version %I%, %G%
+ * @see     PolygonShape#setAsBox(float, float, com.badlogic.gdx.math.Vector2, float)
+ * @see     B2WorldCreator
+ */
+public class ShapeMerger {
+
+    /**
+     * Merges the given rectangles into boxes.
+     *
+     * @param objects   the rectangle objects
+     * @return          the merged boxes, bottom to top and left to right
+     */
+    public Array<Rectangle> merge(Array<RectangleMapObject> objects) {
+        Array<Rectangle> boxes = new Array<Rectangle>();
+
+        // Collect the grid lines
+        float[] xs = new float[objects.size * 2];
+        float[] ys = new float[objects.size * 2];
+        int count = 0;
+        for(int i = 0; i < objects.size; i++) {
+            Rectangle rect = objects.get(i).getRectangle();
+            if(rect.getWidth() <= 0 || rect.getHeight() <= 0) {
+                continue;
+            }
+            xs[count] = rect.getX();
+            ys[count++] = rect.getY();
+            xs[count] = rect.getX() + rect.getWidth();
+            ys[count++] = rect.getY() + rect.getHeight();
+        }
+        if(count == 0) {
+            return boxes;
+        }
+        xs = unique(xs, count);
+        ys = unique(ys, count);
+        int cols = xs.length - 1;
+        int rows = ys.length - 1;
+
+        // Mark every grid cell covered by a rectangle
+        boolean[] covered = new boolean[cols * rows];
+        for(int i = 0; i < objects.size; i++) {
+            Rectangle rect = objects.get(i).getRectangle();
+            if(rect.getWidth() <= 0 || rect.getHeight() <= 0) {
+                continue;
+            }
+            int left = Arrays.binarySearch(xs, rect.getX());
+            int right = Arrays.binarySearch(xs, rect.getX() + rect.getWidth());
+            int bottom = Arrays.binarySearch(ys, rect.getY());
+            int top = Arrays.binarySearch(ys, rect.getY() + rect.getHeight());
+            for(int col = left; col < right; col++) {
+                for(int row = bottom; row < top; row++) {
+                    covered[row * cols + col] = true;
+                }
+            }
+        }
+
+        // Split each row into the widest strips and join them with equal strips of the row below.
+        // The strips are compared by their grid columns, the float edges of a joined box may have
+        // been rounded when its width was computed.
+        Array<Rectangle> open = new Array<Rectangle>();
+        IntArray openStarts = new IntArray();
+        IntArray openEnds = new IntArray();
+        Array<Rectangle> next = new Array<Rectangle>();
+        IntArray nextStarts = new IntArray();
+        IntArray nextEnds = new IntArray();
+        for(int row = 0; row < rows; row++) {
+            next.clear();
+            nextStarts.clear();
+            nextEnds.clear();
+            int col = 0;
+            while(col < cols) {
+                if(!covered[row * cols + col]) {
+                    col++;
+                    continue;
+                }
+                int start = col;
+                while(col < cols && covered[row * cols + col]) {
+                    col++;
+                }
+                Rectangle strip = null;
+                for(int i = 0; i < open.size; i++) {
+                    if(openStarts.get(i) == start && openEnds.get(i) == col) {
+                        strip = open.get(i);
+                        strip.height = ys[row + 1] - strip.y;
+                        break;
+                    }
+                }
+                if(strip == null) {
+                    strip = new Rectangle(
+                            xs[start],
+                            ys[row],
+                            xs[col] - xs[start],
+                            ys[row + 1] - ys[row]);
+                    boxes.add(strip);
+                }
+                next.add(strip);
+                nextStarts.add(start);
+                nextEnds.add(col);
+            }
+            Array<Rectangle> swap = open;
+            open = next;
+            next = swap;
+            IntArray swapStarts = openStarts;
+            openStarts = nextStarts;
+            nextStarts = swapStarts;
+            IntArray swapEnds = openEnds;
+            openEnds = nextEnds;
+            nextEnds = swapEnds;
+        }
+        return boxes;
+    }
+
+    private float[] unique(float[] values, int count) {
+        Arrays.sort(values, 0, count);
+        int size = 0;
+        for(int i = 0; i < count; i++) {
+            if(size == 0 || values[i] != values[size - 1]) {
+                values[size++] = values[i];
+            }
+        }
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -0,0 +1,384 @@
+package com.andrejlohn.mariobros.tools;
+
+import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.graphics.g2d.Sprite;
+import com.badlogic.gdx.graphics.g2d.SpriteCache;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.maps.MapLayer;
+import com.badlogic.gdx.maps.tiled.TiledMap;
+import com.badlogic.gdx.maps.tiled.TiledMapTile;
+import com.badlogic.gdx.maps.tiled.TiledMapTileLayer;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.IntArray;
+
+/**
+ * This class renders the tile layers of a tiled map from a sprite cache. The map is split into
+ * chunks of {@link LevelStreamer#CHUNK_COLUMNS} columns, and the tiles of each chunk are baked into
+ * the cache once, so drawing a chunk is a single call without any CPU vertex work. Only the chunks
+ * intersecting the camera view are drawn.
+ *
+ * Only the chunks the level streamer has loaded into the map are baked, each into a cache slot of
+ * its own. When a chunk is released its slot is reused for the next chunk which fits into it, so
+ * the cache does not grow with the level length. When a tile changes, only its chunk is baked
+ * again before it is drawn the next time, in place, as smashed bricks and emptied coin blocks do
+ * not add tiles. If no slot fits, a new one is added, or the whole cache is rebuilt with the
+ * loaded chunks once it is full.
+ *
+ * All visible tile layers are baked in map order. Animated tiles are baked with their current
+ * frame.
+ *
+ * @version %I%, %G%
+ * @see     SpriteCache
+ * @see     ChunkListener
+ * @see     TileListener
+ */
+public class TileChunkRenderer implements ChunkListener, TileListener, Disposable {
+
+    // Sprite caches with indices hold at most 8191 images
+    private static final int MAX_INDEXED_SIZE = 8191;
+
+    private float unitScale;
+    private Array<TiledMapTileLayer> layers;
+    private int columns;
+    private int rows;
+
+    private SpriteCache cache;
+    private int cacheSize;
+    private int cacheUsed;
+
+    // Per slot: cache id, number of tiles the cache was created for, current number of tiles and
+    // chunk, -1 for a free slot
+    private IntArray slotCacheIds;
+    private IntArray slotCapacities;
+    private IntArray slotCounts;
+    private IntArray slotChunks;
+
+    // Per chunk: whether it is loaded and has to be baked, and its slot, -1 if not baked
+    private boolean[] loaded;
+    private boolean[] dirty;
+    private int[] chunkSlots;
+
+    // Used to bake flipped or rotated tiles
+    private Sprite sprite;
+
+    // The view of the last camera set
+    private OrthographicCamera camera;
+    private float viewLeft;
+    private float viewRight;
+
+    /**
+     * Creates the renderer for the given map. No chunk is loaded yet.
+     *
+     * @param map       the tiled map
+     * @param unitScale the number of world units per pixel
+     * @see             #chunkLoaded(int)
+     */
+    public TileChunkRenderer(TiledMap map, float unitScale) {
+        this.unitScale = unitScale;
+
+        layers = new Array<TiledMapTileLayer>();
+        columns = 0;
+        rows = 0;
+        for(int i = 0; i < map.getLayers().getCount(); i++) {
+            MapLayer layer = map.getLayers().get(i);
+            if(layer instanceof TiledMapTileLayer) {
+                TiledMapTileLayer tileLayer = (TiledMapTileLayer) layer;
+                layers.add(tileLayer);
+                columns = Math.max(columns, tileLayer.getWidth());
+                rows = Math.max(rows, tileLayer.getHeight());
+            }
+        }
+
+        int chunks = (columns + LevelStreamer.CHUNK_COLUMNS - 1) / LevelStreamer.CHUNK_COLUMNS;
+        loaded = new boolean[chunks];
+        dirty = new boolean[chunks];
+        chunkSlots = new int[chunks];
+        for(int i = 0; i < chunks; i++) {
+            chunkSlots[i] = -1;
+        }
+        slotCacheIds = new IntArray();
+        slotCapacities = new IntArray();
+        slotCounts = new IntArray();
+        slotChunks = new IntArray();
+        sprite = new Sprite();
+    }
+
+    /**
+     * Sets the camera to render the map with.
+     *
+     * @param camera    the camera
+     */
+    public void setView(OrthographicCamera camera) {
+        this.camera = camera;
+        float width = camera.viewportWidth * camera.zoom;
+        viewLeft = camera.position.x - width / 2;
+        viewRight = camera.position.x + width / 2;
+    }
+
+    /**
+     * Draws the loaded chunks intersecting the camera view. Changed chunks are baked again first.
+     *
+     * @see SpriteCache#draw(int)
+     */
+    public void render() {
+        float chunkWidth = LevelStreamer.CHUNK_COLUMNS * tileWidth() * unitScale;
+        int first = Math.max(0, (int) Math.floor(viewLeft / chunkWidth));
+        int last = Math.min(loaded.length - 1, (int) Math.floor(viewRight / chunkWidth));
+        if(first > last) {
+            return;
+        }
+
+        for(int chunk = first; chunk <= last; chunk++) {
+            if(dirty[chunk]) {
+                bake(chunk);
+            }
+        }
+        if(cache == null) {
+            return;
+        }
+
+        cache.setProjectionMatrix(camera.combined);
+        cache.begin();
+        for(int chunk = first; chunk <= last; chunk++) {
+            int slot = chunkSlots[chunk];
+            if(slot != -1 && slotCounts.get(slot) > 0) {
+                cache.draw(slotCacheIds.get(slot));
+            }
+        }
+        cache.end();
+    }
+
+    /**
+     * Marks a chunk loaded into the map to be baked before it is drawn the next time.
+     *
+     * @param chunk the chunk index
+     */
+    @Override
+    public void chunkLoaded(int chunk) {
+        loaded[chunk] = true;
+        dirty[chunk] = true;
+    }
+
+    /**
+     * Frees the cache slot of a chunk released from the map.
+     *
+     * @param chunk the chunk index
+     */
+    @Override
+    public void chunkReleased(int chunk) {
+        loaded[chunk] = false;
+        dirty[chunk] = false;
+        freeSlot(chunk);
+    }
+
+    /**
+     * Marks the chunk of the given cell to be baked again before it is drawn the next time.
+     *
+     * @param col   the cell column
+     * @param row   the cell row, starting at the bottom
+     */
+    @Override
+    public void tileChanged(int col, int row) {
+        int chunk = col / LevelStreamer.CHUNK_COLUMNS;
+        if(chunk >= 0 && chunk < loaded.length && loaded[chunk]) {
+            dirty[chunk] = true;
+        }
+    }
+
+    /**
+     * Bakes a loaded chunk. It is baked into its own slot if it still fits, else into the
+     * smallest free slot it fits into, else into a new slot. Rebuilds the whole cache if there is
+     * no room for a new slot.
+     *
+     * @param chunk the chunk index
+     * @see         SpriteCache#beginCache(int)
+     * @see         #bakeAll()
+     */
+    private void bake(int chunk) {
+        int count = countTiles(chunk);
+        int slot = chunkSlots[chunk];
+        if(slot == -1 || count > slotCapacities.get(slot)) {
+            freeSlot(chunk);
+            slot = findSlot(count);
+            if(slot == -1) {
+                if(cache == null || cacheUsed + count > cacheSize) {
+                    bakeAll();
+                    return;
+                }
+                cache.beginCache();
+                slot = addSlot(chunk, addTiles(chunk), cache.endCache());
+                dirty[chunk] = false;
+                return;
+            }
+            slotChunks.set(slot, chunk);
+            chunkSlots[chunk] = slot;
+        }
+        cache.beginCache(slotCacheIds.get(slot));
+        count = addTiles(chunk);
+        slotCounts.set(slot, count);
+        slotCacheIds.set(slot, cache.endCache());
+        if(slot == slotCacheIds.size - 1) {
+            // The last cache is created anew, so its capacity is the new count
+            cacheUsed += count - slotCapacities.get(slot);
+            slotCapacities.set(slot, count);
+        }
+        dirty[chunk] = false;
+    }
+
+    /**
+     * Bakes all loaded chunks into a new sprite cache, each into a slot of its own. The cache is
+     * made large enough for twice the tiles of the loaded chunks, to leave room for new slots.
+     *
+     * @see SpriteCache#beginCache()
+     * @see SpriteCache#endCache()
+     */
+    private void bakeAll() {
+        int size = 0;
+        for(int chunk = 0; chunk < loaded.length; chunk++) {
+            chunkSlots[chunk] = -1;
+            if(loaded[chunk]) {
+                size += countTiles(chunk);
+            }
+        }
+        size = Math.max(size * 2, 1);
+        if(cache == null || size > cacheSize) {
+            if(cache != null) {
+                cache.dispose();
+            }
+            cache = new SpriteCache(size, size <= MAX_INDEXED_SIZE);
+            cacheSize = size;
+        } else {
+            cache.clear();
+        }
+        cacheUsed = 0;
+        slotCacheIds.clear();
+        slotCapacities.clear();
+        slotCounts.clear();
+        slotChunks.clear();
+
+        for(int chunk = 0; chunk < loaded.length; chunk++) {
+            if(loaded[chunk]) {
+                cache.beginCache();
+                int count = addTiles(chunk);
+                addSlot(chunk, count, cache.endCache());
+                dirty[chunk] = false;
+            }
+        }
+    }
+
+    private int addSlot(int chunk, int count, int cacheId) {
+        int slot = slotCacheIds.size;
+        slotCacheIds.add(cacheId);
+        slotCapacities.add(count);
+        slotCounts.add(count);
+        slotChunks.add(chunk);
+        chunkSlots[chunk] = slot;
+        cacheUsed += count;
+        return slot;
+    }
+
+    private int findSlot(int count) {
+        int best = -1;
+        for(int slot = 0; slot < slotChunks.size; slot++) {
+            if(slotChunks.get(slot) == -1
+                    && slotCapacities.get(slot) >= count
+                    && (best == -1 || slotCapacities.get(slot) < slotCapacities.get(best))) {
+                best = slot;
+            }
+        }
+        return best;
+    }
+
+    private void freeSlot(int chunk) {
+        int slot = chunkSlots[chunk];
+        if(slot != -1) {
+            slotChunks.set(slot, -1);
+            slotCounts.set(slot, 0);
+            chunkSlots[chunk] = -1;
+        }
+    }
+
+    private int countTiles(int chunk) {
+        int count = 0;
+        int end = Math.min(columns, (chunk + 1) * LevelStreamer.CHUNK_COLUMNS);
+        for(int i = 0; i < layers.size; i++) {
+            TiledMapTileLayer layer = layers.get(i);
+            if(!layer.isVisible()) {
+                continue;
+            }
+            for(int col = chunk * LevelStreamer.CHUNK_COLUMNS; col < end; col++) {
+                for(int row = 0; row < rows; row++) {
+                    TiledMapTileLayer.Cell cell = layer.getCell(col, row);
+                    if(cell != null && cell.getTile() != null) {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private int addTiles(int chunk) {
+        int count = 0;
+        int end = Math.min(columns, (chunk + 1) * LevelStreamer.CHUNK_COLUMNS);
+        for(int i = 0; i < layers.size; i++) {
+            TiledMapTileLayer layer = layers.get(i);
+            if(!layer.isVisible()) {
+                continue;
+            }
+            cache.setColor(1, 1, 1, layer.getOpacity());
+            float tileWidth = layer.getTileWidth() * unitScale;
+            float tileHeight = layer.getTileHeight() * unitScale;
+            for(int col = chunk * LevelStreamer.CHUNK_COLUMNS; col < end; col++) {
+                for(int row = 0; row < rows; row++) {
+                    TiledMapTileLayer.Cell cell = layer.getCell(col, row);
+                    if(cell == null || cell.getTile() == null) {
+                        continue;
+                    }
+                    addTile(cell, col * tileWidth, row * tileHeight);
+                    count++;
+                }
+            }
+        }
+        cache.setColor(1, 1, 1, 1);
+        return count;
+    }
+
+    private void addTile(TiledMapTileLayer.Cell cell, float x, float y) {
+        TiledMapTile tile = cell.getTile();
+        TextureRegion region = tile.getTextureRegion();
+        x += tile.getOffsetX() * unitScale;
+        y += tile.getOffsetY() * unitScale;
+        float width = region.getRegionWidth() * unitScale;
+        float height = region.getRegionHeight() * unitScale;
+
+        if(!cell.getFlipHorizontally() && !cell.getFlipVertically() && cell.getRotation() == 0) {
+            cache.add(region, x, y, width, height);
+            return;
+        }
+        sprite.setRegion(region);
+        sprite.setBounds(x, y, width, height);
+        sprite.setOriginCenter();
+        sprite.setFlip(cell.getFlipHorizontally(), cell.getFlipVertically());
+        sprite.setRotation(cell.getRotation() * 90);
+        sprite.setColor(cache.getColor());
+        cache.add(sprite);
+    }
+
+    private float tileWidth() {
+        return layers.size == 0 ? 1 : layers.get(0).getTileWidth();
+    }
+
+    /**
+     * Disposes the sprite cache. The tiled map is owned by the caller.
+     *
+     * @see SpriteCache#dispose()
+     */
+    @Override
+    public void dispose() {
+        if(cache != null) {
+            cache.dispose();
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.andrejlohn.mariobros.tools;
+
+/**
+ * This interface is notified when the game session changes a tile of the level, e.g. when a brick
+ * is smashed. It is implemented by renderers which cache the tile layers.
+ *
+ * @version %I%, %G%
+ * @see     TileChunkRenderer
+ */
+public interface TileListener {
+
+    void tileChanged(int col, int row);
+}
@@ -0,0 +1,352 @@
+package com.andrejlohn.mariobros.tools;
+
+import com.andrejlohn.mariobros.MarioBros;
+import com.andrejlohn.mariobros.level.LevelData;
+import com.andrejlohn.mariobros.session.GameSession;
+import com.andrejlohn.mariobros.session.TileGrid;
+import com.andrejlohn.mariobros.sprites.Mario;
+import com.andrejlohn.mariobros.sprites.SpriteRegistry;
+import com.andrejlohn.mariobros.sprites.enemies.Enemy;
+import com.andrejlohn.mariobros.sprites.items.Item;
+import com.andrejlohn.mariobros.sprites.tileobjects.InteractiveTileObject;
+import com.badlogic.gdx.graphics.g2d.Sprite;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.BodyDef;
+import com.badlogic.gdx.physics.box2d.FixtureDef;
+import com.badlogic.gdx.physics.box2d.PolygonShape;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class manages the fixtures of the bricks and coins of a game session. Bricks and coins are
+ * lightweight records which the LevelStreamer adds and removes with their chunks. Only records
+ * within {@link #MATERIALIZE_DISTANCE} of an actor, i.e. the player character, a live enemy or a
+ * live item, get a fixture. The fixtures are all created on a single static body from one shared
+ * shape, and they are retired again once no actor is within {@link #RETIRE_DISTANCE}. The number
+ * of fixtures therefore depends on the number of actors only, not on the number of resident
+ * chunks.
+ *
+ * Records are indexed by cell in the TileGrid, so only the cells around each actor are looked at
+ * to materialize fixtures and only the materialized records are checked to retire them. Records
+ * are updated before the world step, so every actor has the fixtures around it when the contacts
+ * are computed.
+ *
+ * Which records have a fixture is part of the session state, as it depends on where the actors
+ * were before. Restoring it keeps the fixtures of the records which had one before.
+ *
+ * @version %I%, %G%
+ * @see     InteractiveTileObject
+ * @see     TileGrid
+ * @see     LevelStreamer
+ */
+public class TileObjectManager implements Disposable {
+
+    // Materialize a fixture when an actor gets within 2 tiles of it
+    // 2*16 = 32
+    public static final float MATERIALIZE_DISTANCE = 32 / MarioBros.PPM;
+
+    // Retire a fixture once all actors are more than 4 tiles away
+    // 4*16 = 64
+    public static final float RETIRE_DISTANCE = 64 / MarioBros.PPM;
+
+    private GameSession session;
+    private TileGrid tiles;
+
+    // The shared static body at the origin holding all fixtures
+    private Body body;
+
+    // Shared shape and fixture definition, copied by Box2D into each fixture
+    private PolygonShape shape;
+    private FixtureDef fDef;
+    private Vector2 center;
+
+    // Number of records of the resident chunks, and the records with a fixture
+    private int recordCount;
+    private Array<InteractiveTileObject> materialized;
+
+    // The records to have a fixture while restoring
+    private Array<InteractiveTileObject> restored;
+
+    // Reused actor bounds in meters
+    private Array<Rectangle> actors;
+    private int actorCount;
+
+    /**
+     * Creates the tile object manager and the shared static body. No fixture is created yet.
+     *
+     * @param session   the game session
+     * @see             GameSession
+     */
+    public TileObjectManager(GameSession session) {
+        this.session = session;
+        this.tiles = session.getTiles();
+        createBody();
+
+        shape = new PolygonShape();
+        fDef = new FixtureDef();
+        center = new Vector2();
+        materialized = new Array<InteractiveTileObject>();
+        restored = new Array<InteractiveTileObject>();
+        actors = new Array<Rectangle>();
+        recordCount = 0;
+    }
+
+    /**
+     * Creates the shared static body in the world of the session, e.g. after it was rebuilt.
+     *
+     * @see #retireAll()
+     */
+    public void createBody() {
+        BodyDef bDef = new BodyDef();
+        bDef.type = BodyDef.BodyType.StaticBody;
+        body = session.getWorld().createBody(bDef);
+    }
+
+    /**
+     * Retires all fixtures, before the world is rebuilt. The records are kept.
+     *
+     * @see GameSession#rebuildWorld()
+     */
+    public void retireAll() {
+        for(int i = 0; i < materialized.size; i++) {
+            materialized.get(i).retire(body);
+        }
+        materialized.clear();
+    }
+
+    /**
+     * Adds the record of a brick or coin, e.g. when its chunk is materialized. The fixture is
+     * created in the next update if an actor is near.
+     *
+     * @param object    the brick or coin
+     * @see             TileGrid#addObject(InteractiveTileObject)
+     */
+    public void add(InteractiveTileObject object) {
+        tiles.addObject(object);
+        recordCount++;
+    }
+
+    /**
+     * Removes the record of a brick or coin and retires its fixture, e.g. when its chunk is
+     * released.
+     *
+     * @param object    the brick or coin
+     * @see             InteractiveTileObject#retire(Body)
+     * @see             TileGrid#removeObject(InteractiveTileObject)
+     */
+    public void remove(InteractiveTileObject object) {
+        if(object.isMaterialized()) {
+            object.retire(body);
+            materialized.removeValue(object, true);
+        }
+        tiles.removeObject(object);
+        recordCount--;
+    }
+
+    /**
+     * Materializes the fixtures of the records near an actor and retires the ones no actor is near
+     * any longer. Must not be called during the world step.
+     *
+     * @see InteractiveTileObject#materialize(Body, PolygonShape, FixtureDef, Vector2)
+     * @see InteractiveTileObject#retire(Body)
+     */
+    public void update() {
+        collectActors();
+        for(int i = materialized.size - 1; i >= 0; i--) {
+            InteractiveTileObject object = materialized.get(i);
+            if(!isNear(object.getBounds(), RETIRE_DISTANCE)) {
+                object.retire(body);
+                materialized.removeIndex(i);
+            }
+        }
+        for(int i = 0; i < actorCount; i++) {
+            materializeAround(actors.get(i));
+        }
+    }
+
+    /**
+     * Materializes the fixtures of the records within {@link #MATERIALIZE_DISTANCE} of an actor.
+     * Only the cells overlapping the actor bounds grown by the distance are looked up.
+     *
+     * @param actor the actor bounds in meters
+     * @see         TileGrid#getObject(int, int)
+     */
+    private void materializeAround(Rectangle actor) {
+        float distance = MATERIALIZE_DISTANCE;
+        int col0 = Math.max(0, toCell(actor.x - distance));
+        int col1 = Math.min(tiles.getWidth() - 1, toCell(actor.x + actor.width + distance));
+        int row0 = Math.max(0, toCell(actor.y - distance));
+        int row1 = Math.min(tiles.getHeight() - 1, toCell(actor.y + actor.height + distance));
+        for(int col = col0; col <= col1; col++) {
+            for(int row = row0; row <= row1; row++) {
+                InteractiveTileObject object = tiles.getObject(col, row);
+                if(object != null && !object.isMaterialized()) {
+                    object.materialize(body, shape, fDef, center);
+                    materialized.add(object);
+                }
+            }
+        }
+    }
+
+    private static int toCell(float meters) {
+        return (int) Math.floor(meters * MarioBros.PPM / 16);
+    }
+
+    /**
+     * Collects the bounds of the player character and all live enemies and items.
+     */
+    private void collectActors() {
+        actorCount = 0;
+        Mario player = session.getPlayer();
+        if(player != null) {
+            addActor(player);
+        }
+        SpriteRegistry<Enemy> enemies = session.getEnemies().getLiveEnemies();
+        for(int i = 0; i < enemies.size(); i++) {
+            if(!enemies.get(i).isDestroyed()) {
+                addActor(enemies.get(i));
+            }
+        }
+        SpriteRegistry<Item> items = session.getItems().getLiveItems();
+        for(int i = 0; i < items.size(); i++) {
+            if(!items.get(i).isDestroyed()) {
+                addActor(items.get(i));
+            }
+        }
+    }
+
+    private void addActor(Sprite sprite) {
+        if(actorCount == actors.size) {
+            actors.add(new Rectangle());
+        }
+        actors.get(actorCount++).set(
+                sprite.getX(),
+                sprite.getY(),
+                sprite.getWidth(),
+                sprite.getHeight());
+    }
+
+    /**
+     * Checks whether an actor is within the given distance of the given bounds, on both axes.
+     *
+     * @param bounds    the bounds in pixels
+     * @param distance  the distance in meters
+     * @return          <code>true</code> if an actor is near
+     *                  <code>false</code> else
+     */
+    private boolean isNear(Rectangle bounds, float distance) {
+        float x = bounds.getX() / MarioBros.PPM;
+        float y = bounds.getY() / MarioBros.PPM;
+        float width = bounds.getWidth() / MarioBros.PPM;
+        float height = bounds.getHeight() / MarioBros.PPM;
+        for(int i = 0; i < actorCount; i++) {
+            Rectangle actor = actors.get(i);
+            if(actor.x - distance <= x + width
+                    && actor.x + actor.width + distance >= x
+                    && actor.y - distance <= y + height
+                    && actor.y + actor.height + distance >= y) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the cells of the records which have a fixture.
+     *
+     * <pre>
+     * int      fixture count
+     *          per fixture: short column, row
+     * </pre>
+     *
+     * @param buffer    the buffer to write to
+     */
+    public void saveState(ByteBuffer buffer) {
+        buffer.putInt(materialized.size);
+        for(int i = 0; i < materialized.size; i++) {
+            InteractiveTileObject object = materialized.get(i);
+            buffer.putShort((short) object.getCol());
+            buffer.putShort((short) object.getRow());
+        }
+    }
+
+    /**
+     * Gets the size of the saved state with a fixture for every brick and coin.
+     *
+     * @return  the size in bytes, at most
+     * @see     #saveState(ByteBuffer)
+     */
+    public int getMaxStateSize() {
+        LevelData level = session.getLevel();
+        int objects = level.getObjects(LevelData.BRICKS).size
+                + level.getObjects(LevelData.COINS).size;
+        return 4 + objects * 2 * 2;
+    }
+
+    /**
+     * Restores which records have a fixture. Fixtures of records which are not restored are
+     * retired, records restored without a fixture are materialized, the other fixtures are kept.
+     * The records keep the order of the state, so saving again writes the same state. The records
+     * must be resident, i.e. the chunks must have been restored before.
+     *
+     * @param buffer    the buffer to read from
+     * @throws          GdxRuntimeException if a cell has no brick or coin
+     * @see             LevelStreamer#restoreState(ByteBuffer)
+     */
+    public void restoreState(ByteBuffer buffer) {
+        restored.clear();
+        int count = buffer.getInt();
+        for(int i = 0; i < count; i++) {
+            int col = buffer.getShort();
+            int row = buffer.getShort();
+            InteractiveTileObject object = tiles.contains(col, row) ?
+                    tiles.getObject(col, row) :
+                    null;
+            if(object == null) {
+                throw new GdxRuntimeException("Corrupt session state: no brick or coin at "
+                        + col + ", " + row);
+            }
+            restored.add(object);
+        }
+
+        for(int i = materialized.size - 1; i >= 0; i--) {
+            InteractiveTileObject object = materialized.get(i);
+            if(!restored.contains(object, true)) {
+                object.retire(body);
+                materialized.removeIndex(i);
+            }
+        }
+        for(int i = 0; i < restored.size; i++) {
+            InteractiveTileObject object = restored.get(i);
+            if(!object.isMaterialized()) {
+                object.materialize(body, shape, fDef, center);
+            }
+        }
+        materialized.clear();
+        materialized.addAll(restored);
+        restored.clear();
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    public int getFixtureCount() {
+        return materialized.size;
+    }
+
+    /**
+     * Disposes the shared shape. The body is destroyed with the world.
+     *
+     * @see PolygonShape#dispose()
+     */
+    @Override
+    public void dispose() {
+        shape.dispose();
+    }
+}
@@ -0,0 +1,258 @@
+package com.andrejlohn.mariobros.tools;
+
+import com.andrejlohn.mariobros.session.GameSession;
+import com.andrejlohn.mariobros.sprites.enemies.Enemy;
+import com.andrejlohn.mariobros.sprites.items.Item;
+import com.andrejlohn.mariobros.sprites.items.ItemType;
+import com.andrejlohn.mariobros.sprites.tileobjects.InteractiveTileObject;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.Filter;
+import com.badlogic.gdx.physics.box2d.Fixture;
+import com.badlogic.gdx.physics.box2d.World;
+import com.badlogic.gdx.utils.Array;
+
+/**
+ * This class collects the changes to the Box2D world requested by gameplay code and applies them
+ * in one batch right after the world step. Contact callbacks run while the world is locked, so
+ * they must not create or destroy bodies or change fixtures; background threads, e.g. networking
+ * or scripting, must not touch the world at all. Both enqueue commands here instead: spawning
+ * items, despawning enemies, disabling items, changing collision filters and applying impulses.
+ *
+ * Commands are stored in pre-allocated parallel arrays, which only grow if a batch holds more
+ * commands than ever before. Enqueueing is synchronized, so there may be any number of producers.
+ * The buffer is double-buffered: applying a batch swaps it with an empty one first, so commands
+ * enqueued while the batch is applied, e.g. from contacts ended by destroyed bodies, go into the
+ * next batch. Commands are applied in the order they were enqueued.
+ *
+ * A command on a body must be enqueued while the body exists, and the body must not be destroyed
+ * outside of this buffer before the batch is applied. Commands on game objects check their state
+ * when they are applied.
+ *
+ * @version %I%, %G%
+ * @see     GameSession#step()
+ * @see     World#isLocked()
+ */
+public class WorldCommandBuffer {
+
+    private static final int SPAWN_ITEM = 0;
+    private static final int DESPAWN_ENEMY = 1;
+    private static final int DISABLE_ITEM = 2;
+    private static final int SET_CATEGORY = 3;
+    private static final int SET_FILTER = 4;
+    private static final int APPLY_IMPULSE = 5;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private GameSession session;
+
+    // The batch enqueued into and the batch being applied
+    private Batch pending;
+    private Batch applying;
+
+    /**
+     * Creates the command buffer of a game session.
+     *
+     * @param session   the game session
+     */
+    public WorldCommandBuffer(GameSession session) {
+        this.session = session;
+        pending = new Batch(INITIAL_CAPACITY);
+        applying = new Batch(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Enqueues an item to be spawned.
+     *
+     * @param type  the item type
+     * @param x     the position x-coordinate
+     * @param y     the position y-coordinate
+     * @see         ItemManager#spawn(ItemType, float, float)
+     */
+    public synchronized void spawnItem(ItemType type, float x, float y) {
+        pending.add(SPAWN_ITEM, type, null, x, y, (short) 0);
+    }
+
+    /**
+     * Enqueues an enemy to be despawned, i.e. its body to be deactivated.
+     *
+     * @param enemy the enemy
+     * @see         Enemy#despawn()
+     */
+    public synchronized void despawn(Enemy enemy) {
+        pending.add(DESPAWN_ENEMY, enemy, null, 0, 0, (short) 0);
+    }
+
+    /**
+     * Enqueues an item to be disabled.
+     *
+     * @param item  the item
+     * @see         Item#disable()
+     */
+    public synchronized void disable(Item item) {
+        pending.add(DISABLE_ITEM, item, null, 0, 0, (short) 0);
+    }
+
+    /**
+     * Enqueues a change of the collision category of a brick or coin.
+     *
+     * @param object    the brick or coin
+     * @param category  the category bit
+     * @see             InteractiveTileObject#setCategoryFilter(short)
+     */
+    public synchronized void setCategory(InteractiveTileObject object, short category) {
+        pending.add(SET_CATEGORY, object, null, 0, 0, category);
+    }
+
+    /**
+     * Enqueues a change of the collision filter of all fixtures of a body.
+     *
+     * @param body      the body
+     * @param filter    the filter, must not be modified afterwards
+     * @see             Fixture#setFilterData(Filter)
+     */
+    public synchronized void setFilter(Body body, Filter filter) {
+        pending.add(SET_FILTER, body, filter, 0, 0, (short) 0);
+    }
+
+    /**
+     * Enqueues a linear impulse at the center of mass of a body. The body is woken up.
+     *
+     * @param body  the body
+     * @param x     the impulse x-component
+     * @param y     the impulse y-component
+     * @see         Body#applyLinearImpulse(float, float, float, float, boolean)
+     */
+    public synchronized void applyImpulse(Body body, float x, float y) {
+        pending.add(APPLY_IMPULSE, body, null, x, y, (short) 0);
+    }
+
+    /**
+     * Applies all enqueued commands in order. Must be called on the game thread while the world is
+     * not locked, i.e. right after the world step.
+     */
+    public void apply() {
+        synchronized(this) {
+            Batch batch = pending;
+            pending = applying;
+            applying = batch;
+        }
+
+        Batch batch = applying;
+        for(int i = 0; i < batch.size; i++) {
+            switch(batch.kinds[i]) {
+                case SPAWN_ITEM:
+                    session.getItems().spawn((ItemType) batch.targets[i], batch.xs[i], batch.ys[i]);
+                    break;
+                case DESPAWN_ENEMY:
+                    ((Enemy) batch.targets[i]).despawn();
+                    break;
+                case DISABLE_ITEM:
+                    ((Item) batch.targets[i]).disable();
+                    break;
+                case SET_CATEGORY:
+                    ((InteractiveTileObject) batch.targets[i]).setCategoryFilter(batch.bits[i]);
+                    break;
+                case SET_FILTER:
+                    Array<Fixture> fixtures = ((Body) batch.targets[i]).getFixtureList();
+                    for(int j = 0; j < fixtures.size; j++) {
+                        fixtures.get(j).setFilterData((Filter) batch.args[i]);
+                    }
+                    break;
+                case APPLY_IMPULSE:
+                    Body body = (Body) batch.targets[i];
+                    body.applyLinearImpulse(
+                            batch.xs[i],
+                            batch.ys[i],
+                            body.getWorldCenter().x,
+                            body.getWorldCenter().y,
+                            true);
+                    break;
+            }
+        }
+        batch.clear();
+    }
+
+    /**
+     * Drops all enqueued commands, e.g. when the session state is restored and the bodies and
+     * game objects they refer to are replaced.
+     */
+    public synchronized void clear() {
+        pending.clear();
+        applying.clear();
+    }
+
+    /**
+     * Gets the number of commands waiting for the next batch.
+     *
+     * @return  the number of pending commands
+     */
+    public synchronized int getPendingCount() {
+        return pending.size;
+    }
+
+    /**
+     * A batch of commands in parallel arrays.
+     */
+    private static class Batch {
+
+        int size;
+        int[] kinds;
+        Object[] targets;
+        Object[] args;
+        float[] xs;
+        float[] ys;
+        short[] bits;
+
+        Batch(int capacity) {
+            kinds = new int[capacity];
+            targets = new Object[capacity];
+            args = new Object[capacity];
+            xs = new float[capacity];
+            ys = new float[capacity];
+            bits = new short[capacity];
+        }
+
+        void add(int kind, Object target, Object arg, float x, float y, short bit) {
+            if(size == kinds.length) {
+                grow();
+            }
+            kinds[size] = kind;
+            targets[size] = target;
+            args[size] = arg;
+            xs[size] = x;
+            ys[size] = y;
+            bits[size] = bit;
+            size++;
+        }
+
+        void clear() {
+            for(int i = 0; i < size; i++) {
+                targets[i] = null;
+                args[i] = null;
+            }
+            size = 0;
+        }
+
+        private void grow() {
+            int capacity = kinds.length * 2;
+            int[] newKinds = new int[capacity];
+            Object[] newTargets = new Object[capacity];
+            Object[] newArgs = new Object[capacity];
+            float[] newXs = new float[capacity];
+            float[] newYs = new float[capacity];
+            short[] newBits = new short[capacity];
+            System.arraycopy(kinds, 0, newKinds, 0, size);
+            System.arraycopy(targets, 0, newTargets, 0, size);
+            System.arraycopy(args, 0, newArgs, 0, size);
+            System.arraycopy(xs, 0, newXs, 0, size);
+            System.arraycopy(ys, 0, newYs, 0, size);
+            System.arraycopy(bits, 0, newBits, 0, size);
+            kinds = newKinds;
+            targets = newTargets;
+            args = newArgs;
+            xs = newXs;
+            ys = newYs;
+            bits = newBits;
+        }
+    }
+}
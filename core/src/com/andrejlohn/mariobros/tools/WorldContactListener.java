@@ -5,21 +5,146 @@ import com.andrejlohn.mariobros.sprites.Mario;
 import com.andrejlohn.mariobros.sprites.enemies.Enemy;
 import com.andrejlohn.mariobros.sprites.items.Item;
 import com.andrejlohn.mariobros.sprites.tileobjects.InteractiveTileObject;
-import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.physics.box2d.Contact;
 import com.badlogic.gdx.physics.box2d.ContactImpulse;
 import com.badlogic.gdx.physics.box2d.ContactListener;
 import com.badlogic.gdx.physics.box2d.Fixture;
 import com.badlogic.gdx.physics.box2d.Manifold;
+import com.badlogic.gdx.physics.box2d.World;
+import com.badlogic.gdx.utils.Array;
 
 /**
  * This class represents a generic listener to notice the collision between two game world objects.
+ * Contacts are dispatched through a handler matrix indexed by the category bit indices of the two
+ * fixtures, which are cached in the fixture tags. The fixture of the lower category is always
+ * passed first, so every pair of categories has a single handler.
+ *
+ * Box2D reports the contacts of a step in the order of its contact list, which depends on the
+ * history of the world, e.g. on the ids of the broad-phase proxies. So the contacts beginning and
+ * ending during a world step are collected and dispatched after it, ordered by the categories
+ * and owners of the fixtures. Contacts ending outside of a step, e.g. when a body is destroyed,
+ * are dispatched right away.
+ *
+ * Apart from the begin of a contact, the end is dispatched as well: the feet of the player
+ * character count the ground, pipes, bricks and coins they touch, so the character knows whether
+ * it stands on something. The counters are part of the session state, so while the state is
+ * restored no contacts are dispatched at all: the contacts the restore begins and ends are
+ * already accounted for by the restored state.
  *
  * @version %I%, %G%
  * @see     ContactListener
+ * @see     ContactHandler
+ * @see     FixtureTag
  */
 public class WorldContactListener implements ContactListener {
 
+    // Categories are single bits of a short
+    private static final int CATEGORIES = 16;
+
+    // Handlers by lower and higher category bit index, null for pairs without reaction
+    private static final ContactHandler[] HANDLERS = new ContactHandler[CATEGORIES * CATEGORIES];
+
+    static {
+        ContactHandler headHit = new ContactHandler() {
+            @Override
+            public void beginContact(FixtureTag tile, FixtureTag head) {
+                ((InteractiveTileObject) tile.getOwner()).onHeadHit((Mario) head.getOwner());
+            }
+        };
+        register(MarioBros.BRICK_BIT, MarioBros.MARIO_HEAD_BIT, headHit);
+        register(MarioBros.COIN_BIT, MarioBros.MARIO_HEAD_BIT, headHit);
+
+        register(MarioBros.MARIO_BIT, MarioBros.ENEMY_HEAD_BIT, new ContactHandler() {
+            @Override
+            public void beginContact(FixtureTag mario, FixtureTag head) {
+                ((Enemy) head.getOwner()).hitOnHead((Mario) mario.getOwner());
+            }
+        });
+        register(MarioBros.OBJECT_BIT, MarioBros.ENEMY_BIT, new ContactHandler() {
+            @Override
+            public void beginContact(FixtureTag object, FixtureTag enemy) {
+                ((Enemy) enemy.getOwner()).reverseVelocity(true, false);
+            }
+        });
+        register(MarioBros.MARIO_BIT, MarioBros.ENEMY_BIT, new ContactHandler() {
+            @Override
+            public void beginContact(FixtureTag mario, FixtureTag enemy) {
+                ((Mario) mario.getOwner()).hit((Enemy) enemy.getOwner());
+            }
+        });
+        register(MarioBros.ENEMY_BIT, MarioBros.ENEMY_BIT, new ContactHandler() {
+            @Override
+            public void beginContact(FixtureTag a, FixtureTag b) {
+                ((Enemy) a.getOwner()).onEnemyHit((Enemy) b.getOwner());
+                ((Enemy) b.getOwner()).onEnemyHit((Enemy) a.getOwner());
+            }
+        });
+        register(MarioBros.OBJECT_BIT, MarioBros.ITEM_BIT, new ContactHandler() {
+            @Override
+            public void beginContact(FixtureTag object, FixtureTag item) {
+                ((Item) item.getOwner()).reverseVelocity(true, false);
+            }
+        });
+        register(MarioBros.MARIO_BIT, MarioBros.ITEM_BIT, new ContactHandler() {
+            @Override
+            public void beginContact(FixtureTag mario, FixtureTag item) {
+                ((Item) item.getOwner()).use((Mario) mario.getOwner());
+            }
+        });
+
+        ContactHandler footing = new ContactHandler() {
+            @Override
+            public void beginContact(FixtureTag ground, FixtureTag feet) {
+                ((Mario) feet.getOwner()).beginFootContact();
+            }
+
+            @Override
+            public void endContact(FixtureTag ground, FixtureTag feet) {
+                ((Mario) feet.getOwner()).endFootContact();
+            }
+        };
+        register(MarioBros.GROUND_BIT, MarioBros.MARIO_FOOT_BIT, footing);
+        register(MarioBros.BRICK_BIT, MarioBros.MARIO_FOOT_BIT, footing);
+        register(MarioBros.COIN_BIT, MarioBros.MARIO_FOOT_BIT, footing);
+        register(MarioBros.OBJECT_BIT, MarioBros.MARIO_FOOT_BIT, footing);
+        // A brick smashed while stood on ends its contact as destroyed
+        register(MarioBros.DESTROYED_BIT, MarioBros.MARIO_FOOT_BIT, new ContactHandler() {
+            @Override
+            public void endContact(FixtureTag brick, FixtureTag feet) {
+                ((Mario) feet.getOwner()).endFootContact();
+            }
+        });
+    }
+
+    // Dispatch no contacts while the session state is restored
+    private boolean restoring;
+
+    // Contacts of the current world step, the first eventCount events are used
+    private boolean stepping;
+    private Array<ContactEvent> events;
+    private int eventCount;
+
+    /**
+     * Creates the contact listener.
+     */
+    public WorldContactListener() {
+        events = new Array<ContactEvent>();
+        eventCount = 0;
+    }
+
+    /**
+     * Registers the handler of a pair of categories.
+     *
+     * @param low       the lower category bit
+     * @param high      the higher category bit
+     * @param handler   the handler
+     */
+    private static void register(short low, short high, ContactHandler handler) {
+        int a = Integer.numberOfTrailingZeros(low);
+        int b = Integer.numberOfTrailingZeros(high);
+        HANDLERS[a * CATEGORIES + b] = handler;
+    }
+
     /**
      * Reacts to contact initialisation between two game world objects.
      *
@@ -30,65 +155,153 @@ public class WorldContactListener implements ContactListener {
      */
     @Override
     public void beginContact(Contact contact) {
-        Fixture fixA = contact.getFixtureA();
-        Fixture fixB = contact.getFixtureB();
-
-        int cDef = fixA.getFilterData().categoryBits | fixB.getFilterData().categoryBits;
-
-        switch(cDef) {
-            case MarioBros.MARIO_HEAD_BIT | MarioBros.BRICK_BIT:
-            case MarioBros.MARIO_HEAD_BIT | MarioBros.COIN_BIT:
-                if(fixA.getFilterData().categoryBits == MarioBros.MARIO_HEAD_BIT) {
-                    ((InteractiveTileObject) fixB.getUserData()).onHeadHit((Mario) fixA.getUserData());
-                } else {
-                    ((InteractiveTileObject) fixA.getUserData()).onHeadHit((Mario) fixB.getUserData());
-                }
-                break;
-            case MarioBros.ENEMY_HEAD_BIT | MarioBros.MARIO_BIT:
-                if(fixA.getFilterData().categoryBits == MarioBros.ENEMY_HEAD_BIT) {
-                    ((Enemy) fixA.getUserData()).hitOnHead((Mario) fixB.getUserData());
-                } else {
-                    ((Enemy) fixB.getUserData()).hitOnHead((Mario) fixA.getUserData());
-                }
-                break;
-            case MarioBros.ENEMY_BIT | MarioBros.OBJECT_BIT:
-                if(fixA.getFilterData().categoryBits == MarioBros.ENEMY_BIT) {
-                    ((Enemy) fixA.getUserData()).reverseVelocity(true, false);
-                } else {
-                    ((Enemy) fixB.getUserData()).reverseVelocity(true, false);
-                }
-                break;
-            case MarioBros.MARIO_BIT | MarioBros.ENEMY_BIT:
-                if(fixA.getFilterData().categoryBits == MarioBros.MARIO_BIT) {
-                    ((Mario) fixA.getUserData()).hit((Enemy) fixB.getUserData());
-                } else {
-                    ((Mario) fixB.getUserData()).hit((Enemy) fixA.getUserData());
-                }
-                break;
-            case MarioBros.ENEMY_BIT | MarioBros.ENEMY_BIT:
-                ((Enemy) fixA.getUserData()).onEnemyHit((Enemy) fixB.getUserData());
-                ((Enemy) fixB.getUserData()).onEnemyHit((Enemy) fixA.getUserData());
-                break;
-            case MarioBros.ITEM_BIT | MarioBros.OBJECT_BIT:
-                if(fixA.getFilterData().categoryBits == MarioBros.ITEM_BIT) {
-                    ((Item) fixA.getUserData()).reverseVelocity(true, false);
-                } else {
-                    ((Item) fixB.getUserData()).reverseVelocity(true, false);
-                }
-                break;
-            case MarioBros.ITEM_BIT | MarioBros.MARIO_BIT:
-                if(fixA.getFilterData().categoryBits == MarioBros.ITEM_BIT) {
-                    ((Item) fixA.getUserData()).use((Mario) fixB.getUserData());
-                } else {
-                    ((Item) fixB.getUserData()).use((Mario) fixA.getUserData());
-                }
-                break;
-        }
+        dispatch(contact, true);
     }
 
+    /**
+     * Reacts to the end of a contact between two game world objects, including contacts destroyed
+     * together with a fixture or body.
+     *
+     * @param contact   the contact information
+     * @see Contact#getFixtureA()
+     * @see Contact#getFixtureB()
+     * @see Fixture#getUserData()
+     */
     @Override
     public void endContact(Contact contact) {
+        dispatch(contact, false);
+    }
 
+    /**
+     * Looks up the handler of the categories of the contact fixtures and calls it with the fixture
+     * tags in canonical order, or collects the call during a world step.
+     *
+     * @param contact   the contact
+     * @param begin     <code>true</code> if the contact begins
+     *                  <code>false</code> if it ends
+     */
+    private void dispatch(Contact contact, boolean begin) {
+        if(restoring) {
+            return;
+        }
+        FixtureTag tagA = (FixtureTag) contact.getFixtureA().getUserData();
+        FixtureTag tagB = (FixtureTag) contact.getFixtureB().getUserData();
+        if(tagA == null || tagB == null || tagA.getIndex() < 0 || tagB.getIndex() < 0) {
+            return;
+        }
+
+        if(tagA.getIndex() > tagB.getIndex()
+                || (tagA.getIndex() == tagB.getIndex()
+                        && tagA.getOwnerOrder() > tagB.getOwnerOrder())) {
+            FixtureTag tag = tagA;
+            tagA = tagB;
+            tagB = tag;
+        }
+        ContactHandler handler = HANDLERS[tagA.getIndex() * CATEGORIES + tagB.getIndex()];
+        if(handler == null) {
+            return;
+        }
+        if(stepping) {
+            if(eventCount == events.size) {
+                events.add(new ContactEvent());
+            }
+            events.get(eventCount++).set(handler, tagA, tagB, begin);
+        } else {
+            call(handler, tagA, tagB, begin);
+        }
+    }
+
+    private static void call(
+            ContactHandler handler,
+            FixtureTag a,
+            FixtureTag b,
+            boolean begin) {
+        if(begin) {
+            handler.beginContact(a, b);
+        } else {
+            handler.endContact(a, b);
+        }
+    }
+
+    /**
+     * Starts collecting the contacts beginning and ending, before a world step.
+     *
+     * @see #endStep()
+     */
+    public void beginStep() {
+        stepping = true;
+    }
+
+    /**
+     * Dispatches the contacts collected during the world step, ordered by the categories and
+     * owners of their fixtures. Ends come before begins of the same pair of owners.
+     *
+     * @see World#step(float, int, int)
+     * @see FixtureTag#getOwnerOrder()
+     */
+    public void endStep() {
+        stepping = false;
+        for(int i = 1; i < eventCount; i++) {
+            ContactEvent event = events.get(i);
+            int j = i - 1;
+            while(j >= 0 && events.get(j).compareTo(event) > 0) {
+                events.set(j + 1, events.get(j));
+                j--;
+            }
+            events.set(j + 1, event);
+        }
+        for(int i = 0; i < eventCount; i++) {
+            ContactEvent event = events.get(i);
+            call(event.handler, event.a, event.b, event.begin);
+            event.set(null, null, null, false);
+        }
+        eventCount = 0;
+    }
+
+    /**
+     * Sets whether the session state is being restored. While restoring, contacts beginning and
+     * ending are not dispatched.
+     *
+     * @param restoring <code>true</code> while restoring
+     *                  <code>false</code> else
+     */
+    public void setRestoring(boolean restoring) {
+        this.restoring = restoring;
+    }
+
+    /**
+     * A contact beginning or ending during a world step, to be dispatched after it.
+     */
+    private static class ContactEvent implements Comparable<ContactEvent> {
+
+        ContactHandler handler;
+        FixtureTag a;
+        FixtureTag b;
+        boolean begin;
+
+        void set(ContactHandler handler, FixtureTag a, FixtureTag b, boolean begin) {
+            this.handler = handler;
+            this.a = a;
+            this.b = b;
+            this.begin = begin;
+        }
+
+        @Override
+        public int compareTo(ContactEvent other) {
+            if(a.getIndex() != other.a.getIndex()) {
+                return a.getIndex() - other.a.getIndex();
+            }
+            if(a.getOwnerOrder() != other.a.getOwnerOrder()) {
+                return a.getOwnerOrder() < other.a.getOwnerOrder() ? -1 : 1;
+            }
+            if(b.getIndex() != other.b.getIndex()) {
+                return b.getIndex() - other.b.getIndex();
+            }
+            if(b.getOwnerOrder() != other.b.getOwnerOrder()) {
+                return b.getOwnerOrder() < other.b.getOwnerOrder() ? -1 : 1;
+            }
+            return (begin ? 1 : 0) - (other.begin ? 1 : 0);
+        }
     }
 
     @Override
@@ -1,12 +1,43 @@
 package com.andrejlohn.mariobros.desktop;
 
+import com.andrejlohn.mariobros.replay.ReplayFileStore;
 import com.badlogic.gdx.backends.lwjgl.LwjglApplication;
 import com.badlogic.gdx.backends.lwjgl.LwjglApplicationConfiguration;
 import com.andrejlohn.mariobros.MarioBros;
 
+import java.io.File;
+
+/**
+ * Runs the game on the desktop. Given <code>--record</code>, every game session is recorded into a
+ * replay file in the given directory, <code>replays</code> by default, which the headless
+ * ReplayLauncher plays back. Given <code>--profile</code>, every game session is profiled from the
+ * start and the profile is written to a CSV file in the working directory. Given
+ * <code>--debug</code>, F5 saves a checkpoint of a game session and F9 retries from it.
+ * <p>
+ * Usage: <code>DesktopLauncher [--profile] [--debug] [--record [directory]]</code>
+ *
+ * @version %I%, %G%
+ * @see     ReplayFileStore
+ * @see     MarioBros#setProfiling(boolean)
+ * @see     MarioBros#setDebug(boolean)
+ */
 public class DesktopLauncher {
 	public static void main (String[] arg) {
 		LwjglApplicationConfiguration config = new LwjglApplicationConfiguration();
-		new LwjglApplication(new MarioBros(), config);
+		MarioBros game = new MarioBros();
+		for(int i = 0; i < arg.length; i++) {
+			if(arg[i].equals("--profile")) {
+				game.setProfiling(true);
+			} else if(arg[i].equals("--debug")) {
+				game.setDebug(true);
+			} else if(arg[i].equals("--record")) {
+				String directory = "replays";
+				if(i + 1 < arg.length && !arg[i + 1].startsWith("--")) {
+					directory = arg[++i];
+				}
+				game.setReplayStore(new ReplayFileStore(new File(directory)));
+			}
+		}
+		new LwjglApplication(game, config);
 	}
 }
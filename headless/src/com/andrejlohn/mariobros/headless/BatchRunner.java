@@ -0,0 +1,67 @@
+package com.andrejlohn.mariobros.headless;
+
+import com.andrejlohn.mariobros.level.LevelData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Runs many independent headless game sessions in parallel on a work stealing pool, one session per
+ * task. Every session is fed its own scripted input, seeded with the session number. The level is
+ * loaded once and shared. Prints the aggregated results and simulation steps per second. Expects
+ * to be run from the assets directory.
+ * <p>
+ * Usage: <code>BatchRunner [sessions] [steps] [threads] [level]</code>
+ *
+ * @version %I%, %G%
+ * @see     SessionTask
+ * @see     ForkJoinPool
+ */
+public class BatchRunner {
+
+	public static void main (String[] arg) throws InterruptedException, ExecutionException {
+		int sessions = arg.length > 0 ? Integer.parseInt(arg[0]) : 256;
+		int steps = arg.length > 1 ? Integer.parseInt(arg[1]) : 60 * 300;
+		int threads = arg.length > 2 ?
+				Integer.parseInt(arg[2]) :
+				Runtime.getRuntime().availableProcessors();
+		String levelFile = arg.length > 3 ? arg[3] : LevelFiles.DEFAULT_LEVEL;
+
+		LevelData level = LevelFiles.load(levelFile);
+
+		List<SessionTask> tasks = new ArrayList<SessionTask>(sessions);
+		for(int i = 0; i < sessions; i++) {
+			tasks.add(new SessionTask(level, new ScriptedInput(i), i, steps));
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		long start = System.nanoTime();
+		List<Future<SessionResult>> futures = pool.invokeAll(tasks);
+		long time = System.nanoTime() - start;
+		pool.shutdown();
+
+		long totalSteps = 0;
+		long totalScore = 0;
+		int deaths = 0;
+		for(Future<SessionResult> future: futures) {
+			SessionResult result = future.get();
+			totalSteps += result.steps;
+			totalScore += result.score;
+			if(result.dead) {
+				deaths++;
+			}
+		}
+
+		double seconds = time / 1e9;
+		System.out.println("Sessions:  " + sessions + " on " + threads + " threads");
+		System.out.println("Steps:     " + totalSteps);
+		System.out.println("Time:      " + time / 1000000 + " ms");
+		System.out.println("Steps/s:   " + (long) (totalSteps / seconds)
+				+ " (" + (long) (totalSteps / seconds / threads) + " per thread)");
+		System.out.println("Deaths:    " + deaths);
+		System.out.println("Avg score: " + totalScore / sessions);
+	}
+}
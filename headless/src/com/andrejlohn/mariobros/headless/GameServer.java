@@ -0,0 +1,224 @@
+package com.andrejlohn.mariobros.headless;
+
+import com.andrejlohn.mariobros.level.LevelData;
+import com.andrejlohn.mariobros.net.NetInput;
+import com.andrejlohn.mariobros.session.GameSession;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+
+/**
+ * This class hosts many authoritative game sessions of one level in a single process, one session
+ * per connected client. A single I/O thread accepts the clients and reads their input from
+ * non-blocking channels with a selector. The sessions are spread over a fixed number of worker
+ * threads, usually one per core, which step their shard of sessions at 60 ticks per second and
+ * send the frames back. A session is assigned to the worker with the fewest sessions and stays
+ * there, so its Box2D world is only ever touched by one thread. The headless module is compiled
+ * for Java 7, so the clients share a selector rather than each blocking a virtual thread, which
+ * would take Java 21.
+ *
+ * @version %I%, %G%
+ * @see     SessionWorker
+ * @see     ServerSession
+ * @see     ServerProtocol
+ */
+public class GameServer implements Runnable {
+
+    // Pending connections the operating system keeps before the server accepts them
+    private static final int BACKLOG = 1024;
+
+    private Selector selector;
+    private ServerSocketChannel server;
+    private ByteBuffer readBuffer;
+
+    private SessionWorker[] workers;
+    private Thread[] workerThreads;
+    private Thread ioThread;
+    private volatile boolean running;
+
+    /**
+     * Creates the server and binds it. The sessions start from a state captured once, so
+     * restarting a session does not load the level again.
+     *
+     * @param level     the level data shared by all sessions
+     * @param address   the address to listen on, port 0 for an ephemeral port
+     * @param workers   the number of worker threads
+     * @throws          GdxRuntimeException if the server cannot be bound
+     */
+    public GameServer(LevelData level, InetSocketAddress address, int workers) {
+        GameSession template = new GameSession(level, new NetInput());
+        ByteBuffer startState = ByteBuffer.allocate(template.getMaxStateSize());
+        template.saveState(startState);
+        startState.flip();
+        template.dispose();
+
+        this.workers = new SessionWorker[workers];
+        for(int i = 0; i < workers; i++) {
+            this.workers[i] = new SessionWorker(level, startState);
+        }
+        readBuffer = ByteBuffer.allocate(256);
+
+        try {
+            selector = Selector.open();
+            server = ServerSocketChannel.open();
+            server.configureBlocking(false);
+            server.socket().bind(address, BACKLOG);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch(IOException e) {
+            throw new GdxRuntimeException("Cannot listen on " + address, e);
+        }
+    }
+
+    /**
+     * Starts the worker threads and the I/O thread.
+     */
+    public void start() {
+        running = true;
+        workerThreads = new Thread[workers.length];
+        for(int i = 0; i < workers.length; i++) {
+            workerThreads[i] = new Thread(workers[i], "session-worker-" + i);
+            workerThreads[i].start();
+        }
+        ioThread = new Thread(this, "server-io");
+        ioThread.start();
+    }
+
+    /**
+     * Runs the I/O loop: accepts clients and hands their input to the sessions until the server
+     * is stopped.
+     */
+    @Override
+    public void run() {
+        while(running) {
+            try {
+                selector.select(100);
+            } catch(IOException e) {
+                throw new GdxRuntimeException("Selecting channels failed", e);
+            }
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while(keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if(!key.isValid()) {
+                    continue;
+                }
+                if(key.isAcceptable()) {
+                    accept();
+                } else if(key.isReadable()) {
+                    read(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Accepts all pending clients and assigns their sessions to the worker with the fewest
+     * sessions.
+     */
+    private void accept() {
+        SocketChannel channel;
+        try {
+            while((channel = server.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                ServerSession session = new ServerSession(channel);
+                channel.register(selector, SelectionKey.OP_READ, session);
+                SessionWorker worker = workers[0];
+                for(int i = 1; i < workers.length; i++) {
+                    if(workers[i].getSessionCount() < worker.getSessionCount()) {
+                        worker = workers[i];
+                    }
+                }
+                worker.add(session);
+            }
+        } catch(IOException e) {
+            // The client is gone before it was accepted
+        }
+    }
+
+    /**
+     * Reads the input of a client. Only the last buttons received count.
+     *
+     * @param key   the key of the client channel
+     */
+    private void read(SelectionKey key) {
+        ServerSession session = (ServerSession) key.attachment();
+        readBuffer.clear();
+        int read;
+        try {
+            read = ((SocketChannel) key.channel()).read(readBuffer);
+        } catch(IOException e) {
+            read = -1;
+        }
+        if(read < 0) {
+            key.cancel();
+            session.close();
+        } else if(read > 0) {
+            session.setButtons(readBuffer.get(read - 1));
+        }
+    }
+
+    /**
+     * Stops the threads, disconnects the clients and disposes the sessions.
+     *
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    public void stop() throws InterruptedException {
+        running = false;
+        selector.wakeup();
+        ioThread.join();
+        for(int i = 0; i < workers.length; i++) {
+            workers[i].stop();
+            workerThreads[i].join();
+        }
+        for(SelectionKey key: selector.keys()) {
+            if(key.attachment() instanceof ServerSession) {
+                ((ServerSession) key.attachment()).close();
+            }
+        }
+        try {
+            server.close();
+            selector.close();
+        } catch(IOException e) {
+            // Nothing left to clean up
+        }
+    }
+
+    /**
+     * Gets the local port, e.g. to find out the ephemeral port bound to.
+     *
+     * @return  the port
+     */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Gets the workers, to read their statistics.
+     *
+     * @return  the workers
+     */
+    SessionWorker[] getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Gets the number of sessions on all workers.
+     *
+     * @return  the number of sessions
+     */
+    public int getSessionCount() {
+        int count = 0;
+        for(int i = 0; i < workers.length; i++) {
+            count += workers[i].getSessionCount();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,57 @@
+package com.andrejlohn.mariobros.headless;
+
+import com.andrejlohn.mariobros.level.LevelData;
+import com.andrejlohn.mariobros.replay.InputRecorder;
+import com.andrejlohn.mariobros.replay.ReplayFileWriter;
+import com.andrejlohn.mariobros.session.GameSession;
+
+import java.io.File;
+
+/**
+ * Runs a single game session without graphics or audio as fast as possible and prints the
+ * gameplay results. If a replay file is given, the scripted input is recorded into it, so the
+ * session can be played back by the ReplayLauncher. Recording must not change the session, so the
+ * session is then run again without recording and has to end with the same checksum; if it does
+ * not, the launcher exits with status 1. Expects to be run from the assets directory.
+ * <p>
+ * Usage: <code>HeadlessLauncher [steps] [seed] [level] [replay]</code>
+ *
+ * @version %I%, %G%
+ * @see     GameSession
+ * @see     SessionTask
+ * @see     InputRecorder
+ */
+public class HeadlessLauncher {
+
+	public static void main (String[] arg) {
+		int steps = arg.length > 0 ? Integer.parseInt(arg[0]) : 60 * 300;
+		long seed = arg.length > 1 ? Long.parseLong(arg[1]) : 0;
+		String levelFile = arg.length > 2 ? arg[2] : LevelFiles.DEFAULT_LEVEL;
+
+		LevelData level = LevelFiles.load(levelFile);
+		InputSequence input = new ScriptedInput(seed);
+		SessionTask task = new SessionTask(level, input, seed, steps);
+		boolean recording = arg.length > 3;
+		if(recording) {
+			task.setRecorder(new InputRecorder(
+					input,
+					new ReplayFileWriter(new File(arg[3])),
+					levelFile));
+		}
+		SessionResult result = task.call();
+
+		System.out.println(result);
+		System.out.println("Time: " + result.nanos / 1000000 + " ms ("
+				+ (long) (result.steps / (result.nanos / 1e9)) + " steps/s)");
+
+		if(recording) {
+			SessionResult unrecorded =
+					new SessionTask(level, new ScriptedInput(seed), seed, steps).call();
+			if(unrecorded.steps != result.steps || unrecorded.checksum != result.checksum) {
+				System.out.println("Recording changed the session, unrecorded: " + unrecorded);
+				System.exit(1);
+			}
+			System.out.println("Recording verified against an unrecorded run");
+		}
+	}
+}
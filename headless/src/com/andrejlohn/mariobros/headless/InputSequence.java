@@ -0,0 +1,19 @@
+package com.andrejlohn.mariobros.headless;
+
+import com.andrejlohn.mariobros.tools.InputSource;
+
+/**
+ * This interface represents player input that is fed to a game session step by step, e.g. scripted
+ * or recorded input.
+ *
+ * @version %I%, %G%
+ * @see     InputSource
+ */
+public interface InputSequence extends InputSource {
+
+    /**
+     * Advances the input by one simulation step. Has to be called before each step of the game
+     * session.
+     */
+    void next();
+}
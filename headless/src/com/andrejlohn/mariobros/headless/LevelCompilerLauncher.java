@@ -0,0 +1,29 @@
+package com.andrejlohn.mariobros.headless;
+
+import com.andrejlohn.mariobros.level.LevelCompiler;
+import com.andrejlohn.mariobros.level.LevelFormat;
+import com.badlogic.gdx.files.FileHandle;
+
+/**
+ * Compiles .tmx files into binary level files next to them, e.g. level1.tmx into level1.lvl.
+ * Has to be run whenever a level is edited in Tiled.
+ * <p>
+ * Usage: <code>LevelCompilerLauncher tmxFile...</code>
+ *
+ * @version %I%, %G%
+ * @see     LevelCompiler
+ */
+public class LevelCompilerLauncher {
+
+	public static void main (String[] arg) {
+		LevelCompiler compiler = new LevelCompiler();
+		for(int i = 0; i < arg.length; i++) {
+			FileHandle tmxFile = new FileHandle(arg[i]);
+			FileHandle levelFile =
+					tmxFile.sibling(tmxFile.nameWithoutExtension() + "." + LevelFormat.EXTENSION);
+			compiler.compile(tmxFile, levelFile);
+			System.out.println(tmxFile.path() + " -> " + levelFile.path()
+					+ " (" + levelFile.length() + " bytes)");
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package com.andrejlohn.mariobros.headless;
+
+import com.andrejlohn.mariobros.level.BinaryLevelLoader;
+import com.andrejlohn.mariobros.level.LevelData;
+import com.andrejlohn.mariobros.level.LevelFormat;
+import com.andrejlohn.mariobros.level.LevelLoader;
+import com.badlogic.gdx.files.FileHandle;
+
+/**
+ * Loads the level data for the headless launchers. Compiled binary level files are loaded by
+ * default, .tmx files can still be given to run levels which have not been compiled yet.
+ *
+ * @version %I%, %G%
+ * @see     BinaryLevelLoader
+ * @see     LevelLoader
+ */
+class LevelFiles {
+
+	static final String DEFAULT_LEVEL = "level1." + LevelFormat.EXTENSION;
+
+	private LevelFiles() {
+	}
+
+	static LevelData load(String fileName) {
+		FileHandle file = new FileHandle(fileName);
+		if(LevelFormat.EXTENSION.equals(file.extension())) {
+			return new BinaryLevelLoader().load(file);
+		}
+		return new LevelLoader().load(file);
+	}
+}
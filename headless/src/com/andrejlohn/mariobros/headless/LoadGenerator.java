@@ -0,0 +1,154 @@
+package com.andrejlohn.mariobros.headless;
+
+import com.andrejlohn.mariobros.level.LevelData;
+import com.andrejlohn.mariobros.replay.ReplayFormat;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+
+/**
+ * Measures how many sessions a game server hosts per core. Starts a server on the loopback
+ * interface and connects fake clients to it over TCP, each playing its own session with scripted
+ * input sent every tick. After a warm-up the load of the workers is measured for the given time
+ * and the sessions per core are extrapolated from it. The clients run on one thread of the same
+ * process, so they take a little of the CPU time away from the workers. Expects to be run from the
+ * assets directory.
+ * <p>
+ * Usage: <code>LoadGenerator [clients] [seconds] [workers] [level]</code>
+ *
+ * @version %I%, %G%
+ * @see     GameServer
+ * @see     ServerStats
+ */
+public class LoadGenerator {
+
+	private static final long WARMUP_NANOS = 3000000000L;
+
+	public static void main (String[] arg) throws IOException, InterruptedException {
+		int clients = arg.length > 0 ? Integer.parseInt(arg[0]) : 256;
+		int seconds = arg.length > 1 ? Integer.parseInt(arg[1]) : 10;
+		int workers = arg.length > 2 ?
+				Integer.parseInt(arg[2]) :
+				Runtime.getRuntime().availableProcessors();
+		String levelFile = arg.length > 3 ? arg[3] : LevelFiles.DEFAULT_LEVEL;
+
+		LevelData level = LevelFiles.load(levelFile);
+		InetAddress loopback = InetAddress.getLoopbackAddress();
+		GameServer server = new GameServer(level, new InetSocketAddress(loopback, 0), workers);
+		server.start();
+
+		InetSocketAddress address = new InetSocketAddress(loopback, server.getPort());
+		Selector selector = Selector.open();
+		FakeClient[] fakes = new FakeClient[clients];
+		for(int i = 0; i < clients; i++) {
+			fakes[i] = new FakeClient(address, i);
+			fakes[i].channel.register(selector, SelectionKey.OP_READ, fakes[i]);
+		}
+		while(server.getSessionCount() < clients) {
+			Thread.sleep(10);
+		}
+		System.out.println(clients + " clients connected to " + workers + " workers");
+
+		long start = System.nanoTime();
+		long measureStart = start + WARMUP_NANOS;
+		long end = measureStart + seconds * 1000000000L;
+		boolean measuring = false;
+		long receivedBefore = 0;
+		int frame = 0;
+		long now;
+		while((now = System.nanoTime()) < end) {
+			if(!measuring && now >= measureStart) {
+				ServerStats.collect(server, now - start);
+				receivedBefore = received(fakes);
+				measureStart = now;
+				measuring = true;
+			}
+			for(int i = 0; i < fakes.length; i++) {
+				fakes[i].send();
+			}
+			selector.selectNow();
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while(keys.hasNext()) {
+				((FakeClient) keys.next().attachment()).read();
+				keys.remove();
+			}
+			frame++;
+			long wait = start + frame * SessionWorker.TICK_NANOS - System.nanoTime();
+			if(wait > 0) {
+				Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+			}
+		}
+		long nanos = System.nanoTime() - measureStart;
+		ServerStats stats = ServerStats.collect(server, nanos);
+		long frames = (received(fakes) - receivedBefore) / ServerProtocol.FRAME_SIZE;
+
+		System.out.println(stats);
+		System.out.println("Load:              " + Math.round(stats.getLoad() * 100)
+				+ "% of " + workers + " workers, longest tick " + stats.maxTickNanos / 1000
+				+ " us of " + SessionWorker.TICK_NANOS / 1000 + " us");
+		System.out.println("Frames received:   " + frames + " of "
+				+ (long) (nanos / 1e9 * 60 * clients) + " expected");
+		System.out.println("Sessions per core: " + Math.round(stats.getSessionsPerCore()));
+		if(stats.skippedTicks > 0) {
+			System.out.println("The workers fell behind and skipped " + stats.skippedTicks
+					+ " ticks, measure again with fewer clients");
+		}
+
+		for(int i = 0; i < fakes.length; i++) {
+			fakes[i].channel.close();
+		}
+		selector.close();
+		server.stop();
+	}
+
+	private static long received (FakeClient[] fakes) {
+		long received = 0;
+		for(int i = 0; i < fakes.length; i++) {
+			received += fakes[i].received;
+		}
+		return received;
+	}
+
+	/**
+	 * A client playing with scripted input, which counts the bytes of the frames it receives.
+	 */
+	private static class FakeClient {
+
+		final SocketChannel channel;
+		final ScriptedInput input;
+		final ByteBuffer out;
+		final ByteBuffer in;
+		long received;
+
+		FakeClient (InetSocketAddress address, long seed) throws IOException {
+			channel = SocketChannel.open(address);
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			input = new ScriptedInput(seed);
+			out = ByteBuffer.allocate(1);
+			in = ByteBuffer.allocate(64 * ServerProtocol.FRAME_SIZE);
+		}
+
+		void send () throws IOException {
+			input.next();
+			out.clear();
+			out.put((byte) ReplayFormat.buttons(input));
+			out.flip();
+			channel.write(out);
+		}
+
+		void read () throws IOException {
+			in.clear();
+			int read = channel.read(in);
+			if(read > 0) {
+				received += read;
+			}
+		}
+	}
+}
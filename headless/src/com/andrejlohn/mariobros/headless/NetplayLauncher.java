@@ -0,0 +1,158 @@
+package com.andrejlohn.mariobros.headless;
+
+import com.andrejlohn.mariobros.level.LevelData;
+import com.andrejlohn.mariobros.net.LossyTransport;
+import com.andrejlohn.mariobros.net.RollbackMatch;
+import com.andrejlohn.mariobros.net.UdpTransport;
+import com.andrejlohn.mariobros.replay.ReplayFormat;
+import com.andrejlohn.mariobros.session.GameSession;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Plays a rollback match between two scripted players on one machine without graphics or audio.
+ * Both peers run in real time at 60 ticks per second and talk to each other over UDP on the
+ * loopback interface, with the given one-way delay and packet loss simulated on top. The peers
+ * compare session checksums while playing, and at the end both peers must have simulated both
+ * players exactly alike; exits with status 1 if the sessions diverged. Expects to be run from the
+ * assets directory. {@link NetplaySoak} plays many matches with mispredictions on every few ticks.
+ * <p>
+ * Usage: <code>NetplayLauncher [ticks] [delay ms] [loss %] [level]</code>
+ *
+ * @version %I%, %G%
+ * @see     RollbackMatch
+ * @see     UdpTransport
+ * @see     LossyTransport
+ * @see     NetplaySoak
+ */
+public class NetplayLauncher {
+
+	private static final long FRAME_NANOS = 1000000000L / 60;
+
+	// Ticks a peer which fell behind may catch up per frame
+	private static final int MAX_TICKS_PER_FRAME = 2;
+
+	// Time to wait for the last inputs after the match
+	private static final long SETTLE_NANOS = 10000000000L;
+
+	public static void main (String[] arg) throws Exception {
+		int ticks = arg.length > 0 ? Integer.parseInt(arg[0]) : 60 * 30;
+		long delay = arg.length > 1 ? Long.parseLong(arg[1]) : 50;
+		float loss = arg.length > 2 ? Float.parseFloat(arg[2]) / 100f : 0.05f;
+		String levelFile = arg.length > 3 ? arg[3] : LevelFiles.DEFAULT_LEVEL;
+
+		LevelData level = LevelFiles.load(levelFile);
+		InetAddress loopback = InetAddress.getLoopbackAddress();
+		UdpTransport[] sockets = new UdpTransport[RollbackMatch.PLAYERS];
+		for(int i = 0; i < sockets.length; i++) {
+			sockets[i] = new UdpTransport(new InetSocketAddress(loopback, 0));
+		}
+		sockets[0].connect(sockets[1].getLocalAddress());
+		sockets[1].connect(sockets[0].getLocalAddress());
+
+		RollbackMatch[] matches = new RollbackMatch[RollbackMatch.PLAYERS];
+		LossyTransport[] transports = new LossyTransport[RollbackMatch.PLAYERS];
+		InputSequence[] inputs = new InputSequence[RollbackMatch.PLAYERS];
+		boolean[] pending = new boolean[RollbackMatch.PLAYERS];
+		int[] stalls = new int[RollbackMatch.PLAYERS];
+		for(int i = 0; i < matches.length; i++) {
+			transports[i] = new LossyTransport(sockets[i], delay, loss, i);
+			matches[i] = new RollbackMatch(level, i, transports[i]);
+			inputs[i] = new ScriptedInput(i);
+		}
+
+		System.out.println("Match of " + ticks + " ticks, " + delay + " ms delay, "
+				+ Math.round(loss * 100) + "% loss");
+		long start = System.nanoTime();
+		int frame = 0;
+		while(matches[0].getTick() < ticks || matches[1].getTick() < ticks) {
+			frame++;
+			int target = Math.min(frame, ticks);
+			for(int i = 0; i < matches.length; i++) {
+				RollbackMatch match = matches[i];
+				if(match.getTick() >= target) {
+					match.poll();
+					continue;
+				}
+				for(int n = 0; n < MAX_TICKS_PER_FRAME && match.getTick() < target; n++) {
+					// A stalled input is used again on the next try
+					if(!pending[i]) {
+						inputs[i].next();
+					}
+					pending[i] = !match.advance(ReplayFormat.buttons(inputs[i]));
+					if(pending[i]) {
+						stalls[i]++;
+						break;
+					}
+				}
+			}
+			sleepUntil(start + frame * FRAME_NANOS);
+		}
+
+		long settleStart = System.nanoTime();
+		while(!matches[0].isConfirmed() || !matches[1].isConfirmed()) {
+			if(System.nanoTime() - settleStart > SETTLE_NANOS) {
+				System.out.println("Inputs of the last ticks never arrived");
+				System.exit(1);
+			}
+			matches[0].poll();
+			matches[1].poll();
+			Thread.sleep(1);
+		}
+		long nanos = System.nanoTime() - start;
+
+		for(int i = 0; i < matches.length; i++) {
+			RollbackMatch match = matches[i];
+			System.out.println("Peer " + i + ": " + match.getRollbackCount() + " rollbacks, "
+					+ match.getResimulatedTicks() + " ticks resimulated, "
+					+ match.getResyncCount() + " resyncs, "
+					+ stalls[i] + " stalls, longest rollback "
+					+ match.getMaxRollbackNanos() / 1000 + " us ("
+					+ (match.getMaxRollbackNanos() <= FRAME_NANOS ? "within" : "over")
+					+ " the frame budget)");
+		}
+		System.out.println("Time: " + nanos / 1000000 + " ms");
+
+		boolean synced = true;
+		for(int i = 0; i < matches.length; i++) {
+			if(matches[i].getDesyncTick() >= 0) {
+				System.out.println("Peer " + i + " detected a desync after tick "
+						+ matches[i].getDesyncTick());
+				synced = false;
+			}
+		}
+		for(int player = 0; player < RollbackMatch.PLAYERS; player++) {
+			GameSession a = matches[0].getSession(player);
+			GameSession b = matches[1].getSession(player);
+			boolean equal = saveState(a).equals(saveState(b));
+			System.out.println("Player " + player + ": score " + a.getScore() + ", checksum "
+					+ Integer.toHexString(a.getChecksum()) + ", "
+					+ (equal ? "sessions in sync" : "sessions diverged"));
+			synced &= equal;
+		}
+
+		for(int i = 0; i < matches.length; i++) {
+			matches[i].dispose();
+			transports[i].close();
+		}
+		if(!synced) {
+			System.exit(1);
+		}
+	}
+
+	private static ByteBuffer saveState (GameSession session) {
+		ByteBuffer state = ByteBuffer.allocate(session.getMaxStateSize());
+		session.saveState(state);
+		state.flip();
+		return state;
+	}
+
+	private static void sleepUntil (long time) throws InterruptedException {
+		long nanos = time - System.nanoTime();
+		if(nanos > 0) {
+			Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
+		}
+	}
+}
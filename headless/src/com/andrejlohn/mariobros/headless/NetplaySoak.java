@@ -0,0 +1,200 @@
+package com.andrejlohn.mariobros.headless;
+
+import com.andrejlohn.mariobros.level.LevelData;
+import com.andrejlohn.mariobros.net.RollbackMatch;
+import com.andrejlohn.mariobros.replay.ReplayFormat;
+import com.andrejlohn.mariobros.session.GameSession;
+import com.badlogic.gdx.physics.box2d.Body;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Plays many rollback matches between two scripted players over simulated links, to check that the
+ * peers stay in sync however often they mispredict. The players change their input every few
+ * ticks, so nearly every remote input is predicted wrong, and each seed is played with every
+ * delay, jitter and loss setting. The links run on the tick clock, so the matches run as fast as
+ * they can be simulated and every run is the same. In the last match of each seed the session of
+ * one player is knocked out of sync on its own peer, which the other peer must detect and repair
+ * by a resync. Exits with status 1 if any other match desynced, or any match ended with the
+ * sessions of the peers differing. Expects to be run from the assets directory.
+ * <p>
+ * Usage: <code>NetplaySoak [seeds] [ticks] [level]</code>
+ *
+ * @version %I%, %G%
+ * @see     RollbackMatch
+ * @see     SimulatedLink
+ * @see     NetplayLauncher
+ */
+public class NetplaySoak {
+
+	// One-way delay, jitter in ticks and loss in percent of each setting
+	private static final int[][] SETTINGS = {
+			{0, 0, 0},
+			{1, 0, 5},
+			{3, 2, 10},
+			{5, 3, 20},
+			{2, 6, 30},
+			{8, 4, 10}
+	};
+
+	// Ticks the input of a scripted player is held at least and at most
+	private static final int MIN_HOLD = 1;
+	private static final int MAX_HOLD = 6;
+
+	// Ticks a peer which fell behind may catch up per frame
+	private static final int MAX_TICKS_PER_FRAME = 2;
+
+	// Frames to wait for the last inputs after a match
+	private static final int SETTLE_FRAMES = 600;
+
+	public static void main (String[] arg) {
+		int seeds = arg.length > 0 ? Integer.parseInt(arg[0]) : 20;
+		int ticks = arg.length > 1 ? Integer.parseInt(arg[1]) : 60 * 20;
+		String levelFile = arg.length > 2 ? arg[2] : LevelFiles.DEFAULT_LEVEL;
+
+		LevelData level = LevelFiles.load(levelFile);
+		int failed = 0;
+		int matches = 0;
+		long rollbacks = 0;
+		long resimulated = 0;
+		long start = System.nanoTime();
+		for(int seed = 0; seed < seeds; seed++) {
+			for(int s = 0; s < SETTINGS.length; s++) {
+				boolean fault = s == SETTINGS.length - 1;
+				Result result = play(level, seed, SETTINGS[s], ticks, fault);
+				matches++;
+				rollbacks += result.rollbacks;
+				resimulated += result.resimulated;
+				if(!result.passed) {
+					failed++;
+				}
+				System.out.println("Seed " + seed + ", " + SETTINGS[s][0] + "+" + SETTINGS[s][1]
+						+ " ticks delay, " + SETTINGS[s][2] + "% loss"
+						+ (fault ? ", fault" : "") + ": " + result.message);
+			}
+		}
+		long millis = (System.nanoTime() - start) / 1000000;
+		System.out.println(matches + " matches of " + ticks + " ticks, " + rollbacks + " rollbacks, "
+				+ resimulated + " ticks resimulated, " + failed + " failed, " + millis + " ms");
+		if(failed > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * The outcome of a match.
+	 */
+	private static class Result {
+		boolean passed;
+		String message;
+		int rollbacks;
+		int resimulated;
+	}
+
+	private static Result play (LevelData level, int seed, int[] setting, int ticks, boolean fault) {
+		SimulatedLink[] links = new SimulatedLink[RollbackMatch.PLAYERS];
+		RollbackMatch[] matches = new RollbackMatch[RollbackMatch.PLAYERS];
+		InputSequence[] inputs = new InputSequence[RollbackMatch.PLAYERS];
+		boolean[] pending = new boolean[RollbackMatch.PLAYERS];
+		for(int i = 0; i < matches.length; i++) {
+			links[i] = new SimulatedLink(setting[0], setting[1], setting[2] / 100f, seed * 2 + i);
+			matches[i] = new RollbackMatch(level, i, links[i]);
+			inputs[i] = new ScriptedInput(seed * 2 + i, MIN_HOLD, MAX_HOLD);
+		}
+		links[0].connect(links[1]);
+		links[1].connect(links[0]);
+
+		Result result = new Result();
+		int frame = 0;
+		while(matches[0].getTick() < ticks || matches[1].getTick() < ticks) {
+			frame++;
+			int target = Math.min(frame, ticks);
+			for(int i = 0; i < matches.length; i++) {
+				links[i].setTime(frame);
+			}
+			for(int i = 0; i < matches.length; i++) {
+				RollbackMatch match = matches[i];
+				if(match.getTick() >= target) {
+					match.poll();
+					continue;
+				}
+				for(int n = 0; n < MAX_TICKS_PER_FRAME && match.getTick() < target; n++) {
+					// A stalled input is used again on the next try
+					if(!pending[i]) {
+						inputs[i].next();
+					}
+					pending[i] = !match.advance(ReplayFormat.buttons(inputs[i]));
+					if(pending[i]) {
+						break;
+					}
+				}
+			}
+			if(fault && frame == ticks / 2) {
+				// Knock the session of player 1 out of sync, e.g. like a bit flipped in memory
+				Body body = matches[1].getSession(1).getPlayer().b2Body;
+				body.setLinearVelocity(body.getLinearVelocity().x + 0.5f, body.getLinearVelocity().y);
+			}
+		}
+
+		int settle = 0;
+		while(!matches[0].isConfirmed() || !matches[1].isConfirmed()) {
+			if(++settle > SETTLE_FRAMES) {
+				result.message = "inputs of the last ticks never arrived";
+				dispose(matches, links);
+				return result;
+			}
+			frame++;
+			for(int i = 0; i < matches.length; i++) {
+				links[i].setTime(frame);
+			}
+			matches[0].poll();
+			matches[1].poll();
+		}
+
+		StringBuilder message = new StringBuilder();
+		boolean passed = true;
+		for(int i = 0; i < matches.length; i++) {
+			RollbackMatch match = matches[i];
+			result.rollbacks += match.getRollbackCount();
+			result.resimulated += match.getResimulatedTicks();
+			message.append("peer ").append(i).append(' ')
+					.append(match.getRollbackCount()).append(" rollbacks, ")
+					.append(match.getResyncCount()).append(" resyncs");
+			if(match.getDesyncTick() >= 0) {
+				message.append(", desync after tick ").append(match.getDesyncTick());
+			}
+			message.append("; ");
+			boolean expected = fault && i == 0;
+			if((match.getDesyncTick() >= 0) != expected
+					|| (match.getResyncCount() > 0) != expected) {
+				passed = false;
+			}
+		}
+		for(int player = 0; player < RollbackMatch.PLAYERS; player++) {
+			if(!saveState(matches[0].getSession(player))
+					.equals(saveState(matches[1].getSession(player)))) {
+				message.append("player ").append(player).append(" diverged; ");
+				passed = false;
+			}
+		}
+		message.append(passed ? "ok" : "FAILED");
+		result.passed = passed;
+		result.message = message.toString();
+		dispose(matches, links);
+		return result;
+	}
+
+	private static ByteBuffer saveState (GameSession session) {
+		ByteBuffer state = ByteBuffer.allocate(session.getMaxStateSize());
+		session.saveState(state);
+		state.flip();
+		return state;
+	}
+
+	private static void dispose (RollbackMatch[] matches, SimulatedLink[] links) {
+		for(int i = 0; i < matches.length; i++) {
+			matches[i].dispose();
+			links[i].close();
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package com.andrejlohn.mariobros.headless;
+
+import com.andrejlohn.mariobros.replay.Replay;
+import com.andrejlohn.mariobros.replay.ReplayFormat;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * This class feeds the input of a recorded game session back into a session, step by step. The
+ * runs are decoded from the records of the replay as they are needed, keyframe records are
+ * skipped. After the last recorded step no buttons are held.
+ *
+ * @version %I%, %G%
+ * @see     InputSequence
+ * @see     Replay
+ */
+public class ReplayInput implements InputSequence {
+
+    private Replay replay;
+    private ByteBuffer records;
+    private boolean ended;
+
+    // The buttons of the current run and the steps left in it
+    private int buttons;
+    private int remaining;
+
+    /**
+     * Creates the replay input, starting at the first step.
+     *
+     * @param replay    the replay to play
+     */
+    public ReplayInput(Replay replay) {
+        this.replay = replay;
+        records = replay.getRecords();
+    }
+
+    /**
+     * Continues the input after the step of a keyframe.
+     *
+     * @param keyframe  the keyframe index
+     * @see             Replay#getKeyframeStep(int)
+     */
+    public void seek(int keyframe) {
+        records = replay.getRecords(keyframe);
+        ended = false;
+        buttons = 0;
+        remaining = 0;
+    }
+
+    /**
+     * Advances to the next step, reading the next run once the current one is used up.
+     *
+     * @throws  GdxRuntimeException if the records are corrupt
+     */
+    @Override
+    public void next() {
+        try {
+            while(remaining == 0 && !ended) {
+                int record = ReplayFormat.readVarint(records);
+                if(record == ReplayFormat.END) {
+                    ended = true;
+                } else if(record == ReplayFormat.KEYFRAME) {
+                    ReplayFormat.readVarint(records);
+                    int length = ReplayFormat.readVarint(records);
+                    records.position(records.position() + length);
+                } else {
+                    buttons = ReplayFormat.runButtons(record);
+                    remaining = ReplayFormat.runSteps(record);
+                }
+            }
+        } catch(BufferUnderflowException e) {
+            throw new GdxRuntimeException("Truncated replay file", e);
+        } catch(IllegalArgumentException e) {
+            throw new GdxRuntimeException("Corrupt replay file", e);
+        }
+        if(remaining > 0) {
+            remaining--;
+        } else {
+            buttons = 0;
+        }
+    }
+
+    @Override
+    public boolean isUpPressed() {
+        return (buttons & ReplayFormat.UP) != 0;
+    }
+
+    @Override
+    public boolean isLeftPressed() {
+        return (buttons & ReplayFormat.LEFT) != 0;
+    }
+
+    @Override
+    public boolean isRightPressed() {
+        return (buttons & ReplayFormat.RIGHT) != 0;
+    }
+}
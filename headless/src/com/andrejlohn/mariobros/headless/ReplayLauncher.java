@@ -0,0 +1,117 @@
+package com.andrejlohn.mariobros.headless;
+
+import com.andrejlohn.mariobros.level.LevelData;
+import com.andrejlohn.mariobros.replay.Replay;
+import com.andrejlohn.mariobros.replay.ReplayFileMap;
+import com.andrejlohn.mariobros.session.GameSession;
+import com.andrejlohn.mariobros.sprites.Mario;
+import com.badlogic.gdx.math.Vector2;
+
+import java.io.File;
+
+/**
+ * Plays a recorded game session back without graphics or audio as fast as possible and verifies
+ * that it passes through the recorded keyframes and ends with the recorded score, world timer and
+ * player position. If a step is given, the replay is also seeked to that step and the state is
+ * compared with the state reached by playing up to it. Exits with status 1 if the session
+ * diverged from the recording. The level recorded in the replay is loaded unless another level
+ * file is given. Expects to be run from the assets directory.
+ * <p>
+ * Usage: <code>ReplayLauncher replay [level] [step]</code>
+ *
+ * @version %I%, %G%
+ * @see     Replay
+ * @see     ReplayPlayer
+ * @see     ReplayFileMap
+ */
+public class ReplayLauncher {
+
+	public static void main (String[] arg) {
+		if(arg.length == 0) {
+			System.err.println("Usage: ReplayLauncher replay [level] [step]");
+			System.exit(2);
+		}
+		Replay replay = ReplayFileMap.map(new File(arg[0]));
+		String levelFile = arg.length > 1 ? arg[1] : replay.getLevel();
+		LevelData level = LevelFiles.load(levelFile);
+
+		ReplayPlayer player = new ReplayPlayer(replay, level);
+		long start = System.nanoTime();
+		player.play();
+		long nanos = System.nanoTime() - start;
+
+		// A replay has no seed, it is identified by its file and the checksum of the run
+		GameSession session = player.getSession();
+		Mario mario = session.getPlayer();
+		Vector2 position = mario.b2Body.getPosition();
+		boolean dead = mario.currentState == Mario.State.DEAD;
+		System.out.println("replay=" + arg[0]
+				+ " steps=" + player.getStep()
+				+ " score=" + session.getScore()
+				+ " timer=" + session.getWorldTimer()
+				+ " dead=" + dead
+				+ " position=" + position.x + "," + position.y
+				+ " checksum=" + Integer.toHexString(session.getChecksum()));
+		System.out.println("Time: " + nanos / 1000000 + " ms ("
+				+ (long) (player.getStep() / (nanos / 1e9)) + " steps/s), "
+				+ replay.getKeyframeCount() + " keyframes");
+
+		// Positions are compared bit for bit, a replay has to reproduce the session exactly
+		boolean verified = player.getStep() == replay.getSteps()
+				&& session.getScore() == replay.getScore()
+				&& session.getWorldTimer() == replay.getWorldTimer()
+				&& dead == replay.isDead()
+				&& Float.floatToIntBits(position.x) == Float.floatToIntBits(replay.getX())
+				&& Float.floatToIntBits(position.y) == Float.floatToIntBits(replay.getY());
+		player.dispose();
+		if(player.getMismatchCount() > 0) {
+			System.out.println("Replay diverged from " + player.getMismatchCount()
+					+ " keyframes, first at step " + player.getFirstMismatch());
+			System.exit(1);
+		}
+		if(!verified) {
+			System.out.println("Replay diverged, recorded: steps=" + replay.getSteps()
+					+ " score=" + replay.getScore()
+					+ " timer=" + replay.getWorldTimer()
+					+ " dead=" + replay.isDead()
+					+ " position=" + replay.getX() + "," + replay.getY());
+			System.exit(1);
+		}
+		System.out.println("Replay verified");
+
+		if(arg.length > 2) {
+			int target = Math.min(Integer.parseInt(arg[2]), replay.getSteps());
+			if(!verifySeek(replay, level, target)) {
+				System.exit(1);
+			}
+		}
+	}
+
+	/**
+	 * Seeks to a step and compares the state with the state of playing up to it.
+	 *
+	 * @param replay	the replay
+	 * @param level		the level data
+	 * @param target	the step to seek to
+	 * @return			<code>true</code> if the states are equal
+	 * 					<code>false</code> else
+	 */
+	private static boolean verifySeek (Replay replay, LevelData level, int target) {
+		ReplayPlayer linear = new ReplayPlayer(replay, level);
+		while(linear.getStep() < target) {
+			linear.step();
+		}
+
+		ReplayPlayer seeking = new ReplayPlayer(replay, level);
+		long start = System.nanoTime();
+		seeking.seek(target);
+		long nanos = System.nanoTime() - start;
+
+		boolean equal = seeking.saveState().equals(linear.saveState());
+		System.out.println("Seek to step " + target + ": " + nanos / 1000 + " us, "
+				+ (equal ? "state verified" : "state diverged"));
+		linear.dispose();
+		seeking.dispose();
+		return equal;
+	}
+}
@@ -0,0 +1,174 @@
+package com.andrejlohn.mariobros.headless;
+
+import com.andrejlohn.mariobros.level.LevelData;
+import com.andrejlohn.mariobros.replay.Replay;
+import com.andrejlohn.mariobros.session.GameSession;
+import com.badlogic.gdx.utils.Disposable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class plays a replay in a headless game session and can seek to any step. When the session
+ * reaches the step of a keyframe, its state is compared with the keyframe to detect a session
+ * diverging from the recording. Seeking restores the last keyframe before the target step, or
+ * starts over if there is none, and plays the steps from there, so it takes at most a keyframe
+ * interval of steps. Keyframes are written at steps the session rebuilds its world at, and the
+ * world is rebuilt after restoring one, so a seek ends in the same state as playing up to the
+ * target.
+ *
+ * @version %I%, %G%
+ * @see     Replay
+ * @see     ReplayInput
+ * @see     GameSession#restoreState(ByteBuffer)
+ * @see     GameSession#rebuildWorld()
+ */
+public class ReplayPlayer implements Disposable {
+
+    private Replay replay;
+    private LevelData level;
+
+    private ReplayInput input;
+    private GameSession session;
+    private int step;
+    private int nextKeyframe;
+
+    // Reused buffer to compare the session state with the keyframes
+    private ByteBuffer state;
+    private int mismatchCount;
+    private int firstMismatch;
+
+    /**
+     * Creates the replay player at the first step.
+     *
+     * @param replay    the replay
+     * @param level     the level data of the replay
+     */
+    public ReplayPlayer(Replay replay, LevelData level) {
+        this.replay = replay;
+        this.level = level;
+        firstMismatch = -1;
+        start();
+        state = ByteBuffer.allocate(session.getMaxStateSize());
+    }
+
+    private void start() {
+        if(session != null) {
+            session.dispose();
+        }
+        input = new ReplayInput(replay);
+        session = new GameSession(level, input);
+        step = 0;
+        nextKeyframe = 0;
+    }
+
+    /**
+     * Plays a single step. At the step of a keyframe the session state is checked against the
+     * keyframe.
+     *
+     * @see GameSession#step()
+     */
+    public void step() {
+        input.next();
+        session.step();
+        step++;
+        if(nextKeyframe < replay.getKeyframeCount()
+                && replay.getKeyframeStep(nextKeyframe) == step) {
+            ByteBuffer keyframe = replay.getKeyframeState(nextKeyframe);
+            if(!matches(keyframe)) {
+                mismatchCount++;
+                if(firstMismatch < 0) {
+                    firstMismatch = step;
+                }
+            }
+            nextKeyframe++;
+        }
+    }
+
+    /**
+     * Plays the remaining steps of the replay, up to the game over.
+     */
+    public void play() {
+        while(step < replay.getSteps() && !session.isGameOver()) {
+            step();
+        }
+    }
+
+    /**
+     * Seeks to the given step, backwards or forwards.
+     *
+     * @param target    the step to seek to
+     * @see             Replay#findKeyframe(int)
+     */
+    public void seek(int target) {
+        int keyframe = replay.findKeyframe(target);
+        if(keyframe >= 0 && (target < step || replay.getKeyframeStep(keyframe) > step)) {
+            session.restoreState(replay.getKeyframeState(keyframe));
+            session.rebuildWorld();
+            input.seek(keyframe);
+            step = replay.getKeyframeStep(keyframe);
+            nextKeyframe = keyframe + 1;
+        } else if(target < step) {
+            start();
+        }
+        while(step < target) {
+            step();
+        }
+    }
+
+    /**
+     * Checks whether the session state equals a keyframe.
+     *
+     * @param keyframe  the keyframe state, from position to limit
+     * @return          <code>true</code> if the states are equal
+     *                  <code>false</code> else
+     */
+    private boolean matches(ByteBuffer keyframe) {
+        saveState();
+        return state.equals(keyframe);
+    }
+
+    /**
+     * Saves the session state into the reused state buffer, which holds the largest state the
+     * session can have.
+     *
+     * @return  the state buffer, from position to limit
+     * @see     GameSession#getMaxStateSize()
+     */
+    public ByteBuffer saveState() {
+        state.clear();
+        session.saveState(state);
+        state.flip();
+        return state;
+    }
+
+    public GameSession getSession() {
+        return session;
+    }
+
+    public int getStep() {
+        return step;
+    }
+
+    /**
+     * Gets the number of keyframes played through whose state differed from the session state.
+     *
+     * @return  the number of mismatches, 0 if the session reproduced the recording so far
+     */
+    public int getMismatchCount() {
+        return mismatchCount;
+    }
+
+    /**
+     * Gets the step of the first keyframe mismatch.
+     *
+     * @return  the step, -1 if there was no mismatch
+     */
+    public int getFirstMismatch() {
+        return firstMismatch;
+    }
+
+    @Override
+    public void dispose() {
+        session.dispose();
+    }
+}
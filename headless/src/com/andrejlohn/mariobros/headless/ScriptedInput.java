@@ -0,0 +1,76 @@
+package com.andrejlohn.mariobros.headless;
+
+import com.badlogic.gdx.math.RandomXS128;
+
+/**
+ * This class represents a simple scripted player for automated playthroughs. It mostly runs right
+ * and jumps every now and then. Each input state is held for a random number of simulation steps.
+ * The same seed always results in the same input sequence.
+ *
+ * @version %I%, %G%
+ * @see     InputSequence
+ */
+public class ScriptedInput implements InputSequence {
+
+    // Steps an input state is held by default, at least and at most
+    private static final int MIN_HOLD = 11;
+    private static final int MAX_HOLD = 40;
+
+    private RandomXS128 random;
+    private int minHold;
+    private int maxHold;
+    private int holdSteps;
+
+    private boolean upPressed, leftPressed, rightPressed;
+
+    /**
+     * Creates the scripted input.
+     *
+     * @param seed  the random seed
+     */
+    public ScriptedInput(long seed) {
+        this(seed, MIN_HOLD, MAX_HOLD);
+    }
+
+    /**
+     * Creates the scripted input with the given hold times. Short ones change the input often, e.g.
+     * to mispredict the input of a remote player as often as possible.
+     *
+     * @param seed      the random seed
+     * @param minHold   the least number of steps an input state is held, at least 1
+     * @param maxHold   the greatest number of steps an input state is held, at least minHold
+     */
+    public ScriptedInput(long seed, int minHold, int maxHold) {
+        random = new RandomXS128(seed);
+        this.minHold = minHold;
+        this.maxHold = maxHold;
+        holdSteps = 0;
+    }
+
+    @Override
+    public void next() {
+        if(holdSteps > 0) {
+            holdSteps--;
+            return;
+        }
+        holdSteps = minHold - 1 + random.nextInt(maxHold - minHold + 1);
+        rightPressed = random.nextFloat() < 0.8f;
+        leftPressed = !rightPressed && random.nextBoolean();
+        upPressed = random.nextFloat() < 0.4f;
+    }
+
+    @Override
+    public boolean isUpPressed() {
+        return upPressed;
+    }
+
+    @Override
+    public boolean isLeftPressed() {
+        return leftPressed;
+    }
+
+    @Override
+    public boolean isRightPressed() {
+        return rightPressed;
+    }
+}
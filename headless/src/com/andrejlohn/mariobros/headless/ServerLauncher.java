@@ -0,0 +1,40 @@
+package com.andrejlohn.mariobros.headless;
+
+import com.andrejlohn.mariobros.level.LevelData;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Runs a game server hosting a session of the level for every client connecting over TCP, until
+ * the process is killed. Prints the number of sessions and the load of the workers every few
+ * seconds. Uses one worker per core by default. Expects to be run from the assets directory.
+ * <p>
+ * Usage: <code>ServerLauncher [port] [workers] [level]</code>
+ *
+ * @version %I%, %G%
+ * @see     GameServer
+ * @see     LoadGenerator
+ */
+public class ServerLauncher {
+
+	private static final long REPORT_MILLIS = 5000;
+
+	public static void main (String[] arg) throws InterruptedException {
+		int port = arg.length > 0 ? Integer.parseInt(arg[0]) : 7777;
+		int workers = arg.length > 1 ?
+				Integer.parseInt(arg[1]) :
+				Runtime.getRuntime().availableProcessors();
+		String levelFile = arg.length > 2 ? arg[2] : LevelFiles.DEFAULT_LEVEL;
+
+		LevelData level = LevelFiles.load(levelFile);
+		GameServer server = new GameServer(level, new InetSocketAddress(port), workers);
+		server.start();
+		System.out.println("Listening on port " + server.getPort() + " with " + workers
+				+ " workers");
+
+		while(true) {
+			Thread.sleep(REPORT_MILLIS);
+			System.out.println(ServerStats.collect(server, REPORT_MILLIS * 1000000));
+		}
+	}
+}
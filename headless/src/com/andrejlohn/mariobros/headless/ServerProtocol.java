@@ -0,0 +1,28 @@
+package com.andrejlohn.mariobros.headless;
+
+import com.andrejlohn.mariobros.replay.ReplayFormat;
+
+/**
+ * This class defines the TCP stream between a game server and its clients. A client sends one byte
+ * whenever its buttons change or once per tick, holding the button bits of the replay format; the
+ * server steps the session with the last buttons received. After each step the server sends a
+ * frame with the state of the session. Frames have a fixed size, ints are big-endian.
+ *
+ * <pre>
+ * int      step count, score, world timer
+ * float    player x, y
+ * int      session checksum
+ * byte     1 if the player character is dead, 0 else
+ * </pre>
+ *
+ * @version %I%, %G%
+ * @see     GameServer
+ * @see     ReplayFormat#buttons(com.andrejlohn.mariobros.tools.InputSource)
+ */
+final class ServerProtocol {
+
+    static final int FRAME_SIZE = 3 * 4 + 2 * 4 + 4 + 1;
+
+    private ServerProtocol() {
+    }
+}
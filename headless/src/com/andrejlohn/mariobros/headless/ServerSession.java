@@ -0,0 +1,146 @@
+package com.andrejlohn.mariobros.headless;
+
+import com.andrejlohn.mariobros.level.LevelData;
+import com.andrejlohn.mariobros.net.NetInput;
+import com.andrejlohn.mariobros.session.GameSession;
+import com.andrejlohn.mariobros.sprites.Mario;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.Disposable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * This class represents the authoritative game session of one client of the game server. The
+ * session and its Box2D world are owned by the worker thread stepping it; the I/O thread only
+ * hands over the buttons received and marks the session closed when the client disconnects. When
+ * the game is over the session restarts from the start of the level.
+ *
+ * @version %I%, %G%
+ * @see     GameServer
+ * @see     SessionWorker
+ * @see     ServerProtocol
+ */
+class ServerSession implements Disposable {
+
+    private SocketChannel channel;
+
+    // Written by the I/O thread
+    private volatile int buttons;
+    private volatile boolean closed;
+
+    // Owned by the worker thread
+    private NetInput input;
+    private GameSession session;
+    private ByteBuffer frame;
+
+    /**
+     * Creates the session of a connected client. The game session is created once a worker
+     * starts it.
+     *
+     * @param channel   the non-blocking channel to the client
+     */
+    ServerSession(SocketChannel channel) {
+        this.channel = channel;
+        input = new NetInput();
+        frame = ByteBuffer.allocate(ServerProtocol.FRAME_SIZE);
+        frame.flip();
+    }
+
+    /**
+     * Creates the game session. Called on the worker thread.
+     *
+     * @param level the shared level data
+     */
+    void start(LevelData level) {
+        session = new GameSession(level, input);
+    }
+
+    /**
+     * Steps the game session with the last buttons received and sends the frame of the new state.
+     * A session which is over is restored to the start state.
+     *
+     * @param startState    the state at the start of the level, read from its position without
+     *                      being changed
+     * @return              <code>true</code> if the frame was sent
+     *                      <code>false</code> if it was dropped
+     * @see                 GameSession#restoreState(ByteBuffer)
+     */
+    boolean tick(ByteBuffer startState) {
+        input.setButtons(buttons);
+        session.step();
+        boolean sent = sendFrame();
+        if(session.isGameOver()) {
+            session.restoreState(startState.duplicate());
+        }
+        return sent;
+    }
+
+    /**
+     * Sends the frame of the current state. If the previous frame has not been sent completely
+     * because the client reads too slowly, its rest is sent instead and the current frame is
+     * dropped.
+     *
+     * @return  <code>true</code> if the frame was sent
+     *          <code>false</code> if it was dropped
+     */
+    private boolean sendFrame() {
+        boolean sent = !frame.hasRemaining();
+        if(sent) {
+            Mario player = session.getPlayer();
+            Vector2 position = player.b2Body.getPosition();
+            frame.clear();
+            frame.putInt(session.getStepCount());
+            frame.putInt(session.getScore());
+            frame.putInt(session.getWorldTimer());
+            frame.putFloat(position.x);
+            frame.putFloat(position.y);
+            frame.putInt(session.getChecksum());
+            frame.put((byte) (player.currentState == Mario.State.DEAD ? 1 : 0));
+            frame.flip();
+        }
+        try {
+            channel.write(frame);
+        } catch(IOException e) {
+            close();
+        }
+        return sent;
+    }
+
+    /**
+     * Sets the buttons held from the next step on. Called on the I/O thread.
+     *
+     * @param buttons   the button bits
+     */
+    void setButtons(int buttons) {
+        this.buttons = buttons;
+    }
+
+    /**
+     * Marks the session closed and closes the channel. The worker disposes the session on its
+     * next tick.
+     */
+    void close() {
+        closed = true;
+        try {
+            channel.close();
+        } catch(IOException e) {
+            // Closed anyway
+        }
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Disposes the game session. Called on the worker thread.
+     */
+    @Override
+    public void dispose() {
+        if(session != null) {
+            session.dispose();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.andrejlohn.mariobros.headless;
+
+/**
+ * This class holds the load of a game server over a period: the work done by its workers and
+ * how it fits the tick budget. The number of sessions per core is extrapolated from the time the
+ * workers were busy, i.e. it is the number of sessions a core could step if it did nothing else.
+ *
+ * @version %I%, %G%
+ * @see     GameServer
+ * @see     SessionWorker
+ */
+class ServerStats {
+
+    final int sessions;
+    final int workers;
+    final long nanos;
+    final long ticks;
+    final long frames;
+    final long droppedFrames;
+    final long busyNanos;
+    final long maxTickNanos;
+    final long overruns;
+    final long skippedTicks;
+
+    private ServerStats(int sessions, SessionWorker[] workers, long nanos) {
+        this.sessions = sessions;
+        this.workers = workers.length;
+        this.nanos = nanos;
+        long ticks = 0;
+        long frames = 0;
+        long droppedFrames = 0;
+        long busyNanos = 0;
+        long maxTickNanos = 0;
+        long overruns = 0;
+        long skippedTicks = 0;
+        for(int i = 0; i < workers.length; i++) {
+            SessionWorker worker = workers[i];
+            ticks += worker.getTicks();
+            frames += worker.getFrames();
+            droppedFrames += worker.getDroppedFrames();
+            busyNanos += worker.getBusyNanos();
+            maxTickNanos = Math.max(maxTickNanos, worker.getMaxTickNanos());
+            overruns += worker.getOverruns();
+            skippedTicks += worker.getSkippedTicks();
+        }
+        this.ticks = ticks;
+        this.frames = frames;
+        this.droppedFrames = droppedFrames;
+        this.busyNanos = busyNanos;
+        this.maxTickNanos = maxTickNanos;
+        this.overruns = overruns;
+        this.skippedTicks = skippedTicks;
+    }
+
+    /**
+     * Collects the statistics of the workers of a server and resets them for the next period.
+     *
+     * @param server    the game server
+     * @param nanos     the length of the period, since the last reset
+     * @return          the statistics
+     */
+    static ServerStats collect(GameServer server, long nanos) {
+        SessionWorker[] workers = server.getWorkers();
+        ServerStats stats = new ServerStats(server.getSessionCount(), workers, nanos);
+        for(int i = 0; i < workers.length; i++) {
+            workers[i].resetStats();
+        }
+        return stats;
+    }
+
+    /**
+     * Gets the share of the time the workers were busy.
+     *
+     * @return  the load of all workers, from 0 to 1
+     */
+    double getLoad() {
+        return busyNanos / ((double) nanos * workers);
+    }
+
+    /**
+     * Gets the number of sessions a single core could step at 60 ticks per second.
+     *
+     * @return  the sessions per core, 0 if no work was done
+     */
+    double getSessionsPerCore() {
+        return busyNanos == 0 ? 0 : sessions * (double) nanos / busyNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "sessions=" + sessions
+                + " workers=" + workers
+                + " load=" + Math.round(getLoad() * 100) + "%"
+                + " avgTick=" + (ticks == 0 ? 0 : busyNanos / ticks / 1000) + "us"
+                + " maxTick=" + maxTickNanos / 1000 + "us"
+                + " overruns=" + overruns
+                + " skipped=" + skippedTicks
+                + " frames=" + frames
+                + " dropped=" + droppedFrames
+                + " sessionsPerCore=" + Math.round(getSessionsPerCore());
+    }
+}
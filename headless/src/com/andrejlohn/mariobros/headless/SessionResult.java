@@ -0,0 +1,53 @@
+package com.andrejlohn.mariobros.headless;
+
+/**
+ * This class holds the gameplay results of a finished game session. The checksum identifies the
+ * whole run, so runs of the same seed on different machines can be compared by it.
+ *
+ * @version %I%, %G%
+ * @see     SessionTask
+ */
+public class SessionResult {
+
+    public final long seed;
+    public final int steps;
+    public final long nanos;
+    public final int score;
+    public final int worldTimer;
+    public final boolean dead;
+    public final float x;
+    public final float y;
+    public final int checksum;
+
+    public SessionResult(
+            long seed,
+            int steps,
+            long nanos,
+            int score,
+            int worldTimer,
+            boolean dead,
+            float x,
+            float y,
+            int checksum) {
+        this.seed = seed;
+        this.steps = steps;
+        this.nanos = nanos;
+        this.score = score;
+        this.worldTimer = worldTimer;
+        this.dead = dead;
+        this.x = x;
+        this.y = y;
+        this.checksum = checksum;
+    }
+
+    @Override
+    public String toString() {
+        return "seed=" + seed
+                + " steps=" + steps
+                + " score=" + score
+                + " timer=" + worldTimer
+                + " dead=" + dead
+                + " position=" + x + "," + y
+                + " checksum=" + Integer.toHexString(checksum);
+    }
+}
@@ -0,0 +1,110 @@
+package com.andrejlohn.mariobros.headless;
+
+import com.andrejlohn.mariobros.level.LevelData;
+import com.andrejlohn.mariobros.replay.InputRecorder;
+import com.andrejlohn.mariobros.session.GameSession;
+import com.andrejlohn.mariobros.sprites.Mario;
+import com.andrejlohn.mariobros.tools.InputSource;
+import com.badlogic.gdx.math.Vector2;
+
+import java.util.concurrent.Callable;
+
+/**
+ * This class runs a single headless game session until the game is over or the step limit is
+ * reached. Each task owns its game session and input, only the level data is shared, so many tasks
+ * can run in parallel. The input may be recorded into a replay.
+ *
+ * @version %I%, %G%
+ * @see     GameSession
+ * @see     SessionResult
+ */
+public class SessionTask implements Callable<SessionResult> {
+
+    private LevelData level;
+    private InputSequence input;
+    private long seed;
+    private int maxSteps;
+
+    // The recorder of the input, null when not recording
+    private InputRecorder recorder;
+
+    /**
+     * Creates the session task.
+     *
+     * @param level     the shared level data
+     * @param input     the input fed to this session
+     * @param seed      the seed the input was created with, reported in the result
+     * @param maxSteps  the maximum number of simulation steps
+     */
+    public SessionTask(LevelData level, InputSequence input, long seed, int maxSteps) {
+        this.level = level;
+        this.input = input;
+        this.seed = seed;
+        this.maxSteps = maxSteps;
+    }
+
+    /**
+     * Sets the recorder to record the input into. The recorder has to record the input of this
+     * task and is finished with the outcome of the session.
+     *
+     * @param recorder  the input recorder, <code>null</code> for none
+     * @see             InputRecorder#InputRecorder(com.andrejlohn.mariobros.tools.InputSource,
+     *                  com.andrejlohn.mariobros.replay.ReplaySink, String)
+     */
+    public void setRecorder(InputRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Runs the game session.
+     *
+     * @return  the gameplay results
+     * @see     GameSession#step()
+     * @see     InputRecorder#stepped(GameSession)
+     */
+    @Override
+    public SessionResult call() {
+        GameSession session = new GameSession(
+                level,
+                recorder != null ? recorder : (InputSource) input);
+        try {
+            long start = System.nanoTime();
+            int step = 0;
+            while(step < maxSteps && !session.isGameOver()) {
+                input.next();
+                if(recorder != null) {
+                    recorder.next();
+                }
+                session.step();
+                if(recorder != null) {
+                    recorder.stepped(session);
+                }
+                step++;
+            }
+            long nanos = System.nanoTime() - start;
+
+            Mario player = session.getPlayer();
+            Vector2 position = player.b2Body.getPosition();
+            if(recorder != null) {
+                recorder.finish(
+                        session.getScore(),
+                        session.getWorldTimer(),
+                        player.currentState == Mario.State.DEAD,
+                        position.x,
+                        position.y);
+            }
+            return new SessionResult(
+                    seed,
+                    step,
+                    nanos,
+                    session.getScore(),
+                    session.getWorldTimer(),
+                    player.currentState == Mario.State.DEAD,
+                    position.x,
+                    position.y,
+                    session.getChecksum());
+        } finally {
+            session.dispose();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.andrejlohn.mariobros.headless;
+
+import com.andrejlohn.mariobros.level.LevelData;
+import com.andrejlohn.mariobros.session.GameSession;
+import com.badlogic.gdx.utils.Array;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class steps a shard of the sessions of the game server on one thread at a fixed cadence of
+ * {@link GameSession#TICKS_PER_SECOND}. Each tick steps every session of the shard once and sends
+ * its frame, then the thread sleeps until the next tick is due. A tick which takes longer than its
+ * budget is an overrun; if the worker falls more than a whole tick behind, the missed ticks are
+ * skipped rather than caught up. The sessions are only touched by the worker thread, sessions
+ * joining are handed over through a queue.
+ *
+ * The statistics are written by the worker thread and may be read from any thread.
+ *
+ * @version %I%, %G%
+ * @see     GameServer
+ * @see     ServerSession
+ */
+class SessionWorker implements Runnable {
+
+    static final long TICK_NANOS = 1000000000L / GameSession.TICKS_PER_SECOND;
+
+    private LevelData level;
+    private ByteBuffer startState;
+
+    private Queue<ServerSession> joining;
+    private Array<ServerSession> sessions;
+    private AtomicInteger sessionCount;
+    private volatile boolean running;
+
+    // Statistics since the last reset
+    private volatile boolean resetStats;
+    private volatile long ticks;
+    private volatile long frames;
+    private volatile long droppedFrames;
+    private volatile long busyNanos;
+    private volatile long maxTickNanos;
+    private volatile long overruns;
+    private volatile long skippedTicks;
+
+    /**
+     * Creates the worker.
+     *
+     * @param level         the shared level data
+     * @param startState    the state at the start of the level to restart sessions from, shared
+     *                      and not changed
+     */
+    SessionWorker(LevelData level, ByteBuffer startState) {
+        this.level = level;
+        this.startState = startState;
+        joining = new ConcurrentLinkedQueue<ServerSession>();
+        sessions = new Array<ServerSession>();
+        sessionCount = new AtomicInteger();
+        running = true;
+    }
+
+    /**
+     * Adds a session to the shard. It is started on the next tick. May be called from any thread.
+     *
+     * @param session   the session
+     */
+    void add(ServerSession session) {
+        sessionCount.incrementAndGet();
+        joining.add(session);
+    }
+
+    @Override
+    public void run() {
+        long deadline = System.nanoTime() + TICK_NANOS;
+        while(running) {
+            if(resetStats) {
+                resetStats = false;
+                ticks = 0;
+                frames = 0;
+                droppedFrames = 0;
+                busyNanos = 0;
+                maxTickNanos = 0;
+                overruns = 0;
+                skippedTicks = 0;
+            }
+
+            long start = System.nanoTime();
+            tick();
+            long end = System.nanoTime();
+            ticks++;
+            busyNanos += end - start;
+            maxTickNanos = Math.max(maxTickNanos, end - start);
+
+            if(end > deadline) {
+                overruns++;
+                long behind = (end - deadline) / TICK_NANOS;
+                skippedTicks += behind;
+                deadline += behind * TICK_NANOS;
+            } else {
+                long now;
+                while((now = System.nanoTime()) < deadline) {
+                    LockSupport.parkNanos(deadline - now);
+                }
+            }
+            deadline += TICK_NANOS;
+        }
+
+        for(int i = 0; i < sessions.size; i++) {
+            sessions.get(i).dispose();
+        }
+        sessions.clear();
+    }
+
+    /**
+     * Starts the sessions joining, drops the closed ones and steps the others. Counts the frames
+     * sent and dropped.
+     */
+    private void tick() {
+        ServerSession session;
+        while((session = joining.poll()) != null) {
+            session.start(level);
+            sessions.add(session);
+        }
+        for(int i = sessions.size - 1; i >= 0; i--) {
+            session = sessions.get(i);
+            if(session.isClosed()) {
+                session.dispose();
+                sessions.removeIndex(i);
+                sessionCount.decrementAndGet();
+            }
+        }
+        int dropped = 0;
+        for(int i = 0; i < sessions.size; i++) {
+            if(!sessions.get(i).tick(startState)) {
+                dropped++;
+            }
+        }
+        frames += sessions.size - dropped;
+        droppedFrames += dropped;
+    }
+
+    /**
+     * Stops the worker after the current tick. The sessions are disposed by the worker thread.
+     */
+    void stop() {
+        running = false;
+    }
+
+    /**
+     * Resets the statistics before the next tick.
+     */
+    void resetStats() {
+        resetStats = true;
+    }
+
+    int getSessionCount() {
+        return sessionCount.get();
+    }
+
+    long getTicks() {
+        return ticks;
+    }
+
+    long getFrames() {
+        return frames;
+    }
+
+    long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    long getBusyNanos() {
+        return busyNanos;
+    }
+
+    long getMaxTickNanos() {
+        return maxTickNanos;
+    }
+
+    long getOverruns() {
+        return overruns;
+    }
+
+    long getSkippedTicks() {
+        return skippedTicks;
+    }
+}
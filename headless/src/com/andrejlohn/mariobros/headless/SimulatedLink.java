@@ -0,0 +1,115 @@
+package com.andrejlohn.mariobros.headless;
+
+import com.andrejlohn.mariobros.net.NetProtocol;
+import com.andrejlohn.mariobros.net.NetTransport;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Pool;
+
+import java.util.Random;
+
+/**
+ * This class connects the two peers of a rollback match in memory, on a clock of ticks instead of
+ * real time, so a match runs as fast as it can be simulated and every run of it is the same. Each
+ * packet is dropped with a given probability, or else delivered after a given delay plus a random
+ * jitter, so packets may arrive out of order. The random number generator is seeded.
+ *
+ * @version %I%, %G%
+ * @see     NetTransport
+ * @see     NetplaySoak
+ */
+class SimulatedLink implements NetTransport {
+
+    /**
+     * A packet on its way, due at a tick.
+     */
+    private static class Packet {
+        byte[] bytes = new byte[NetProtocol.MAX_PACKET_SIZE];
+        int length;
+        int due;
+    }
+
+    private SimulatedLink other;
+    private int delay;
+    private int jitter;
+    private float loss;
+    private Random random;
+    private int time;
+
+    // Packets sent to this end, in the order they are due
+    private Array<Packet> inbox;
+    private Pool<Packet> pool;
+
+    /**
+     * Creates one end of the link.
+     *
+     * @param delay     the one-way delay in ticks
+     * @param jitter    the greatest number of ticks a packet is delayed more
+     * @param loss      the probability a packet is lost, from 0 to 1
+     * @param seed      the seed of the random number generator
+     */
+    SimulatedLink(int delay, int jitter, float loss, long seed) {
+        this.delay = delay;
+        this.jitter = jitter;
+        this.loss = loss;
+        random = new Random(seed);
+        inbox = new Array<Packet>();
+        pool = new Pool<Packet>() {
+            @Override
+            protected Packet newObject() {
+                return new Packet();
+            }
+        };
+    }
+
+    /**
+     * Connects this end to the other end of the link.
+     *
+     * @param other the other end
+     */
+    void connect(SimulatedLink other) {
+        this.other = other;
+    }
+
+    /**
+     * Sets the current tick, which packets are due by.
+     *
+     * @param time  the tick
+     */
+    void setTime(int time) {
+        this.time = time;
+    }
+
+    @Override
+    public void send(byte[] bytes, int length) {
+        if(random.nextFloat() < loss) {
+            return;
+        }
+        Packet packet = other.pool.obtain();
+        System.arraycopy(bytes, 0, packet.bytes, 0, length);
+        packet.length = length;
+        packet.due = time + delay + random.nextInt(jitter + 1);
+        int index = other.inbox.size;
+        while(index > 0 && other.inbox.get(index - 1).due > packet.due) {
+            index--;
+        }
+        other.inbox.insert(index, packet);
+    }
+
+    @Override
+    public int receive(byte[] bytes) {
+        if(inbox.size == 0 || inbox.first().due > time) {
+            return -1;
+        }
+        Packet packet = inbox.removeIndex(0);
+        int length = packet.length;
+        System.arraycopy(packet.bytes, 0, bytes, 0, length);
+        pool.free(packet);
+        return length;
+    }
+
+    @Override
+    public void close() {
+        pool.freeAll(inbox);
+        inbox.clear();
+    }
+}